@@ -38,6 +38,10 @@ public class DirectoryManager {
     private static File GENOME_CACHE_DIRECTORY;
     private static File GENE_LIST_DIRECTORY;
     private static File BAM_CACHE_DIRECTORY;
+    private static File BLOCK_CACHE_DIRECTORY;
+    private static File INDEX_CACHE_DIRECTORY;
+    private static File SEQUENCE_CACHE_DIRECTORY;
+    private static File SNAPSHOT_DIRECTORY;
     final public static String IGV_DIR_USERPREF = "igvDir";
 
 
@@ -220,6 +224,71 @@ public class DirectoryManager {
         return BAM_CACHE_DIRECTORY;
     }
 
+    /**
+     * Directory for the persistent remote data block cache.  Unlike the bam index directory this is not
+     * cleared on exit.
+     */
+    public static synchronized File getBlockCacheDirectory() {
+        if (BLOCK_CACHE_DIRECTORY == null) {
+            File defaultDir = getIgvDirectory();
+            if (defaultDir.exists()) {
+                BLOCK_CACHE_DIRECTORY = new File(defaultDir, "blockcache");
+                if (!BLOCK_CACHE_DIRECTORY.exists()) {
+                    BLOCK_CACHE_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return BLOCK_CACHE_DIRECTORY;
+    }
+
+    /**
+     * Directory for validated copies of remote index files (.bai, .idx).  Not cleared on exit.
+     */
+    public static synchronized File getIndexCacheDirectory() {
+        if (INDEX_CACHE_DIRECTORY == null) {
+            File defaultDir = getIgvDirectory();
+            if (defaultDir.exists()) {
+                INDEX_CACHE_DIRECTORY = new File(defaultDir, "indexcache");
+                if (!INDEX_CACHE_DIRECTORY.exists()) {
+                    INDEX_CACHE_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return INDEX_CACHE_DIRECTORY;
+    }
+
+    /**
+     * Directory for packed (2-bit) copies of local fasta files.  Not cleared on exit.
+     */
+    public static synchronized File getSequenceCacheDirectory() {
+        if (SEQUENCE_CACHE_DIRECTORY == null) {
+            File defaultDir = getGenomeCacheDirectory();
+            if (defaultDir.exists()) {
+                SEQUENCE_CACHE_DIRECTORY = new File(defaultDir, "packed");
+                if (!SEQUENCE_CACHE_DIRECTORY.exists()) {
+                    SEQUENCE_CACHE_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return SEQUENCE_CACHE_DIRECTORY;
+    }
+
+    /**
+     * Directory for pre-parsed snapshots of .genome archives.  Not cleared on exit.
+     */
+    public static synchronized File getGenomeSnapshotDirectory() {
+        if (SNAPSHOT_DIRECTORY == null) {
+            File defaultDir = getGenomeCacheDirectory();
+            if (defaultDir.exists()) {
+                SNAPSHOT_DIRECTORY = new File(defaultDir, "snapshots");
+                if (!SNAPSHOT_DIRECTORY.exists()) {
+                    SNAPSHOT_DIRECTORY.mkdir();
+                }
+            }
+        }
+        return SNAPSHOT_DIRECTORY;
+    }
+
     public static synchronized File getSamDirectory() {
 
         File samDir = new File(DirectoryManager.getIgvDirectory(), "sam");
@@ -87,6 +87,7 @@ public class PreferenceManager implements PropertyManager {
     public static final String SAM_FILTER_SECONDARY_ALIGNMENTS = "SAM.FILTER_SECONDARY_ALIGNMENTS";
     public static final String SAM_FILTER_URL = "SAM.FILTER_URL";
     public static final String SAM_MAX_VISIBLE_RANGE = "SAM.MAX_VISIBLE_RANGE";
+    public static final String SAM_COVERAGE_PYRAMID = "SAM.COVERAGE_PYRAMID";
     public static final String SAM_SHOW_DUPLICATES = "SAM.SHOW_DUPLICATES";
     public static final String SAM_SHOW_SOFT_CLIPPED = "SAM.SHOW_SOFT_CLIPPED";
     public static final String SAM_FLAG_UNMAPPED_PAIR = "SAM.FLAG_UNMAPPED_PAIR";
@@ -181,6 +182,11 @@ public class PreferenceManager implements PropertyManager {
     final public static String PROXY_PW = "PROXY.PW";
     final public static String PROXY_TYPE = "PROXY.TYPE";
 
+    final public static String BLOCK_CACHE_ENABLED = "BLOCK_CACHE.ENABLED";
+    final public static String BLOCK_CACHE_SIZE_MB = "BLOCK_CACHE.SIZE_MB";
+    final public static String PACKED_SEQUENCE_CACHE = "PACKED_SEQUENCE_CACHE";
+    final public static String FEATURE_CACHE_SIZE_MB = "FEATURE_CACHE.SIZE_MB";
+
     final public static String KNOWN_SNPS = "KNOWN_SNPS_FILE";
 
     public static final String FLANKING_REGION = "FLAKING_REGIONS";
@@ -247,6 +253,11 @@ public class PreferenceManager implements PropertyManager {
     private Map<String, Object> objectCache = new Hashtable();
     private Map<TrackType, ContinuousColorScale> colorScaleCache = new Hashtable();
 
+    /**
+     * Incremented on every change, so that values derived from preferences can be recomputed when stale
+     */
+    private volatile int modificationCount;
+
     private PaletteColorTable mutationColorScheme = null;
 
 
@@ -381,6 +392,7 @@ public class PreferenceManager implements PropertyManager {
      * @param value
      */
     private void updateCaches(String key, String value) {
+        modificationCount++;
         if (booleanCache.containsKey(key)) {
             booleanCache.put(key, new Boolean(value));
         }
@@ -389,6 +401,7 @@ public class PreferenceManager implements PropertyManager {
     }
 
     private void clearCaches() {
+        modificationCount++;
         colorScaleCache.clear();
         booleanCache.clear();
         objectCache.clear();
@@ -421,6 +434,7 @@ public class PreferenceManager implements PropertyManager {
 
 
     public void remove(String key) {
+        modificationCount++;
         preferences.remove(key);
         booleanCache.remove(key);
         objectCache.remove(key);
@@ -429,6 +443,7 @@ public class PreferenceManager implements PropertyManager {
 
 
     public void clear() {
+        modificationCount++;
         preferences.clear();
         colorScaleCache.clear();
         booleanCache.clear();
@@ -436,6 +451,13 @@ public class PreferenceManager implements PropertyManager {
     }
 
 
+    /**
+     * @return a count which changes whenever a preference is changed
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
     public String getGenomeListURL() {
         return get(PreferenceManager.GENOMES_SERVER_URL);
     }
@@ -975,6 +997,7 @@ public class PreferenceManager implements PropertyManager {
         defaultValues.put(SAM_MIN_INSERT_SIZE_PERCENTILE, "0.5");
         defaultValues.put(SAM_MAX_INSERT_SIZE_PERCENTILE, "99.5");
         defaultValues.put(SAM_MAX_VISIBLE_RANGE, "30");
+        defaultValues.put(SAM_COVERAGE_PYRAMID, "true");
         defaultValues.put(SAM_COLOR_BY, "UNEXPECTED_PAIR");
         defaultValues.put(SAM_COLOR_BY_TAG, "");
         defaultValues.put(SAM_GROUP_BY_TAG, "");
@@ -1004,6 +1027,10 @@ public class PreferenceManager implements PropertyManager {
 
         defaultValues.put(USE_PROXY, "false");
         defaultValues.put(PROXY_AUTHENTICATE, "false");
+        defaultValues.put(BLOCK_CACHE_ENABLED, "true");
+        defaultValues.put(BLOCK_CACHE_SIZE_MB, "500");
+        defaultValues.put(PACKED_SEQUENCE_CACHE, "false");
+        defaultValues.put(FEATURE_CACHE_SIZE_MB, "100");
         defaultValues.put(PORT_NUMBER, "60151");
         defaultValues.put(TRACK_HEIGHT_KEY, "15");
         defaultValues.put(FLANKING_REGION, "2000");
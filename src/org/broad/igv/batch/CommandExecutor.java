@@ -32,7 +32,7 @@ import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.SnapshotUtilities;
 import org.broad.igv.util.*;
-import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.CacheManager;
 
 import java.awt.*;
 import java.io.File;
@@ -177,9 +177,10 @@ public class CommandExecutor {
             }
             igv.doRefresh();
 
-            if (RuntimeUtils.getAvailableMemoryFraction() < 0.5) {
-                log.debug("Clearing caches");
-                LRUCache.clearCaches();
+            double available = RuntimeUtils.getAvailableMemoryFraction();
+            if (available < 0.5) {
+                log.debug("Trimming caches");
+                CacheManager.trimForUsage(1 - available);
                 System.gc();
             }
             log.debug("Finished execution: " + command + "  sleeping ....");
@@ -21,6 +21,7 @@ import org.broad.igv.tdf.Accumulator;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 
 import java.util.*;
 
@@ -34,7 +35,7 @@ public abstract class AbstractDataSource implements DataSource {
     // DataManager dataManager;
     boolean cacheSummaryTiles = true;
     WindowFunction windowFunction = WindowFunction.mean;
-    LRUCache<String, SummaryTile> summaryTileCache = new LRUCache(this, 10);
+    LRUCache<String, SummaryTile> summaryTileCache = new LRUCache(this, 10, 50000, ManagedCache.PRIORITY_NORMAL);
     protected Genome genome;
 
     public AbstractDataSource(Genome genome) {
@@ -12,8 +12,10 @@
 
 package org.broad.igv.feature;
 
+import com.google.common.base.Predicate;
 import org.apache.log4j.Logger;
-import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.util.collections.WeightedLRUCache;
 import org.broad.tribble.CloseableTribbleIterator;
 import org.broad.tribble.Feature;
 
@@ -27,6 +29,11 @@ import java.util.List;
 /**
  * Class to handle caching data from any source of features
  * Subclasses must override queryRaw
+ * <p/>
+ * Features are cached in bins.  The bin size adapts to the observed feature density, aiming for
+ * TARGET_FEATURES_PER_BIN features per bin, up to the configured (maximum) bin size.  Bins of all cachers
+ * share one cache, and are evicted least recently used first when their total estimated size exceeds the
+ * feature cache budget ({@link PreferenceManager#FEATURE_CACHE_SIZE_MB}).
  *
  * @author jrobinso
  * @date Jun 24, 2010
@@ -35,8 +42,39 @@ public abstract class AbstractCacher {
 
     private static Logger log = Logger.getLogger(AbstractCacher.class);
 
+    static final int MIN_BIN_SIZE = 1000;
+    static final int TARGET_FEATURES_PER_BIN = 5000;
+    private static final int DEFAULT_FEATURE_BYTES = 500;
+    private static final int BIN_OVERHEAD_BYTES = 200;
+
+    /**
+     * Current bin size
+     */
     protected int binSize;
-    protected LRUCache<String, Bin> cache;
+
+    /**
+     * Configured bin size, the upper limit for adapted bin sizes
+     */
+    protected int maxBinSize;
+
+    /**
+     * Moving average of features per base, or -1 if nothing has been loaded
+     */
+    private double featureDensity = -1;
+
+    private int estimatedFeatureBytes = DEFAULT_FEATURE_BYTES;
+
+    /**
+     * Bins of all cachers, keyed by cacher id, chromosome, bin size and bin number
+     */
+    private static WeightedLRUCache<String, Bin> cache;
+
+    private static int nextId = 0;
+
+    /**
+     * Prefix of the keys of this cacher's bins
+     */
+    private final String keyPrefix;
 
 
     /**
@@ -49,25 +87,81 @@ public abstract class AbstractCacher {
      */
     protected abstract Iterator<Feature> queryRaw(String chr, int start, int end) throws IOException;
 
-    public AbstractCacher(int binCount, int binSize) {
-        this.cache = new LRUCache(this, binCount);
+    /**
+     * @param binSize maximum bin size.  Zero means use a single bin per chromosome
+     */
+    public AbstractCacher(int binSize) {
+        synchronized (AbstractCacher.class) {
+            this.keyPrefix = (nextId++) + "_";
+        }
+        initCache();
         this.binSize = binSize;
+        this.maxBinSize = binSize;
     }
 
+    /**
+     * Create the shared cache, or update its budget from the preferences
+     */
+    private static synchronized void initCache() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.FEATURE_CACHE_SIZE_MB) * 1000000L;
+        if (cache == null) {
+            cache = new WeightedLRUCache<String, Bin>(maxBytes, new WeightedLRUCache.Weigher<Bin>() {
+                public long weigh(Bin bin) {
+                    return BIN_OVERHEAD_BYTES +
+                            ((long) bin.featureBytes) * (bin.containedRecords.size() + bin.overlappingRecords.size());
+                }
+            });
+        } else if (cache.getMaxBytes() != maxBytes) {
+            cache.setMaxBytes(maxBytes);
+        }
+    }
 
     /**
-     * Set the bin size.   This invalidates the cache.
+     * Remove this cacher's bins from the shared cache
+     */
+    private void clearCache() {
+        cache.removeAll(new Predicate<String>() {
+            public boolean apply(String key) {
+                return key.startsWith(keyPrefix);
+            }
+        });
+    }
+
+
+    /**
+     * Set the maximum bin size.   This invalidates the cache.
      *
      * @param newSize
      */
-    public void setBinSize(int newSize) {
+    public synchronized void setBinSize(int newSize) {
+        this.maxBinSize = newSize;
         this.binSize = newSize;
-        cache.clear();
+        clearCache();
+        adaptBinSize();
+    }
 
+    public synchronized int getBinSize() {
+        return binSize;
+    }
+
+    /**
+     * Set the estimated in-memory size of a feature, used to weigh cached bins.
+     *
+     * @param bytes
+     */
+    public void setEstimatedFeatureBytes(int bytes) {
+        this.estimatedFeatureBytes = bytes;
+    }
+
+    /**
+     * @return statistics of the cache shared by all cachers
+     */
+    public WeightedLRUCache.Stats getCacheStats() {
+        return cache.getStats();
     }
 
     public void close() throws IOException {
-        cache.clear();
+        clearCache();
     }
 
     /**
@@ -81,14 +175,7 @@ public abstract class AbstractCacher {
      */
     public Iterator<Feature> queryCached(String chr, int start, int end) throws IOException {
 
-        // A binSize of zero => use a single bin for the entire chromosome
-        int startBin = 0;
-        int endBin = 0;    // <= inclusive
-        if (binSize > 0) {
-            startBin = start / binSize;
-            endBin = end / binSize;    // <= inclusive
-        }
-        List<Bin> tiles = getBins(chr, startBin, endBin);
+        List<Bin> tiles = getBins(chr, start, end);
 
         if (tiles.size() == 0) {
             return Collections.<Feature>emptyList().iterator();
@@ -119,26 +206,38 @@ public abstract class AbstractCacher {
      * from multiple thread access
      *
      * @param seq
-     * @param startBin
-     * @param endBin
+     * @param start
+     * @param end
      * @return
      */
-    private synchronized List<Bin> getBins(String seq, int startBin, int endBin) {
+    private synchronized List<Bin> getBins(String seq, int start, int end) {
+
+        // Loading may adapt the bin size, use the current size throughout this query
+        final int binSize = this.binSize;
+
+        // A binSize of zero => use a single bin for the entire chromosome
+        int startBin = 0;
+        int endBin = 0;    // <= inclusive
+        if (binSize > 0) {
+            startBin = start / binSize;
+            endBin = end / binSize;    // <= inclusive
+        }
 
         List<Bin> tiles = new ArrayList(endBin - startBin + 1);
         List<Bin> tilesToLoad = new ArrayList(endBin - startBin + 1);
 
         for (int t = startBin; t <= endBin; t++) {
-            String key = seq + "_" + t;
+            // Bins of a previous size stay in the cache until evicted
+            String key = keyPrefix + seq + "_" + binSize + "_" + t;
             Bin tile = cache.get(key);
 
             if (tile == null) {
                 if (log.isDebugEnabled()) {
                     log.debug("Tile cache miss: " + t);
                 }
-                int start = t * binSize;
-                int end = start + binSize;
-                tile = new Bin(t, start, end);
+                int binStart = t * binSize;
+                int binEnd = binStart + binSize;
+                tile = new Bin(key, t, binStart, binEnd, estimatedFeatureBytes);
                 cache.put(key, tile);
             }
 
@@ -147,7 +246,7 @@ public abstract class AbstractCacher {
             // The current tile is loaded,  load any preceding tiles we have pending
             if (tile.isLoaded()) {
                 if (tilesToLoad.size() > 0) {
-                    if (!loadTiles(seq, tilesToLoad)) {
+                    if (!loadTiles(seq, tilesToLoad, binSize)) {
                         return tiles;
                     }
                 }
@@ -158,13 +257,13 @@ public abstract class AbstractCacher {
         }
 
         if (tilesToLoad.size() > 0) {
-            loadTiles(seq, tilesToLoad);
+            loadTiles(seq, tilesToLoad, binSize);
         }
 
         return tiles;
     }
 
-    private boolean loadTiles(String seq, List<Bin> tiles) {
+    private boolean loadTiles(String seq, List<Bin> tiles, int binSize) {
 
         assert (tiles.size() > 0);
 
@@ -214,7 +313,11 @@ public abstract class AbstractCacher {
 
             for (Bin t : tiles) {
                 t.setLoaded(true);
+                featureCount += t.containedRecords.size();
+                // Update the weight of the now loaded bin
+                cache.put(t.key, t);
             }
+            updateFeatureDensity(featureCount, (long) end - start + 1);
             if (log.isDebugEnabled()) {
                 long dt = System.currentTimeMillis() - t0;
                 long rate = dt == 0 ? Long.MAX_VALUE : featureCount / dt;
@@ -236,8 +339,50 @@ public abstract class AbstractCacher {
     }
 
 
+    /**
+     * Record the density of a newly loaded region, and adapt the bin size for subsequent loads.
+     */
+    private void updateFeatureDensity(int featureCount, long length) {
+        if (maxBinSize == 0 || length <= 0) {
+            return;
+        }
+        double density = ((double) featureCount) / length;
+        featureDensity = featureDensity < 0 ? density : (featureDensity + density) / 2;
+        adaptBinSize();
+    }
+
+    /**
+     * Choose the bin size holding about TARGET_FEATURES_PER_BIN features at the observed density.  Sizes are
+     * powers of 2 multiples of MIN_BIN_SIZE, so small fluctuations in density don't change the bin size.
+     */
+    private void adaptBinSize() {
+        if (maxBinSize <= MIN_BIN_SIZE || featureDensity < 0) {
+            return;
+        }
+        int newSize = maxBinSize;
+        if (featureDensity > 0) {
+            double targetSize = TARGET_FEATURES_PER_BIN / featureDensity;
+            int size = MIN_BIN_SIZE;
+            while (size < targetSize && size < maxBinSize / 2) {
+                size *= 2;
+            }
+            if (size < targetSize) {
+                size = maxBinSize;
+            }
+            newSize = size;
+        }
+        if (newSize != binSize) {
+            if (log.isDebugEnabled()) {
+                log.debug("Feature density " + featureDensity + ", changing bin size from " + binSize + " to " + newSize);
+            }
+            binSize = newSize;
+        }
+    }
+
     private static class Bin {
 
+        private final String key;
+        private final int featureBytes;
         private boolean loaded = false;
         private int start;
         private int end;
@@ -245,7 +390,9 @@ public abstract class AbstractCacher {
         private List<Feature> containedRecords;
         private List<Feature> overlappingRecords;
 
-        Bin(int binNumber, int start, int end) {
+        Bin(String key, int binNumber, int start, int end, int featureBytes) {
+            this.key = key;
+            this.featureBytes = featureBytes;
             this.binNumber = binNumber;
             this.start = start;
             this.end = end;
@@ -59,6 +59,10 @@ public class Exon extends AbstractFeature implements IExon {
         this.mrnaBase = base;
     }
 
+    public int getMrnaBase() {
+        return mrnaBase;
+    }
+
     /**
      * Get amino acid number based on genomic coordinate.
      * Genome coordinate MUST be 0-based
@@ -12,7 +12,6 @@ package org.broad.igv.feature;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import com.jidesoft.utils.SortedList;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.genome.Genome;
@@ -34,10 +33,15 @@ public class FeatureDB {
     /**
      * Map for all features other than genes.
      */
-    //private static Map<String, NamedFeature> featureMap = new HashMap(10000);
-    private static Map<String, List<NamedFeature>> featureMap = Collections.synchronizedSortedMap(new TreeMap<String, List<NamedFeature>>());
     private static final int MAX_DUPLICATE_COUNT = 20;
 
+    /**
+     * Maximum edit distance for names suggested by {@link #getSimilarFeatures(String, int)}
+     */
+    private static final int MAX_EDIT_DISTANCE = 2;
+
+    private static FeatureNameIndex featureIndex = new FeatureNameIndex(MAX_DUPLICATE_COUNT, FeatureComparator.get(true));
+
     public static void addFeature(NamedFeature feature, Genome genome) {
 
         final String name = feature.getName();
@@ -91,26 +95,8 @@ public class FeatureDB {
             }
         }
 
-        synchronized (featureMap) {
-            List<NamedFeature> currentList = featureMap.get(key);
-            if (currentList == null) {
-                List<NamedFeature> newList = new SortedList<NamedFeature>(
-                        new ArrayList<NamedFeature>(), FeatureComparator.get(true));
-                boolean added = newList.add(feature);
-                if (added) {
-                    featureMap.put(key, newList);
-                }
-                return added;
-            } else {
-                // Don't let list grow without bounds
-                if (currentList.size() > MAX_DUPLICATE_COUNT) {
-                    return false;
-                }
-
-                return currentList.add(feature);
-
-            }
-        }
+        // Don't let list grow without bounds
+        return featureIndex.add(key, feature);
     }
 
     /*
@@ -166,11 +152,11 @@ public class FeatureDB {
 
 
     public static void clearFeatures() {
-        featureMap.clear();
+        featureIndex.clear();
     }
 
     static int size() {
-        return featureMap.size();
+        return featureIndex.size();
     }
 
     /**
@@ -178,7 +164,7 @@ public class FeatureDB {
      */
     public static NamedFeature getFeature(String name) {
         String nm = name.trim().toUpperCase();
-        List<NamedFeature> features = featureMap.get(nm);
+        List<NamedFeature> features = featureIndex.get(nm);
 
         if (features != null) {
             return features.get(0);
@@ -191,13 +177,7 @@ public class FeatureDB {
      * Get all features which match nm. Not necessarily
      * an exact match. Current implementation will match anything
      * for which name is at the beginning, including but not limited to
-     * exact matches.
-     * <p/>
-     * NOTE: "It is imperative that the user manually synchronize
-     * on [this sorted map] when iterating over any of its
-     * collection views, or the collections views of any of its
-     * subMap, headMap or tailMap views". See
-     * <a href="http://docs.oracle.com/javase/6/docs/api/java/util/Collections.html#synchronizedSortedMap%28java.util.SortedMap%29> here</a>
+     * exact matches.  The map is a copy.
      *
      * @param name : Search string. Features which begin with this
      *             string will be found.
@@ -205,9 +185,7 @@ public class FeatureDB {
      */
     static Map<String, List<NamedFeature>> getFeaturesMap(String name) {
         String nm = name.trim().toUpperCase();
-        SortedMap<String, List<NamedFeature>> treeMap = (SortedMap) featureMap;
-        //Search is inclusive to first argument, exclusive to second
-        return treeMap.subMap(nm, nm + Character.MAX_VALUE);
+        return featureIndex.getPrefixMatches(nm, Integer.MAX_VALUE);
     }
 
     /**
@@ -233,25 +211,40 @@ public class FeatureDB {
      */
     public static List<NamedFeature> getFeaturesList(String name, int limit, boolean longestOnly) {
 
-        //Note: We are iterating over submap, this needs
-        //to be synchronized over the main map.
-        synchronized (featureMap) {
-            Map<String, List<NamedFeature>> resultMap = getFeaturesMap(name);
-            Set<String> names = resultMap.keySet();
-            Iterator<String> nameIter = names.iterator();
-            ArrayList<NamedFeature> features = new ArrayList<NamedFeature>((Math.min(limit, names.size())));
-            int ii = 0;
-            while (nameIter.hasNext() && ii < limit) {
-                List<NamedFeature> subFeats = resultMap.get(nameIter.next());
-                if (longestOnly) {
-                    features.add(subFeats.get(0));
-                } else {
-                    features.addAll(subFeats);
-                }
-                ii++;
+        Map<String, List<NamedFeature>> resultMap = featureIndex.getPrefixMatches(name.trim().toUpperCase(), limit);
+        ArrayList<NamedFeature> features = new ArrayList<NamedFeature>(resultMap.size());
+        for (List<NamedFeature> subFeats : resultMap.values()) {
+            if (longestOnly) {
+                features.add(subFeats.get(0));
+            } else {
+                features.addAll(subFeats);
             }
+        }
+        return features;
+    }
+
+    /**
+     * Get features with names similar to, but not starting with, the provided name, allowing for typing errors.
+     * The longest feature for each name is returned, closest names first.
+     *
+     * @param name
+     * @param limit
+     * @return
+     */
+    public static List<NamedFeature> getSimilarFeatures(String name, int limit) {
+        String nm = name.trim().toUpperCase();
+        List<NamedFeature> features = new ArrayList<NamedFeature>();
+        // Very short names are within a couple of edits of most other names
+        if (nm.length() <= MAX_EDIT_DISTANCE) {
             return features;
         }
+        for (String similarName : featureIndex.getSimilarNames(nm, MAX_EDIT_DISTANCE, limit)) {
+            List<NamedFeature> subFeats = featureIndex.get(similarName);
+            if (subFeats != null && !similarName.startsWith(nm)) {
+                features.add(subFeats.get(0));
+            }
+        }
+        return features;
     }
 
 
@@ -276,29 +269,26 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = featureIndex.get(nm);
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    BasicFeature bf = (BasicFeature) f;
-                    Codon c = bf.getCodon(currentGenome, proteinPosition);
-                    if (c == null) {
-                        continue;
-                    }
-                    if (c.getAminoAcid().equalsByName(refAA)) {
-                        Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
-                                AminoAcidManager.getAminoAcidByName(mutAA));
-                        if (snps.size() >= 1) {
-                            results.put(c.getGenomePositions()[0], bf);
-                        }
+                BasicFeature bf = (BasicFeature) f;
+                Codon c = bf.getCodon(currentGenome, proteinPosition);
+                if (c == null) {
+                    continue;
+                }
+                if (c.getAminoAcid().equalsByName(refAA)) {
+                    Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
+                            AminoAcidManager.getAminoAcidByName(mutAA));
+                    if (snps.size() >= 1) {
+                        results.put(c.getGenomePositions()[0], bf);
                     }
                 }
-
             }
         }
 
@@ -325,37 +315,34 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = featureIndex.get(nm);
         String tempNT;
         String brefNT = refNT.toUpperCase();
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
-
-                    BasicFeature bf = (BasicFeature) f;
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
-                    if (genomePosition < 0) {
-                        continue;
-                    }
-                    final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
-                    if (nuclSequence == null) {
-                        continue;
-                    }
-                    tempNT = new String(nuclSequence);
-                    if (bf.getStrand() == Strand.NEGATIVE) {
-                        tempNT = AminoAcidManager.getNucleotideComplement(tempNT);
-                    }
+                BasicFeature bf = (BasicFeature) f;
 
-                    if (tempNT.toUpperCase().equals(brefNT)) {
-                        results.put(genomePosition, bf);
-                    }
+                int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
+                if (genomePosition < 0) {
+                    continue;
+                }
+                final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
+                if (nuclSequence == null) {
+                    continue;
+                }
+                tempNT = new String(nuclSequence);
+                if (bf.getStrand() == Strand.NEGATIVE) {
+                    tempNT = AminoAcidManager.getNucleotideComplement(tempNT);
                 }
 
+                if (tempNT.toUpperCase().equals(brefNT)) {
+                    results.put(genomePosition, bf);
+                }
             }
         }
 
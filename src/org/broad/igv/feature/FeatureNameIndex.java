@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature;
+
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact index of feature names supporting exact, prefix, and approximate lookup.
+ * <p/>
+ * Most names are held in an immutable sorted segment: the UTF-8 bytes of all names in one array, and the features
+ * for each name in one flat array.  Names added since the segment was built are held in a small sorted map, and
+ * merged into a new segment in bulk once they exceed a fraction of the segment size, so the cost of merging is
+ * spread over many additions.  Lookups share a read lock and do not block each other.
+ */
+class FeatureNameIndex {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int MIN_MERGE_SIZE = 10000;
+
+    private final int maxFeaturesPerName;
+    private final Comparator<? super NamedFeature> comparator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Segment segment = new Segment();
+    private TreeMap<String, List<NamedFeature>> pending = new TreeMap<String, List<NamedFeature>>();
+
+    /**
+     * @param maxFeaturesPerName features beyond this number for a name are not added
+     * @param comparator         order of the features for each name, the first is returned by {@link #get(String)}
+     */
+    FeatureNameIndex(int maxFeaturesPerName, Comparator<? super NamedFeature> comparator) {
+        this.maxFeaturesPerName = maxFeaturesPerName;
+        this.comparator = comparator;
+    }
+
+    /**
+     * @param key upper case name
+     * @return true if the feature was added
+     */
+    boolean add(String key, NamedFeature feature) {
+        lock.writeLock().lock();
+        try {
+            List<NamedFeature> features = pending.get(key);
+            int count = (features == null ? 0 : features.size()) + segment.count(key.getBytes(UTF8));
+            if (count >= maxFeaturesPerName) {
+                return false;
+            }
+            if (features == null) {
+                features = new ArrayList<NamedFeature>(2);
+                pending.put(key, features);
+            }
+            features.add(feature);
+            if (pending.size() >= Math.max(MIN_MERGE_SIZE, segment.size() / 4)) {
+                merge();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            segment = new Segment();
+            pending = new TreeMap<String, List<NamedFeature>>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            int size = segment.size();
+            for (String key : pending.keySet()) {
+                if (segment.count(key.getBytes(UTF8)) == 0) {
+                    size++;
+                }
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param key upper case name
+     * @return the features with this name, in comparator order, or null if there are none
+     */
+    List<NamedFeature> get(String key) {
+        lock.readLock().lock();
+        try {
+            List<NamedFeature> features = null;
+            int idx = segment.find(key.getBytes(UTF8));
+            if (idx >= 0) {
+                features = segment.getFeatures(idx);
+            }
+            List<NamedFeature> pendingFeatures = pending.get(key);
+            if (pendingFeatures != null) {
+                features = features == null ? new ArrayList<NamedFeature>(pendingFeatures) :
+                        combine(features, pendingFeatures);
+                Collections.sort(features, comparator);
+            }
+            return features;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param prefix upper case prefix
+     * @param limit  maximum number of names to return
+     * @return the first names, in sorted order, starting with {@code prefix}, and their features
+     */
+    SortedMap<String, List<NamedFeature>> getPrefixMatches(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            TreeMap<String, List<NamedFeature>> matches = new TreeMap<String, List<NamedFeature>>();
+            byte[] prefixBytes = prefix.getBytes(UTF8);
+            for (int i = segment.lowerBound(prefixBytes); i < segment.size() && matches.size() < limit &&
+                    segment.startsWith(i, prefixBytes); i++) {
+                matches.put(segment.getKey(i), segment.getFeatures(i));
+            }
+            int n = 0;
+            for (Map.Entry<String, List<NamedFeature>> entry :
+                    pending.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+                if (n++ >= limit) {
+                    break;
+                }
+                List<NamedFeature> features = matches.get(entry.getKey());
+                features = features == null ? new ArrayList<NamedFeature>(entry.getValue()) :
+                        combine(features, entry.getValue());
+                Collections.sort(features, comparator);
+                matches.put(entry.getKey(), features);
+            }
+            while (matches.size() > limit) {
+                matches.remove(matches.lastKey());
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find names within {@code maxDistance} edits (insertions, deletions, or substitutions) of {@code key},
+     * closest first.  Every name is compared, but names whose lengths differ by more than {@code maxDistance}
+     * are skipped without computing the distance.
+     *
+     * @param key upper case name
+     */
+    List<String> getSimilarNames(String key, int maxDistance, int limit) {
+        merge();
+
+        byte[] keyBytes = key.getBytes(UTF8);
+        List<List<String>> byDistance = new ArrayList<List<String>>();
+        for (int d = 0; d <= maxDistance; d++) {
+            byDistance.add(new ArrayList<String>());
+        }
+
+        lock.readLock().lock();
+        try {
+            int[] row = new int[keyBytes.length + 1];
+            int[] previous = new int[keyBytes.length + 1];
+            for (int i = 0; i < segment.size(); i++) {
+                int d = segment.distance(i, keyBytes, maxDistance, row, previous);
+                if (d <= maxDistance && byDistance.get(d).size() < limit) {
+                    byDistance.get(d).add(segment.getKey(i));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<String> names = new ArrayList<String>();
+        for (List<String> list : byDistance) {
+            for (String name : list) {
+                if (names.size() < limit) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private List<NamedFeature> combine(List<NamedFeature> l1, List<NamedFeature> l2) {
+        List<NamedFeature> features = new ArrayList<NamedFeature>(l1.size() + l2.size());
+        features.addAll(l1);
+        features.addAll(l2);
+        return features;
+    }
+
+    /**
+     * Merge pending names into a new segment
+     */
+    private void merge() {
+        lock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            // Pending keys in the byte order of the segment
+            int nPending = pending.size();
+            final byte[][] pendingKeys = new byte[nPending][];
+            List<List<NamedFeature>> pendingFeatures = new ArrayList<List<NamedFeature>>(pending.values());
+            Integer[] order = new Integer[nPending];
+            int k = 0;
+            for (String key : pending.keySet()) {
+                pendingKeys[k] = key.getBytes(UTF8);
+                order[k] = k;
+                k++;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    return compareBytes(pendingKeys[i1], 0, pendingKeys[i1].length, pendingKeys[i2]);
+                }
+            });
+
+            Segment.Builder builder = new Segment.Builder(segment.keys.length, segment.size() + nPending,
+                    segment.features.length + nPending);
+            int i = 0;
+            int j = 0;
+            while (i < segment.size() || j < nPending) {
+                int cmp;
+                if (i == segment.size()) {
+                    cmp = 1;
+                } else if (j == nPending) {
+                    cmp = -1;
+                } else {
+                    cmp = segment.compare(i, pendingKeys[order[j]]);
+                }
+                if (cmp < 0) {
+                    builder.add(segment, i);
+                    i++;
+                } else {
+                    List<NamedFeature> features = pendingFeatures.get(order[j]);
+                    if (cmp == 0) {
+                        features = combine(segment.getFeatures(i), features);
+                        i++;
+                    }
+                    Collections.sort(features, comparator);
+                    builder.add(pendingKeys[order[j]], features);
+                    j++;
+                }
+            }
+            segment = builder.build();
+            pending = new TreeMap<String, List<NamedFeature>>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compare bytes a[aOffset, aEnd) to b, as unsigned values
+     */
+    static int compareBytes(byte[] a, int aOffset, int aEnd, byte[] b) {
+        int n = Math.min(aEnd - aOffset, b.length);
+        for (int i = 0; i < n; i++) {
+            int c1 = a[aOffset + i] & 0xFF;
+            int c2 = b[i] & 0xFF;
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return (aEnd - aOffset) - b.length;
+    }
+
+    /**
+     * Sorted names and their features
+     */
+    static class Segment {
+
+        final byte[] keys;
+        final int[] keyOffsets;
+        final NamedFeature[] features;
+        final int[] featureOffsets;
+
+        Segment() {
+            this(new byte[0], new int[]{0}, new NamedFeature[0], new int[]{0});
+        }
+
+        Segment(byte[] keys, int[] keyOffsets, NamedFeature[] features, int[] featureOffsets) {
+            this.keys = keys;
+            this.keyOffsets = keyOffsets;
+            this.features = features;
+            this.featureOffsets = featureOffsets;
+        }
+
+        int size() {
+            return keyOffsets.length - 1;
+        }
+
+        String getKey(int i) {
+            return new String(keys, keyOffsets[i], keyOffsets[i + 1] - keyOffsets[i], UTF8);
+        }
+
+        List<NamedFeature> getFeatures(int i) {
+            return new ArrayList<NamedFeature>(
+                    Arrays.asList(features).subList(featureOffsets[i], featureOffsets[i + 1]));
+        }
+
+        int compare(int i, byte[] key) {
+            return compareBytes(keys, keyOffsets[i], keyOffsets[i + 1], key);
+        }
+
+        boolean startsWith(int i, byte[] prefix) {
+            int offset = keyOffsets[i];
+            if (keyOffsets[i + 1] - offset < prefix.length) {
+                return false;
+            }
+            for (int j = 0; j < prefix.length; j++) {
+                if (keys[offset + j] != prefix[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the index of the first name >= key
+         */
+        int lowerBound(byte[] key) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int find(byte[] key) {
+            int idx = lowerBound(key);
+            return idx < size() && compare(idx, key) == 0 ? idx : -1;
+        }
+
+        int count(byte[] key) {
+            int idx = find(key);
+            return idx < 0 ? 0 : featureOffsets[idx + 1] - featureOffsets[idx];
+        }
+
+        /**
+         * Edit distance between name i and key, or maxDistance + 1 if it exceeds maxDistance
+         */
+        int distance(int i, byte[] key, int maxDistance, int[] row, int[] previous) {
+            int offset = keyOffsets[i];
+            int length = keyOffsets[i + 1] - offset;
+            if (Math.abs(length - key.length) > maxDistance) {
+                return maxDistance + 1;
+            }
+            for (int j = 0; j <= key.length; j++) {
+                previous[j] = j;
+            }
+            for (int m = 1; m <= length; m++) {
+                row[0] = m;
+                int rowMin = m;
+                byte c = keys[offset + m - 1];
+                for (int j = 1; j <= key.length; j++) {
+                    int cost = c == key[j - 1] ? 0 : 1;
+                    row[j] = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                    rowMin = Math.min(rowMin, row[j]);
+                }
+                if (rowMin > maxDistance) {
+                    return maxDistance + 1;
+                }
+                int[] tmp = previous;
+                previous = row;
+                row = tmp;
+            }
+            return Math.min(previous[key.length], maxDistance + 1);
+        }
+
+        static class Builder {
+
+            byte[] keys;
+            int keyLength = 0;
+            final IntArrayList keyOffsets;
+            final List<NamedFeature> features;
+            final IntArrayList featureOffsets;
+
+            Builder(int keyBytes, int nKeys, int nFeatures) {
+                keys = new byte[Math.max(16, keyBytes)];
+                keyOffsets = new IntArrayList(nKeys + 1);
+                features = new ArrayList<NamedFeature>(nFeatures);
+                featureOffsets = new IntArrayList(nKeys + 1);
+                keyOffsets.add(0);
+                featureOffsets.add(0);
+            }
+
+            void add(Segment segment, int i) {
+                int offset = segment.keyOffsets[i];
+                addKey(segment.keys, offset, segment.keyOffsets[i + 1] - offset);
+                for (int f = segment.featureOffsets[i]; f < segment.featureOffsets[i + 1]; f++) {
+                    features.add(segment.features[f]);
+                }
+                featureOffsets.add(features.size());
+            }
+
+            void add(byte[] key, List<NamedFeature> keyFeatures) {
+                addKey(key, 0, key.length);
+                features.addAll(keyFeatures);
+                featureOffsets.add(features.size());
+            }
+
+            private void addKey(byte[] bytes, int offset, int length) {
+                if (keyLength + length > keys.length) {
+                    keys = Arrays.copyOf(keys, Math.max(keyLength + length, 2 * keys.length));
+                }
+                System.arraycopy(bytes, offset, keys, keyLength, length);
+                keyLength += length;
+                keyOffsets.add(keyLength);
+            }
+
+            Segment build() {
+                return new Segment(Arrays.copyOf(keys, keyLength), keyOffsets.toArray(),
+                        features.toArray(new NamedFeature[features.size()]), featureOffsets.toArray());
+            }
+        }
+    }
+}
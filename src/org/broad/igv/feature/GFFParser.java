@@ -89,23 +89,11 @@ public class GFFParser implements FeatureParser {
     public List<org.broad.tribble.Feature> loadFeatures(BufferedReader reader, Genome genome, GFFCodec codec) {
         String line = null;
         int lineNumber = 0;
-        GFFFeatureSource.GFFCombiner combiner = new GFFFeatureSource.GFFCombiner();
+        ParallelGFFLoader loader = new ParallelGFFLoader(codec, genome, IGV.hasInstance());
         try {
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
-
-                if (line.startsWith("#")) {
-                    codec.readHeaderLine(line);
-                } else {
-                    try {
-                        Feature f = codec.decode(line);
-                        if (f != null) {
-                            combiner.addFeature((BasicFeature) f);
-                        }
-                    } catch (Exception e) {
-                        log.error("Error parsing: " + line, e);
-                    }
-                }
+                loader.addLine(line);
             }
 
 
@@ -120,14 +108,8 @@ public class GFFParser implements FeatureParser {
 
         trackProperties = TrackLoader.getTrackProperties(codec.getHeader());
 
-        //Combine the features
-        List<Feature> iFeatures = combiner.combineFeatures();
-
-        if (IGV.hasInstance()) {
-            FeatureDB.addFeatures(iFeatures, genome);
-        }
-
-        return iFeatures;
+        //Combine the features.  Features are added to FeatureDB by the loader, as each chromosome completes
+        return loader.finish();
     }
 
 
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.GFFCodec;
+import org.broad.igv.track.GFFFeatureSource;
+import org.broad.tribble.Feature;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a complete GFF file, decoding lines in parallel in batches and combining the parts of each chromosome into
+ * transcripts (see {@link GFFFeatureSource.GFFCombiner}) as separate tasks.
+ * <p/>
+ * A chromosome is combined as soon as no later line can refer to its features, that is when the chromosome
+ * changes after a "###" directive (all forward references resolved, see the GFF3 spec).  Otherwise, as for GTF
+ * files, chromosomes are combined at the end of the file.  Combined chromosomes are added to {@link FeatureDB}
+ * as they complete.
+ */
+public class ParallelGFFLoader {
+
+    private static Logger log = Logger.getLogger(ParallelGFFLoader.class);
+
+    static final int BATCH_SIZE = 2000;
+    private static final int N_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Limits the lines read ahead of decoding
+     */
+    private static final int MAX_PENDING_BATCHES = 4 * N_THREADS;
+
+    // Tasks are run in submission order.  A partition's combine task is submitted after its decode tasks, so by
+    // the time it runs they have all started, and it never waits on a task queued behind it.
+    private static final ExecutorService executor = Executors.newFixedThreadPool(N_THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "GFFLoader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final GFFCodec codec;
+    private final Genome genome;
+    private final boolean addToFeatureDB;
+
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+    private final Map<String, Partition> openPartitions = new HashMap<String, Partition>();
+    private final List<Future<List<Feature>>> combined = new ArrayList<Future<List<Feature>>>();
+    private final List<Future<List<BasicFeature>>> pendingDecodes = new ArrayList<Future<List<BasicFeature>>>();
+
+    private Partition partition;
+    private String chrToken;
+    private List<String> batch = new ArrayList<String>(BATCH_SIZE);
+    private boolean resolved = false;
+
+    /**
+     * @param codec
+     * @param genome
+     * @param addToFeatureDB if true combined features are added to {@link FeatureDB}
+     */
+    public ParallelGFFLoader(GFFCodec codec, Genome genome, boolean addToFeatureDB) {
+        this.codec = codec;
+        this.genome = genome;
+        this.addToFeatureDB = addToFeatureDB;
+    }
+
+    /**
+     * Add the next line of the file
+     */
+    public void addLine(String line) {
+
+        if (line.startsWith("#")) {
+            if (line.startsWith("###")) {
+                resolved = true;
+            } else {
+                // Directives change how later lines are decoded, wait for the lines before
+                flushBatch();
+                awaitDecodes();
+                codec.readHeaderLine(line);
+            }
+            return;
+        }
+
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return;
+        }
+        if (chrToken == null || !line.startsWith(chrToken) || chrToken.length() != tab) {
+            flushBatch();
+            chrToken = line.substring(0, tab);
+            String chr = genome == null ? chrToken.trim() : genome.getChromosomeAlias(chrToken.trim());
+            if (partition != null && !partition.chr.equals(chr) && resolved) {
+                openPartitions.remove(partition.chr);
+                combine(partition);
+            }
+            partition = openPartitions.get(chr);
+            if (partition == null) {
+                partition = new Partition(chr);
+                openPartitions.put(chr, partition);
+            }
+        }
+        resolved = false;
+
+        batch.add(line);
+        if (batch.size() >= BATCH_SIZE) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Combine the remaining chromosomes, and wait for all to complete.
+     *
+     * @return the combined features, sorted by start position
+     */
+    public List<Feature> finish() {
+        flushBatch();
+        for (Partition p : openPartitions.values()) {
+            combine(p);
+        }
+        openPartitions.clear();
+        partition = null;
+        chrToken = null;
+
+        List<Feature> features = new ArrayList<Feature>();
+        for (Future<List<Feature>> future : combined) {
+            features.addAll(getResult(future));
+        }
+        combined.clear();
+        FeatureUtils.sortFeatureList(features);
+        return features;
+    }
+
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        pendingBatches.acquireUninterruptibly();
+        Future<List<BasicFeature>> future = executor.submit(new DecodeTask(batch));
+        partition.decodes.add(future);
+        pendingDecodes.add(future);
+        batch = new ArrayList<String>(BATCH_SIZE);
+    }
+
+    private void awaitDecodes() {
+        for (Future<List<BasicFeature>> future : pendingDecodes) {
+            getResult(future);
+        }
+        pendingDecodes.clear();
+    }
+
+    private void combine(final Partition p) {
+        combined.add(executor.submit(new Callable<List<Feature>>() {
+            public List<Feature> call() {
+                GFFFeatureSource.GFFCombiner combiner = new GFFFeatureSource.GFFCombiner();
+                for (Future<List<BasicFeature>> future : p.decodes) {
+                    for (BasicFeature bf : getResult(future)) {
+                        combiner.addFeature(bf);
+                    }
+                }
+                List<Feature> features = combiner.combineFeatures();
+                if (addToFeatureDB) {
+                    FeatureDB.addFeatures(features, genome);
+                }
+                log.debug("Loaded " + features.size() + " features on " + p.chr);
+                return features;
+            }
+        }));
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private class DecodeTask implements Callable<List<BasicFeature>> {
+
+        final List<String> lines;
+
+        DecodeTask(List<String> lines) {
+            this.lines = lines;
+        }
+
+        public List<BasicFeature> call() {
+            try {
+                List<BasicFeature> features = new ArrayList<BasicFeature>(lines.size());
+                for (String line : lines) {
+                    try {
+                        BasicFeature f = codec.decode(line);
+                        if (f != null) {
+                            features.add(f);
+                        }
+                    } catch (Exception e) {
+                        log.error("Error parsing: " + line, e);
+                    }
+                }
+                return features;
+            } finally {
+                pendingBatches.release();
+            }
+        }
+    }
+
+    /**
+     * The lines of a chromosome, or of a run of lines on a chromosome closed by "###", in file order
+     */
+    private static class Partition {
+        final String chr;
+        final List<Future<List<BasicFeature>>> decodes = new ArrayList<Future<List<BasicFeature>>>();
+
+        Partition(String chr) {
+            this.chr = chr;
+        }
+    }
+}
@@ -11,6 +11,7 @@
 
 package org.broad.igv.feature.genome;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
 
@@ -21,7 +22,7 @@ import java.util.*;
  * @date 3/24/12
  */
 
-public class FastaDirectorySequence implements Sequence {
+public class FastaDirectorySequence implements Sequence, Closeable {
 
     Map<String, FastaIndexedSequence> sequenceMap;
     List<String> chromosomeNames;
@@ -71,6 +72,12 @@ public class FastaDirectorySequence implements Sequence {
     }
 
 
+    public void close() {
+        for (FastaIndexedSequence fastaSequence : new HashSet<FastaIndexedSequence>(getFastaSequences())) {
+            fastaSequence.close();
+        }
+    }
+
     @Override
     public List<String> getChromosomeNames() {
         return chromosomeNames;
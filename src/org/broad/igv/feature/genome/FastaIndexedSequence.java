@@ -13,31 +13,65 @@ package org.broad.igv.feature.genome;
 
 import net.sf.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
+import org.broad.igv.util.HttpUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
- * Implementation of Sequence backed by an indexed fasta file
+ * Implementation of Sequence backed by an indexed fasta file.
+ * <p/>
+ * Local files are memory mapped (in windows of {@link #MAP_WINDOW_SIZE} bytes, to support files larger than 2 GB)
+ * and bases are copied line by line directly from the mapping into the result.  Remote files, and local files on
+ * 32 bit JVMs whose address space can't hold the mappings, are read through a small pool of open seekable streams,
+ * one positional read per request.
  *
  * @author jrobinso
  * @date 8/7/11
  */
-public class FastaIndexedSequence implements Sequence {
+public class FastaIndexedSequence implements Sequence, Closeable {
 
     static Logger log = Logger.getLogger(FastaIndexedSequence.class);
 
+    static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    // Maximum number of idle remote streams kept open
+    private static final int MAX_POOLED_STREAMS = 4;
+
     final FastaIndex index;
     final String path;
     final long contentLength;
 
     private final ArrayList<String> chromoNamesList;
 
+    /**
+     * Memory mapped windows of a local file, created on first use.  Null for remote files.
+     */
+    private MappedByteBuffer[] mappedWindows;
+
+    private final LinkedList<SeekableStream> idleStreams = new LinkedList<SeekableStream>();
+
     public FastaIndexedSequence(String path) throws IOException {
+        this(path, isMappingSupported());
+    }
+
+    /**
+     * @param path
+     * @param memoryMap if true memory map local files
+     * @throws IOException
+     */
+    FastaIndexedSequence(String path, boolean memoryMap) throws IOException {
 
         this.path = path;
         contentLength = ParsingUtils.getContentLength(path);
@@ -52,6 +86,30 @@ public class FastaIndexedSequence implements Sequence {
 
         index = new FastaIndex(indexPath);
         chromoNamesList = new ArrayList<String>(index.getSequenceNames());
+
+        if (memoryMap && !HttpUtils.isRemoteURL(path) && contentLength > 0 && new File(path).isFile()) {
+            mappedWindows = new MappedByteBuffer[(int) ((contentLength + MAP_WINDOW_SIZE - 1) / MAP_WINDOW_SIZE)];
+        }
+    }
+
+    /**
+     * Return true if the JVM has a 64 bit address space.  Mapping windows of a large fasta file would exhaust the
+     * address space of a 32 bit JVM.
+     */
+    static boolean isMappingSupported() {
+        String dataModel = System.getProperty("sun.arch.data.model");
+        if (dataModel != null) {
+            return dataModel.equals("64");
+        }
+        String arch = System.getProperty("os.arch");
+        return arch != null && arch.contains("64");
+    }
+
+    /**
+     * @return true if this sequence is read from a memory mapped local file
+     */
+    public boolean isMemoryMapped() {
+        return mappedWindows != null;
     }
 
 
@@ -89,57 +147,41 @@ public class FastaIndexedSequence implements Sequence {
             final int start = Math.max(0, qstart);    // qstart should never be < 0
             final int end = Math.min((int) idxEntry.getSize(), qend);
 
-            final int bytesPerLine = idxEntry.getBytesPerLine();
-            final int basesPerLine = idxEntry.getBasesPerLine();
-            int nEndBytes = bytesPerLine - basesPerLine;
-
-            int startLine = start / basesPerLine;
-            int endLine = end / basesPerLine;
-
-            int base0 = startLine * basesPerLine;   // Base at beginning of start line
-
-            int offset = start - base0;
-            final long position = idxEntry.getPosition();
-            long startByte = position + startLine * bytesPerLine + offset;
-
-            int base1 = endLine * basesPerLine;
-            int offset1 = end - base1;
-            long endByte = Math.min(contentLength, position + endLine * bytesPerLine + offset1);
+            long startByte = getFilePosition(idxEntry, start);
+            long endByte = Math.min(contentLength, getFilePosition(idxEntry, end));
 
             if (startByte >= endByte) {
                 return null;
             }
 
-            // Read all the bytes in the range.  This will include endline characters
-            byte[] allBytes = readBytes(startByte, endByte);
+            // For remote files read all the bytes in the range, including endline characters, in one request
+            byte[] allBytes = isMemoryMapped() ? null : readBytes(startByte, endByte);
 
-            // Create the array for the sequence -- this will be "allBytes" without the endline characters.
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(end - start);
-
-            int srcPos = 0;
+            // Copy the bases line by line, skipping endline characters
+            final int basesPerLine = idxEntry.getBasesPerLine();
+            final byte[] seq = new byte[end - start];
+            int base = start;
             int desPos = 0;
-            // Copy first line
-            final int allBytesLength = allBytes.length;
-            if (offset > 0) {
-                int nBases = Math.min(end - start, basesPerLine - offset);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
-                desPos += nBases;
-            }
-
-            while (srcPos < allBytesLength) {
-                int nBases = Math.min(basesPerLine, allBytesLength - srcPos);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
+            while (desPos < seq.length) {
+                long filePos = getFilePosition(idxEntry, base);
+                int nBases = (int) Math.min(Math.min(basesPerLine - (base % basesPerLine), seq.length - desPos),
+                        endByte - filePos);
+                if (nBases <= 0) {
+                    break;
+                }
+                if (allBytes == null) {
+                    copyMapped(filePos, seq, desPos, nBases);
+                } else {
+                    System.arraycopy(allBytes, (int) (filePos - startByte), seq, desPos, nBases);
+                }
                 desPos += nBases;
+                base += nBases;
             }
 
-
-            return bos.toByteArray();
+            return desPos == seq.length ? seq : Arrays.copyOf(seq, desPos);
 
         } catch (IOException e) {
-            e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-
+            log.error("Error reading sequence from " + path, e);
             return null;
         }
     }
@@ -147,9 +189,70 @@ public class FastaIndexedSequence implements Sequence {
 
     @Override
     public byte getBase(String chr, int position) {
-        throw new RuntimeException("getBase() is not implemented for class " + FastaIndexedSequence.class.getName());
+
+        FastaIndex.FastaSequenceIndexEntry idxEntry = index.getIndexEntry(chr);
+        if (idxEntry == null || position < 0 || position >= idxEntry.getSize()) {
+            return 0;
+        }
+
+        long filePos = getFilePosition(idxEntry, position);
+        if (filePos >= contentLength) {
+            return 0;
+        }
+        try {
+            if (isMemoryMapped()) {
+                return getWindow(filePos).get((int) (filePos % MAP_WINDOW_SIZE));
+            } else {
+                return readBytes(filePos, filePos + 1)[0];
+            }
+        } catch (IOException e) {
+            log.error("Error reading sequence from " + path, e);
+            return 0;
+        }
     }
 
+    /**
+     * Return the file position of the given base, which is "position" bases from the start of the sequence.
+     */
+    private static long getFilePosition(FastaIndex.FastaSequenceIndexEntry idxEntry, int position) {
+        final int basesPerLine = idxEntry.getBasesPerLine();
+        return idxEntry.getPosition() + ((long) (position / basesPerLine)) * idxEntry.getBytesPerLine() +
+                position % basesPerLine;
+    }
+
+    /**
+     * Copy bytes from the mapped file, possibly spanning mapping windows
+     */
+    private void copyMapped(long filePos, byte[] dest, int destPos, int len) throws IOException {
+        while (len > 0) {
+            ByteBuffer window = getWindow(filePos).duplicate();
+            int windowOffset = (int) (filePos % MAP_WINDOW_SIZE);
+            int n = Math.min(len, window.limit() - windowOffset);
+            window.position(windowOffset);
+            window.get(dest, destPos, n);
+            filePos += n;
+            destPos += n;
+            len -= n;
+        }
+    }
+
+    private MappedByteBuffer getWindow(long filePos) throws IOException {
+        int w = (int) (filePos / MAP_WINDOW_SIZE);
+        synchronized (mappedWindows) {
+            if (mappedWindows[w] == null) {
+                long windowStart = w * MAP_WINDOW_SIZE;
+                long size = Math.min(MAP_WINDOW_SIZE, contentLength - windowStart);
+                RandomAccessFile raf = new RandomAccessFile(path, "r");
+                try {
+                    // The mapping remains valid after the file is closed
+                    mappedWindows[w] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+                } finally {
+                    raf.close();
+                }
+            }
+            return mappedWindows[w];
+        }
+    }
 
     /**
      * Read the bytes between file position posStart and posEnd
@@ -158,21 +261,65 @@ public class FastaIndexedSequence implements Sequence {
      */
     private byte[] readBytes(long posStart, long posEnd) throws IOException {
 
-        SeekableStream ss = null;
+        SeekableStream ss = borrowStream();
+        boolean ok = false;
         try {
-            ss = IGVSeekableStreamFactory.getStreamFor(path);
             int nBytes = (int) (posEnd - posStart);
             byte[] bytes = new byte[nBytes];
             ss.seek(posStart);
             ss.readFully(bytes);
+            ok = true;
             return bytes;
         } finally {
-            if (ss != null) {
+            if (ok) {
+                returnStream(ss);
+            } else {
                 ss.close();
             }
         }
     }
 
+    private SeekableStream borrowStream() throws IOException {
+        synchronized (idleStreams) {
+            if (!idleStreams.isEmpty()) {
+                return idleStreams.removeFirst();
+            }
+        }
+        return IGVSeekableStreamFactory.getStreamFor(path);
+    }
+
+    private void returnStream(SeekableStream ss) throws IOException {
+        synchronized (idleStreams) {
+            if (idleStreams.size() < MAX_POOLED_STREAMS) {
+                idleStreams.addFirst(ss);
+                return;
+            }
+        }
+        ss.close();
+    }
+
+    /**
+     * Close the pooled streams and release the mapped windows.  Streams and windows are opened again if the
+     * sequence is read after closing.
+     */
+    public void close() {
+        synchronized (idleStreams) {
+            for (SeekableStream ss : idleStreams) {
+                try {
+                    ss.close();
+                } catch (IOException e) {
+                    log.error("Error closing stream for " + path, e);
+                }
+            }
+            idleStreams.clear();
+        }
+        if (mappedWindows != null) {
+            synchronized (mappedWindows) {
+                Arrays.fill(mappedWindows, null);
+            }
+        }
+    }
+
     @Override
     public List<String> getChromosomeNames() {
         return chromoNamesList;
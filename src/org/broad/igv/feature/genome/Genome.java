@@ -30,6 +30,7 @@ import org.broad.igv.ui.util.MessageUtils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple model of a genome.  Keeps an ordered list of Chromosomes, an alias table, and genome position offsets
@@ -62,7 +63,7 @@ public class Genome {
     public Genome(String id, String displayName, Sequence sequence, boolean chromosOrdered) {
         this.id = id;
         this.displayName = displayName;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = sequence;
         chromosomeNames = sequence.getChromosomeNames();
 
@@ -100,7 +101,7 @@ public class Genome {
     public Genome(String id, List<Chromosome> chromosomes) {
         this.id = id;
         this.displayName = id;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = null;
 
         chromosomeNames = new ArrayList<String>(chromosomes.size());
@@ -119,11 +120,13 @@ public class Genome {
             return str;
         } else {
             //We intern strings used as chromosomes
-            //to prevent storing multiple times
-            if (!chrAliasTable.containsKey(str)) {
+            //to prevent storing multiple times.  Parsers may call this from several threads.
+            String alias = chrAliasTable.get(str);
+            if (alias == null) {
+                alias = str;
                 chrAliasTable.put(str, str);
             }
-            return chrAliasTable.get(str);
+            return alias;
         }
     }
 
@@ -140,7 +143,7 @@ public class Genome {
      */
     public void addChrAliases(Collection<Collection<String>> synonymsList) {
 
-        if(chrAliasTable == null) chrAliasTable = new HashMap<String, String>();
+        if(chrAliasTable == null) chrAliasTable = new ConcurrentHashMap<String, String>();
 
         // Convert names to a set for fast "contains" testing.
         Set<String> chrNameSet = new HashSet<String>(chromosomeNames);
@@ -408,6 +411,19 @@ public class Genome {
         return sequence.getSequence(chr, start, end);
     }
 
+    /**
+     * Release resources held by the reference sequence, such as open streams
+     */
+    public void close() {
+        if (sequence instanceof Closeable) {
+            try {
+                ((Closeable) sequence).close();
+            } catch (IOException e) {
+                log.error("Error closing sequence of " + id, e);
+            }
+        }
+    }
+
     public String getDisplayName() {
         return displayName;
     }
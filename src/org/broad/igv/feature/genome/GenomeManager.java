@@ -24,6 +24,7 @@ import org.broad.igv.DirectoryManager;
 import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.*;
+import org.broad.igv.feature.store.FeatureStoreWriter;
 import org.broad.igv.track.*;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.IGVMenuBar;
@@ -32,6 +33,8 @@ import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.ProgressMonitor;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.LongRunningTask;
+import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.Utilities;
 import org.broad.igv.util.collections.CI;
@@ -44,6 +47,8 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -97,6 +102,9 @@ public class GenomeManager {
         if (currentGenome != null) {
             PreferenceManager.getInstance().setDefaultGenome(currentGenome.getId());
         }
+        if (this.currentGenome != null && this.currentGenome != currentGenome) {
+            this.currentGenome.close();
+        }
         this.currentGenome = currentGenome;
     }
 
@@ -130,7 +138,7 @@ public class GenomeManager {
             }
 
             if (genomePath.endsWith(".genome")) {
-                newGenome = loadDotGenomeFile(genomePath);
+                newGenome = loadDotGenomeFile(genomePath, monitor);
             } else if (genomePath.endsWith(".gbk")) {
                 newGenome = loadGenbankFile(genomePath);
             } else if (genomePath.endsWith(".chrom.sizes")) {
@@ -243,7 +251,7 @@ public class GenomeManager {
             //Have to make sure we have a local copy of the fasta file
             //to index it
             if (!FileUtils.isRemote(fastaPath)) {
-                File archiveFile = getArchiveFile(fastaPath);
+                File archiveFile = getArchiveFile(fastaPath, null);
                 fastaPath = archiveFile.getAbsolutePath();
                 fastaIndexPath = fastaPath + ".fai";
 
@@ -257,13 +265,31 @@ public class GenomeManager {
             throw new IOException(fastaPath + " does not exist, could not load genome");
         }
 
-        FastaIndexedSequence fastaSequence = new FastaIndexedSequence(fastaPath);
-        Sequence sequence = new SequenceWrapper(fastaSequence);
+        Sequence sequence = getFastaSequence(fastaPath);
         newGenome = new Genome(item.getId(), item.getDisplayableName(), sequence, true);
         setCurrentGenome(newGenome);
         return newGenome;
     }
 
+    /**
+     * Return the sequence for an indexed fasta file.  If the packed sequence cache is enabled, local files are
+     * read from the packed copy when it has been built.
+     *
+     * @param fastaPath
+     * @return
+     * @throws IOException
+     */
+    private static Sequence getFastaSequence(String fastaPath) throws IOException {
+        if (!FileUtils.isRemote(fastaPath) &&
+                PreferenceManager.getInstance().getAsBoolean(PreferenceManager.PACKED_SEQUENCE_CACHE)) {
+            PackedSequence packedSequence = PackedSequence.getCachedSequence(fastaPath);
+            if (packedSequence != null) {
+                return packedSequence;
+            }
+        }
+        return new SequenceWrapper(new FastaIndexedSequence(fastaPath));
+    }
+
     private Collection<Collection<String>> loadChrAliases(String path) {
 
        // String id = genome.getId();
@@ -322,12 +348,13 @@ public class GenomeManager {
      * specify cytobands and annotations.
      *
      * @param genomePath
+     * @param monitor    monitor for the download of a remote archive, can be null
      * @return
      * @throws IOException
      */
-    private Genome loadDotGenomeFile(String genomePath) throws IOException {
+    private Genome loadDotGenomeFile(String genomePath, ProgressMonitor monitor) throws IOException {
         Genome newGenome;
-        File archiveFile = getArchiveFile(genomePath);
+        File archiveFile = getArchiveFile(genomePath, monitor);
 
         GenomeDescriptor genomeDescriptor = parseGenomeArchiveFile(archiveFile);
 
@@ -337,8 +364,13 @@ public class GenomeManager {
         boolean isFasta = genomeDescriptor.isFasta();
         String[] fastaFiles = genomeDescriptor.getFastaFileNames();
 
+        // A snapshot of the parsed annotations, if this version of the archive has been loaded before
+        GenomeSnapshot snapshot = GenomeSnapshot.open(archiveFile, id);
+
         LinkedHashMap<String, List<Cytoband>> cytobandMap = null;
-        if (genomeDescriptor.hasCytobands()) {
+        if (snapshot != null) {
+            cytobandMap = snapshot.getCytobands();
+        } else if (genomeDescriptor.hasCytobands()) {
             cytobandMap = loadCytobandFile(genomeDescriptor);
         }
 
@@ -360,8 +392,7 @@ public class GenomeManager {
             FastaDirectorySequence fastaDirectorySequence = new FastaDirectorySequence(sequencePath, fastaFiles);
             sequence = new SequenceWrapper(fastaDirectorySequence);
         } else {
-            FastaIndexedSequence fastaSequence = new FastaIndexedSequence(sequencePath);
-            sequence = new SequenceWrapper(fastaSequence);
+            sequence = getFastaSequence(sequencePath);
             chromosOrdered = true;
         }
 
@@ -370,40 +401,132 @@ public class GenomeManager {
             newGenome.setCytobands(cytobandMap);
         }
 
-        Collection<Collection<String>> aliases = loadChrAliases(genomeDescriptor);
+        Collection<Collection<String>> aliases = snapshot != null ?
+                snapshot.getAliases() : loadChrAliases(genomeDescriptor);
         if (aliases != null) {
             newGenome.addChrAliases(aliases);
         }
 
-        InputStream geneStream = null;
-        if (genomeDescriptor.getGeneFileName() != null) {
+        List<org.broad.tribble.Feature> genes = null;
+        FeatureSource snapshotGenes = null;
+        if (snapshot != null && snapshot.hasGenes()) {
+            try {
+                snapshotGenes = snapshot.createGeneSource(newGenome);
+            } catch (Exception e) {
+                log.error("Error reading genome snapshot, parsing annotations", e);
+                snapshot.delete();
+                snapshot = null;
+            }
+        }
+        if (snapshotGenes != null) {
+            // Genes are read on demand by the track.  Their names are indexed before returning, so they can be searched.
+            TrackProperties props = null;
+            if (snapshot.getGeneTrackLine() != null) {
+                props = new TrackProperties();
+                ParsingUtils.parseTrackLine(snapshot.getGeneTrackLine(), props);
+            }
+            FeatureDB.clearFeatures();
+            newGenome.setGeneTrack(newGeneTrack(newGenome, snapshotGenes, snapshot.getGeneTrackName(), props,
+                    genomeDescriptor.getUrl()));
+            indexFeatures(snapshot.loadGenes(), newGenome);
+        } else if (snapshot == null && genomeDescriptor.getGeneFileName() != null) {
+            InputStream geneStream = null;
             try {
                 geneStream = genomeDescriptor.getGeneStream();
                 BufferedReader reader = new BufferedReader(new InputStreamReader(geneStream));
-                FeatureTrack geneFeatureTrack = createGeneTrack(newGenome, reader,
-                        genomeDescriptor.getGeneFileName(), genomeDescriptor.getGeneTrackName(),
-                        genomeDescriptor.getUrl());
-
-                newGenome.setGeneTrack(geneFeatureTrack);
+                FeatureDB.clearFeatures();
+                FeatureParser parser = getGeneParser(newGenome, genomeDescriptor.getGeneFileName());
+                if (parser != null) {
+                    genes = parser.loadFeatures(reader, newGenome);
+                    newGenome.setGeneTrack(newGeneTrack(newGenome, new FeatureCollectionSource(genes, newGenome),
+                            genomeDescriptor.getGeneTrackName(),
+                            parser.getTrackProperties(), genomeDescriptor.getUrl()));
+                }
             } finally {
                 if (geneStream != null) geneStream.close();
             }
         }
 
+        if (snapshot == null) {
+            writeSnapshot(archiveFile, genomeDescriptor, newGenome, cytobandMap, aliases, genes);
+        }
+
         genomeDescriptor.close();
         return newGenome;
     }
 
+    /**
+     * Add features to {@link FeatureDB} once they are decoded.  Chromosomes are decoded in parallel.
+     */
+    private static void indexFeatures(Future<List<org.broad.tribble.Feature>> features, Genome genome) {
+        try {
+            FeatureDB.addFeatures(features.get(), genome);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted indexing genome snapshot features", e);
+        } catch (ExecutionException e) {
+            log.error("Error indexing genome snapshot features", e.getCause());
+        }
+    }
+
+    /**
+     * Snapshot the parsed annotations of a genome archive, see {@link GenomeSnapshot}.  Genes which carry more than
+     * a feature store keeps (attributes, links) are not snapshot, nor is the rest of the genome in that case.
+     */
+    private void writeSnapshot(File archiveFile, GenomeDescriptor genomeDescriptor, Genome genome,
+                               final LinkedHashMap<String, List<Cytoband>> cytobandMap,
+                               final Collection<Collection<String>> aliases,
+                               final List<org.broad.tribble.Feature> genes) {
+        try {
+            String trackLine = null;
+            if (genomeDescriptor.getGeneFileName() != null && genes == null) {
+                return;
+            }
+            if (genes != null) {
+                if (!GenomeSnapshot.canStore(genes)) {
+                    log.info("Annotations of " + genome.getId() + " cannot be snapshot");
+                    return;
+                }
+                InputStream geneStream = genomeDescriptor.getGeneStream();
+                try {
+                    trackLine = FeatureStoreWriter.readTrackLine(new BufferedReader(new InputStreamReader(geneStream)));
+                } finally {
+                    geneStream.close();
+                }
+            }
+
+            File directory = DirectoryManager.getGenomeSnapshotDirectory();
+            if (directory == null) {
+                return;
+            }
+            final File file = GenomeSnapshot.getSnapshotFile(directory, archiveFile, genome.getId());
+            final String geneTrackName = genomeDescriptor.getGeneTrackName();
+            final String geneTrackLine = trackLine;
+            LongRunningTask.getThreadExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        GenomeSnapshot.write(file, cytobandMap, aliases, genes, geneTrackName, geneTrackLine);
+                    } catch (Exception e) {
+                        log.error("Error writing genome snapshot", e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error writing genome snapshot", e);
+        }
+    }
+
     /**
      * Returns a File of the provided genomePath. If the genomePath is a URL, it will be downloaded
      * and saved in the genome cache directory.
      *
      * @param genomePath
+     * @param monitor    monitor for the download, can be null
      * @return
      * @throws MalformedURLException
      * @throws UnsupportedEncodingException
      */
-    private File getArchiveFile(String genomePath) throws MalformedURLException, UnsupportedEncodingException {
+    private File getArchiveFile(String genomePath, ProgressMonitor monitor) throws MalformedURLException, UnsupportedEncodingException {
         File archiveFile;
         if (HttpUtils.isRemoteURL(genomePath.toLowerCase())) {
             // We need a local copy, as there is no http zip file reader
@@ -414,7 +537,7 @@ public class GenomeManager {
                 DirectoryManager.getGenomeCacheDirectory().mkdir();
             }
             archiveFile = new File(DirectoryManager.getGenomeCacheDirectory(), cachedFilename);
-            refreshCache(archiveFile, genomeArchiveURL);
+            refreshCache(archiveFile, genomeArchiveURL, monitor);
         } else {
             archiveFile = new File(genomePath);
         }
@@ -499,13 +622,15 @@ public class GenomeManager {
     }
 
     /**
-     * Refresh a locally cached genome
+     * Refresh a locally cached genome.  Downloads are verified against the checksum published next to the archive
+     * (see {@link #getExpectedMD5(URL)}), or the server's Content-MD5 header.
      *
      * @param cachedFile
      * @param genomeArchiveURL
+     * @param monitor          monitor for the download, can be null
      * @throws IOException
      */
-    private void refreshCache(File cachedFile, URL genomeArchiveURL) {
+    private void refreshCache(File cachedFile, URL genomeArchiveURL, ProgressMonitor monitor) {
         // Look in cache first
 
 
@@ -519,7 +644,8 @@ public class GenomeManager {
                 if (forceUpdate) {
                     log.info("Refreshing genome: " + genomeArchiveURL.toString());
                     File tmpFile = new File(cachedFile.getAbsolutePath() + ".tmp");
-                    if (HttpUtils.getInstance().downloadFile(genomeArchiveURL.toExternalForm(), tmpFile)) {
+                    if (HttpUtils.getInstance().downloadFile(genomeArchiveURL.toExternalForm(), tmpFile, monitor,
+                            getExpectedMD5(genomeArchiveURL))) {
                         FileUtils.copyFile(tmpFile, cachedFile);
                         tmpFile.deleteOnExit();
                     }
@@ -527,7 +653,8 @@ public class GenomeManager {
 
             } else {
                 // Copy file directly from the server to local cache.
-                HttpUtils.getInstance().downloadFile(genomeArchiveURL.toExternalForm(), cachedFile);
+                HttpUtils.getInstance().downloadFile(genomeArchiveURL.toExternalForm(), cachedFile, monitor,
+                        getExpectedMD5(genomeArchiveURL));
             }
         } catch (Exception e) {
             MessageUtils.showErrorMessage("An error was encountered refreshing the genome cache: " + e.getMessage(), e);
@@ -535,6 +662,27 @@ public class GenomeManager {
 
     }
 
+    /**
+     * Return the checksum published for a genome archive in a "<archive>.md5" file, in md5sum format.
+     *
+     * @param genomeArchiveURL
+     * @return the hex MD5 checksum, or null if there is none
+     */
+    private String getExpectedMD5(URL genomeArchiveURL) {
+        try {
+            URL md5URL = new URL(genomeArchiveURL.toExternalForm() + ".md5");
+            if (!HttpUtils.getInstance().resourceAvailable(md5URL)) {
+                return null;
+            }
+            String contents = HttpUtils.getInstance().getContentsAsString(md5URL).trim();
+            String md5 = Globals.whitespacePattern.split(contents)[0];
+            return md5.matches("[0-9a-fA-F]{32}") ? md5 : null;
+        } catch (IOException e) {
+            log.error("Error reading checksum of " + genomeArchiveURL, e);
+            return null;
+        }
+    }
+
 
     /**
      * Creates a genome descriptor.
@@ -1272,38 +1420,50 @@ public class GenomeManager {
         FeatureTrack geneFeatureTrack = null;
 
         if (reader != null) {
-            FeatureParser parser;
-            if (geneFileName.endsWith(".embl")) {
-                parser = new EmblFeatureTableParser();
-            } else if (GFFFeatureSource.isGFF(geneFileName)) {
-                parser = new GFFParser();
-            } else {
-                parser = AbstractFeatureParser.getInstanceFor(new ResourceLocator(geneFileName), genome);
-            }
-            if (parser == null) {
-                MessageUtils.showMessage("ERROR: Unrecognized annotation file format: " + geneFileName +
-                        "<br>Annotations for genome: " + genome.getId() + " will not be loaded.");
-            } else {
+            FeatureParser parser = getGeneParser(genome, geneFileName);
+            if (parser != null) {
                 List<org.broad.tribble.Feature> genes = parser.loadFeatures(reader, genome);
-                String name = geneTrackName;
-                if (name == null) name = "Genes";
-
-                String id = genome.getId() + "_genes";
-                geneFeatureTrack = new FeatureTrack(id, name, new FeatureCollectionSource(genes, genome));
-                geneFeatureTrack.setMinimumHeight(5);
-                geneFeatureTrack.setHeight(35);
-                geneFeatureTrack.setTrackType(TrackType.GENE);
-                geneFeatureTrack.setColor(Color.BLUE.darker());
-                TrackProperties props = parser.getTrackProperties();
-                if (props != null) {
-                    geneFeatureTrack.setProperties(parser.getTrackProperties());
-                }
-                geneFeatureTrack.setUrl(annotationURL);
+                geneFeatureTrack = newGeneTrack(genome, new FeatureCollectionSource(genes, genome), geneTrackName,
+                        parser.getTrackProperties(), annotationURL);
             }
         }
         return geneFeatureTrack;
     }
 
+    private FeatureParser getGeneParser(Genome genome, String geneFileName) {
+        FeatureParser parser;
+        if (geneFileName.endsWith(".embl")) {
+            parser = new EmblFeatureTableParser();
+        } else if (GFFFeatureSource.isGFF(geneFileName)) {
+            parser = new GFFParser();
+        } else {
+            parser = AbstractFeatureParser.getInstanceFor(new ResourceLocator(geneFileName), genome);
+        }
+        if (parser == null) {
+            MessageUtils.showMessage("ERROR: Unrecognized annotation file format: " + geneFileName +
+                    "<br>Annotations for genome: " + genome.getId() + " will not be loaded.");
+        }
+        return parser;
+    }
+
+    private FeatureTrack newGeneTrack(Genome genome, FeatureSource source, String geneTrackName,
+                                      TrackProperties props, String annotationURL) {
+        String name = geneTrackName;
+        if (name == null) name = "Genes";
+
+        String id = genome.getId() + "_genes";
+        FeatureTrack geneFeatureTrack = new FeatureTrack(id, name, source);
+        geneFeatureTrack.setMinimumHeight(5);
+        geneFeatureTrack.setHeight(35);
+        geneFeatureTrack.setTrackType(TrackType.GENE);
+        geneFeatureTrack.setColor(Color.BLUE.darker());
+        if (props != null) {
+            geneFeatureTrack.setProperties(props);
+        }
+        geneFeatureTrack.setUrl(annotationURL);
+        return geneFeatureTrack;
+    }
+
     /**
      * Create an annotation track for the genome from a supplied list of features
      *
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Cytoband;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.store.FeatureStoreReader;
+import org.broad.igv.feature.store.FeatureStoreSource;
+import org.broad.igv.feature.store.FeatureStoreWriter;
+import org.broad.igv.track.FeatureSource;
+import org.broad.igv.track.TrackType;
+import org.broad.tribble.Feature;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Pre-parsed copy of the annotations of a .genome archive: cytobands, chromosome aliases, and gene features.
+ * Snapshots are kept in {@link DirectoryManager#getGenomeSnapshotDirectory()}, named by genome id and the checksum
+ * of the archive, so a modified archive is parsed again.
+ * <p/>
+ * Cytobands and aliases are small and read when the snapshot is opened.  Gene features are stored as a feature
+ * store (see {@link FeatureStoreWriter}), which can be read on demand through {@link #createGeneSource(Genome)}, or
+ * decoded in parallel, one task per chromosome, by {@link #loadGenes()}.
+ * <p/>
+ * The {@link org.broad.igv.feature.FeatureDB} name index and the chromosome table are not stored.  Names are
+ * indexed from the decoded genes on each load, and chromosomes come from the sequence index.
+ */
+public class GenomeSnapshot {
+
+    private static Logger log = Logger.getLogger(GenomeSnapshot.class);
+
+    static final String EXTENSION = ".snapshot";
+    static final String GENE_EXTENSION = ".snapshot.ifs";
+    static final int VERSION = 1;
+
+    /**
+     * Temporary files older than this are left over from an interrupted write
+     */
+    static final long STALE_TMP_AGE = 60 * 60 * 1000;
+
+    private static boolean staleFilesDeleted = false;
+
+    /**
+     * Runs {@link #loadGenes()} tasks, which wait on the chromosome tasks of {@link #decoder}.  The pools are
+     * separate so that waiting tasks cannot hold every thread the chromosome tasks need.
+     */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "GenomeSnapshot");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "GenomeSnapshot-decoder");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final File file;
+    private final File geneFile;
+    private LinkedHashMap<String, List<Cytoband>> cytobands;
+    private Collection<Collection<String>> aliases;
+    private boolean hasGenes;
+    private String geneTrackName;
+    private String geneTrackLine;
+
+    private GenomeSnapshot(File file) {
+        this.file = file;
+        this.geneFile = getGeneFile(file);
+    }
+
+    /**
+     * @return the snapshot file for the current contents of {@code archiveFile}
+     */
+    static File getSnapshotFile(File directory, File archiveFile, String genomeId) throws IOException {
+        return new File(directory, genomeId + "_" + checksum(archiveFile) + EXTENSION);
+    }
+
+    static String checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream is = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64000];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * @return the snapshot of {@code archiveFile}, or null if there is none, it cannot be read, or there is no
+     *         snapshot directory
+     */
+    public static GenomeSnapshot open(File archiveFile, String genomeId) {
+        File directory = DirectoryManager.getGenomeSnapshotDirectory();
+        if (directory == null) {
+            return null;
+        }
+        synchronized (GenomeSnapshot.class) {
+            if (!staleFilesDeleted) {
+                deleteStaleFiles(directory, System.currentTimeMillis() - STALE_TMP_AGE);
+                staleFilesDeleted = true;
+            }
+        }
+        try {
+            return read(getSnapshotFile(directory, archiveFile, genomeId));
+        } catch (Exception e) {
+            log.error("Error reading genome snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Delete temporary files, modified before {@code cutoff}, left by writes interrupted when IGV exited.  Newer
+     * files may belong to a write in progress in another IGV instance.
+     *
+     * @return the number of files deleted
+     */
+    static int deleteStaleFiles(File directory, long cutoff) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(".tmp") && f.lastModified() < cutoff && f.delete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static GenomeSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (dis.readInt() != VERSION) {
+                return null;
+            }
+            GenomeSnapshot snapshot = new GenomeSnapshot(file);
+
+            if (dis.readBoolean()) {
+                int nChromosomes = dis.readInt();
+                snapshot.cytobands = new LinkedHashMap<String, List<Cytoband>>(nChromosomes);
+                for (int i = 0; i < nChromosomes; i++) {
+                    String chr = dis.readUTF();
+                    int nBands = dis.readInt();
+                    List<Cytoband> bands = new ArrayList<Cytoband>(nBands);
+                    for (int b = 0; b < nBands; b++) {
+                        Cytoband band = new Cytoband(chr);
+                        band.setName(dis.readUTF());
+                        band.setStart(dis.readInt());
+                        band.setEnd(dis.readInt());
+                        band.setType(dis.readChar());
+                        band.setStain(dis.readShort());
+                        bands.add(band);
+                    }
+                    snapshot.cytobands.put(chr, bands);
+                }
+            }
+
+            if (dis.readBoolean()) {
+                int nAliases = dis.readInt();
+                snapshot.aliases = new ArrayList<Collection<String>>(nAliases);
+                for (int i = 0; i < nAliases; i++) {
+                    int nSynonyms = dis.readInt();
+                    List<String> synonyms = new ArrayList<String>(nSynonyms);
+                    for (int s = 0; s < nSynonyms; s++) {
+                        synonyms.add(dis.readUTF());
+                    }
+                    snapshot.aliases.add(synonyms);
+                }
+            }
+
+            snapshot.hasGenes = dis.readBoolean();
+            if (snapshot.hasGenes) {
+                snapshot.geneTrackName = readString(dis);
+                snapshot.geneTrackLine = readString(dis);
+                if (!snapshot.geneFile.exists()) {
+                    return null;
+                }
+            }
+            return snapshot;
+        } finally {
+            dis.close();
+        }
+    }
+
+    /**
+     * Write a snapshot.  Any previous snapshots of the genome, for other versions of the archive, are deleted.
+     * Files are written under temporary names and renamed, so concurrent writers of the same snapshot, which
+     * write identical files, do not interfere.
+     *
+     * @param file      snapshot file, see {@link #getSnapshotFile(File, File, String)}
+     * @param cytobands cytobands, or null
+     * @param aliases   chromosome aliases from the archive, or null
+     * @param genes     gene features, or null.  Must be {@link #canStore(List) storable}.
+     * @param geneTrackName
+     * @param geneTrackLine track line of the gene file, or null
+     * @throws IOException
+     */
+    static void write(File file, LinkedHashMap<String, List<Cytoband>> cytobands,
+                      Collection<Collection<String>> aliases, List<Feature> genes,
+                      String geneTrackName, String geneTrackLine) throws IOException {
+
+        if (file.exists()) {
+            return;
+        }
+        String genomeId = file.getName().substring(0, file.getName().lastIndexOf('_'));
+        File geneFile = getGeneFile(file);
+        for (File f : file.getParentFile().listFiles()) {
+            String name = f.getName();
+            if (name.matches(java.util.regex.Pattern.quote(genomeId) + "_[0-9a-f]{8}\\.snapshot(\\.ifs)?") &&
+                    !f.equals(file) && !f.equals(geneFile)) {
+                f.delete();
+            }
+        }
+
+        // The gene file first, the snapshot file marks a complete snapshot
+        if (genes != null) {
+            List<Feature> sorted = new ArrayList<Feature>(genes);
+            Collections.sort(sorted, new Comparator<Feature>() {
+                public int compare(Feature f1, Feature f2) {
+                    int c = f1.getChr().compareTo(f2.getChr());
+                    return c != 0 ? c : f1.getStart() - f2.getStart();
+                }
+            });
+            File tmpGeneFile = File.createTempFile(geneFile.getName(), ".tmp", file.getParentFile());
+            FeatureStoreWriter writer = new FeatureStoreWriter(tmpGeneFile, geneTrackLine, TrackType.GENE);
+            try {
+                for (Feature f : sorted) {
+                    writer.add(f);
+                }
+            } finally {
+                writer.close();
+            }
+            rename(tmpGeneFile, geneFile);
+        }
+
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            dos.writeInt(VERSION);
+
+            dos.writeBoolean(cytobands != null);
+            if (cytobands != null) {
+                dos.writeInt(cytobands.size());
+                for (Map.Entry<String, List<Cytoband>> entry : cytobands.entrySet()) {
+                    dos.writeUTF(entry.getKey());
+                    dos.writeInt(entry.getValue().size());
+                    for (Cytoband band : entry.getValue()) {
+                        dos.writeUTF(band.getName());
+                        dos.writeInt(band.getStart());
+                        dos.writeInt(band.getEnd());
+                        dos.writeChar(band.getType());
+                        dos.writeShort(band.getStain());
+                    }
+                }
+            }
+
+            dos.writeBoolean(aliases != null);
+            if (aliases != null) {
+                dos.writeInt(aliases.size());
+                for (Collection<String> synonyms : aliases) {
+                    dos.writeInt(synonyms.size());
+                    for (String synonym : synonyms) {
+                        dos.writeUTF(synonym);
+                    }
+                }
+            }
+
+            dos.writeBoolean(genes != null);
+            if (genes != null) {
+                writeString(dos, geneTrackName);
+                writeString(dos, geneTrackLine);
+            }
+        } finally {
+            dos.close();
+        }
+        rename(tmpFile, file);
+    }
+
+    private static void rename(File tmpFile, File file) throws IOException {
+        if (!tmpFile.renameTo(file)) {
+            // The target may exist on platforms where rename does not replace
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not rename " + tmpFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Gene features can be stored if they carry nothing beyond what a feature store keeps, i.e. they are plain
+     * {@link BasicFeature}s without attributes or links.
+     */
+    static boolean canStore(List<Feature> genes) {
+        for (Feature f : genes) {
+            if (f.getClass() != BasicFeature.class) {
+                return false;
+            }
+            BasicFeature bf = (BasicFeature) f;
+            if ((bf.getAttributes() != null && bf.getAttributes().size() > 0) || bf.getURL() != null) {
+                return false;
+            }
+            if (bf.getExons() != null) {
+                for (Exon exon : bf.getExons()) {
+                    if (exon.getAttributes() != null && exon.getAttributes().size() > 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static File getGeneFile(File file) {
+        String path = file.getAbsolutePath();
+        return new File(path.substring(0, path.length() - EXTENSION.length()) + GENE_EXTENSION);
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        dos.writeBoolean(s != null);
+        if (s != null) {
+            dos.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    /**
+     * Delete a snapshot which cannot be read
+     */
+    public void delete() {
+        file.delete();
+        geneFile.delete();
+    }
+
+    public LinkedHashMap<String, List<Cytoband>> getCytobands() {
+        return cytobands;
+    }
+
+    public Collection<Collection<String>> getAliases() {
+        return aliases;
+    }
+
+    public boolean hasGenes() {
+        return hasGenes;
+    }
+
+    public String getGeneTrackName() {
+        return geneTrackName;
+    }
+
+    public String getGeneTrackLine() {
+        return geneTrackLine;
+    }
+
+    /**
+     * @return a source reading the gene features on demand
+     * @throws IOException
+     */
+    public FeatureSource createGeneSource(Genome genome) throws IOException {
+        return new FeatureStoreSource(geneFile.getAbsolutePath(), genome);
+    }
+
+    /**
+     * Start decoding the gene features, each chromosome in parallel.
+     *
+     * @return the gene features, grouped by chromosome and sorted by start
+     */
+    public Future<List<Feature>> loadGenes() {
+        return executor.submit(new Callable<List<Feature>>() {
+            public List<Feature> call() throws Exception {
+                final FeatureStoreReader reader = new FeatureStoreReader(geneFile.getAbsolutePath());
+                try {
+                    List<Future<List<BasicFeature>>> chromosomes = new ArrayList<Future<List<BasicFeature>>>();
+                    for (final String chr : reader.getChromosomeNames()) {
+                        chromosomes.add(decoder.submit(new Callable<List<BasicFeature>>() {
+                            public List<BasicFeature> call() throws Exception {
+                                return reader.readFeatures(chr);
+                            }
+                        }));
+                    }
+                    List<Feature> genes = new ArrayList<Feature>((int) reader.getFeatureCount());
+                    for (Future<List<BasicFeature>> future : chromosomes) {
+                        genes.addAll(future.get());
+                    }
+                    return genes;
+                } finally {
+                    reader.close();
+                }
+            }
+        });
+    }
+}
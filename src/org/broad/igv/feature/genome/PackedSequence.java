@@ -0,0 +1,662 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.util.MD5Checksum;
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Implementation of Sequence backed by a memory mapped, 2-bit per base, packed copy of a fasta file.
+ * <p/>
+ * The file format is the UCSC ".2bit" format:  bases are packed 4 per byte (T=0, C=1, A=2, G=3, first base in
+ * the high order bits), with side tables of N runs and of lower case (soft masked) runs per sequence.  A human
+ * reference takes about 800 MB, held off-heap in the mapping.
+ * <p/>
+ * Packed copies of local fasta files are built in the background, in parallel per chromosome, and stored in the
+ * sequence cache directory (see {@link #getCachedSequence(String)}).  Fasta files with bases other than
+ * A, C, G, T and N (e.g. IUPAC ambiguity codes or padding) can't be represented and are not packed; a marker file
+ * is written instead so they aren't scanned again.
+ */
+public class PackedSequence implements Sequence {
+
+    private static Logger log = Logger.getLogger(PackedSequence.class);
+
+    static final int SIGNATURE = 0x1A412743;
+
+    // Number of bases read from the source at a time while packing
+    private static final int CHUNK_SIZE = 4000000;
+
+    // Sequence names are stored with a one byte length
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private static final byte[] BASES = {'T', 'C', 'A', 'G'};
+
+    /**
+     * The 4 bases packed in each possible byte value
+     */
+    private static final byte[][] UNPACKED = new byte[256][4];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 4; i++) {
+                UNPACKED[b][i] = BASES[(b >> (6 - 2 * i)) & 3];
+            }
+        }
+    }
+
+    /**
+     * Fasta paths for which a packed copy is being built
+     */
+    private static final Set<String> pendingBuilds = Collections.synchronizedSet(new HashSet<String>());
+
+    private final File file;
+    private final LinkedHashMap<String, SequenceRecord> records;
+    private final List<String> chromosomeNames;
+
+    public PackedSequence(File file) throws IOException {
+        this.file = file;
+        this.records = readIndex(file);
+        this.chromosomeNames = new ArrayList<String>(records.keySet());
+    }
+
+    /**
+     * Return the packed copy of a local indexed fasta file, if it has been built.  Otherwise start building it in
+     * the background, for use on the next load, and return null.
+     *
+     * @param fastaPath
+     * @return
+     */
+    public static PackedSequence getCachedSequence(final String fastaPath) {
+
+        final File cacheFile = getCacheFile(fastaPath, DirectoryManager.getSequenceCacheDirectory());
+        if (cacheFile == null || getMarkerFile(cacheFile).exists()) {
+            return null;
+        }
+        if (cacheFile.exists()) {
+            try {
+                return new PackedSequence(cacheFile);
+            } catch (IOException e) {
+                log.error("Error reading packed sequence " + cacheFile.getAbsolutePath() + ", rebuilding", e);
+                cacheFile.delete();
+            }
+        }
+
+        if (pendingBuilds.add(fastaPath)) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        buildCache(fastaPath, cacheFile);
+                    } catch (Exception e) {
+                        log.error("Error building packed sequence for " + fastaPath, e);
+                    } finally {
+                        pendingBuilds.remove(fastaPath);
+                    }
+                }
+            }, "PackedSequence");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        }
+        return null;
+    }
+
+    /**
+     * Return the cache file for a fasta file.  The name is the hash of the fasta path followed by the hash of its
+     * size and modification date, so an edited file gets a new packed copy and copies of earlier versions can be
+     * found by the prefix.
+     */
+    static File getCacheFile(String fastaPath, File dir) {
+        File fastaFile = new File(fastaPath);
+        if (!fastaFile.isFile() || dir == null) {
+            return null;
+        }
+        String version = fastaFile.length() + "|" + fastaFile.lastModified();
+        return new File(dir, getCachePrefix(fastaFile) + MD5Checksum.getMD5String(version) + ".2bit");
+    }
+
+    private static String getCachePrefix(File fastaFile) {
+        return MD5Checksum.getMD5String(fastaFile.getAbsolutePath()) + "-";
+    }
+
+    /**
+     * Return the marker file recording that a fasta file can't be packed, so it isn't read again on every load
+     */
+    static File getMarkerFile(File cacheFile) {
+        return new File(cacheFile.getPath() + ".unpackable");
+    }
+
+    /**
+     * Build the packed copy of a fasta file, or the marker file if it can't be packed, and remove the packed
+     * copies and markers of earlier versions of the file.
+     *
+     * @param fastaPath
+     * @param cacheFile
+     * @throws IOException
+     */
+    static void buildCache(String fastaPath, File cacheFile) throws IOException {
+        long t0 = System.currentTimeMillis();
+        if (build(new FastaIndexedSequence(fastaPath), cacheFile, Runtime.getRuntime().availableProcessors())) {
+            log.info("Packed sequence for " + fastaPath + " built in " + (System.currentTimeMillis() - t0) + " ms");
+        } else {
+            getMarkerFile(cacheFile).createNewFile();
+        }
+        pruneCache(new File(fastaPath), cacheFile);
+    }
+
+    /**
+     * Delete the packed copies and markers of other versions of a fasta file
+     */
+    static void pruneCache(File fastaFile, File cacheFile) {
+        final String prefix = getCachePrefix(fastaFile);
+        final String current = cacheFile.getName();
+        File[] outdated = cacheFile.getAbsoluteFile().getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && !name.startsWith(current);
+            }
+        });
+        if (outdated != null) {
+            for (File f : outdated) {
+                log.info("Deleting outdated packed sequence " + f.getName());
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Pack all sequences of the source into a 2bit file.  Chromosomes are packed concurrently, each into a
+     * temporary file, and then assembled.
+     *
+     * @param source
+     * @param outputFile
+     * @param nThreads
+     * @return true if the file was written, false if the source contains bases or names which can't be packed
+     * @throws IOException
+     */
+    public static boolean build(final Sequence source, File outputFile, int nThreads) throws IOException {
+
+        List<String> chrNames = source.getChromosomeNames();
+        for (String chr : chrNames) {
+            if (chr.getBytes("UTF-8").length > MAX_NAME_LENGTH) {
+                log.info("Sequence name " + chr + " is too long to be packed, not creating " + outputFile.getName());
+                return false;
+            }
+        }
+
+        final File dir = outputFile.getAbsoluteFile().getParentFile();
+        final AtomicBoolean abort = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        List<PackedChromosome> packed = new ArrayList<PackedChromosome>();
+        try {
+            List<Future<PackedChromosome>> futures = new ArrayList<Future<PackedChromosome>>();
+            for (final String chr : chrNames) {
+                futures.add(executor.submit(new Callable<PackedChromosome>() {
+                    public PackedChromosome call() throws Exception {
+                        return packChromosome(source, chr, dir, abort);
+                    }
+                }));
+            }
+
+            // An unsupported base in any chromosome stops the others
+            PackedChromosome unsupported = null;
+            for (Future<PackedChromosome> future : futures) {
+                PackedChromosome pc = future.get();
+                if (pc == null) {
+                    continue;
+                }
+                packed.add(pc);
+                if (pc.unsupportedBase != 0 && unsupported == null) {
+                    unsupported = pc;
+                }
+            }
+            if (unsupported != null) {
+                log.info("Sequence " + unsupported.name + " contains base '" + (char) unsupported.unsupportedBase +
+                        "' which can't be packed, not creating " + outputFile.getName());
+                return false;
+            }
+
+            writeFile(packed, outputFile);
+            return true;
+
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            abort.set(true);
+            executor.shutdownNow();
+            for (PackedChromosome pc : packed) {
+                pc.dnaFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Pack one chromosome into a temporary file.  Packing stops when {@code abort} is set, or sets it on
+     * finding an unsupported base.  The temporary file is deleted unless packing completes.
+     *
+     * @return the packed chromosome, null if aborted
+     */
+    private static PackedChromosome packChromosome(Sequence source, String chr, File dir, AtomicBoolean abort)
+            throws IOException {
+
+        if (abort.get()) {
+            return null;
+        }
+        PackedChromosome pc = new PackedChromosome(chr, source.getChromosomeLength(chr));
+        pc.dnaFile = File.createTempFile("pack", ".tmp", dir);
+        pc.dnaFile.deleteOnExit();
+
+        boolean complete = false;
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(pc.dnaFile));
+        try {
+            int nStart = -1;
+            int maskStart = -1;
+            int current = 0;
+            for (int chunkStart = 0; chunkStart < pc.length; chunkStart += CHUNK_SIZE) {
+                if (abort.get()) {
+                    return null;
+                }
+                int chunkEnd = Math.min(pc.length, chunkStart + CHUNK_SIZE);
+                byte[] bases = source.getSequence(chr, chunkStart, chunkEnd);
+                if (bases == null || bases.length != chunkEnd - chunkStart) {
+                    throw new IOException("Error reading " + chr + ":" + chunkStart + "-" + chunkEnd);
+                }
+                for (int i = 0; i < bases.length; i++) {
+                    int pos = chunkStart + i;
+                    byte b = bases[i];
+
+                    boolean lower = b >= 'a' && b <= 'z';
+                    if (lower && maskStart < 0) {
+                        maskStart = pos;
+                    } else if (!lower && maskStart >= 0) {
+                        pc.maskStarts.add(maskStart);
+                        pc.maskSizes.add(pos - maskStart);
+                        maskStart = -1;
+                    }
+
+                    int code;
+                    boolean isN = false;
+                    switch (lower ? b - 32 : b) {
+                        case 'T':
+                            code = 0;
+                            break;
+                        case 'C':
+                            code = 1;
+                            break;
+                        case 'A':
+                            code = 2;
+                            break;
+                        case 'G':
+                            code = 3;
+                            break;
+                        case 'N':
+                            code = 0;
+                            isN = true;
+                            break;
+                        default:
+                            pc.unsupportedBase = b;
+                            abort.set(true);
+                            return pc;
+                    }
+                    if (isN && nStart < 0) {
+                        nStart = pos;
+                    } else if (!isN && nStart >= 0) {
+                        pc.nStarts.add(nStart);
+                        pc.nSizes.add(pos - nStart);
+                        nStart = -1;
+                    }
+
+                    current = (current << 2) | code;
+                    if ((pos & 3) == 3) {
+                        os.write(current);
+                        current = 0;
+                    }
+                }
+            }
+            if ((pc.length & 3) != 0) {
+                os.write(current << (2 * (4 - (pc.length & 3))));
+            }
+            if (nStart >= 0) {
+                pc.nStarts.add(nStart);
+                pc.nSizes.add(pc.length - nStart);
+            }
+            if (maskStart >= 0) {
+                pc.maskStarts.add(maskStart);
+                pc.maskSizes.add(pc.length - maskStart);
+            }
+            complete = true;
+        } finally {
+            os.close();
+            if (!complete) {
+                pc.dnaFile.delete();
+            }
+        }
+        return pc;
+    }
+
+    private static void writeFile(List<PackedChromosome> packed, File outputFile) throws IOException {
+
+        // Compute the record offsets.  The format uses 32 bit offsets.
+        long headerSize = 16;
+        for (PackedChromosome pc : packed) {
+            headerSize += 1 + pc.name.getBytes("UTF-8").length + 4;
+        }
+        long offset = headerSize;
+        long[] offsets = new long[packed.size()];
+        for (int i = 0; i < packed.size(); i++) {
+            offsets[i] = offset;
+            offset += packed.get(i).getRecordSize();
+        }
+        if (offset > 0xFFFFFFFFL) {
+            throw new IOException("Sequence too large for 2bit format");
+        }
+
+        File tmpFile = new File(outputFile.getPath() + ".tmp");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile));
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(SIGNATURE);
+            header.putInt(0);
+            header.putInt(packed.size());
+            header.putInt(0);
+            for (int i = 0; i < packed.size(); i++) {
+                byte[] name = packed.get(i).name.getBytes("UTF-8");
+                header.put((byte) name.length);
+                header.put(name);
+                header.putInt((int) offsets[i]);
+            }
+            os.write(header.array());
+
+            for (PackedChromosome pc : packed) {
+                int nN = pc.nStarts.size();
+                int nMask = pc.maskStarts.size();
+                ByteBuffer rh = ByteBuffer.allocate(16 + 8 * (nN + nMask)).order(ByteOrder.LITTLE_ENDIAN);
+                rh.putInt(pc.length);
+                rh.putInt(nN);
+                for (int i = 0; i < nN; i++) rh.putInt(pc.nStarts.get(i));
+                for (int i = 0; i < nN; i++) rh.putInt(pc.nSizes.get(i));
+                rh.putInt(nMask);
+                for (int i = 0; i < nMask; i++) rh.putInt(pc.maskStarts.get(i));
+                for (int i = 0; i < nMask; i++) rh.putInt(pc.maskSizes.get(i));
+                rh.putInt(0);
+                os.write(rh.array());
+
+                InputStream is = new BufferedInputStream(new FileInputStream(pc.dnaFile));
+                try {
+                    byte[] buffer = new byte[64000];
+                    int n;
+                    while ((n = is.read(buffer)) > 0) {
+                        os.write(buffer, 0, n);
+                    }
+                } finally {
+                    is.close();
+                }
+            }
+        } finally {
+            os.close();
+        }
+
+        outputFile.delete();
+        if (!tmpFile.renameTo(outputFile)) {
+            tmpFile.delete();
+            throw new IOException("Error renaming " + tmpFile.getAbsolutePath());
+        }
+    }
+
+    private static LinkedHashMap<String, SequenceRecord> readIndex(File file) throws IOException {
+
+        LinkedHashMap<String, SequenceRecord> records = new LinkedHashMap<String, SequenceRecord>();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = read(channel, 0, 16);
+            int signature = header.getInt();
+            if (signature != SIGNATURE) {
+                header.order(ByteOrder.BIG_ENDIAN);
+                header.rewind();
+                if (header.getInt() != SIGNATURE) {
+                    throw new IOException("Not a 2bit file: " + file.getAbsolutePath());
+                }
+            }
+            ByteOrder order = header.order();
+            header.getInt();   // version
+            int nSequences = header.getInt();
+
+            long pos = 16;
+            String[] names = new String[nSequences];
+            long[] offsets = new long[nSequences];
+            for (int i = 0; i < nSequences; i++) {
+                int nameSize = read(channel, pos, 1).get() & 0xFF;
+                ByteBuffer bb = read(channel, pos + 1, nameSize + 4).order(order);
+                byte[] name = new byte[nameSize];
+                bb.get(name);
+                names[i] = new String(name, "UTF-8");
+                offsets[i] = bb.getInt() & 0xFFFFFFFFL;
+                pos += 1 + nameSize + 4;
+            }
+
+            for (int i = 0; i < nSequences; i++) {
+                long p = offsets[i];
+                ByteBuffer bb = read(channel, p, 8).order(order);
+                int length = bb.getInt();
+                int nN = bb.getInt();
+                p += 8;
+                bb = read(channel, p, 8 * nN + 4).order(order);
+                int[] nStarts = getInts(bb, nN);
+                int[] nSizes = getInts(bb, nN);
+                int nMask = bb.getInt();
+                p += 8 * nN + 4;
+                bb = read(channel, p, 8 * nMask + 4).order(order);
+                int[] maskStarts = getInts(bb, nMask);
+                int[] maskSizes = getInts(bb, nMask);
+                p += 8 * nMask + 4;
+
+                records.put(names[i], new SequenceRecord(length, p, nStarts, nSizes, maskStarts, maskSizes));
+            }
+        } finally {
+            raf.close();
+        }
+        return records;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        bb.flip();
+        return bb;
+    }
+
+    private static int[] getInts(ByteBuffer bb, int n) {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = bb.getInt();
+        }
+        return values;
+    }
+
+
+    public byte[] getSequence(String chr, int qstart, int qend) {
+
+        SequenceRecord record = records.get(chr);
+        if (record == null) {
+            return null;
+        }
+
+        final int start = Math.max(0, qstart);
+        final int end = Math.min(record.length, qend);
+        if (start >= end) {
+            return null;
+        }
+
+        try {
+            ByteBuffer dna = getDna(record).duplicate();
+            byte[] seq = new byte[end - start];
+            int pos = start;
+            int i = 0;
+            dna.position(pos >> 2);
+            while (i < seq.length) {
+                byte[] bases = UNPACKED[dna.get() & 0xFF];
+                for (int k = pos & 3; k < 4 && i < seq.length; k++) {
+                    seq[i++] = bases[k];
+                    pos++;
+                }
+            }
+
+            applyBlocks(record.nStarts, record.nSizes, start, seq, true);
+            applyBlocks(record.maskStarts, record.maskSizes, start, seq, false);
+            return seq;
+
+        } catch (IOException e) {
+            log.error("Error reading packed sequence " + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public byte getBase(String chr, int position) {
+
+        SequenceRecord record = records.get(chr);
+        if (record == null || position < 0 || position >= record.length) {
+            return 0;
+        }
+        try {
+            byte base = UNPACKED[getDna(record).get(position >> 2) & 0xFF][position & 3];
+            if (findBlock(record.nStarts, record.nSizes, position) >= 0) {
+                base = 'N';
+            }
+            if (findBlock(record.maskStarts, record.maskSizes, position) >= 0) {
+                base = (byte) (base + 32);
+            }
+            return base;
+        } catch (IOException e) {
+            log.error("Error reading packed sequence " + file.getAbsolutePath(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * Apply N runs (setN == true) or soft mask runs to the sequence beginning at start
+     */
+    private static void applyBlocks(int[] starts, int[] sizes, int start, byte[] seq, boolean setN) {
+        int end = start + seq.length;
+        int idx = Arrays.binarySearch(starts, start);
+        if (idx < 0) {
+            idx = Math.max(0, -idx - 2);    // Block before start may overlap
+        }
+        for (; idx < starts.length && starts[idx] < end; idx++) {
+            int from = Math.max(start, starts[idx]);
+            int to = Math.min(end, starts[idx] + sizes[idx]);
+            for (int p = from; p < to; p++) {
+                if (setN) {
+                    seq[p - start] = 'N';
+                } else {
+                    seq[p - start] = (byte) (seq[p - start] + 32);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the index of the block containing position, or -1
+     */
+    private static int findBlock(int[] starts, int[] sizes, int position) {
+        int idx = Arrays.binarySearch(starts, position);
+        if (idx >= 0) {
+            return idx;
+        }
+        idx = -idx - 2;
+        return idx >= 0 && position < starts[idx] + sizes[idx] ? idx : -1;
+    }
+
+    private MappedByteBuffer getDna(SequenceRecord record) throws IOException {
+        synchronized (record) {
+            if (record.dna == null) {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    record.dna = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, record.dnaOffset, (record.length + 3) / 4);
+                } finally {
+                    raf.close();
+                }
+            }
+            return record.dna;
+        }
+    }
+
+    @Override
+    public List<String> getChromosomeNames() {
+        return chromosomeNames;
+    }
+
+    @Override
+    public int getChromosomeLength(String chrname) {
+        SequenceRecord record = records.get(chrname);
+        return record == null ? 0 : record.length;
+    }
+
+
+    static class SequenceRecord {
+        final int length;
+        final long dnaOffset;
+        final int[] nStarts;
+        final int[] nSizes;
+        final int[] maskStarts;
+        final int[] maskSizes;
+        MappedByteBuffer dna;
+
+        SequenceRecord(int length, long dnaOffset, int[] nStarts, int[] nSizes, int[] maskStarts, int[] maskSizes) {
+            this.length = length;
+            this.dnaOffset = dnaOffset;
+            this.nStarts = nStarts;
+            this.nSizes = nSizes;
+            this.maskStarts = maskStarts;
+            this.maskSizes = maskSizes;
+        }
+    }
+
+    static class PackedChromosome {
+        final String name;
+        final int length;
+        final IntArrayList nStarts = new IntArrayList();
+        final IntArrayList nSizes = new IntArrayList();
+        final IntArrayList maskStarts = new IntArrayList();
+        final IntArrayList maskSizes = new IntArrayList();
+        File dnaFile;
+        byte unsupportedBase = 0;
+
+        PackedChromosome(String name, int length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        long getRecordSize() {
+            return 16 + 8L * (nStarts.size() + maskStarts.size()) + (length + 3) / 4;
+        }
+    }
+}
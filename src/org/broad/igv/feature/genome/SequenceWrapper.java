@@ -17,6 +17,8 @@ package org.broad.igv.feature.genome;
 import org.apache.log4j.Logger;
 import org.broad.igv.util.ObjectCache;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -25,7 +27,7 @@ import java.util.List;
  *
  * @author jrobinso
  */
-public class SequenceWrapper implements Sequence {
+public class SequenceWrapper implements Sequence, Closeable {
 
     private static Logger log = Logger.getLogger(SequenceWrapper.class);
     private static boolean cacheSequences = true;
@@ -40,14 +42,14 @@ public class SequenceWrapper implements Sequence {
     }
 
     public byte getBase(String chr, int position) {
-        if (cacheSequences) {
+        if (cacheSequences && !isMemoryMapped()) {
             int tileNo = position / tileSize;
 
             // Get first chunk
             SequenceTile tile = getSequenceTile(chr, tileNo);
             int offset = position - tile.getStart();
             byte[] bytes = tile.bytes;
-            if (offset > 0 && offset < bytes.length) {
+            if (offset >= 0 && offset < bytes.length) {
                 return bytes[offset];
             } else {
                 return 0;
@@ -59,6 +61,12 @@ public class SequenceWrapper implements Sequence {
         }
     }
 
+    public void close() throws IOException {
+        if (sequence instanceof Closeable) {
+            ((Closeable) sequence).close();
+        }
+    }
+
     @Override
     public List<String> getChromosomeNames() {
         return sequence.getChromosomeNames();
@@ -78,7 +86,7 @@ public class SequenceWrapper implements Sequence {
      * @return
      */
     public byte[] getSequence(String chr, int start, int end) {
-        if (cacheSequences) {
+        if (cacheSequences && !isMemoryMapped()) {
             byte[] seqbytes = new byte[end - start];
             int startTile = start / tileSize;
             int endTile = end / tileSize;
@@ -124,6 +132,16 @@ public class SequenceWrapper implements Sequence {
                 nBytes += nNext;
             }
 
+            return seqbytes;
+        } else if (isMemoryMapped() && end > start) {
+            // Same contract as the tile cache:  the result spans the full interval, zero padded off the ends
+            int seqStart = Math.max(0, start);
+            byte[] bytes = sequence.getSequence(chr, seqStart, end);
+            if (bytes == null || bytes.length == end - start) {
+                return bytes;
+            }
+            byte[] seqbytes = new byte[end - start];
+            System.arraycopy(bytes, 0, seqbytes, seqStart - start, Math.min(bytes.length, seqbytes.length - (seqStart - start)));
             return seqbytes;
         } else {
             return sequence.getSequence(chr, start, end);
@@ -131,6 +149,13 @@ public class SequenceWrapper implements Sequence {
     }
 
 
+    /**
+     * Memory mapped sequences are read directly, a tile cache would only duplicate the mapping
+     */
+    private boolean isMemoryMapped() {
+        return sequence instanceof FastaIndexedSequence && ((FastaIndexedSequence) sequence).isMemoryMapped();
+    }
+
     private SequenceTile getSequenceTile(String chr, int tileNo) {
         String key = getKey(chr, tileNo);
         SequenceTile tile = sequenceCache.get(key);
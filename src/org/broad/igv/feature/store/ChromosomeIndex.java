@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.index.FlatIntervalTree;
+import org.broad.igv.util.index.Interval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index entry for one chromosome of a feature store: the feature blocks, with the range of positions each one
+ * covers, and the density summaries.
+ */
+class ChromosomeIndex {
+
+    final String name;
+    long featureCount;
+    int maxEnd;
+    final List<Block> blocks = new ArrayList<Block>();
+    final List<Summary> summaries = new ArrayList<Summary>();
+
+    private FlatIntervalTree blockTree;
+
+    ChromosomeIndex(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return indexes of the blocks which may contain features overlapping [start, end), in start order
+     */
+    synchronized List<Integer> getBlocks(int start, int end) {
+        if (blockTree == null) {
+            List<Interval> intervals = new ArrayList<Interval>(blocks.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                intervals.add(new Interval(block.minStart, block.maxEnd, i));
+            }
+            blockTree = new FlatIntervalTree(intervals);
+        }
+        // The tree intervals are closed, features are half open
+        List<Integer> result = new ArrayList<Integer>();
+        for (Interval interval : blockTree.findOverlapping(start + 1, end - 1)) {
+            result.add((int) interval.getValue());
+        }
+        return result;
+    }
+
+    void write(BufferedByteWriter buffer) throws IOException {
+        buffer.putNullTerminatedString(name);
+        buffer.putLong(featureCount);
+        buffer.putInt(maxEnd);
+        buffer.putInt(blocks.size());
+        for (Block block : blocks) {
+            buffer.putLong(block.position);
+            buffer.putInt(block.size);
+            buffer.putInt(block.featureCount);
+            buffer.putInt(block.minStart);
+            buffer.putInt(block.maxEnd);
+        }
+        buffer.putInt(summaries.size());
+        for (Summary summary : summaries) {
+            buffer.putInt(summary.binSize);
+            buffer.putInt(summary.binCount);
+            buffer.putLong(summary.position);
+            buffer.putInt(summary.size);
+        }
+    }
+
+    static ChromosomeIndex read(ByteBuffer buffer) throws IOException {
+        ChromosomeIndex index = new ChromosomeIndex(StringUtils.readString(buffer));
+        index.featureCount = buffer.getLong();
+        index.maxEnd = buffer.getInt();
+        int nBlocks = buffer.getInt();
+        for (int i = 0; i < nBlocks; i++) {
+            long position = buffer.getLong();
+            int size = buffer.getInt();
+            int featureCount = buffer.getInt();
+            int minStart = buffer.getInt();
+            int maxEnd = buffer.getInt();
+            index.blocks.add(new Block(position, size, featureCount, minStart, maxEnd));
+        }
+        int nSummaries = buffer.getInt();
+        for (int i = 0; i < nSummaries; i++) {
+            int binSize = buffer.getInt();
+            int binCount = buffer.getInt();
+            long position = buffer.getLong();
+            int size = buffer.getInt();
+            index.summaries.add(new Summary(binSize, binCount, position, size));
+        }
+        return index;
+    }
+
+    static class Block {
+        final long position;
+        final int size;
+        final int featureCount;
+        final int minStart;
+        final int maxEnd;
+
+        Block(long position, int size, int featureCount, int minStart, int maxEnd) {
+            this.position = position;
+            this.size = size;
+            this.featureCount = featureCount;
+            this.minStart = minStart;
+            this.maxEnd = maxEnd;
+        }
+    }
+
+    /**
+     * Feature counts per bin of a fixed size, compressed
+     */
+    static class Summary {
+        final int binSize;
+        final int binCount;
+        final long position;
+        final int size;
+
+        Summary(int binSize, int binCount, long position, int size) {
+            this.binSize = binSize;
+            this.binCount = binCount;
+            this.position = position;
+            this.size = size;
+        }
+    }
+}
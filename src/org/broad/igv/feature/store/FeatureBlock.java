@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.IGVFeature;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.util.StringUtils;
+import org.broad.tribble.Feature;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar encoding of a block of features from one chromosome, sorted by start.
+ * <p/>
+ * Each attribute is written as a column, positions as deltas from the previous start or from the feature start,
+ * so that the block compresses well.  Optional string attributes are flagged per feature.
+ */
+class FeatureBlock {
+
+    private static final int NAME_FLAG = 1;
+    private static final int TYPE_FLAG = 2;
+    private static final int ID_FLAG = 4;
+    private static final int DESCRIPTION_FLAG = 8;
+
+    private static final int NONCODING_FLAG = 1;
+
+    private FeatureBlock() {
+    }
+
+    static byte[] encode(List<Feature> features) throws IOException {
+
+        int n = features.size();
+        BufferedByteWriter buffer = new BufferedByteWriter(n * 32);
+        buffer.putInt(n);
+
+        int lastStart = 0;
+        for (Feature f : features) {
+            buffer.putInt(f.getStart() - lastStart);
+            lastStart = f.getStart();
+        }
+        for (Feature f : features) {
+            buffer.putInt(f.getEnd() - f.getStart());
+        }
+        for (Feature f : features) {
+            Strand strand = f instanceof IGVFeature ? ((IGVFeature) f).getStrand() : Strand.NONE;
+            buffer.put(strand == Strand.POSITIVE ? 1 : (strand == Strand.NEGATIVE ? 2 : 0));
+        }
+        for (Feature f : features) {
+            buffer.putFloat(f instanceof IGVFeature ? ((IGVFeature) f).getScore() : Float.NaN);
+        }
+        for (Feature f : features) {
+            Color color = f instanceof IGVFeature ? ((IGVFeature) f).getColor() : null;
+            buffer.putInt(color == null ? 0 : color.getRGB());
+        }
+        for (Feature f : features) {
+            List<Exon> exons = f instanceof IGVFeature ? ((IGVFeature) f).getExons() : null;
+            buffer.putInt(exons == null ? 0 : exons.size());
+        }
+        for (Feature f : features) {
+            List<Exon> exons = f instanceof IGVFeature ? ((IGVFeature) f).getExons() : null;
+            if (exons != null) {
+                for (Exon exon : exons) {
+                    buffer.putInt(exon.getStart() - f.getStart());
+                    buffer.putInt(exon.getEnd() - exon.getStart());
+                    buffer.putInt(exon.getCdStart() - exon.getStart());
+                    buffer.putInt(exon.getCdEnd() - exon.getStart());
+                }
+            }
+        }
+        // Translation attributes of exons, since version 2
+        for (Feature f : features) {
+            List<Exon> exons = f instanceof IGVFeature ? ((IGVFeature) f).getExons() : null;
+            if (exons != null) {
+                for (Exon exon : exons) {
+                    buffer.put((byte) (exon.isNonCoding() ? NONCODING_FLAG : 0));
+                    buffer.put((byte) exon.getReadingFrame());
+                    buffer.putInt(exon.getMrnaBase());
+                }
+            }
+        }
+
+        for (Feature f : features) {
+            if (f instanceof BasicFeature) {
+                buffer.putInt(((BasicFeature) f).getThickStart() - f.getStart());
+                buffer.putInt(((BasicFeature) f).getThickEnd() - f.getStart());
+            } else {
+                buffer.putInt(0);
+                buffer.putInt(f.getEnd() - f.getStart());
+            }
+        }
+
+        // String attributes, flags first
+        for (Feature f : features) {
+            buffer.put(getFlags(f));
+        }
+        for (Feature f : features) {
+            if (f instanceof IGVFeature) {
+                IGVFeature igvFeature = (IGVFeature) f;
+                int flags = getFlags(f);
+                if ((flags & NAME_FLAG) != 0) buffer.putNullTerminatedString(igvFeature.getName());
+                if ((flags & TYPE_FLAG) != 0) buffer.putNullTerminatedString(igvFeature.getType());
+                if ((flags & ID_FLAG) != 0) buffer.putNullTerminatedString(igvFeature.getIdentifier());
+                if ((flags & DESCRIPTION_FLAG) != 0) buffer.putNullTerminatedString(igvFeature.getDescription());
+            }
+        }
+        return buffer.getBytes();
+    }
+
+    private static int getFlags(Feature f) {
+        if (!(f instanceof IGVFeature)) {
+            return 0;
+        }
+        IGVFeature igvFeature = (IGVFeature) f;
+        String name = igvFeature.getName();
+        String id = igvFeature.getIdentifier();
+        int flags = 0;
+        if (name != null) flags |= NAME_FLAG;
+        if (igvFeature.getType() != null) flags |= TYPE_FLAG;
+        if (id != null && !id.equals(name)) flags |= ID_FLAG;
+        if (igvFeature.getDescription() != null) flags |= DESCRIPTION_FLAG;
+        return flags;
+    }
+
+    /**
+     * @param bytes
+     * @param chr
+     * @param version file format version, see {@link FeatureStoreWriter#VERSION}
+     */
+    static List<BasicFeature> decode(byte[] bytes, String chr, int version) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int n = buffer.getInt();
+        int[] starts = new int[n];
+        int lastStart = 0;
+        for (int i = 0; i < n; i++) {
+            starts[i] = lastStart = lastStart + buffer.getInt();
+        }
+        List<BasicFeature> features = new ArrayList<BasicFeature>(n);
+        Strand[] strands = new Strand[n];
+        int[] ends = new int[n];
+        for (int i = 0; i < n; i++) {
+            ends[i] = starts[i] + buffer.getInt();
+        }
+        for (int i = 0; i < n; i++) {
+            byte s = buffer.get();
+            strands[i] = s == 1 ? Strand.POSITIVE : (s == 2 ? Strand.NEGATIVE : Strand.NONE);
+            features.add(new BasicFeature(chr, starts[i], ends[i], strands[i]));
+        }
+        for (BasicFeature f : features) {
+            f.setScore(buffer.getFloat());
+        }
+        for (BasicFeature f : features) {
+            int rgb = buffer.getInt();
+            if (rgb != 0) {
+                f.setColor(new Color(rgb, true));
+            }
+        }
+        int[] exonCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            exonCounts[i] = buffer.getInt();
+        }
+        for (int i = 0; i < n; i++) {
+            BasicFeature f = features.get(i);
+            int exonCount = exonCounts[i];
+            int exonNumber = strands[i] == Strand.NEGATIVE ? exonCount : 1;
+            for (int e = 0; e < exonCount; e++) {
+                int exonStart = starts[i] + buffer.getInt();
+                Exon exon = new Exon(chr, exonStart, exonStart + buffer.getInt(), strands[i]);
+                exon.setCodingStart(exonStart + buffer.getInt());
+                exon.setCodingEnd(exonStart + buffer.getInt());
+                exon.setNumber(exonNumber);
+                exonNumber += strands[i] == Strand.NEGATIVE ? -1 : 1;
+                f.addExon(exon);
+            }
+        }
+        if (version >= 2) {
+            for (BasicFeature f : features) {
+                List<Exon> exons = f.getExons();
+                if (exons != null) {
+                    for (Exon exon : exons) {
+                        if ((buffer.get() & NONCODING_FLAG) != 0) {
+                            exon.setNonCoding(true);
+                        }
+                        exon.setReadingFrame(buffer.get());
+                        exon.setMrnaBase(buffer.getInt());
+                    }
+                }
+            }
+        }
+
+        // After the exons, adding an exon resets the thick start and end
+        for (int i = 0; i < n; i++) {
+            BasicFeature f = features.get(i);
+            f.setThickStart(starts[i] + buffer.getInt());
+            f.setThickEnd(starts[i] + buffer.getInt());
+        }
+
+        byte[] flags = new byte[n];
+        buffer.get(flags);
+        Map<String, String> strings = new HashMap<String, String>();
+        for (int i = 0; i < n; i++) {
+            BasicFeature f = features.get(i);
+            if ((flags[i] & NAME_FLAG) != 0) {
+                f.setName(StringUtils.readString(buffer));
+                f.setIdentifier(f.getName());
+            }
+            if ((flags[i] & TYPE_FLAG) != 0) {
+                // Types are few and repeated, share the instances
+                String type = StringUtils.readString(buffer);
+                String shared = strings.get(type);
+                if (shared == null) {
+                    strings.put(type, type);
+                    shared = type;
+                }
+                f.setType(shared);
+            }
+            if ((flags[i] & ID_FLAG) != 0) f.setIdentifier(StringUtils.readString(buffer));
+            if ((flags[i] & DESCRIPTION_FLAG) != 0) f.setDescription(StringUtils.readString(buffer));
+        }
+        return features;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.StringUtils;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Reads the index, feature blocks, and density summaries of a feature store written by
+ * {@link FeatureStoreWriter}.  Only the header and index are read on opening.
+ */
+public class FeatureStoreReader {
+
+    private static Logger log = Logger.getLogger(FeatureStoreReader.class);
+
+    private final String path;
+    private final SeekableStream stream;
+    private final CompressionUtils compressionUtils = new CompressionUtils();
+    private int version;
+    private TrackType trackType;
+    private String trackLine;
+    private final Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
+
+    public FeatureStoreReader(String path) throws IOException {
+        this.path = path;
+        this.stream = IGVSeekableStreamFactory.getStreamFor(path);
+        readHeader();
+    }
+
+    public static boolean isFeatureStore(String path) {
+        return path.toLowerCase().endsWith(".ifs");
+    }
+
+    private void readHeader() throws IOException {
+
+        // Magic number, version, index position and byte count, header byte count
+        ByteBuffer buffer = getBuffer(readBytes(0, 24));
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, FeatureStoreWriter.MAGIC)) {
+            throw new DataLoadException("Not a feature store file (bad magic number)", path);
+        }
+        version = buffer.getInt();
+        if (version > FeatureStoreWriter.VERSION) {
+            throw new DataLoadException("Unsupported feature store version: " + version, path);
+        }
+        long indexPosition = buffer.getLong();
+        int indexByteCount = buffer.getInt();
+        int headerByteCount = buffer.getInt();
+
+        buffer = getBuffer(readBytes(24, headerByteCount));
+        String trackTypeString = StringUtils.readString(buffer);
+        if (trackTypeString.length() > 0) {
+            try {
+                trackType = TrackType.valueOf(trackTypeString);
+            } catch (IllegalArgumentException e) {
+                log.info("Unknown track type: " + trackTypeString);
+            }
+        }
+        trackLine = StringUtils.readString(buffer);
+        if (trackLine.length() == 0) {
+            trackLine = null;
+        }
+
+        buffer = getBuffer(readBytes(indexPosition, indexByteCount));
+        int nChromosomes = buffer.getInt();
+        for (int i = 0; i < nChromosomes; i++) {
+            ChromosomeIndex chrIndex = ChromosomeIndex.read(buffer);
+            chromosomes.put(chrIndex.name, chrIndex);
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public TrackType getTrackType() {
+        return trackType;
+    }
+
+    public String getTrackLine() {
+        return trackLine;
+    }
+
+    public Collection<String> getChromosomeNames() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * @return the total number of features
+     */
+    public long getFeatureCount() {
+        long count = 0;
+        for (ChromosomeIndex chrIndex : chromosomes.values()) {
+            count += chrIndex.featureCount;
+        }
+        return count;
+    }
+
+    ChromosomeIndex getIndex(String chr) {
+        return chromosomes.get(chr);
+    }
+
+    /**
+     * @param chrIndex
+     * @param blockNumber
+     * @param chr         chromosome name for the decoded features, which may be an alias of the name in the file
+     */
+    List<BasicFeature> readBlock(ChromosomeIndex chrIndex, int blockNumber, String chr) throws IOException {
+        ChromosomeIndex.Block block = chrIndex.blocks.get(blockNumber);
+        byte[] bytes = readBytes(block.position, block.size);
+        return FeatureBlock.decode(compressionUtils.decompress(bytes, block.featureCount * 48), chr, version);
+    }
+
+    /**
+     * @return all features on the chromosome, in start order, or an empty list if there are none
+     */
+    public List<BasicFeature> readFeatures(String chr) throws IOException {
+        ChromosomeIndex chrIndex = chromosomes.get(chr);
+        if (chrIndex == null) {
+            return Collections.emptyList();
+        }
+        List<BasicFeature> features = new ArrayList<BasicFeature>((int) chrIndex.featureCount);
+        for (int i = 0; i < chrIndex.blocks.size(); i++) {
+            features.addAll(readBlock(chrIndex, i, chr));
+        }
+        return features;
+    }
+
+    int[] readSummary(ChromosomeIndex.Summary summary) throws IOException {
+        byte[] bytes = compressionUtils.decompress(readBytes(summary.position, summary.size), 4 * summary.binCount);
+        ByteBuffer buffer = getBuffer(bytes);
+        int[] counts = new int[summary.binCount];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buffer.getInt();
+        }
+        return counts;
+    }
+
+    private synchronized byte[] readBytes(long position, int nBytes) throws IOException {
+        stream.seek(position);
+        byte[] buffer = new byte[nBytes];
+        stream.readFully(buffer);
+        return buffer;
+    }
+
+    private static ByteBuffer getBuffer(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    public void close() throws IOException {
+        stream.close();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.tribble.FeatureFileHeader;
+import org.broad.igv.track.FeatureSource;
+import org.broad.igv.track.TrackProperties;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.collections.ManagedCache;
+import org.broad.igv.util.collections.WeightedLRUCache;
+import org.broad.tribble.Feature;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Feature source backed by a feature store file (.ifs).  Only the blocks overlapping the requested window are
+ * read, and decoded blocks are cached.  When zoomed out beyond the feature window, feature density is served
+ * from the summaries precomputed by {@link FeatureStoreWriter}.
+ */
+public class FeatureStoreSource implements FeatureSource<Feature> {
+
+    private static Logger log = Logger.getLogger(FeatureStoreSource.class);
+
+    private static final int BYTES_PER_FEATURE = 500;
+    private static final long SUMMARY_CACHE_BYTES = 10000000;
+
+    /**
+     * Number of bins spanning a chromosome at zoom level 0, as for TDF files
+     */
+    private static final int BINS_PER_TILE = 700;
+
+    private final FeatureStoreReader reader;
+
+    /**
+     * Map of IGV chromosome names to names in the file, where they differ
+     */
+    private final Map<String, String> chrNameMap = new HashMap<String, String>();
+
+    /**
+     * Decoded blocks and summaries of all sources, keyed by source id, chromosome and block number or bin size
+     */
+    private static WeightedLRUCache<String, List<BasicFeature>> blockCache;
+    private static WeightedLRUCache<String, int[]> summaryCache;
+
+    private static int nextId = 0;
+
+    /**
+     * Prefix of the keys of this source's cache entries
+     */
+    private final String keyPrefix;
+
+    private int featureWindowSize;
+
+    public FeatureStoreSource(String path, Genome genome) throws IOException {
+        this(new FeatureStoreReader(path), genome);
+    }
+
+    public FeatureStoreSource(FeatureStoreReader reader, Genome genome) {
+        this.reader = reader;
+
+        if (genome != null) {
+            for (String seqName : reader.getChromosomeNames()) {
+                String igvChr = genome.getChromosomeAlias(seqName);
+                if (igvChr != null && !igvChr.equals(seqName)) {
+                    chrNameMap.put(igvChr, seqName);
+                }
+            }
+        }
+
+        synchronized (FeatureStoreSource.class) {
+            this.keyPrefix = (nextId++) + "_";
+        }
+        initCaches();
+        initFeatureWindowSize();
+    }
+
+    /**
+     * Create the shared caches, or update the block cache budget from the preferences
+     */
+    private static synchronized void initCaches() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.FEATURE_CACHE_SIZE_MB) * 1000000L;
+        if (blockCache == null) {
+            blockCache = new WeightedLRUCache<String, List<BasicFeature>>(maxBytes,
+                    new WeightedLRUCache.Weigher<List<BasicFeature>>() {
+                        public long weigh(List<BasicFeature> features) {
+                            return ((long) BYTES_PER_FEATURE) * features.size();
+                        }
+                    });
+            summaryCache = new WeightedLRUCache<String, int[]>(SUMMARY_CACHE_BYTES,
+                    new WeightedLRUCache.Weigher<int[]>() {
+                        public long weigh(int[] counts) {
+                            return 4L * counts.length;
+                        }
+                    }, ManagedCache.PRIORITY_HIGH);
+        } else if (blockCache.getMaxBytes() != maxBytes) {
+            blockCache.setMaxBytes(maxBytes);
+        }
+    }
+
+    /**
+     * Size the feature window to hold about 20 MB of features at the average density of the file.
+     */
+    private void initFeatureWindowSize() {
+        long span = 0;
+        for (String chr : reader.getChromosomeNames()) {
+            span += reader.getIndex(chr).maxEnd;
+        }
+        long count = reader.getFeatureCount();
+        if (count == 0 || span == 0) {
+            featureWindowSize = Integer.MAX_VALUE;
+        } else {
+            double featuresPerBase = ((double) count) / span;
+            double targetBinMemory = 20000000;
+            long bs = (long) (targetBinMemory / (BYTES_PER_FEATURE * featuresPerBase));
+            featureWindowSize = (int) Math.max(1000000, Math.min(Integer.MAX_VALUE, bs));
+        }
+    }
+
+    /**
+     * @return a header with the track type and properties of the source file
+     */
+    public Object getHeader() {
+        FeatureFileHeader header = new FeatureFileHeader();
+        header.setTrackType(reader.getTrackType());
+        if (reader.getTrackLine() != null) {
+            TrackProperties trackProperties = new TrackProperties();
+            ParsingUtils.parseTrackLine(reader.getTrackLine(), trackProperties);
+            header.setTrackProperties(trackProperties);
+        }
+        return header;
+    }
+
+    private ChromosomeIndex getIndex(String chr) {
+        String seqName = chrNameMap.containsKey(chr) ? chrNameMap.get(chr) : chr;
+        return reader.getIndex(seqName);
+    }
+
+    public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
+        ChromosomeIndex chrIndex = getIndex(chr);
+        if (chrIndex == null) {
+            return Collections.<Feature>emptyList().iterator();
+        }
+        return new WindowIterator(chr, chrIndex, chrIndex.getBlocks(start, end), start, end);
+    }
+
+    private List<BasicFeature> getBlock(String chr, ChromosomeIndex chrIndex, int blockNumber) throws IOException {
+        String key = keyPrefix + chrIndex.name + "_" + blockNumber;
+        List<BasicFeature> features = blockCache.get(key);
+        if (features == null) {
+            features = reader.readBlock(chrIndex, blockNumber, chr);
+            blockCache.put(key, features);
+        }
+        return features;
+    }
+
+    /**
+     * Return feature counts from the summary whose bins are closest to, without exceeding, the width of a pixel
+     * at this zoom level.
+     */
+    public List<LocusScore> getCoverageScores(String chr, int start, int end, int zoom) {
+
+        ChromosomeIndex chrIndex = getIndex(chr);
+        if (chrIndex == null || chrIndex.summaries.isEmpty()) {
+            return null;
+        }
+
+        double binWidth = ((double) chrIndex.maxEnd) / (BINS_PER_TILE * Math.pow(2, Math.max(0, zoom)));
+        ChromosomeIndex.Summary summary = chrIndex.summaries.get(0);
+        for (ChromosomeIndex.Summary s : chrIndex.summaries) {
+            if (s.binSize <= binWidth) {
+                summary = s;
+            }
+        }
+
+        int[] counts;
+        try {
+            String key = keyPrefix + chrIndex.name + "_" + summary.binSize;
+            counts = summaryCache.get(key);
+            if (counts == null) {
+                counts = reader.readSummary(summary);
+                summaryCache.put(key, counts);
+            }
+        } catch (IOException e) {
+            log.error("Error reading feature density", e);
+            throw new DataLoadException(e.getMessage(), reader.getPath());
+        }
+
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        int firstBin = Math.max(0, start / summary.binSize);
+        int lastBin = Math.min(counts.length - 1, end / summary.binSize);
+        for (int b = firstBin; b <= lastBin; b++) {
+            if (counts[b] > 0) {
+                scores.add(new BasicScore(b * summary.binSize, (b + 1) * summary.binSize, counts[b]));
+            }
+        }
+        return scores;
+    }
+
+    public int getFeatureWindowSize() {
+        return featureWindowSize;
+    }
+
+    public void setFeatureWindowSize(int size) {
+        this.featureWindowSize = size;
+    }
+
+    public Collection<String> getChrNames() {
+        return reader.getChromosomeNames();
+    }
+
+    /**
+     * Iterates over the features overlapping a window, reading blocks as they are reached
+     */
+    private class WindowIterator implements Iterator<Feature> {
+
+        final String chr;
+        final ChromosomeIndex chrIndex;
+        final Iterator<Integer> blocks;
+        final int start;
+        final int end;
+        Iterator<BasicFeature> current = Collections.<BasicFeature>emptyList().iterator();
+        BasicFeature next;
+
+        WindowIterator(String chr, ChromosomeIndex chrIndex, List<Integer> blocks, int start, int end) {
+            this.chr = chr;
+            this.chrIndex = chrIndex;
+            this.blocks = blocks.iterator();
+            this.start = start;
+            this.end = end;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null) {
+                while (!current.hasNext()) {
+                    if (!blocks.hasNext()) {
+                        return;
+                    }
+                    try {
+                        current = getBlock(chr, chrIndex, blocks.next()).iterator();
+                    } catch (IOException e) {
+                        log.error("Error reading features", e);
+                        throw new DataLoadException(e.getMessage(), reader.getPath());
+                    }
+                }
+                BasicFeature f = current.next();
+                if (f.getEnd() > start && f.getStart() < end) {
+                    next = f;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Feature next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            BasicFeature f = next;
+            advance();
+            return f;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.exceptions.DataLoadException;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.tribble.BCF2WrapperCodec;
+import org.broad.igv.feature.tribble.CodecFactory;
+import org.broad.igv.feature.tribble.FeatureFileHeader;
+import org.broad.igv.feature.tribble.VCFWrapperCodec;
+import org.broad.igv.tdf.BufferedByteWriter;
+import org.broad.igv.track.GFFFeatureSource;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.tribble.AbstractFeatureReader;
+import org.broad.tribble.CloseableTribbleIterator;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureCodec;
+import org.broad.tribble.TribbleException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes features, sorted by chromosome and start, to a binary feature store (.ifs).
+ * <p/>
+ * The file layout follows TDF: a header with a pointer to the master index, which is written last.  Features are
+ * written in compressed columnar blocks of up to {@link #BLOCK_SIZE} features (see {@link FeatureBlock}).  For
+ * each chromosome the index records the position and extent of every block, and the location of feature counts
+ * at each of the {@link #SUMMARY_BIN_SIZES}, used to display density when zoomed out.
+ */
+public class FeatureStoreWriter {
+
+    private static Logger log = Logger.getLogger(FeatureStoreWriter.class);
+
+    static final byte[] MAGIC = new byte[]{'I', 'F', 'S', '1'};
+    static final int VERSION = 2;
+    static final int BLOCK_SIZE = 4096;
+    static final int[] SUMMARY_BIN_SIZES = {1000, 4000, 16000, 64000, 256000, 1024000};
+
+    private final File file;
+    private final OutputStream os;
+    private final CompressionUtils compressionUtils = new CompressionUtils();
+    private long bytesWritten = 0;
+    private long indexPositionPosition;
+
+    private final Map<String, ChromosomeIndex> chromosomes = new LinkedHashMap<String, ChromosomeIndex>();
+    private ChromosomeIndex current;
+    private List<Feature> block = new ArrayList<Feature>(BLOCK_SIZE);
+    private int lastStart;
+    private int[][] counts;
+
+    /**
+     * @param file
+     * @param trackLine track line of the source file, or null
+     * @param trackType track type of the source file, or null
+     * @throws IOException
+     */
+    public FeatureStoreWriter(File file, String trackLine, TrackType trackType) throws IOException {
+        this.file = file;
+        this.os = new BufferedOutputStream(new FileOutputStream(file));
+        writeHeader(trackLine, trackType);
+    }
+
+    private void writeHeader(String trackLine, TrackType trackType) throws IOException {
+
+        BufferedByteWriter buffer = new BufferedByteWriter(24);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        // Reserve space for the master index pointer and byte count, written at the end
+        indexPositionPosition = buffer.bytesWritten();
+        buffer.putLong(0l);
+        buffer.putInt(0);
+        write(buffer.getBytes());
+
+        buffer = new BufferedByteWriter();
+        buffer.putNullTerminatedString(trackType == null ? "" : trackType.toString());
+        buffer.putNullTerminatedString(trackLine == null ? "" : trackLine);
+        buffer.putInt(0);   // Flags, reserved
+        byte[] bytes = buffer.getBytes();
+
+        BufferedByteWriter sizeBuffer = new BufferedByteWriter(4);
+        sizeBuffer.putInt(bytes.length);
+        write(sizeBuffer.getBytes());
+        write(bytes);
+    }
+
+    /**
+     * Add the next feature.  Features must be grouped by chromosome and sorted by start position.
+     */
+    public void add(Feature feature) throws IOException {
+
+        String chr = feature.getChr();
+        if (current == null || !current.name.equals(chr)) {
+            if (chromosomes.containsKey(chr)) {
+                throw new TribbleException.MalformedFeatureFile("Features must be sorted by chromosome, " + chr +
+                        " appears more than once", file.getName());
+            }
+            finishChromosome();
+            current = new ChromosomeIndex(chr);
+            chromosomes.put(chr, current);
+            counts = new int[SUMMARY_BIN_SIZES.length][];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new int[16];
+            }
+            lastStart = 0;
+        }
+
+        int start = feature.getStart();
+        int end = Math.max(start, feature.getEnd());
+        if (start < lastStart) {
+            throw new TribbleException.MalformedFeatureFile("Features must be sorted by start position, " +
+                    chr + ":" + start + " follows " + chr + ":" + lastStart, file.getName());
+        }
+        lastStart = start;
+
+        current.featureCount++;
+        current.maxEnd = Math.max(current.maxEnd, end);
+        for (int i = 0; i < SUMMARY_BIN_SIZES.length; i++) {
+            int binSize = SUMMARY_BIN_SIZES[i];
+            int lastBin = Math.max(start, end - 1) / binSize;
+            if (lastBin >= counts[i].length) {
+                int[] tmp = new int[Math.max(lastBin + 1, 2 * counts[i].length)];
+                System.arraycopy(counts[i], 0, tmp, 0, counts[i].length);
+                counts[i] = tmp;
+            }
+            for (int b = start / binSize; b <= lastBin; b++) {
+                counts[i][b]++;
+            }
+        }
+
+        block.add(feature);
+        if (block.size() >= BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (block.isEmpty()) {
+            return;
+        }
+        int minStart = block.get(0).getStart();
+        int maxEnd = minStart;
+        for (Feature f : block) {
+            maxEnd = Math.max(maxEnd, f.getEnd());
+        }
+        byte[] bytes = compressionUtils.compress(FeatureBlock.encode(block));
+        current.blocks.add(new ChromosomeIndex.Block(bytesWritten, bytes.length, block.size(), minStart, maxEnd));
+        write(bytes);
+        block = new ArrayList<Feature>(BLOCK_SIZE);
+    }
+
+    private void finishChromosome() throws IOException {
+        if (current == null) {
+            return;
+        }
+        writeBlock();
+        for (int i = 0; i < SUMMARY_BIN_SIZES.length; i++) {
+            int binSize = SUMMARY_BIN_SIZES[i];
+            int binCount = Math.max(1, (current.maxEnd + binSize - 1) / binSize);
+            BufferedByteWriter buffer = new BufferedByteWriter(4 * binCount);
+            for (int b = 0; b < binCount; b++) {
+                buffer.putInt(b < counts[i].length ? counts[i][b] : 0);
+            }
+            byte[] bytes = compressionUtils.compress(buffer.getBytes());
+            current.summaries.add(new ChromosomeIndex.Summary(binSize, binCount, bytesWritten, bytes.length));
+            write(bytes);
+        }
+        counts = null;
+    }
+
+    /**
+     * Write the remaining features and the master index, and close the file.
+     */
+    public void close() throws IOException {
+        try {
+            finishChromosome();
+
+            long indexPosition = bytesWritten;
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putInt(chromosomes.size());
+            for (ChromosomeIndex chrIndex : chromosomes.values()) {
+                chrIndex.write(buffer);
+            }
+            write(buffer.getBytes());
+            int nBytes = (int) (bytesWritten - indexPosition);
+            os.close();
+
+            writeIndexPosition(indexPosition, nBytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    private void writeIndexPosition(long indexPosition, int nBytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getChannel().position(indexPositionPosition);
+            BufferedByteWriter buffer = new BufferedByteWriter();
+            buffer.putLong(indexPosition);
+            buffer.putInt(nBytes);
+            raf.write(buffer.getBytes());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        os.write(bytes);
+        bytesWritten += bytes.length;
+    }
+
+    /**
+     * Convert a feature file readable by any of the tribble codecs to a feature store.  The input must be sorted.
+     *
+     * @param inputPath
+     * @param outputFile
+     * @return the number of features written
+     * @throws IOException
+     */
+    public static long convert(String inputPath, File outputFile) throws IOException {
+
+        FeatureCodec codec = CodecFactory.getCodec(inputPath, null);
+        if (codec == null) {
+            throw new DataLoadException("Unknown file type", inputPath);
+        }
+        if (codec instanceof VCFWrapperCodec || codec instanceof BCF2WrapperCodec) {
+            // Genotypes are not stored
+            throw new DataLoadException("VCF files cannot be converted, use a tabix or tribble index instead", inputPath);
+        }
+
+        AbstractFeatureReader<Feature, ?> reader = AbstractFeatureReader.getFeatureReader(inputPath, codec, false);
+        Object header = reader.getHeader();
+        TrackType trackType = header instanceof FeatureFileHeader ? ((FeatureFileHeader) header).getTrackType() : null;
+
+        long count = 0;
+        FeatureStoreWriter writer = new FeatureStoreWriter(outputFile, readTrackLine(inputPath), trackType);
+        CloseableTribbleIterator<Feature> iter = null;
+        try {
+            iter = reader.iterator();
+            if (GFFFeatureSource.isGFF(inputPath)) {
+                count = addGFFFeatures(iter, writer);
+            } else {
+                while (iter.hasNext()) {
+                    Feature feature = iter.next();
+                    if (feature != null) {
+                        writer.add(feature);
+                        count++;
+                    }
+                }
+            }
+        } finally {
+            if (iter != null) iter.close();
+            reader.close();
+            writer.close();
+        }
+        log.info("Wrote " + count + " features to " + outputFile.getAbsolutePath());
+        return count;
+    }
+
+    /**
+     * Combine the GFF parts (exons, UTRs and CDSs) of each chromosome into transcripts, as when loading GFF files,
+     * and add the combined features.
+     *
+     * @return the number of features written
+     */
+    private static long addGFFFeatures(Iterator<Feature> iter, FeatureStoreWriter writer) throws IOException {
+        long count = 0;
+        String chr = null;
+        GFFFeatureSource.GFFCombiner combiner = new GFFFeatureSource.GFFCombiner();
+        while (iter.hasNext()) {
+            Feature feature = iter.next();
+            if (feature == null) {
+                continue;
+            }
+            if (chr != null && !chr.equals(feature.getChr())) {
+                count += addAll(combiner.combineFeatures(), writer);
+                combiner = new GFFFeatureSource.GFFCombiner();
+            }
+            chr = feature.getChr();
+            combiner.addFeature((BasicFeature) feature);
+        }
+        count += addAll(combiner.combineFeatures(), writer);
+        return count;
+    }
+
+    private static long addAll(List<Feature> features, FeatureStoreWriter writer) throws IOException {
+        for (Feature f : features) {
+            writer.add(f);
+        }
+        return features.size();
+    }
+
+    /**
+     * @return the "track" line from the header of a text feature file, or null
+     */
+    static String readTrackLine(String path) throws IOException {
+        BufferedReader br = null;
+        try {
+            br = ParsingUtils.openBufferedReader(path);
+            return readTrackLine(br);
+        } finally {
+            if (br != null) br.close();
+        }
+    }
+
+    /**
+     * @return the "track" line from the header read by {@code br}, or null
+     */
+    public static String readTrackLine(BufferedReader br) throws IOException {
+        String nextLine;
+        while ((nextLine = br.readLine()) != null) {
+            if (nextLine.startsWith("track")) {
+                return nextLine;
+            } else if (!(nextLine.startsWith("#") || nextLine.startsWith("browser") || nextLine.trim().length() == 0)) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
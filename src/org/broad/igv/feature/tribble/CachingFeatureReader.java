@@ -31,19 +31,22 @@ import java.util.List;
 public class CachingFeatureReader extends AbstractCacher implements IGVFeatureReader {
 
     private static Logger log = Logger.getLogger(CachingFeatureReader.class);
-    private static int maxBinCount = 1000;
     private static int defaultBinSize = 16000; // <= 16 kb
 
     private FeatureReader tribbleFeatureReader;
 
 
     public CachingFeatureReader(FeatureReader tribbleFeatureReader) {
-        this(tribbleFeatureReader, maxBinCount, defaultBinSize);
+        this(tribbleFeatureReader, defaultBinSize);
     }
 
 
-    public CachingFeatureReader(FeatureReader tribbleFeatureReader, int binCount, int binSize) {
-        super(binCount, binSize);
+    /**
+     * @param tribbleFeatureReader
+     * @param binSize maximum bin size, see {@link AbstractCacher}
+     */
+    public CachingFeatureReader(FeatureReader tribbleFeatureReader, int binSize) {
+        super(binSize);
         this.tribbleFeatureReader = tribbleFeatureReader;
     }
 
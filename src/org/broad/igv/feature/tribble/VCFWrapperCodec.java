@@ -14,13 +14,17 @@ package org.broad.igv.feature.tribble;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.variant.Variant;
+import org.broad.igv.variant.vcf.LazyVCFGenotypes;
 import org.broad.igv.variant.vcf.VCFVariant;
 import org.broad.tribble.AsciiFeatureCodec;
 import org.broad.tribble.Feature;
 import org.broad.tribble.readers.LineIterator;
 import org.broadinstitute.variant.variantcontext.VariantContext;
+import org.broadinstitute.variant.vcf.VCFHeader;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Jim Robinson
@@ -30,9 +34,21 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
 
     private static Logger log = Logger.getLogger(Variant.class);
 
+    /**
+     * Number of columns before the FORMAT column
+     */
+    static final int NUM_SITE_FIELDS = 8;
+
     AsciiFeatureCodec wrappedCodec;
     Genome genome;
 
+    /**
+     * Decodes the site columns only, genotype columns are kept as text and parsed by {@link LazyVCFGenotypes}.
+     * Null if the file has no samples or the site codec could not be created.
+     */
+    private AsciiFeatureCodec siteCodec;
+    private LazyVCFGenotypes.Samples samples;
+
     public VCFWrapperCodec(AsciiFeatureCodec wrappedCodec, Genome genome) {
         super(VCFVariant.class);
         this.wrappedCodec = wrappedCodec;
@@ -50,18 +66,29 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
         // but does not currently support missing only certain elements of a field.
         // IGV is much more permissive.
 
+        AsciiFeatureCodec codec = wrappedCodec;
+        String genotypeData = null;
+        if (siteCodec != null) {
+            int formatStart = getFormatStart(line);
+            if (formatStart > 0) {
+                codec = siteCodec;
+                genotypeData = line.substring(formatStart);
+                line = line.substring(0, formatStart - 1);
+            }
+        }
+
         VariantContext vc = null;
         try {
-            vc = (VariantContext) wrappedCodec.decode(line);
+            vc = (VariantContext) codec.decode(line);
             //The genotype fields are loaded lazily, we force parsing here to
             //catch the exception if necessary
-            if (vc != null) vc.getSampleNames();
+            if (vc != null && genotypeData == null) vc.getSampleNames();
         } catch (NumberFormatException e) {
             String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
             log.warn(msg);
             String refLine = line.replaceAll(",\\.", ",0");
             refLine = refLine.replaceAll("\\.,", "0,");
-            vc = (VariantContext) wrappedCodec.decode(refLine);
+            vc = (VariantContext) codec.decode(refLine);
         }
 
 
@@ -69,13 +96,120 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getChromosomeAlias(vc.getChr());
+        if (genotypeData != null) {
+            return new VCFVariant(vc, chr, new LazyVCFGenotypes(samples, vc.getAlleles(), genotypeData));
+        }
         return new VCFVariant(vc, chr);
 
     }
 
+    /**
+     * @return the start of the FORMAT column, or -1 if the line has no genotype columns
+     */
+    private static int getFormatStart(String line) {
+        int tab = -1;
+        for (int i = 0; i < NUM_SITE_FIELDS; i++) {
+            tab = line.indexOf('\t', tab + 1);
+            if (tab < 0) {
+                return -1;
+            }
+        }
+        return tab + 1;
+    }
+
     @Override
     public Object readActualHeader(LineIterator reader) {
-        return wrappedCodec.readActualHeader(reader);
+        RecordingLineIterator recorder = new RecordingLineIterator(reader);
+        Object header = wrappedCodec.readActualHeader(recorder);
+
+        siteCodec = null;
+        samples = null;
+        if (header instanceof VCFHeader && ((VCFHeader) header).getNGenotypeSamples() > 0) {
+            try {
+                siteCodec = createSiteCodec(recorder.lines);
+                samples = new LazyVCFGenotypes.Samples(((VCFHeader) header).getGenotypeSamples());
+            } catch (Exception e) {
+                log.error("Error creating VCF site codec, genotypes will be parsed eagerly", e);
+                siteCodec = null;
+            }
+        }
+        return header;
+    }
+
+    /**
+     * A codec of the same type as the wrapped codec, with the header of a file without samples
+     */
+    private AsciiFeatureCodec createSiteCodec(List<String> headerLines) throws Exception {
+        final List<String> siteHeaderLines = new ArrayList<String>(headerLines.size());
+        for (String line : headerLines) {
+            if (line.startsWith("#CHROM")) {
+                int formatStart = getFormatStart(line);
+                if (formatStart > 0) {
+                    line = line.substring(0, formatStart - 1);
+                }
+            }
+            siteHeaderLines.add(line);
+        }
+        AsciiFeatureCodec codec = wrappedCodec.getClass().newInstance();
+        codec.readActualHeader(new ListLineIterator(siteHeaderLines));
+        return codec;
+    }
+
+    /**
+     * Records the lines read through it
+     */
+    private static class RecordingLineIterator implements LineIterator {
+
+        final LineIterator iterator;
+        final List<String> lines = new ArrayList<String>();
+
+        RecordingLineIterator(LineIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        public String peek() {
+            return iterator.peek();
+        }
+
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        public String next() {
+            String line = iterator.next();
+            lines.add(line);
+            return line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class ListLineIterator implements LineIterator {
+
+        final List<String> lines;
+        int index = 0;
+
+        ListLineIterator(List<String> lines) {
+            this.lines = lines;
+        }
+
+        public String peek() {
+            return index < lines.size() ? lines.get(index) : null;
+        }
+
+        public boolean hasNext() {
+            return index < lines.size();
+        }
+
+        public String next() {
+            return lines.get(index++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
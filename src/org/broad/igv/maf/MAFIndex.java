@@ -22,7 +22,7 @@ import org.broad.igv.Globals;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.index.FlatIntervalTree;
 import org.broad.tribble.readers.AsciiLineReader;
 
 import java.io.*;
@@ -38,9 +38,14 @@ public class MAFIndex {
     private List<String> species;
 
     /**
-     * Map of chromosome name -> interval tree
+     * Map of chromosome name -> intervals, collected while the index is created or loaded
      */
-    private Map<String, IntervalTree> intervalTrees;
+    private Map<String, List<Interval>> intervals;
+
+    /**
+     * Map of chromosome name -> interval tree, built from the intervals on first use
+     */
+    private Map<String, FlatIntervalTree> intervalTrees;
 
     /**
      * The # of alignments represented by an interval in the tree.
@@ -49,7 +54,8 @@ public class MAFIndex {
     public static int blockSize = 50;
 
     public MAFIndex() {
-        intervalTrees = new HashMap<String, IntervalTree>();
+        intervals = new HashMap<String, List<Interval>>();
+        intervalTrees = new HashMap<String, FlatIntervalTree>();
     }
 
     /**
@@ -71,31 +77,34 @@ public class MAFIndex {
     }
 
     public Collection<String> getChromosomes() {
-        return intervalTrees.keySet();
+        return intervals.keySet();
     }
 
-    public IntervalTree getIntervalTree(String chr) {
+    public synchronized FlatIntervalTree getIntervalTree(String chr) {
 
-        IntervalTree iv = intervalTrees.get(chr);
-        if(iv == null) {
-            iv = intervalTrees.get("*"); // To support legacy MAF indeces, files are split by chromosome
+        if (!intervals.containsKey(chr)) {
+            chr = "*"; // To support legacy MAF indeces, files are split by chromosome
         }
-        return iv;
-    }
-
-
-    public void putIntervalTree(String s, IntervalTree iv) {
-
-        intervalTrees.put(s, iv);
+        FlatIntervalTree tree = intervalTrees.get(chr);
+        if (tree == null) {
+            List<Interval> chrIntervals = intervals.get(chr);
+            if (chrIntervals == null) {
+                return null;
+            }
+            tree = new FlatIntervalTree(chrIntervals);
+            intervalTrees.put(chr, tree);
+        }
+        return tree;
     }
 
-    public void insertInterval(String lastChr, int intervalStart, int intervalEnd, long value) {
-        IntervalTree iv = intervalTrees.get(lastChr);
-        if (iv == null) {
-            iv = new IntervalTree();
-            intervalTrees.put(lastChr, iv);
+    public synchronized void insertInterval(String chr, int intervalStart, int intervalEnd, long value) {
+        List<Interval> chrIntervals = intervals.get(chr);
+        if (chrIntervals == null) {
+            chrIntervals = new ArrayList<Interval>();
+            intervals.put(chr, chrIntervals);
         }
-        iv.insert(new Interval(intervalStart, intervalEnd, value));
+        chrIntervals.add(new Interval(intervalStart, intervalEnd, value));
+        intervalTrees.remove(chr);
     }
 
 
@@ -124,19 +133,17 @@ public class MAFIndex {
                     index.species.add(line.trim());
                 }
 
-                IntervalTree iv = null;
+                String chr = null;
                 while ((line = br.readLine()) != null) {
                     if (line.trim().length() == 0) continue;
                     if (line.startsWith("#chr=")) {
-                        String chr = ParsingUtils.EQ_PATTERN.split(line)[1];
-                        iv = new IntervalTree();
-                        index.putIntervalTree(chr, iv);
-                    } else if (iv != null) {
+                        chr = ParsingUtils.EQ_PATTERN.split(line)[1];
+                    } else if (chr != null) {
                         String[] info = Globals.tabPattern.split(line);
                         int start = Integer.parseInt(info[0]);
                         int end = Integer.parseInt(info[1]) + start;
                         long offset = Long.parseLong(info[2]);
-                        iv.insert(new Interval(start, end, offset));
+                        index.insertInterval(chr, start, end, offset);
                     } else {
                         // log.info("Skipping line " + line);
                     }
@@ -145,7 +152,6 @@ public class MAFIndex {
             } else {
                 // A "legacy" index, created for Broad hosted files that are separated by chromosome.
                 // Every alignment is indexed, which is overkill.  Below we lump them into blocks of 50.
-                IntervalTree iv = new IntervalTree();
                 int l = 0;
                 int intervalStart = 0;
                 int intervalEnd = 0;
@@ -155,7 +161,7 @@ public class MAFIndex {
                     int start = Integer.parseInt(info[0]);
                     intervalEnd = Integer.parseInt(info[1]) + start;
                     if (l % 50 == 0) {
-                        iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                        index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                         intervalStart = intervalEnd;
                         lastOffset = Long.parseLong(info[2]);
                     }
@@ -163,10 +169,8 @@ public class MAFIndex {
                 }
 
                 if(intervalEnd > intervalStart) {
-                    iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                    index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                 }
-
-                index.putIntervalTree("*", iv);
             }
         } finally {
             if (br != null) br.close();
@@ -338,7 +342,7 @@ public class MAFIndex {
             Collection<String> chrList = index.getChromosomes();
             for (String chr : chrList) {
                 pw.println("#chr=" + chr);
-                IntervalTree tree = index.getIntervalTree(chr);
+                FlatIntervalTree tree = index.getIntervalTree(chr);
                 Collection<Interval> intervals = tree.getIntervals();
                 for (Interval node : intervals) {
                     pw.print(String.valueOf(node.getLow()));
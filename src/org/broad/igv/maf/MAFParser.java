@@ -14,8 +14,7 @@ package org.broad.igv.maf;
 import net.sf.samtools.seekablestream.SeekableStream;
 import org.broad.igv.Globals;
 import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.index.FlatIntervalTree;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.BufferedReader;
@@ -69,21 +68,21 @@ public class MAFParser implements MAFReader {
     @Override
     public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end) throws IOException {
 
-        IntervalTree ivTree = index.getIntervalTree(chr);
+        FlatIntervalTree ivTree = index.getIntervalTree(chr);
         if (ivTree == null) return null;
 
-        List<Interval> intervals = ivTree.findOverlapping(start, end);
-        if (intervals.isEmpty()) {
-            return null;
-        }
-
-
         // Find the starting (left most) interval.  Alignment blocks do not overlap, so we can start at the
         // minimum file offset and just proceed until the end of the interval.
-        long startPosition = Long.MAX_VALUE;
-        for (Interval iv : intervals) {
-            startPosition = Math.min(startPosition, iv.getValue());
+        final long[] minOffset = {Long.MAX_VALUE};
+        ivTree.visitOverlapping(start, end, new FlatIntervalTree.Visitor() {
+            public void visit(int low, int high, long value) {
+                minOffset[0] = Math.min(minOffset[0], value);
+            }
+        });
+        if (minOffset[0] == Long.MAX_VALUE) {
+            return null;
         }
+        long startPosition = minOffset[0];
 
 
         SeekableStream is = null;
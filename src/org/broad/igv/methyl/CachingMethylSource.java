@@ -12,8 +12,10 @@
 
 package org.broad.igv.methyl;
 
+import com.google.common.base.Predicate;
 import org.apache.log4j.Logger;
-import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.util.collections.WeightedLRUCache;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -26,22 +28,60 @@ import java.util.List;
 public class CachingMethylSource implements MethylDataSource {
 
     private static Logger log = Logger.getLogger(CachingMethylSource.class);
-    private static int DEFAULT_TILE_COUNT = 4;
+    private static final int BYTES_PER_SCORE = 40;
+    private static final int BIN_OVERHEAD_BYTES = 200;
     private int binSize;
 
     MethylDataSource reader;
-    LRUCache<String, Bin> cache;
+
+    /**
+     * Bins of all methylation sources, keyed by source id, chromosome and bin number.  The cache is bounded by the
+     * feature cache budget ({@link PreferenceManager#FEATURE_CACHE_SIZE_MB}).
+     */
+    private static WeightedLRUCache<String, Bin> cache;
+
+    private static int nextId = 0;
+
+    /**
+     * Prefix of the keys of this source's bins
+     */
+    private final String keyPrefix;
 
 
     public CachingMethylSource(MethylDataSource reader, int binSize) {
-        this(reader, DEFAULT_TILE_COUNT, binSize);
+        synchronized (CachingMethylSource.class) {
+            this.keyPrefix = (nextId++) + "_";
+        }
+        initCache();
+        this.reader = reader;
+        this.binSize = binSize;
     }
 
+    /**
+     * Create the shared cache, or update its budget from the preferences
+     */
+    private static synchronized void initCache() {
+        long maxBytes = PreferenceManager.getInstance().getAsInt(PreferenceManager.FEATURE_CACHE_SIZE_MB) * 1000000L;
+        if (cache == null) {
+            cache = new WeightedLRUCache<String, Bin>(maxBytes, new WeightedLRUCache.Weigher<Bin>() {
+                public long weigh(Bin bin) {
+                    return BIN_OVERHEAD_BYTES + ((long) BYTES_PER_SCORE) * bin.containedRecords.size();
+                }
+            });
+        } else if (cache.getMaxBytes() != maxBytes) {
+            cache.setMaxBytes(maxBytes);
+        }
+    }
 
+    /**
+     * @deprecated the cache is bounded by estimated size, tileCount is ignored
+     */
     public CachingMethylSource(MethylDataSource reader, int tileCount, int binSize) {
-        this.reader = reader;
-        this.cache = new LRUCache(this, tileCount);
-        this.binSize = binSize;
+        this(reader, binSize);
+    }
+
+    public WeightedLRUCache.Stats getCacheStats() {
+        return cache.getStats();
     }
 
 
@@ -52,7 +92,11 @@ public class CachingMethylSource implements MethylDataSource {
      */
     public void setBinSize(int newSize) {
         this.binSize = newSize;
-        cache.clear();
+        cache.removeAll(new Predicate<String>() {
+            public boolean apply(String key) {
+                return key.startsWith(keyPrefix);
+            }
+        });
 
     }
 
@@ -100,7 +144,7 @@ public class CachingMethylSource implements MethylDataSource {
         List<Bin> tilesToLoad = new ArrayList(endBin - startBin + 1);
 
         for (int t = startBin; t <= endBin; t++) {
-            String key = seq + "_" + t;
+            String key = keyPrefix + seq + "_" + t;
             Bin tile = cache.get(key);
 
             if (tile == null) {
@@ -109,7 +153,7 @@ public class CachingMethylSource implements MethylDataSource {
                 }
                 int start = t * binSize;
                 int end = start + binSize;
-                tile = new Bin(t, start, end);
+                tile = new Bin(key, t, start, end);
                 cache.put(key, tile);
             }
 
@@ -184,6 +228,8 @@ public class CachingMethylSource implements MethylDataSource {
 
             for (Bin t : tiles) {
                 t.setLoaded(true);
+                // Update the weight of the now loaded bin
+                cache.put(t.key, t);
             }
             if (log.isDebugEnabled()) {
                 long dt = System.currentTimeMillis() - t0;
@@ -203,13 +249,15 @@ public class CachingMethylSource implements MethylDataSource {
 
     static class Bin {
 
+        private final String key;
         private boolean loaded = false;
         private int start;
         private int end;
         private int binNumber;
         private List<MethylScore> containedRecords;
 
-        Bin(int binNumber, int start, int end) {
+        Bin(String key, int binNumber, int start, int end) {
+            this.key = key;
             this.binNumber = binNumber;
             this.start = start;
             this.end = end;
@@ -23,6 +23,7 @@ import org.broad.igv.feature.LocusScore;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
 
 import java.awt.*;
 import java.util.Hashtable;
@@ -65,6 +66,17 @@ public class HeatmapRenderer extends DataRenderer {
         double maxX = rect.getMaxX();
         int minY = (int) rect.getMinY();
         int height = (int) rect.getHeight();
+
+        // Dense data is binned to pixel columns.  Methylation and RNAi scores are drawn individually.
+        if (track.getTrackType() != TrackType.DNA_METHYLATION &&
+                (scores.isEmpty() || !(scores.get(0) instanceof RNAIGeneScore))) {
+            PixelBins bins = PixelBins.bin(scores, origin, locScale, (int) maxX, false);
+            if (bins != null) {
+                renderBins(bins, track, colorScale, context, rect);
+                return;
+            }
+        }
+
         int lastPEnd = 0;
         int lastPStart = 0;
         int lastW = 0;
@@ -139,6 +151,31 @@ public class HeatmapRenderer extends DataRenderer {
     }
 
 
+    /**
+     * Render scores binned to pixel columns, filling one rectangle for each run of columns with the same color
+     */
+    private void renderBins(PixelBins bins, Track track, ContinuousColorScale colorScale, RenderContext context,
+                            Rectangle rect) {
+
+        WindowFunction windowFunction = track.getWindowFunction();
+        int nColumns = bins.getColumnCount();
+        int col = Math.max(0, rect.x);
+        while (col < nColumns) {
+            if (!bins.hasData(col)) {
+                col++;
+                continue;
+            }
+            Color color = colorScale.getColor(track.logScaleData(bins.getValue(col, windowFunction)));
+            int end = col + 1;
+            while (end < nColumns && bins.hasData(end) &&
+                    color.equals(colorScale.getColor(track.logScaleData(bins.getValue(end, windowFunction))))) {
+                end++;
+            }
+            context.getGraphic2DForColor(color).fillRect(col, rect.y, end - col, rect.height);
+            col = end;
+        }
+    }
+
     /**
      * Return the color indicating a low confdence score as a function of zoom level.  Currently
      * this is only used with RNAi data.
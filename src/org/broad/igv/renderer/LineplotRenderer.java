@@ -30,6 +30,7 @@ import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.Track;
+import org.broad.igv.track.WindowFunction;
 
 import java.awt.*;
 import java.util.List;
@@ -79,6 +80,15 @@ public class LineplotRenderer extends XYPlotRenderer {
         // Calculate the Y scale factor.
         double yScaleFactor = adjustedRect.getHeight() / (maxValue - minValue);
 
+        // Dense data is binned to pixel columns
+        PixelBins bins = PixelBins.bin(locusScores, origin, locScale, (int) adjustedRect.getMaxX(), false);
+        if (bins != null) {
+            renderBins(bins, track.getWindowFunction(), gPos, gNeg, adjustedRect, maxValue, yScaleFactor);
+            gPos.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_DEFAULT);
+            gNeg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_DEFAULT);
+            return;
+        }
+
         int lastPx = 0;
         int lastPy = Integer.MIN_VALUE;
         for (LocusScore score : locusScores) {
@@ -145,4 +155,33 @@ public class LineplotRenderer extends XYPlotRenderer {
         gNeg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_DEFAULT);
 
     }
+
+    /**
+     * Render scores binned to pixel columns, connecting the values of consecutive columns with data
+     */
+    private void renderBins(PixelBins bins, WindowFunction windowFunction, Graphics2D gPos, Graphics2D gNeg,
+                            Rectangle adjustedRect, float maxValue, double yScaleFactor) {
+
+        int minY = adjustedRect.y;
+        int maxY = adjustedRect.y + adjustedRect.height;
+        int lastPx = -1;
+        int lastPy = 0;
+        for (int col = 0; col < bins.getColumnCount(); col++) {
+            if (!bins.hasData(col)) {
+                continue;
+            }
+            float dataY = bins.getValue(col, windowFunction);
+            int pY = (int) (adjustedRect.getY() + (maxValue - dataY) * yScaleFactor);
+            pY = Math.max(minY, Math.min(maxY, pY));
+
+            Graphics2D g = (dataY >= 0) ? gPos : gNeg;
+            if (lastPx < 0) {
+                g.drawLine(col, pY, col, pY);
+            } else {
+                g.drawLine(lastPx, lastPy, col, pY);
+            }
+            lastPx = col;
+            lastPy = pY;
+        }
+    }
 }
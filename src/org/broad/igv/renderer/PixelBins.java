@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.renderer;
+
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.WindowFunction;
+
+import java.util.List;
+
+/**
+ * Scores binned to pixel columns, so that dense data is drawn with at most one shape per column rather than one
+ * per score.  Each column holds the minimum, maximum, and mean of the scores overlapping it.
+ */
+class PixelBins {
+
+    private final int nColumns;
+    private final float[] min;
+    private final float[] max;
+    private final float[] sum;
+    private final int[] count;
+
+    private PixelBins(int nColumns) {
+        this.nColumns = nColumns;
+        min = new float[nColumns];
+        max = new float[nColumns];
+        sum = new float[nColumns];
+        count = new int[nColumns];
+    }
+
+    /**
+     * Bin the scores overlapping columns 0 to {@code nColumns}, if there are more of them than columns.
+     * Missing (NaN) scores are skipped, as are scores <= 0 if {@code positiveOnly} is true.
+     *
+     * @param scores       scores, sorted by start
+     * @param origin       genomic position of column 0
+     * @param scale        base pairs per pixel
+     * @param nColumns
+     * @param positiveOnly
+     * @return the bins, or null if the scores are sparse enough to be drawn individually
+     */
+    static PixelBins bin(List<LocusScore> scores, double origin, double scale, int nColumns, boolean positiveOnly) {
+
+        if (nColumns <= 0 || scores.size() <= nColumns) {
+            return null;
+        }
+
+        int nInView = 0;
+        for (LocusScore score : scores) {
+            double pStart = (score.getStart() - origin) / scale;
+            if (pStart >= nColumns) {
+                break;
+            }
+            if ((score.getEnd() - origin) / scale >= 0) {
+                nInView++;
+            }
+        }
+        if (nInView <= nColumns) {
+            return null;
+        }
+
+        PixelBins bins = new PixelBins(nColumns);
+        for (LocusScore score : scores) {
+            double pStart = (score.getStart() - origin) / scale;
+            if (pStart >= nColumns) {
+                break;
+            }
+            double pEnd = (score.getEnd() - origin) / scale;
+            float value = score.getScore();
+            if (pEnd < 0 || Float.isNaN(value) || (positiveOnly && value <= 0)) {
+                continue;
+            }
+            int first = Math.max(0, (int) pStart);
+            int last = Math.min(nColumns - 1, Math.max(first, (int) Math.ceil(pEnd) - 1));
+            for (int col = first; col <= last; col++) {
+                bins.add(col, value);
+            }
+        }
+        return bins;
+    }
+
+    private void add(int col, float value) {
+        if (count[col] == 0) {
+            min[col] = value;
+            max[col] = value;
+        } else {
+            if (value < min[col]) min[col] = value;
+            if (value > max[col]) max[col] = value;
+        }
+        sum[col] += value;
+        count[col]++;
+    }
+
+    int getColumnCount() {
+        return nColumns;
+    }
+
+    boolean hasData(int col) {
+        return count[col] > 0;
+    }
+
+    /**
+     * Return the value of a column:  the minimum or maximum of its scores for the {@code min} and {@code max}
+     * window functions, otherwise their mean.
+     *
+     * @param col
+     * @param windowFunction
+     * @return
+     */
+    float getValue(int col, WindowFunction windowFunction) {
+        if (windowFunction == WindowFunction.min) {
+            return min[col];
+        } else if (windowFunction == WindowFunction.max) {
+            return max[col];
+        } else {
+            return sum[col] / count[col];
+        }
+    }
+}
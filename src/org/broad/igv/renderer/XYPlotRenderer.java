@@ -23,6 +23,7 @@ import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.Track;
+import org.broad.igv.track.WindowFunction;
 import org.broad.igv.ui.FontManager;
 import org.broad.igv.ui.UIConstants;
 import org.broad.igv.ui.panel.FrameManager;
@@ -96,6 +97,14 @@ public abstract class XYPlotRenderer extends DataRenderer {
             baseY = adjustedRect.y + adjustedRect.height;
         }
 
+        // Dense data is binned to pixel columns
+        PixelBins bins = PixelBins.bin(locusScores, origin, locScale, (int) adjustedRect.getMaxX(), isLog);
+        if (bins != null) {
+            renderBins(bins, track, context, adjustedRect, arect, baseValue, isLog, yScaleFactor, baseY,
+                    showMissingData);
+            return;
+        }
+
         int lastPx = 0;
         for (LocusScore score : locusScores) {
 
@@ -116,16 +125,7 @@ public abstract class XYPlotRenderer extends DataRenderer {
 
             if (!Float.isNaN(dataY)) {
 
-
-                // Compute the pixel y location.  Clip to bounds of rectangle.
-                double dy = isLog ? Math.log10(dataY) - baseValue : (dataY - baseValue);
-                int pY = baseY - (int) (dy * yScaleFactor);
-                if (pY < adjustedRect.y) {
-                    pY = adjustedRect.y;
-                } else if (pY > adjustedRect.y + adjustedRect.height) {
-                    pY = adjustedRect.y + adjustedRect.height;
-                }
-
+                int pY = computeDataPointY(dataY, isLog, baseValue, yScaleFactor, baseY, adjustedRect);
                 Color color = (dataY >= baseValue) ? posColor : negColor;
                 drawDataPoint(color, (int) dx, (int) pX, baseY, pY, context);
 
@@ -153,6 +153,74 @@ public abstract class XYPlotRenderer extends DataRenderer {
 
     }
 
+    /**
+     * Render scores binned to pixel columns, drawing one data point for each run of columns with the same
+     * pixel value.
+     */
+    private void renderBins(PixelBins bins, Track track, RenderContext context, Rectangle adjustedRect,
+                            Rectangle arect, float baseValue, boolean isLog, double yScaleFactor, int baseY,
+                            boolean showMissingData) {
+
+        Graphics2D noDataGraphics = context.getGraphic2DForColor(UIConstants.NO_DATA_COLOR);
+        WindowFunction windowFunction = track.getWindowFunction();
+        Color posColor = track.getColor();
+        Color negColor = track.getAltColor();
+
+        int nColumns = bins.getColumnCount();
+        int lastPx = 0;
+        int col = 0;
+        while (col < nColumns) {
+            if (!bins.hasData(col)) {
+                col++;
+                continue;
+            }
+
+            float dataY = bins.getValue(col, windowFunction);
+            int pY = computeDataPointY(dataY, isLog, baseValue, yScaleFactor, baseY, adjustedRect);
+            Color color = (dataY >= baseValue) ? posColor : negColor;
+            int end = col + 1;
+            while (end < nColumns && bins.hasData(end)) {
+                float nextY = bins.getValue(end, windowFunction);
+                if (((nextY >= baseValue) ? posColor : negColor) != color ||
+                        computeDataPointY(nextY, isLog, baseValue, yScaleFactor, baseY, adjustedRect) != pY) {
+                    break;
+                }
+                end++;
+            }
+
+            if (showMissingData) {
+                int w = col - lastPx - 4;
+                if (w > 0) {
+                    noDataGraphics.fillRect(lastPx + 2, (int) arect.getY(), w, (int) arect.getHeight());
+                }
+            }
+            drawDataPoint(color, end - col, col, baseY, pY, context);
+            lastPx = end;
+            col = end;
+        }
+        if (showMissingData) {
+            int w = (int) arect.getMaxX() - lastPx - 4;
+            if (w > 0) {
+                noDataGraphics.fillRect(lastPx + 2, (int) arect.getY(), w, (int) arect.getHeight());
+            }
+        }
+    }
+
+    /**
+     * Compute the pixel y location of a value.  Clip to bounds of rectangle.
+     */
+    private static int computeDataPointY(float dataY, boolean isLog, float baseValue, double yScaleFactor, int baseY,
+                                         Rectangle adjustedRect) {
+        double dy = isLog ? Math.log10(dataY) - baseValue : (dataY - baseValue);
+        int pY = baseY - (int) (dy * yScaleFactor);
+        if (pY < adjustedRect.y) {
+            pY = adjustedRect.y;
+        } else if (pY > adjustedRect.y + adjustedRect.height) {
+            pY = adjustedRect.y + adjustedRect.height;
+        }
+        return pY;
+    }
+
     static DecimalFormat formatter = new DecimalFormat();
 
     /**
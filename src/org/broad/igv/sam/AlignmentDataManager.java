@@ -351,9 +351,19 @@ public class AlignmentDataManager implements IAlignmentDataManager{
 
     static int n = 1;
 
+    /**
+     * Return the name used in the alignment file for a chromosome
+     *
+     * @param chr
+     * @return
+     */
+    String getSequenceName(String chr) {
+        return chrMappings.containsKey(chr) ? chrMappings.get(chr) : chr;
+    }
+
     AlignmentInterval loadInterval(String chr, int start, int end, AlignmentTrack.RenderOptions renderOptions) {
 
-        String sequence = chrMappings.containsKey(chr) ? chrMappings.get(chr) : chr;
+        String sequence = getSequenceName(chr);
 
         DownsampleOptions downsampleOptions = new DownsampleOptions();
 
@@ -96,7 +96,13 @@ public class AlignmentRenderer implements FeatureRenderer {
     private TreeSet<Shape> arcsByEnd;
     private HashMap<Shape, Alignment> curveMap;
 
-    public static AlignmentRenderer getInstance() {
+    /**
+     * The renderer is shared by all alignment tracks.  Its color tables and arc maps are not thread safe, so callers
+     * which render concurrently lock the instance, see {@link AlignmentTrack}.
+     *
+     * @return
+     */
+    public static synchronized AlignmentRenderer getInstance() {
         if (instance == null) {
             instance = new AlignmentRenderer();
         }
@@ -228,12 +234,40 @@ public class AlignmentRenderer implements FeatureRenderer {
     /**
      * Render a row of alignments in the given rectangle.
      */
-    public void renderAlignments(List<Alignment> alignments,
+    public synchronized void renderAlignments(List<Alignment> alignments,
                                  RenderContext context,
                                  Rectangle rowRect,
                                  Rectangle trackRect, RenderOptions renderOptions,
                                  boolean leaveMargin,
                                  Map<String, Color> selectedReadNames) {
+        renderAlignments(alignments, context, rowRect, trackRect, renderOptions, leaveMargin, selectedReadNames, null);
+        drawCenterLine(context, rowRect);
+    }
+
+    /**
+     * Return true if rows of the given height can be rendered through a {@link RectBatch}.  Bases drawn as
+     * letters are not batched, but are only drawn when zoomed in far enough that there are few of them.
+     *
+     * @param context
+     * @param rowHeight
+     * @return
+     */
+    boolean canBatch(RenderContext context, int rowHeight) {
+        return rowHeight < 12 || context.getScale() > 0.125;
+    }
+
+    /**
+     * Render a row of alignments in the given rectangle, adding rectangular blocks, bases, and insertion markers
+     * to {@code batch} if it is not null.  The center line is not drawn, the caller should draw it with
+     * {@link #drawCenterLine(RenderContext, Rectangle)} after flushing the batch.
+     */
+    synchronized void renderAlignments(List<Alignment> alignments,
+                          RenderContext context,
+                          Rectangle rowRect,
+                          Rectangle trackRect, RenderOptions renderOptions,
+                          boolean leaveMargin,
+                          Map<String, Color> selectedReadNames,
+                          RectBatch batch) {
 
         double origin = context.getOrigin();
         double locScale = context.getScale();
@@ -271,38 +305,47 @@ public class AlignmentRenderer implements FeatureRenderer {
                     }
 
 
-                    Graphics2D g = context.getGraphic2DForColor(alignmentColor);
-                    g.setFont(font);
-
                     int w = Math.max(1, (int) (pixelWidth));
                     int h = (int) Math.max(1, rowRect.getHeight() - 2);
                     int y = (int) (rowRect.getY() + (rowRect.getHeight() - h) / 2);
-                    g.fillRect((int) pixelStart, y, w, h);
+                    if (batch != null) {
+                        batch.add(RectBatch.BLOCKS, alignmentColor, (int) pixelStart, y, w, h);
+                    } else {
+                        Graphics2D g = context.getGraphic2DForColor(alignmentColor);
+                        g.setFont(font);
+                        g.fillRect((int) pixelStart, y, w, h);
+                    }
                     lastPixelDrawn = (int) pixelStart + w;
                 } else if (alignment instanceof PairedAlignment) {
-                    drawPairedAlignment((PairedAlignment) alignment, rowRect, trackRect, context, renderOptions, leaveMargin, selectedReadNames, font);
+                    drawPairedAlignment((PairedAlignment) alignment, rowRect, trackRect, context, renderOptions, leaveMargin, selectedReadNames, font, batch);
                 } else {
                     Color alignmentColor = getAlignmentColor(alignment, renderOptions);
                     Graphics2D g = context.getGraphic2DForColor(alignmentColor);
                     g.setFont(font);
-                    drawAlignment(alignment, rowRect, trackRect, g, context, alignmentColor, renderOptions, leaveMargin, selectedReadNames);
+                    drawAlignment(alignment, rowRect, trackRect, g, context, alignmentColor, renderOptions, leaveMargin, selectedReadNames, batch);
                 }
             }
+        }
+    }
 
-            // Optionally draw a border around the center base
-            boolean showCenterLine = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_CENTER_LINE);
-            final int bottom = rowRect.y + rowRect.height;
-            if (locScale < 5 && showCenterLine) {
-                // Calculate center lines
-                double center = (int) (context.getReferenceFrame().getCenter() - origin);
-                int centerLeftP = (int) (center / locScale);
-                int centerRightP = (int) ((center + 1) / locScale);
-                //float transparency = Math.max(0.5f, (float) Math.round(10 * (1 - .75 * locScale)) / 10);
-                Graphics2D gBlack = context.getGraphic2DForColor(Color.black); //new Color(0, 0, 0, transparency));
-                GraphicUtils.drawDottedDashLine(gBlack, centerLeftP, rowRect.y, centerLeftP, bottom);
-                if ((centerRightP - centerLeftP > 2)) {
-                    GraphicUtils.drawDottedDashLine(gBlack, centerRightP, rowRect.y, centerRightP, bottom);
-                }
+    /**
+     * Optionally draw a border around the center base
+     */
+    void drawCenterLine(RenderContext context, Rectangle rowRect) {
+        double origin = context.getOrigin();
+        double locScale = context.getScale();
+        boolean showCenterLine = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_CENTER_LINE);
+        final int bottom = rowRect.y + rowRect.height;
+        if (locScale < 5 && showCenterLine) {
+            // Calculate center lines
+            double center = (int) (context.getReferenceFrame().getCenter() - origin);
+            int centerLeftP = (int) (center / locScale);
+            int centerRightP = (int) ((center + 1) / locScale);
+            //float transparency = Math.max(0.5f, (float) Math.round(10 * (1 - .75 * locScale)) / 10);
+            Graphics2D gBlack = context.getGraphic2DForColor(Color.black); //new Color(0, 0, 0, transparency));
+            GraphicUtils.drawDottedDashLine(gBlack, centerLeftP, rowRect.y, centerLeftP, bottom);
+            if ((centerRightP - centerLeftP > 2)) {
+                GraphicUtils.drawDottedDashLine(gBlack, centerRightP, rowRect.y, centerRightP, bottom);
             }
         }
     }
@@ -376,6 +419,7 @@ public class AlignmentRenderer implements FeatureRenderer {
      * @param leaveMargin
      * @param selectedReadNames
      * @param font
+     * @param batch             batch for rectangles, or null to draw them directly
      */
     private void drawPairedAlignment(
             PairedAlignment pair,
@@ -385,7 +429,8 @@ public class AlignmentRenderer implements FeatureRenderer {
             AlignmentTrack.RenderOptions renderOptions,
             boolean leaveMargin,
             Map<String, Color> selectedReadNames,
-            Font font) {
+            Font font,
+            RectBatch batch) {
 
         //Only plot outliers
         if (renderOptions.isPairedArcView() && getOutlierStatus(pair, renderOptions) == 0) {
@@ -406,7 +451,7 @@ public class AlignmentRenderer implements FeatureRenderer {
 
         Graphics2D g = context.getGraphic2DForColor(alignmentColor1);
         g.setFont(font);
-        drawAlignment(pair.firstAlignment, rowRect, trackRect, g, context, alignmentColor1, renderOptions, leaveMargin, selectedReadNames);
+        drawAlignment(pair.firstAlignment, rowRect, trackRect, g, context, alignmentColor1, renderOptions, leaveMargin, selectedReadNames, batch);
 
         //If the paired alignment is in memory, we draw it.
         //However, we get the coordinates from the first alignment
@@ -417,7 +462,7 @@ public class AlignmentRenderer implements FeatureRenderer {
             }
             g = context.getGraphic2DForColor(alignmentColor2);
 
-            drawAlignment(pair.secondAlignment, rowRect, trackRect, g, context, alignmentColor2, renderOptions, leaveMargin, selectedReadNames);
+            drawAlignment(pair.secondAlignment, rowRect, trackRect, g, context, alignmentColor2, renderOptions, leaveMargin, selectedReadNames, batch);
         } else {
             return;
         }
@@ -479,6 +524,7 @@ public class AlignmentRenderer implements FeatureRenderer {
      * @param renderOptions
      * @param leaveMargin
      * @param selectedReadNames
+     * @param batch             batch for rectangles, or null to draw them directly
      */
     private void drawAlignment(
             Alignment alignment,
@@ -489,7 +535,8 @@ public class AlignmentRenderer implements FeatureRenderer {
             Color alignmentColor,
             AlignmentTrack.RenderOptions renderOptions,
             boolean leaveMargin,
-            Map<String, Color> selectedReadNames) {
+            Map<String, Color> selectedReadNames,
+            RectBatch batch) {
 
         double origin = context.getOrigin();
         double locScale = context.getScale();
@@ -516,6 +563,11 @@ public class AlignmentRenderer implements FeatureRenderer {
         Graphics2D terminalGrpahics = context.getGraphic2DForColor(Color.DARK_GRAY);
 
         boolean isZeroQuality = alignment.getMappingQuality() == 0 && renderOptions.flagZeroQualityAlignments;
+        boolean flagUnmappedMate = renderOptions.flagUnmappedPairs && alignment.isPaired() && !alignment.getMate().isMapped();
+        boolean isSelected = selectedReadNames.containsKey(alignment.getReadName());
+
+        // Outlined blocks are filled directly, so that the outline is not covered when the batch is flushed
+        RectBatch blockBatch = (isZeroQuality || flagUnmappedMate || isSelected) ? null : batch;
         int h = (int) Math.max(1, rowRect.getHeight() - (leaveMargin ? 2 : 0));
         int y = (int) (rowRect.getY());
 
@@ -572,12 +624,12 @@ public class AlignmentRenderer implements FeatureRenderer {
                     } else {
                         // Terminal block, but not enough height for arrow.  Indicate with a line
                         int tH = Math.max(1, h - 1);
-                        if (alignment.isNegativeStrand()) {
-                            blockShape = new Rectangle(blockPixelStart, y, blockPixelWidth, h);
-                            terminalGrpahics.drawLine(blockPixelStart, y, blockPixelStart, y + tH);
+                        int terminalX = alignment.isNegativeStrand() ? blockPixelStart : blockPixelStart + blockPixelWidth + 1;
+                        blockShape = new Rectangle(blockPixelStart, y, blockPixelWidth, h);
+                        if (blockBatch != null) {
+                            batch.add(RectBatch.MARKERS, Color.DARK_GRAY, terminalX, y, 1, tH + 1);
                         } else {
-                            blockShape = new Rectangle(blockPixelStart, y, blockPixelWidth, h);
-                            terminalGrpahics.drawLine(blockPixelStart + blockPixelWidth + 1, y, blockPixelStart + blockPixelWidth + 1, y + tH);
+                            terminalGrpahics.drawLine(terminalX, y, terminalX, y + tH);
                         }
                     }
                 else {
@@ -585,18 +637,23 @@ public class AlignmentRenderer implements FeatureRenderer {
                     blockShape = new Rectangle(blockPixelStart, y, blockPixelWidth, h);
                 }
 
-                g.fill(blockShape);
+                if (blockBatch != null && blockShape instanceof Rectangle) {
+                    Rectangle r = (Rectangle) blockShape;
+                    blockBatch.add(RectBatch.BLOCKS, alignmentColor, r.x, r.y, r.width, r.height);
+                } else {
+                    g.fill(blockShape);
+                }
 
                 if (isZeroQuality) {
                     outlineGraphics.draw(blockShape);
                 }
 
-                if (renderOptions.flagUnmappedPairs && alignment.isPaired() && !alignment.getMate().isMapped()) {
+                if (flagUnmappedMate) {
                     Graphics2D cRed = context.getGraphic2DForColor(Color.red);
                     cRed.draw(blockShape);
                 }
 
-                if (selectedReadNames.containsKey(alignment.getReadName())) {
+                if (isSelected) {
                     Color c = selectedReadNames.get(alignment.getReadName());
                     if (c == null) {
                         c = Color.blue;
@@ -613,7 +670,7 @@ public class AlignmentRenderer implements FeatureRenderer {
             if ((locScale < 5) || (AlignmentTrack.isBisulfiteColorType(renderOptions.getColorOption()) && (locScale < 100))) // Is 100 here going to kill some machines? bpb
             {
                 if (renderOptions.showMismatches || renderOptions.showAllBases) {
-                    drawBases(context, rowRect, alignment, aBlock, alignmentColor, renderOptions);
+                    drawBases(context, rowRect, alignment, aBlock, alignmentColor, renderOptions, batch);
                 }
             }
 
@@ -650,7 +707,7 @@ public class AlignmentRenderer implements FeatureRenderer {
 
         // Render insertions if locScale < 1 bp / pixel (base level)
         if (locScale < 1) {
-            drawInsertions(origin, rowRect, locScale, alignment, context, renderOptions);
+            drawInsertions(origin, rowRect, locScale, alignment, context, renderOptions, batch);
         }
 
 
@@ -679,13 +736,15 @@ public class AlignmentRenderer implements FeatureRenderer {
      * @param block
      * @param alignmentColor
      * @param renderOptions
+     * @param batch          batch for base rectangles, or null to draw them directly
      */
     private void drawBases(RenderContext context,
                            Rectangle rect,
                            Alignment baseAlignment,
                            AlignmentBlock block,
                            Color alignmentColor,
-                           RenderOptions renderOptions) {
+                           RenderOptions renderOptions,
+                           RectBatch batch) {
 
         boolean isSoftClipped = block.isSoftClipped();
 
@@ -727,13 +786,17 @@ public class AlignmentRenderer implements FeatureRenderer {
         int pY = (int) rect.getY();
         int dY = (int) rect.getHeight();
         int dX = (int) Math.max(1, (1.0 / locScale));
-        Graphics2D g = (Graphics2D) context.getGraphics().create();
-        if (PreferenceManager.getInstance().getAsBoolean(PreferenceManager.ENABLE_ANTIALISING)) {
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        }
-        if (dX >= 8) {
-            Font f = FontManager.getFont(Font.BOLD, Math.min(dX, 12));
-            g.setFont(f);
+        // Batched bases are never drawn as letters, so don't need a graphics
+        Graphics2D g = null;
+        if (batch == null) {
+            g = (Graphics2D) context.getGraphics().create();
+            if (PreferenceManager.getInstance().getAsBoolean(PreferenceManager.ENABLE_ANTIALISING)) {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+            if (dX >= 8) {
+                Font f = FontManager.getFont(Font.BOLD, Math.min(dX, 12));
+                g.setFont(f);
+            }
         }
 
         BisulfiteBaseInfo bisinfo = null;
@@ -784,7 +847,7 @@ public class AlignmentRenderer implements FeatureRenderer {
                 }
 
                 BisulfiteBaseInfo.DisplayStatus bisstatus = (bisinfo == null) ? null : bisinfo.getDisplayStatus(idx);
-                drawBase(g, color, c, pX, pY, dX, dY, bisulfiteMode, bisstatus);
+                drawBase(g, color, c, pX, pY, dX, dY, bisulfiteMode, bisstatus, batch);
             }
         }
 
@@ -876,9 +939,10 @@ public class AlignmentRenderer implements FeatureRenderer {
      * @param dY
      * @param bisulfiteMode
      * @param bisstatus
+     * @param batch
      */
     private void drawBase(Graphics2D g, Color color, char c, int pX, int pY, int dX, int dY, boolean bisulfiteMode,
-                          DisplayStatus bisstatus) {
+                          DisplayStatus bisstatus, RectBatch batch) {
         if (((dY >= 12) && (dX >= 8)) && (!bisulfiteMode || (bisulfiteMode && bisstatus.equals(DisplayStatus.CHARACTER)))) {
             g.setColor(color);
             GraphicUtils.drawCenteredText(new char[]{c}, pX, pY + 1, dX, dY - 2, g);
@@ -897,7 +961,16 @@ public class AlignmentRenderer implements FeatureRenderer {
 
             int dW = (dXi > 4 ? dXi - 1 : dXi);
 
-            if (color != null) {
+            if (color == null) {
+                return;
+            }
+            if (batch != null) {
+                if (dY < 10) {
+                    batch.add(RectBatch.BASES, color, pX0i, pY, dXi, dY);
+                } else {
+                    batch.add(RectBatch.BASES, color, pX0i, pY + 1, dW, dY - 3);
+                }
+            } else {
                 g.setColor(color);
                 if (dY < 10) {
                     g.fillRect(pX0i, pY, dXi, dY);
@@ -927,7 +1000,16 @@ public class AlignmentRenderer implements FeatureRenderer {
         return color;
     }
 
-    private void drawInsertions(double origin, Rectangle rect, double locScale, Alignment alignment, RenderContext context, RenderOptions renderOptions) {
+    private void fillMarkerRect(RenderContext context, RectBatch batch, Color color, int x, int y, int w, int h) {
+        if (batch != null) {
+            batch.add(RectBatch.MARKERS, color, x, y, w, h);
+        } else {
+            context.getGraphic2DForColor(color).fillRect(x, y, w, h);
+        }
+    }
+
+    private void drawInsertions(double origin, Rectangle rect, double locScale, Alignment alignment, RenderContext context,
+                                RenderOptions renderOptions, RectBatch batch) {
 
         AlignmentBlock[] insertions = alignment.getInsertions();
         if (insertions != null) {
@@ -945,15 +1027,13 @@ public class AlignmentRenderer implements FeatureRenderer {
 
                 if (renderOptions.isFlagLargeInsertions() &&
                         aBlock.getBases().length > renderOptions.getLargeInsertionsThreshold()) {
-                    Graphics2D gInsertion = context.getGraphic2DForColor(Color.red);
-                    gInsertion.fillRect(x - 5, y, 10, 2);
-                    gInsertion.fillRect(x - 3, y, 6, h);
-                    gInsertion.fillRect(x - 5, y + h - 2, 10, 2);
+                    fillMarkerRect(context, batch, Color.red, x - 5, y, 10, 2);
+                    fillMarkerRect(context, batch, Color.red, x - 3, y, 6, h);
+                    fillMarkerRect(context, batch, Color.red, x - 5, y + h - 2, 10, 2);
                 } else {
-                    Graphics2D gInsertion = context.getGraphic2DForColor(purple);
-                    gInsertion.fillRect(x - 2, y, 4, 2);
-                    gInsertion.fillRect(x - 1, y, 2, h);
-                    gInsertion.fillRect(x - 2, y + h - 2, 4, 2);
+                    fillMarkerRect(context, batch, purple, x - 2, y, 4, 2);
+                    fillMarkerRect(context, batch, purple, x - 1, y, 2, h);
+                    fillMarkerRect(context, batch, purple, x - 2, y + h - 2, 4, 2);
                 }
             }
         }
@@ -1230,7 +1310,7 @@ public class AlignmentRenderer implements FeatureRenderer {
 
     }
 
-    public SortedSet<Shape> curveOverlap(double x) {
+    public synchronized SortedSet<Shape> curveOverlap(double x) {
         QuadCurve2D tcurve = new QuadCurve2D.Double();
         tcurve.setCurve(x, 0, x, 0, x, 0);
         SortedSet overlap = new TreeSet(arcsByStart.headSet(tcurve, true));
@@ -1239,11 +1319,11 @@ public class AlignmentRenderer implements FeatureRenderer {
     }
 
 
-    public Alignment getAlignmentForCurve(Shape curve) {
+    public synchronized Alignment getAlignmentForCurve(Shape curve) {
         return curveMap.get(curve);
     }
 
-    public void clearCurveMaps() {
+    public synchronized void clearCurveMaps() {
         curveMap.clear();
         arcsByStart.clear();
         arcsByEnd.clear();
@@ -24,7 +24,7 @@ import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.ProgressMonitor;
 import org.broad.igv.util.ObjectCache;
 import org.broad.igv.util.RuntimeUtils;
-import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.CacheManager;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
@@ -254,9 +254,15 @@ public class AlignmentTileLoader {
 
 
     private static synchronized boolean memoryTooLow() {
-        if (RuntimeUtils.getAvailableMemoryFraction() < 0.2) {
-            LRUCache.clearCaches();
+        double available = RuntimeUtils.getAvailableMemoryFraction();
+        if (available < 0.2) {
+            // Trim caches in proportion to heap usage first, only clear them if that is not enough
+            CacheManager.trimForUsage(1 - available);
             System.gc();
+            if (RuntimeUtils.getAvailableMemoryFraction() < 0.2) {
+                CacheManager.clearAll();
+                System.gc();
+            }
             if (RuntimeUtils.getAvailableMemoryFraction() < 0.2) {
                 String msg = "Memory is low, reading terminating.";
                 MessageUtils.showMessage(msg);
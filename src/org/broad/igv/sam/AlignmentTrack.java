@@ -347,7 +347,17 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
         }
     }
 
+    /**
+     * Tracks are painted concurrently, but the renderer shared by all alignment tracks is not thread safe, and the
+     * arcs of the paired arc view must belong to one track.  Alignment tracks are rendered one at a time.
+     */
     private void renderAlignments(RenderContext context, Rectangle inputRect) {
+        synchronized (AlignmentRenderer.getInstance()) {
+            renderAlignmentRows(context, inputRect);
+        }
+    }
+
+    private void renderAlignmentRows(RenderContext context, Rectangle inputRect) {
 
         //log.debug("Render features");
         Map<String, List<AlignmentInterval.Row>> groups = dataManager.getGroups(context, renderOptions);
@@ -386,40 +396,71 @@ public class AlignmentTrack extends AbstractTrack implements AlignmentTrackEvent
             h = squishedHeight;
         }
 
+        // Rectangles are accumulated over the visible rows and filled once per color, or written directly to
+        // a raster for squished rows
+        AlignmentRenderer batchRenderer = null;
+        RectBatch batch = null;
+        List<Rectangle> batchedRows = null;
+        if (renderer instanceof AlignmentRenderer && ((AlignmentRenderer) renderer).canBatch(context, (int) h)) {
+            batchRenderer = (AlignmentRenderer) renderer;
+            Rectangle rasterBounds = null;
+            if (getDisplayMode() != DisplayMode.EXPANDED && visibleRect != null &&
+                    RectBatch.supportsRaster(context.getGraphics())) {
+                rasterBounds = inputRect.intersection(visibleRect);
+            }
+            batch = new RectBatch(rasterBounds);
+            batchedRows = new ArrayList<Rectangle>();
+        }
+
         // Loop through groups
         Graphics2D groupBorderGraphics = context.getGraphic2DForColor(AlignmentRenderer.GROUP_DIVIDER_COLOR);
         int nGroups = groups.size();
         int groupNumber = 0;
-        for (Map.Entry<String, List<AlignmentInterval.Row>> entry : groups.entrySet()) {
-            String group = entry.getKey();
-            groupNumber++;
+        try {
+            for (Map.Entry<String, List<AlignmentInterval.Row>> entry : groups.entrySet()) {
+                String group = entry.getKey();
+                groupNumber++;
 
-            // Loop through the alignment rows for this group
-            List<AlignmentInterval.Row> rows = entry.getValue();
-            for (AlignmentInterval.Row row : rows) {
+                // Loop through the alignment rows for this group
+                List<AlignmentInterval.Row> rows = entry.getValue();
+                for (AlignmentInterval.Row row : rows) {
 
-                if ((visibleRect != null && y > visibleRect.getMaxY())) {
-                    return;
-                }
-                if (renderOptions.isPairedArcView()) {
-                    y = Math.min(getY() + getHeight(), visibleRect.getMaxY());
-                    y -= h;
+                    if ((visibleRect != null && y > visibleRect.getMaxY())) {
+                        return;
+                    }
+                    if (renderOptions.isPairedArcView()) {
+                        y = Math.min(getY() + getHeight(), visibleRect.getMaxY());
+                        y -= h;
+                    }
+
+                    if (y + h > visibleRect.getY()) {
+                        Rectangle rowRectangle = new Rectangle(inputRect.x, (int) y, inputRect.width, (int) h);
+                        if (batch != null) {
+                            batchRenderer.renderAlignments(row.alignments, context, rowRectangle,
+                                    inputRect, renderOptions, leaveMargin, selectedReadNames, batch);
+                            batchedRows.add(rowRectangle);
+                        } else {
+                            renderer.renderAlignments(row.alignments, context, rowRectangle,
+                                    inputRect, renderOptions, leaveMargin, selectedReadNames);
+                        }
+                    }
+                    y += h;
                 }
 
-                if (y + h > visibleRect.getY()) {
-                    Rectangle rowRectangle = new Rectangle(inputRect.x, (int) y, inputRect.width, (int) h);
-                    renderer.renderAlignments(row.alignments, context, rowRectangle,
-                            inputRect, renderOptions, leaveMargin, selectedReadNames);
+                // Draw a subtle divider line between groups
+                if (groupNumber < nGroups) {
+                    int borderY = (int) y + GROUP_MARGIN / 2;
+                    groupBorderGraphics.drawLine(inputRect.x, borderY, inputRect.width, borderY);
                 }
-                y += h;
+                y += GROUP_MARGIN;
             }
-
-            // Draw a subtle divider line between groups
-            if (groupNumber < nGroups) {
-                int borderY = (int) y + GROUP_MARGIN / 2;
-                groupBorderGraphics.drawLine(inputRect.x, borderY, inputRect.width, borderY);
+        } finally {
+            if (batch != null) {
+                batch.flush(context);
+                for (Rectangle rowRectangle : batchedRows) {
+                    batchRenderer.drawCenterLine(context, rowRectangle);
+                }
             }
-            y += GROUP_MARGIN;
         }
 
         final int bottom = inputRect.y + inputRect.height;
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import net.sf.samtools.util.CloseableIterator;
+import org.apache.log4j.Logger;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.sam.reader.BAMFileReader;
+import org.broad.igv.sam.reader.BAMHttpReader;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Approximate multi-resolution coverage of an indexed alignment file, for views zoomed out beyond the alignment
+ * visibility window when there is no precomputed (TDF) coverage.
+ * <p/>
+ * A chromosome is built in the background from a sampled pass over the file:  the depth of a small window is
+ * counted for evenly spaced bins and spread over its neighbors, then the result is scaled to the mean depth implied
+ * by the aligned record count in the BAM index meta data.  Bins covered by loaded alignment intervals are replaced
+ * with exact counts as the intervals load.
+ */
+class CoveragePyramid {
+
+    private static Logger log = Logger.getLogger(CoveragePyramid.class);
+
+    /**
+     * Size of the finest bins, in base pairs
+     */
+    static final int BIN_SIZE = 4096;
+
+    /**
+     * Number of bins of each level combined in a bin of the next coarser level
+     */
+    static final int ZOOM_FACTOR = 4;
+
+    static final int MAX_SAMPLES = 256;
+    static final int SAMPLE_WIDTH = 1000;
+
+    /**
+     * Maximum number of records read per sample, bounding the cost of deep regions
+     */
+    static final int MAX_SAMPLE_RECORDS = 20000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "CoveragePyramid");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final ResourceLocator locator;
+    private final Map<String, Levels> levelsByChr = new HashMap<String, Levels>();
+    private final Set<String> loading = new HashSet<String>();
+    private volatile boolean disposed = false;
+
+    CoveragePyramid(ResourceLocator locator) {
+        this.locator = locator;
+    }
+
+    synchronized boolean isLoaded(String chr) {
+        return levelsByChr.containsKey(chr);
+    }
+
+    /**
+     * Build the coverage of a chromosome in the background, if it is not already built or being built.
+     *
+     * @param chr      chromosome name
+     * @param sequence sequence name of the chromosome in the alignment file
+     * @param length   chromosome length
+     * @param onLoad   run when the chromosome has been built
+     */
+    synchronized void load(final String chr, final String sequence, final int length, final Runnable onLoad) {
+
+        if (disposed || levelsByChr.containsKey(chr) || loading.contains(chr)) {
+            return;
+        }
+        loading.add(chr);
+
+        executor.execute(new Runnable() {
+            public void run() {
+                AlignmentReader reader = null;
+                try {
+                    if (disposed) {
+                        return;
+                    }
+                    reader = openReader();
+                    if (build(chr, sequence, length, reader)) {
+                        onLoad.run();
+                    }
+                } catch (Exception e) {
+                    log.error("Error computing approximate coverage for " + chr, e);
+                } finally {
+                    synchronized (CoveragePyramid.this) {
+                        loading.remove(chr);
+                    }
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            log.error("Error closing alignment reader", e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    AlignmentReader openReader() throws IOException {
+        return AlignmentReaderFactory.getReader(locator);
+    }
+
+    /**
+     * Build the coverage of a chromosome from a sampled pass over {@code reader}.
+     *
+     * @return true if the coverage was built, false if the pyramid was disposed first
+     */
+    boolean build(String chr, String sequence, int length, AlignmentReader reader) throws IOException {
+
+        int nBins = Math.max(1, (int) Math.ceil((double) length / BIN_SIZE));
+        int step = Math.max(1, (int) Math.ceil((double) nBins / MAX_SAMPLES));
+        float[] depths = new float[nBins];
+        Sample sample = new Sample();
+
+        for (int first = 0; first < nBins; first += step) {
+            if (disposed) {
+                return false;
+            }
+            int bin = Math.min(nBins - 1, first + step / 2);
+            int start = bin * BIN_SIZE + Math.max(0, (BIN_SIZE - SAMPLE_WIDTH) / 2);
+            int end = Math.min(length, start + SAMPLE_WIDTH);
+            float depth = start < end ? sample.read(reader, sequence, start, end) : 0;
+            Arrays.fill(depths, first, Math.min(nBins, first + step), depth);
+        }
+
+        // Scale the sampled depths to the mean depth implied by the index, which counts every record
+        int recordCount = getAlignedRecordCount(reader, sequence);
+        double sampledMean = 0;
+        for (float d : depths) {
+            sampledMean += d;
+        }
+        sampledMean /= nBins;
+        if (recordCount > 0 && sample.records > 0 && sampledMean > 0) {
+            double meanLength = (double) sample.bases / sample.records;
+            double indexMean = recordCount * meanLength / length;
+            float factor = (float) (indexMean / sampledMean);
+            for (int i = 0; i < nBins; i++) {
+                depths[i] *= factor;
+            }
+        }
+
+        Levels levels = new Levels(depths);
+        synchronized (this) {
+            if (disposed) {
+                return false;
+            }
+            levelsByChr.put(chr, levels);
+        }
+        return true;
+    }
+
+    private static int getAlignedRecordCount(AlignmentReader reader, String sequence) {
+        if (reader instanceof BAMFileReader) {
+            return ((BAMFileReader) reader).getAlignedRecordCount(sequence);
+        } else if (reader instanceof BAMHttpReader) {
+            return ((BAMHttpReader) reader).getAlignedRecordCount(sequence);
+        }
+        return -1;
+    }
+
+    /**
+     * Replace the approximate depth of bins lying entirely within {@code counts} with their exact depth.
+     *
+     * @param chr
+     * @param counts
+     * @return true if any bins were updated
+     */
+    synchronized boolean setExactCounts(String chr, AlignmentCounts counts) {
+        Levels levels = levelsByChr.get(chr);
+        if (levels == null) {
+            return false;
+        }
+        int first = (counts.getStart() + BIN_SIZE - 1) / BIN_SIZE;
+        int last = Math.min(levels.depths[0].length, counts.getEnd() / BIN_SIZE) - 1;
+        for (int bin = first; bin <= last; bin++) {
+            long total = 0;
+            int binStart = bin * BIN_SIZE;
+            for (int pos = binStart; pos < binStart + BIN_SIZE; pos++) {
+                total += counts.getTotalCount(pos);
+            }
+            levels.setExact(bin, (float) total / BIN_SIZE);
+        }
+        return first <= last;
+    }
+
+    /**
+     * Return scores for the bins of the coarsest level no wider than a pixel, or the finest level if all are wider.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param scale base pairs per pixel
+     * @return the scores, or null if the chromosome has not been built
+     */
+    synchronized List<LocusScore> getSummaryScores(String chr, int start, int end, double scale) {
+        Levels levels = levelsByChr.get(chr);
+        if (levels == null) {
+            return null;
+        }
+
+        int level = 0;
+        while (level + 1 < levels.depths.length && levels.getBinSize(level + 1) <= scale) {
+            level++;
+        }
+        int binSize = levels.getBinSize(level);
+        float[] depths = levels.depths[level];
+
+        int first = Math.max(0, start / binSize);
+        int last = Math.min(depths.length - 1, end / binSize);
+        List<LocusScore> scores = new ArrayList<LocusScore>(Math.max(0, last - first + 1));
+        for (int bin = first; bin <= last; bin++) {
+            scores.add(new BasicScore(bin * binSize, (bin + 1) * binSize, depths[bin]));
+        }
+        return scores;
+    }
+
+    /**
+     * Stop building, and discard the coverage
+     */
+    synchronized void dispose() {
+        disposed = true;
+        levelsByChr.clear();
+    }
+
+    /**
+     * The bins of a chromosome, finest level first
+     */
+    private static class Levels {
+
+        final float[][] depths;
+        final boolean[] exact;
+
+        Levels(float[] finest) {
+            int nLevels = 1;
+            for (int n = finest.length; n > 1; n = (n + ZOOM_FACTOR - 1) / ZOOM_FACTOR) {
+                nLevels++;
+            }
+            depths = new float[nLevels][];
+            depths[0] = finest;
+            for (int level = 1; level < nLevels; level++) {
+                depths[level] = new float[(depths[level - 1].length + ZOOM_FACTOR - 1) / ZOOM_FACTOR];
+                for (int bin = 0; bin < depths[level].length; bin++) {
+                    updateBin(level, bin);
+                }
+            }
+            exact = new boolean[finest.length];
+        }
+
+        int getBinSize(int level) {
+            int binSize = BIN_SIZE;
+            for (int i = 0; i < level; i++) {
+                binSize *= ZOOM_FACTOR;
+            }
+            return binSize;
+        }
+
+        void setExact(int bin, float depth) {
+            depths[0][bin] = depth;
+            exact[bin] = true;
+            for (int level = 1; level < depths.length; level++) {
+                bin /= ZOOM_FACTOR;
+                updateBin(level, bin);
+            }
+        }
+
+        /**
+         * Set a bin to the mean of the bins it combines
+         */
+        private void updateBin(int level, int bin) {
+            float[] finer = depths[level - 1];
+            int first = bin * ZOOM_FACTOR;
+            int last = Math.min(finer.length, first + ZOOM_FACTOR);
+            float sum = 0;
+            for (int i = first; i < last; i++) {
+                sum += finer[i];
+            }
+            depths[level][bin] = sum / (last - first);
+        }
+    }
+
+    /**
+     * Counts the depth of sample windows, accumulating the number and length of the records read
+     */
+    private static class Sample {
+
+        final PreferenceManager prefs = PreferenceManager.getInstance();
+        final boolean filterFailedReads = prefs.getAsBoolean(PreferenceManager.SAM_FILTER_FAILED_READS);
+        final boolean filterSecondaryAlignments = prefs.getAsBoolean(PreferenceManager.SAM_FILTER_SECONDARY_ALIGNMENTS);
+        final boolean showDuplicates = prefs.getAsBoolean(PreferenceManager.SAM_SHOW_DUPLICATES);
+        final int qualityThreshold = prefs.getAsInt(PreferenceManager.SAM_QUALITY_THRESHOLD);
+
+        long records;
+        long bases;
+
+        /**
+         * Return the mean depth of a window.  If it has too many records, the mean is taken over the part of the
+         * window before the start of the last record read, all of whose records have been read.
+         */
+        float read(AlignmentReader reader, String sequence, int start, int end) throws IOException {
+
+            int[] depth = new int[end - start];
+            int countedEnd = end;
+            int nRecords = 0;
+
+            CloseableIterator<Alignment> iter = reader.query(sequence, start, end, false);
+            try {
+                while (iter != null && iter.hasNext()) {
+                    Alignment alignment = iter.next();
+                    if (!alignment.isMapped() || (!showDuplicates && alignment.isDuplicate()) ||
+                            (filterFailedReads && alignment.isVendorFailedRead()) ||
+                            (filterSecondaryAlignments && !alignment.isPrimary()) ||
+                            alignment.getMappingQuality() < qualityThreshold) {
+                        continue;
+                    }
+                    if (++nRecords > MAX_SAMPLE_RECORDS) {
+                        countedEnd = Math.max(start + 1, Math.min(end, alignment.getStart()));
+                        break;
+                    }
+                    records++;
+                    bases += alignment.getEnd() - alignment.getStart();
+
+                    AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+                    if (blocks == null) {
+                        addDepth(depth, start, alignment.getStart(), alignment.getEnd());
+                    } else {
+                        for (AlignmentBlock block : blocks) {
+                            if (!block.isSoftClipped()) {
+                                addDepth(depth, start, block.getStart(), block.getEnd());
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if (iter != null) {
+                    iter.close();
+                }
+            }
+
+            long total = 0;
+            for (int i = 0; i < countedEnd - start; i++) {
+                total += depth[i];
+            }
+            return (float) total / (countedEnd - start);
+        }
+
+        private static void addDepth(int[] depth, int origin, int start, int end) {
+            int first = Math.max(0, start - origin);
+            int last = Math.min(depth.length, end - origin);
+            for (int i = first; i < last; i++) {
+                depth[i]++;
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.data.CoverageDataSource;
+import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.LocusScore;
 import org.broad.igv.feature.genome.Genome;
@@ -84,6 +85,7 @@ public class CoverageTrack extends AbstractTrack {
     AlignmentDataManager dataManager;
     CoverageDataSource dataSource;
     DataRenderer dataSourceRenderer;
+    CoveragePyramid coveragePyramid;
     IntervalRenderer intervalRenderer;
     PreferenceManager prefs;
     JMenuItem dataRangeItem;
@@ -129,6 +131,21 @@ public class CoverageTrack extends AbstractTrack {
         this.dataManager.getEventBus().register(this);
     }
 
+    /**
+     * Return the approximate coverage used when zoomed out beyond the visibility window, creating it if needed.
+     * Returns null if there is precomputed coverage, or the alignments are not indexed.
+     */
+    private synchronized CoveragePyramid getCoveragePyramid() {
+        if (coveragePyramid == null && dataSource == null && dataManager != null && dataManager.hasIndex() &&
+                prefs.getAsBoolean(PreferenceManager.SAM_COVERAGE_PYRAMID)) {
+            if (dataSourceRenderer == null) {
+                dataSourceRenderer = new BarChartRenderer();
+            }
+            coveragePyramid = new CoveragePyramid(getResourceLocator());
+        }
+        return coveragePyramid;
+    }
+
     public void setDataSource(CoverageDataSource dataSource) {
         this.dataSource = dataSource;
         dataSourceRenderer = new BarChartRenderer();
@@ -154,8 +171,19 @@ public class CoverageTrack extends AbstractTrack {
      */
     @Subscribe
     public void receiveDataLoaded(DataLoadedEvent e){
+        CoveragePyramid pyramid = coveragePyramid;
+        if (pyramid != null) {
+            AlignmentInterval interval = dataManager.getLoadedInterval(e.context.getReferenceFrame().getName());
+            if (interval != null && interval.getCounts() != null) {
+                pyramid.setExactCounts(interval.getChr(), interval.getCounts());
+            }
+        }
         rescale();
-        e.context.getReferenceFrame().getEventBus().post(new ViewChange.Result());
+
+        // Alignment loads are posted on the data manager's bus, repost on the frame's to invalidate rendered tiles
+        ReferenceFrame frame = e.context.getReferenceFrame();
+        frame.getEventBus().post(new DataLoadedEvent(e.context, this));
+        frame.getEventBus().post(new ViewChange.Result());
     }
 
     public void rescale() {
@@ -209,10 +237,55 @@ public class CoverageTrack extends AbstractTrack {
                 dataSourceRenderer.render(scores, context, rect, this);
             }
 
+        } else if (!context.getChr().equals(Globals.CHR_ALL)) {
+            renderApproximateCoverage(context, rect);
         }
         drawBorder(context, rect);
     }
 
+    /**
+     * Return the callback run when the coverage pyramid of a chromosome is built.  It posts a {@link DataLoadedEvent}
+     * on the frame's bus, on which the data panel painters discard the track's tiles and repaint.
+     */
+    static Runnable createLoadCallback(final RenderContext context, final Track track) {
+        return new Runnable() {
+            public void run() {
+                context.getReferenceFrame().getEventBus().post(new DataLoadedEvent(context, track));
+            }
+        };
+    }
+
+    /**
+     * Render coverage from the coverage pyramid, starting to build it for the chromosome if needed
+     */
+    private void renderApproximateCoverage(final RenderContext context, Rectangle rect) {
+        CoveragePyramid pyramid = getCoveragePyramid();
+        if (pyramid == null) {
+            return;
+        }
+        String chr = context.getChr();
+        List<LocusScore> scores = pyramid.getSummaryScores(chr, (int) context.getOrigin(),
+                (int) context.getEndLocation(), context.getScale());
+        if (scores == null) {
+            Chromosome chromosome = genome == null ? null : genome.getChromosome(chr);
+            if (chromosome != null) {
+                pyramid.load(chr, dataManager.getSequenceName(chr), chromosome.getLength(),
+                        createLoadCallback(context, this));
+            }
+            return;
+        }
+
+        if (autoScale) {
+            float max = 10;
+            for (LocusScore score : scores) {
+                max = Math.max(max, score.getScore());
+            }
+            boolean isLog = (getDataRange().getType()) == DataRange.Type.LOG;
+            super.setDataRange(new DataRange(0, 0, max, isLog));
+        }
+        dataSourceRenderer.render(scores, context, rect, this);
+    }
+
     private void drawBorder(RenderContext context, Rectangle rect) {
         // Draw border
         context.getGraphic2DForColor(Color.gray).drawLine(
@@ -267,7 +340,7 @@ public class CoverageTrack extends AbstractTrack {
     private String getPrecomputedValueString(String chr, double position, ReferenceFrame frame) {
 
         if (dataSource == null) {
-            return "";
+            return getApproximateValueString(chr, position, frame);
         }
         int zoom = Math.max(0, frame.getZoom());
         List<LocusScore> scores = dataSource.getSummaryScoresForRange(chr, (int) position - 10, (int) position + 10, zoom);
@@ -284,6 +357,27 @@ public class CoverageTrack extends AbstractTrack {
         }
     }
 
+    private String getApproximateValueString(String chr, double position, ReferenceFrame frame) {
+        CoveragePyramid pyramid = coveragePyramid;
+        if (pyramid == null) {
+            return "";
+        }
+        List<LocusScore> scores = pyramid.getSummaryScores(chr, (int) position, (int) position + 1, frame.getScale());
+        if (scores == null || scores.isEmpty()) {
+            return "";
+        }
+        return "Approximate mean count: " + scores.get(0).getScore();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        CoveragePyramid pyramid = coveragePyramid;
+        if (pyramid != null) {
+            pyramid.dispose();
+        }
+    }
+
     public float getRegionScore(String chr, int start, int end, int zoom, RegionScoreType type, String frameName) {
         return 0;
     }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.track.RenderContext;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rectangles accumulated per color while rendering alignment rows, and filled in one pass per color when flushed.
+ * Layers are flushed in order, so that bases are drawn over blocks and insertion markers over bases.
+ * <p/>
+ * In raster mode the rectangles are written directly to the pixels of an image covering {@code bounds}, which is
+ * then drawn with a single call.  This is only appropriate for views with many small rectangles, such as squished
+ * pileups, drawn to a raster device.
+ */
+class RectBatch {
+
+    static final int BLOCKS = 0;
+    static final int BASES = 1;
+    static final int MARKERS = 2;
+
+    private static final int LAYER_COUNT = 3;
+
+    private final Map<Color, Rects>[] layers;
+    private final Rectangle bounds;
+
+    /**
+     * @param bounds pixel bounds of the raster, or null to fill the rectangles with {@code Graphics2D}
+     */
+    @SuppressWarnings("unchecked")
+    RectBatch(Rectangle bounds) {
+        this.bounds = bounds;
+        layers = new Map[LAYER_COUNT];
+        for (int i = 0; i < LAYER_COUNT; i++) {
+            layers[i] = new LinkedHashMap<Color, Rects>();
+        }
+    }
+
+    /**
+     * Return true if direct raster writes can be used with the given graphics.  Vector targets, such as
+     * SVG exports and printers, have no device configuration or a printer device.
+     *
+     * @param g
+     * @return
+     */
+    static boolean supportsRaster(Graphics2D g) {
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+        return gc != null && gc.getDevice().getType() != GraphicsDevice.TYPE_PRINTER;
+    }
+
+    boolean isRaster() {
+        return bounds != null;
+    }
+
+    void add(int layer, Color color, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        Rects rects = layers[layer].get(color);
+        if (rects == null) {
+            rects = new Rects();
+            layers[layer].put(color, rects);
+        }
+        rects.add(x, y, w, h);
+    }
+
+    boolean isEmpty() {
+        for (Map<Color, Rects> layer : layers) {
+            if (!layer.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draw and clear the accumulated rectangles
+     *
+     * @param context
+     */
+    void flush(RenderContext context) {
+        if (isEmpty()) {
+            return;
+        }
+        if (bounds == null) {
+            fill(context);
+        } else if (!bounds.isEmpty()) {
+            BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            write(pixels);
+            context.getGraphics().drawImage(image, bounds.x, bounds.y, null);
+        }
+        for (Map<Color, Rects> layer : layers) {
+            layer.clear();
+        }
+    }
+
+    private void fill(RenderContext context) {
+        // Rectangles have integer coordinates, antialiasing would only slow the fill
+        Graphics2D g = (Graphics2D) context.getGraphics().create();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            for (Map<Color, Rects> layer : layers) {
+                for (Map.Entry<Color, Rects> entry : layer.entrySet()) {
+                    g.setColor(entry.getKey());
+                    Rects rects = entry.getValue();
+                    int[] c = rects.coords;
+                    for (int i = 0; i < rects.size; i += 4) {
+                        g.fillRect(c[i], c[i + 1], c[i + 2], c[i + 3]);
+                    }
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Write the rectangles to premultiplied ARGB pixels of an image the size of {@code bounds}
+     *
+     * @param pixels
+     */
+    void write(int[] pixels) {
+        final int width = bounds.width;
+        final int height = bounds.height;
+        for (Map<Color, Rects> layer : layers) {
+            for (Map.Entry<Color, Rects> entry : layer.entrySet()) {
+                Color color = entry.getKey();
+                int alpha = color.getAlpha();
+                int argb = premultiply(color.getRGB());
+                Rects rects = entry.getValue();
+                int[] c = rects.coords;
+                for (int i = 0; i < rects.size; i += 4) {
+                    int x0 = Math.max(0, c[i] - bounds.x);
+                    int y0 = Math.max(0, c[i + 1] - bounds.y);
+                    int x1 = Math.min(width, c[i] - bounds.x + c[i + 2]);
+                    int y1 = Math.min(height, c[i + 1] - bounds.y + c[i + 3]);
+                    if (x0 >= x1) {
+                        continue;
+                    }
+                    for (int y = y0; y < y1; y++) {
+                        int offset = y * width;
+                        if (alpha == 255) {
+                            Arrays.fill(pixels, offset + x0, offset + x1, argb);
+                        } else {
+                            for (int x = offset + x0; x < offset + x1; x++) {
+                                pixels[x] = over(argb, alpha, pixels[x]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        int r = ((argb >> 16) & 0xff) * a / 255;
+        int g = ((argb >> 8) & 0xff) * a / 255;
+        int b = (argb & 0xff) * a / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Composite a premultiplied source pixel over a premultiplied destination pixel
+     */
+    private static int over(int src, int srcAlpha, int dst) {
+        int f = 255 - srcAlpha;
+        int a = srcAlpha + (dst >>> 24) * f / 255;
+        int r = ((src >> 16) & 0xff) + ((dst >> 16) & 0xff) * f / 255;
+        int g = ((src >> 8) & 0xff) + ((dst >> 8) & 0xff) * f / 255;
+        int b = (src & 0xff) + (dst & 0xff) * f / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Growable buffer of x, y, width, height coordinates
+     */
+    private static class Rects {
+
+        int[] coords = new int[64];
+        int size;
+
+        void add(int x, int y, int w, int h) {
+            if (size + 4 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            coords[size++] = x;
+            coords[size++] = y;
+            coords[size++] = w;
+            coords[size++] = h;
+        }
+    }
+}
@@ -151,7 +151,7 @@ public class SpliceJunctionFinderTrack extends FeatureTrack implements Alignment
         AlignmentTrackEvent.Type type = e.getType();
         switch (type) {
             case SPLICE_JUNCTION:
-                packedFeaturesMap.clear();
+                clearPackedFeatures();
         }
 
     }
@@ -18,6 +18,7 @@ import org.broad.igv.exceptions.DataLoadException;
 import org.broad.igv.goby.GobyAlignmentQueryReader;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.IndexFileCache;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 
@@ -100,6 +101,7 @@ public class AlignmentReaderFactory {
     static AlignmentReader getBamListReader(String listFile, boolean requireIndex) {
 
         List<AlignmentReader> readers = new ArrayList();
+        List<ResourceLocator> locators = new ArrayList<ResourceLocator>();
         BufferedReader reader = null;
         try {
             reader = ParsingUtils.openBufferedReader(listFile);
@@ -121,9 +123,17 @@ public class AlignmentReaderFactory {
                     }
 
                     f = FileUtils.getAbsolutePath(f, listFile);
-                    readers.add(AlignmentReaderFactory.getReader(f, requireIndex));
+                    locators.add(new ResourceLocator(f));
                 }
             }
+
+            // Fetch remote indexes concurrently before opening the readers
+            if (requireIndex) {
+                IndexFileCache.prefetchIndexes(locators);
+            }
+            for (ResourceLocator locator : locators) {
+                readers.add(AlignmentReaderFactory.getReader(locator, requireIndex));
+            }
             if (readers.size() == 1) {
                 return readers.get(0);
             } else {
@@ -105,6 +105,13 @@ public class BAMFileReader implements AlignmentReader {
 
     }
 
+    /**
+     * Return the number of aligned records on a sequence, from the index meta data, or -1 if unknown.
+     */
+    public int getAlignedRecordCount(String sequence) {
+        return SamUtils.getAlignedRecordCount(reader, sequence);
+    }
+
     public CloseableIterator<Alignment> iterator() {
         return new WrappedIterator(reader.iterator());
     }
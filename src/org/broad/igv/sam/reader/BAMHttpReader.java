@@ -26,6 +26,7 @@ import org.broad.igv.sam.Alignment;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.IndexFileCache;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.stream.IGVSeekableBufferedStream;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
@@ -33,7 +34,6 @@ import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 
@@ -51,8 +51,6 @@ public class BAMHttpReader implements AlignmentReader {
     // Length of day in milliseconds
     public static final long oneDay = 24 * 60 * 60 * 1000;
 
-    static Hashtable<String, File> indexFileCache = new Hashtable<String, File>();
-
     URL url;
     SAMFileHeader header;
     File indexFile;
@@ -116,6 +114,13 @@ public class BAMHttpReader implements AlignmentReader {
     }
 
 
+    /**
+     * Return the number of aligned records on a sequence, from the index meta data, or -1 if unknown.
+     */
+    public int getAlignedRecordCount(String sequence) {
+        return SamUtils.getAlignedRecordCount(reader, sequence);
+    }
+
     public CloseableIterator<Alignment> iterator() {
         try {
             if (reader == null) {
@@ -181,96 +186,36 @@ public class BAMHttpReader implements AlignmentReader {
 
     File getIndexFile(ResourceLocator locator) throws IOException {
 
-        log.debug("Getting index for " + url + ". Index path " + locator.getBamIndexPath());
-        String urlString = url.toString();
-        indexFile = getTmpIndexFile(urlString);
-
-        // Crude staleness check -- if more than a day old discard
-        long age = System.currentTimeMillis() - indexFile.lastModified();
-        if (age > oneDay) {
-            indexFile.delete();
-        }
-
-        if (!indexFile.exists() || indexFile.length() < 1) {
-            loadIndexFile(locator.getBamIndexPath(), indexFile);
-            indexFile.deleteOnExit();
-        }
-
-        return indexFile;
-
-    }
-
-    private File getTmpIndexFile(String bamURL) throws IOException {
-        File indexFile = indexFileCache.get(bamURL);
-        if (indexFile == null) {
-            indexFile = File.createTempFile("index_", ".bai", DirectoryManager.getCacheDirectory());
-            indexFile.deleteOnExit();
-            indexFileCache.put(bamURL, indexFile);
-        }
-        return indexFile;
-    }
-
-    private void loadIndexFile(String indexPath, File indexFile) throws IOException {
-        InputStream is = null;
-        OutputStream os = null;
+        String indexPath = locator.getBamIndexPath();
+        log.debug("Getting index for " + url + ". Index path " + indexPath);
 
         try {
-            URL indexURL = new URL(indexPath);
-            os = new FileOutputStream(indexFile);
-            boolean foundIndex = true;
-            try {
-                is = HttpUtils.getInstance().openConnectionStream(indexURL);
-            } catch (FileNotFoundException e) {
-                // Try other index convention
-                indexPath = indexPath.replace(".bam.bai", ".bai");
-                indexURL = new URL(indexPath);
+            return IndexFileCache.getIndexFile(indexPath);
+        } catch (FileNotFoundException e) {
+            // Try other index convention
+            String altPath = indexPath.replace(".bam.bai", ".bai");
+            if (!altPath.equals(indexPath)) {
                 try {
-                    is = org.broad.igv.util.HttpUtils.getInstance().openConnectionStream(indexURL);
+                    return IndexFileCache.getIndexFile(altPath);
                 } catch (FileNotFoundException e1) {
-
-                    if (!Globals.isHeadless() && IGV.hasInstance()) {
-                        String tmp = MessageUtils.showInputDialog("Index file not found. Enter path to index file", indexPath);
-                        if (tmp != null) {
-                            try {
-                                indexURL = new URL(tmp);
-                                is = org.broad.igv.util.HttpUtils.getInstance().openConnectionStream(indexURL);
-                            } catch (FileNotFoundException e2) {
-                                foundIndex = false;
-                            }
-                        } else {
-                            foundIndex = false;
-                        }
-                    }
+                    // Fall through
                 }
-
-            }
-            if (!foundIndex) {
-                String msg = "Index file not found: " + indexPath;
-                throw new DataLoadException(msg, indexPath);
-            }
-            byte[] buf = new byte[512000];
-            int bytesRead;
-            while ((bytesRead = is.read(buf)) != -1) {
-                os.write(buf, 0, bytesRead);
             }
+        }
 
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    log.error(e.getMessage(), e);
-                }
-            }
-            if (os != null) {
+        if (!Globals.isHeadless() && IGV.hasInstance()) {
+            String tmp = MessageUtils.showInputDialog("Index file not found. Enter path to index file", indexPath);
+            if (tmp != null) {
                 try {
-                    os.close();
-                } catch (IOException e) {
-                    log.error(e.getMessage(), e);
+                    return IndexFileCache.getIndexFile(tmp);
+                } catch (FileNotFoundException e2) {
+                    indexPath = tmp;
                 }
             }
-
         }
+
+        String msg = "Index file not found: " + indexPath;
+        throw new DataLoadException(msg, indexPath);
     }
 
 
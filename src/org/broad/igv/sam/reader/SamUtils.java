@@ -14,9 +14,11 @@ package org.broad.igv.sam.reader;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import net.sf.samtools.BAMIndexMetaData;
 import net.sf.samtools.Cigar;
 import net.sf.samtools.CigarElement;
 import net.sf.samtools.CigarOperator;
+import net.sf.samtools.SAMFileReader;
 import net.sf.samtools.SAMRecord;
 import net.sf.samtools.util.StringUtil;
 import org.apache.log4j.Logger;
@@ -39,6 +41,31 @@ public class SamUtils {
     private static final byte ZERO_BYTE = "0".getBytes()[0];
     private static final byte NINE_BYTE = "9".getBytes()[0];
 
+    /**
+     * Return the number of aligned records on a sequence recorded in the meta data of a BAM index, or -1
+     * if the reader has no index or the index has no meta data for the sequence.
+     *
+     * @param reader
+     * @param sequence
+     * @return
+     */
+    public static int getAlignedRecordCount(SAMFileReader reader, String sequence) {
+        if (reader == null || !reader.hasIndex()) {
+            return -1;
+        }
+        try {
+            int refIndex = reader.getFileHeader().getSequenceIndex(sequence);
+            if (refIndex < 0) {
+                return -1;
+            }
+            BAMIndexMetaData metaData = reader.getIndex().getMetaData(refIndex);
+            return metaData == null ? -1 : metaData.getAlignedRecordCount();
+        } catch (Exception e) {
+            log.error("Error reading index meta data for " + sequence, e);
+            return -1;
+        }
+    }
+
     public static FeatureIndex getIndexFor(String samPath) {
 
         String idxPath = samPath + ".sai";
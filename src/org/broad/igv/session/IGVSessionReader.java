@@ -34,6 +34,7 @@ import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.FilterElement.BooleanOperator;
 import org.broad.igv.util.FilterElement.Operator;
+import org.broad.igv.util.IndexFileCache;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.Utilities;
@@ -558,6 +559,9 @@ public class IGVSessionReader implements SessionReader {
 
             final List<String> errors = new ArrayList<String>();
 
+            // Start downloading remote indexes for all files up front, alignment files are loaded sequentially below
+            IndexFileCache.prefetchIndexes(dataFiles);
+
             // Load files concurrently -- TODO, put a limit on # of threads?
             List<Thread> threads = new ArrayList(dataFiles.size());
             long t0 = System.currentTimeMillis();
@@ -29,6 +29,7 @@ import org.broad.igv.track.TrackType;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.ui.panel.FrameManager;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 
 import java.util.*;
 
@@ -43,7 +44,7 @@ public class TDFDataSource implements CoverageDataSource {
     int maxPrecomputedZoom = 6;
     private int trackNumber = 0;
     String trackName;
-    LRUCache<String, List<LocusScore>> summaryScoreCache = new LRUCache(this, 20);
+    LRUCache<String, List<LocusScore>> summaryScoreCache = new LRUCache(this, 20, 50000, ManagedCache.PRIORITY_NORMAL);
     Genome genome;
     WindowFunction windowFunction = WindowFunction.mean;
     List<WindowFunction> availableFunctions;
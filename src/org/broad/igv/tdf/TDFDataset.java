@@ -17,6 +17,7 @@ package org.broad.igv.tdf;
 
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -41,7 +42,7 @@ public class TDFDataset extends TDFEntity {
     long[] tilePositions;  // File position in TDF file
     int[] tileSizes;       // Tile size in bytes
     int nTiles;
-    LRUCache<String, TDFTile> cache = new LRUCache(this, 20);
+    LRUCache<String, TDFTile> cache = new LRUCache(this, 20, 50000, ManagedCache.PRIORITY_NORMAL);
     // TODO -- refactor this dependency out
     TDFReader reader;
 
@@ -26,6 +26,7 @@ import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.IOException;
@@ -50,8 +51,9 @@ public class TDFReader {
     private String trackLine;
     private String[] trackNames;
     private String genomeId;
-    LRUCache<String, TDFGroup> groupCache = new LRUCache(this, 20);
-    LRUCache<String, TDFDataset> datasetCache = new LRUCache(this, 20);
+    // Headers are small and each costs a read to restore
+    LRUCache<String, TDFGroup> groupCache = new LRUCache(this, 20, 1000, ManagedCache.PRIORITY_HIGH);
+    LRUCache<String, TDFDataset> datasetCache = new LRUCache(this, 20, 10000, ManagedCache.PRIORITY_HIGH);
     TDFTile wgTile;
 
     Map<WindowFunction, Double> valueCache = new HashMap();
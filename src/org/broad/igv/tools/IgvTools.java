@@ -26,6 +26,8 @@ import org.broad.igv.feature.genome.FastaUtils;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeDescriptor;
 import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.feature.store.FeatureStoreReader;
+import org.broad.igv.feature.store.FeatureStoreWriter;
 import org.broad.igv.feature.tribble.CodecFactory;
 import org.broad.igv.sam.reader.AlignmentIndexer;
 import org.broad.igv.tdf.TDFUtils;
@@ -71,6 +73,7 @@ public class IgvTools {
     static final String CMD_GUI = "gui";
     static final String CMD_HELP = "help";
     static final String CMD_BAMTOBED = "bamtobed";
+    static final String CMD_TOIFS = "toifs";
 
     /**
      * Stream for writing messages to the user, which we
@@ -96,6 +99,7 @@ public class IgvTools {
             "sort    sort an alignment file by start position. ",
             "index   index an alignment file",
             "toTDF    convert an input file (cn, gct, wig) to tiled data format (tdf)",
+            "toIFS    convert a sorted feature file (bed, gff, ...) to an indexed binary feature store (ifs)",
             "count   compute coverage density for an alignment file",
             "formatexp  center, scale, and log2 normalize an expression file",
             "gui      Start the gui",
@@ -366,6 +370,10 @@ public class IgvTools {
                 int binSize = (Integer) parser.getOptionValue(binSizeOption, defaultBinSize);
                 String outputDir = (String) parser.getOptionValue(outputDirOption, null);
                 doIndex(ifile, typeString, outputDir, indexType, binSize);
+            } else if (command.equals(CMD_TOIFS)) {
+                validateArgsLength(nonOptionArgs, 3, basic_syntax);
+                String ofile = nonOptionArgs[2];
+                doToFeatureStore(ifile, ofile);
             } else if (command.equals(CMD_FORMATEXP)) {
                 validateArgsLength(nonOptionArgs, 3, basic_syntax);
                 File inputFile = new File(nonOptionArgs[1]);
@@ -788,6 +796,28 @@ public class IgvTools {
     }
 
 
+    /**
+     * Convert a sorted feature file to a binary feature store.  The ".ifs" extension is appended to the output
+     * file name if missing.
+     *
+     * @param ifile
+     * @param ofile
+     * @throws IOException
+     */
+    public void doToFeatureStore(String ifile, String ofile) throws IOException {
+        if (!FeatureStoreReader.isFeatureStore(ofile)) {
+            ofile = ofile + ".ifs";
+        }
+        File outputFile = new File(ofile);
+        try {
+            long count = FeatureStoreWriter.convert(ifile, outputFile);
+            userMessageWriter.println("Wrote " + count + " features to " + outputFile.getAbsolutePath());
+        } catch (TribbleException.MalformedFeatureFile e) {
+            outputFile.delete();
+            throw new PreprocessingException(e.getMessage() + ". Use igvtools sort to sort the file.");
+        }
+    }
+
     public void doWIBtoWIG(File txtFile, File wibFile, File wigFile, String trackLine) {
         UCSCUtils.convertWIBFile(txtFile, wibFile, wigFile, trackLine);
     }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tools.IgvTools;
+import org.broad.igv.util.collections.IntArrayList;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.linear.LinearIndexCreator;
+
+import java.io.*;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+
+/**
+ * Searches all chromosomes of a genome for a motif, writing the matches on both strands to an indexed bed file
+ * which can be loaded as an ordinary feature track.
+ * <p/>
+ * Chromosomes are split into chunks which are searched concurrently.  Results are written in genome order as
+ * chunks complete, with a bounded number of chunks in flight, and indexed as they are written.
+ */
+public class GenomeMotifScanner {
+
+    private static Logger log = Logger.getLogger(GenomeMotifScanner.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 10000000;
+
+    private final MotifMatcher matcher;
+    private final Genome genome;
+    private final String name;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param matcher
+     * @param genome
+     * @param name    feature name written for each match
+     */
+    public GenomeMotifScanner(MotifMatcher matcher, Genome genome, String name) {
+        this.matcher = matcher;
+        this.genome = genome;
+        this.name = name;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Search the genome, writing matches to {@code outputFile} and its index to {@code outputFile}.idx
+     *
+     * @param outputFile bed file
+     * @return the number of matches found
+     * @throws IOException
+     */
+    public long scan(File outputFile) throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread t = new Thread(runnable, "GenomeMotifScanner");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        LinearIndexCreator indexCreator = new LinearIndexCreator();
+        indexCreator.initialize(outputFile, IgvTools.LINEAR_BIN_SIZE);
+
+        BedWriter writer = new BedWriter(outputFile, indexCreator);
+        LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+        int maxPending = 2 * Math.max(1, threadCount);
+        long count = 0;
+        try {
+            for (String chr : genome.getAllChromosomeNames()) {
+                Chromosome chromosome = genome.getChromosome(chr);
+                if (chromosome == null) {
+                    continue;
+                }
+                int chrLength = chromosome.getLength();
+                for (int start = 0; start < chrLength; start += chunkSize) {
+                    pending.add(executor.submit(new Chunk(chr, start, Math.min(chrLength, start + chunkSize))));
+                    while (pending.size() >= maxPending) {
+                        count += writer.write(getResult(pending.removeFirst()));
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                count += writer.write(getResult(pending.removeFirst()));
+            }
+        } finally {
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            writer.close();
+        }
+
+        File indexFile = new File(outputFile.getAbsolutePath() + ".idx");
+        if (writer.position > 0) {
+            Index index = indexCreator.finalizeIndex(writer.position);
+            IgvTools.writeTribbleIndex(index, indexFile.getAbsolutePath());
+        } else {
+            indexFile.delete();
+        }
+        log.info("Found " + count + " matches, wrote " + outputFile.getAbsolutePath());
+        return count;
+    }
+
+    private static Chunk getResult(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Search of matches starting in [start, end) of a chromosome.
+     */
+    private class Chunk implements Callable<Chunk> {
+
+        final String chr;
+        final int start;
+        final int end;
+        final IntArrayList posStarts = new IntArrayList();
+        final IntArrayList negStarts = new IntArrayList();
+
+        Chunk(String chr, int start, int end) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Chunk call() throws Exception {
+            // Extend the sequence so matches which begin in this chunk are found
+            byte[] seq = genome.getSequence(chr, start, end + matcher.getLength() - 1);
+            matcher.search(seq, posStarts, negStarts);
+            return this;
+        }
+    }
+
+    /**
+     * Writes matches as bed records, in start order, recording file positions in the index
+     */
+    private class BedWriter {
+
+        final OutputStream os;
+        final LinearIndexCreator indexCreator;
+        long position = 0;
+
+        BedWriter(File file, LinearIndexCreator indexCreator) throws IOException {
+            this.os = new BufferedOutputStream(new FileOutputStream(file));
+            this.indexCreator = indexCreator;
+        }
+
+        int write(Chunk chunk) throws IOException {
+            int length = matcher.getLength();
+            int p = 0;
+            int n = 0;
+            while (p < chunk.posStarts.size() || n < chunk.negStarts.size()) {
+                boolean positive = n >= chunk.negStarts.size() ||
+                        (p < chunk.posStarts.size() && chunk.posStarts.get(p) <= chunk.negStarts.get(n));
+                int start = chunk.start + (positive ? chunk.posStarts.get(p++) : chunk.negStarts.get(n++));
+                Strand strand = positive ? Strand.POSITIVE : Strand.NEGATIVE;
+
+                indexCreator.addFeature(new BasicFeature(chunk.chr, start, start + length, strand), position);
+                String line = chunk.chr + "\t" + start + "\t" + (start + length) + "\t" + name + "\t0\t" +
+                        (positive ? "+" : "-") + "\n";
+                byte[] bytes = line.getBytes();
+                os.write(bytes);
+                position += bytes.length;
+            }
+            return chunk.posStarts.size() + chunk.negStarts.size();
+        }
+
+        void close() throws IOException {
+            os.close();
+        }
+    }
+}
@@ -13,6 +13,7 @@ package org.broad.igv.tools.motiffinder;
 
 import com.google.common.collect.Iterators;
 import net.sf.samtools.util.SequenceUtil;
+import org.broad.igv.PreferenceManager;
 import org.broad.igv.dev.api.IGVPlugin;
 import org.broad.igv.feature.*;
 import org.broad.igv.feature.genome.Genome;
@@ -24,6 +25,12 @@ import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.PanelName;
+import org.broad.igv.ui.util.FileDialogUtils;
+import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.util.LongRunningTask;
+import org.broad.igv.util.NamedRunnable;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.collections.IntArrayList;
 import org.broad.tribble.Feature;
 
 import javax.swing.*;
@@ -34,8 +41,10 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -64,6 +73,11 @@ public class MotifFinderSource implements FeatureSource<Feature> {
 
     @XmlAttribute private Strand strand;
 
+    /**
+     * Compiled form of {@code pattern}, null if it can only be searched as a regular expression
+     */
+    private MotifMatcher motifMatcher;
+
     @SubtlyImportant
     private MotifFinderSource(){}
 
@@ -126,6 +140,10 @@ public class MotifFinderSource implements FeatureSource<Feature> {
      * @return
      */
     public static Iterator<Feature> search(String pattern, Strand strand, String chr, int posStart, byte[] sequence){
+        MotifMatcher motifMatcher = MotifMatcher.compile(pattern);
+        if(motifMatcher != null){
+            return search(motifMatcher, strand, chr, posStart, sequence);
+        }
         switch(strand){
             case POSITIVE:
                 return searchSingleStrand(pattern, strand, chr, posStart, sequence);
@@ -142,10 +160,48 @@ public class MotifFinderSource implements FeatureSource<Feature> {
         }
     }
 
+    /**
+     * Search using a compiled motif. Features are returned in ascending order for either strand,
+     * and {@code sequence} is not modified.
+     * @param motifMatcher
+     * @param strand POSITIVE or NEGATIVE
+     * @param chr
+     * @param posStart
+     * @param sequence
+     * @return
+     */
+    static Iterator<Feature> search(MotifMatcher motifMatcher, Strand strand, String chr, int posStart, byte[] sequence){
+        IntArrayList starts = new IntArrayList();
+        switch(strand){
+            case POSITIVE:
+                motifMatcher.search(sequence, starts, null);
+                break;
+            case NEGATIVE:
+                motifMatcher.search(sequence, null, starts);
+                break;
+            default:
+                throw new IllegalArgumentException("Strand must be either POSITIVE or NEGATIVE");
+        }
+
+        int length = motifMatcher.getLength();
+        List<Feature> features = new ArrayList<Feature>(starts.size());
+        for(int ii=0; ii < starts.size(); ii++){
+            int start = posStart + starts.get(ii);
+            features.add(new BasicFeature(chr, start, start + length, strand));
+        }
+        return features.iterator();
+    }
+
     @Override
     public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
         byte[] seq = genome.getSequence(chr, start, end);
-        if(seq == null) Collections.emptyList().iterator();
+        if(seq == null) return Collections.<Feature>emptyList().iterator();
+        if(motifMatcher == null){
+            motifMatcher = MotifMatcher.compile(this.pattern);
+        }
+        if(motifMatcher != null){
+            return search(motifMatcher, this.strand, chr, start, seq);
+        }
         return search(this.pattern, this.strand, chr, start, seq);
     }
 
@@ -207,6 +263,51 @@ public class MotifFinderSource implements FeatureSource<Feature> {
             });
 
             IGV.getInstance().addOtherToolMenu(menuItem);
+
+            JMenuItem genomeMenuItem = new JMenuItem("Find Motif in Genome...");
+            genomeMenuItem.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    MotifFinderDialog dialog = new MotifFinderDialog(IGV.getMainFrame());
+                    dialog.setVisible(true);
+
+                    String pattern = dialog.getInputPattern();
+                    if (pattern == null) return;
+
+                    final MotifMatcher motifMatcher = MotifMatcher.compile(pattern);
+                    if (motifMatcher == null) {
+                        MessageUtils.showMessage("Genome-wide search requires a fixed length pattern.\n" +
+                                "Patterns may contain IUPAC codes, '.' and character classes only.");
+                        return;
+                    }
+
+                    final String trackName = dialog.getPosTrackName();
+                    final File outputFile = FileDialogUtils.chooseFile("Save motif matches",
+                            PreferenceManager.getInstance().getLastTrackDirectory(),
+                            new File(trackName.replaceAll("[^A-Za-z0-9_.-]", "_") + ".bed"), FileDialogUtils.SAVE);
+                    if (outputFile == null) return;
+
+                    LongRunningTask.submit(new NamedRunnable() {
+                        public void run() {
+                            try {
+                                Genome genome = GenomeManager.getInstance().getCurrentGenome();
+                                new GenomeMotifScanner(motifMatcher, genome, trackName).scan(outputFile);
+                                ResourceLocator locator = new ResourceLocator(outputFile.getAbsolutePath());
+                                locator.setName(trackName);
+                                IGV.getInstance().loadTracks(Arrays.asList(locator));
+                            } catch (IOException ex) {
+                                MessageUtils.showErrorMessage("Error searching genome for motif", ex);
+                            }
+                        }
+
+                        public String getName() {
+                            return "Find motif in genome";
+                        }
+                    });
+                }
+            });
+
+            IGV.getInstance().addOtherToolMenu(genomeMenuItem);
         }
     }
 
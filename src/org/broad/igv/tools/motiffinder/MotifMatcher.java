@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import net.sf.samtools.util.SequenceUtil;
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bit-parallel (shift-and) matcher for fixed length motifs, operating directly on sequence bytes.
+ * <p/>
+ * Supported patterns are those produced by {@link MotifFinderDialog#convertMotifToRegex(String)}: a sequence of
+ * literal letters, '.' and character classes such as "[M,A,C]".  Matching is case insensitive and reports
+ * overlapping matches, equivalent to the regular expression search in {@link MotifFinderSource}.
+ * <p/>
+ * The first 64 positions of the pattern are matched with a single word of state per strand, remaining positions
+ * are verified for each candidate.  The negative strand is searched in the same pass, by matching the reverse
+ * complement of the pattern against the positive strand sequence.
+ */
+public class MotifMatcher {
+
+    private static final int MAX_STATE_BITS = 64;
+
+    private final int length;
+    private final StrandMatcher positive;
+    private final StrandMatcher negative;
+
+    private MotifMatcher(List<boolean[]> positions) {
+        this.length = positions.size();
+
+        // The reverse complement accepts b at position j if the complement of b is accepted at length - 1 - j
+        List<boolean[]> rcPositions = new ArrayList<boolean[]>(length);
+        for (int j = length - 1; j >= 0; j--) {
+            boolean[] accepts = positions.get(j);
+            boolean[] rcAccepts = new boolean[256];
+            for (int b = 0; b < 256; b++) {
+                rcAccepts[b] = accepts[SequenceUtil.complement((byte) b) & 0xFF];
+            }
+            rcPositions.add(rcAccepts);
+        }
+
+        this.positive = new StrandMatcher(positions);
+        this.negative = new StrandMatcher(rcPositions);
+    }
+
+    /**
+     * Compile the pattern.
+     *
+     * @param pattern
+     * @return the matcher, or null if the pattern is not a fixed length sequence of letters and classes
+     */
+    public static MotifMatcher compile(String pattern) {
+
+        if (pattern == null || pattern.length() == 0) {
+            return null;
+        }
+
+        List<boolean[]> positions = new ArrayList<boolean[]>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            boolean[] accepts = new boolean[256];
+            if (c == '.') {
+                for (int b = 0; b < 256; b++) {
+                    accepts[b] = b != '\n' && b != '\r';
+                }
+                i++;
+            } else if (c == '[') {
+                int close = pattern.indexOf(']', i);
+                if (close < 0) {
+                    return null;
+                }
+                for (int k = i + 1; k < close; k++) {
+                    char cc = pattern.charAt(k);
+                    if (cc == ',') {
+                        continue;
+                    }
+                    if (!Character.isLetter(cc) || cc > 127) {
+                        return null;
+                    }
+                    accept(accepts, cc);
+                }
+                i = close + 1;
+            } else if (Character.isLetter(c) && c <= 127) {
+                accept(accepts, c);
+                i++;
+            } else {
+                return null;
+            }
+            positions.add(accepts);
+        }
+        return new MotifMatcher(positions);
+    }
+
+    private static void accept(boolean[] accepts, char c) {
+        accepts[Character.toUpperCase(c)] = true;
+        accepts[Character.toLowerCase(c)] = true;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Search the sequence for matches on either or both strands.  Match start positions, relative to the start
+     * of the sequence and in positive strand coordinates, are added in ascending order.
+     *
+     * @param sequence  positive strand sequence, not modified
+     * @param posStarts list for positive strand matches, or null to skip the positive strand
+     * @param negStarts list for negative strand matches, or null to skip the negative strand
+     */
+    public void search(byte[] sequence, IntArrayList posStarts, IntArrayList negStarts) {
+
+        if (sequence == null || sequence.length < length) {
+            return;
+        }
+
+        final long[] posMasks = positive.masks;
+        final long[] negMasks = negative.masks;
+        final long posHit = positive.hitBit;
+        final long negHit = negative.hitBit;
+        final int prefixLength = positive.prefixLength;
+        final boolean searchPos = posStarts != null;
+        final boolean searchNeg = negStarts != null;
+
+        long posState = 0;
+        long negState = 0;
+        for (int i = 0; i < sequence.length; i++) {
+            int b = sequence[i] & 0xFF;
+            if (searchPos) {
+                posState = ((posState << 1) | 1) & posMasks[b];
+                if ((posState & posHit) != 0) {
+                    int start = i - prefixLength + 1;
+                    if (positive.verify(sequence, start)) {
+                        posStarts.add(start);
+                    }
+                }
+            }
+            if (searchNeg) {
+                negState = ((negState << 1) | 1) & negMasks[b];
+                if ((negState & negHit) != 0) {
+                    int start = i - prefixLength + 1;
+                    if (negative.verify(sequence, start)) {
+                        negStarts.add(start);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Compiled pattern for one strand
+     */
+    private static class StrandMatcher {
+
+        final int prefixLength;
+
+        final long hitBit;
+
+        /**
+         * Bit j of masks[b] is set if byte b is accepted at prefix position j
+         */
+        final long[] masks = new long[256];
+
+        /**
+         * Accepted bytes for the positions following the prefix
+         */
+        final boolean[][] suffix;
+
+        StrandMatcher(List<boolean[]> positions) {
+            prefixLength = Math.min(MAX_STATE_BITS, positions.size());
+            hitBit = 1L << (prefixLength - 1);
+            for (int j = 0; j < prefixLength; j++) {
+                boolean[] accepts = positions.get(j);
+                for (int b = 0; b < 256; b++) {
+                    if (accepts[b]) {
+                        masks[b] |= 1L << j;
+                    }
+                }
+            }
+            suffix = positions.subList(prefixLength, positions.size()).toArray(new boolean[0][]);
+        }
+
+        /**
+         * Verify the positions following the prefix for a match starting at start
+         */
+        boolean verify(byte[] sequence, int start) {
+            int offset = start + prefixLength;
+            if (offset + suffix.length > sequence.length) {
+                return false;
+            }
+            for (int j = 0; j < suffix.length; j++) {
+                if (!suffix[j][sequence[offset + j] & 0xFF]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -721,6 +721,13 @@ public abstract class AbstractTrack implements Track {
         this.colorScale = colorScale;
     }
 
+    /**
+     * @return true if a color scale has been set, otherwise {@link #getColorScale()} returns a default scale
+     */
+    public boolean hasColorScale() {
+        return colorScale != null;
+    }
+
     /**
      * @param top the top to set
      */
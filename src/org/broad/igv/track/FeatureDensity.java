@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.track;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.tribble.CloseableTribbleIterator;
+import org.broad.tribble.Feature;
+import org.broad.tribble.FeatureReader;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.linear.LinearIndex;
+import org.broad.tribble.util.LittleEndianInputStream;
+import org.broad.tribble.util.LittleEndianOutputStream;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Feature counts of a file in fixed size bins, per chromosome, used to draw feature density when zoomed out
+ * beyond the visibility window.  Counts are either estimated from the bins of a linear tribble index, or
+ * counted by a full scan of the file, which can be saved and read back.  Chromosomes are keyed by their
+ * IGV names in both cases.
+ */
+class FeatureDensity {
+
+    private static Logger log = Logger.getLogger(FeatureDensity.class);
+
+    static final int VERSION = 1;
+
+    /**
+     * Bin size of counts from a full scan
+     */
+    static final int SCAN_BIN_SIZE = 10000;
+
+    private static final int BINS_PER_TILE = 700;
+
+    private final Map<String, Bins> chromosomes = new LinkedHashMap<String, Bins>();
+
+    static class Bins {
+        final int binSize;
+        final float[] counts;
+
+        Bins(int binSize, float[] counts) {
+            this.binSize = binSize;
+            this.counts = counts;
+        }
+    }
+
+    Bins getBins(String chr) {
+        return chromosomes.get(chr);
+    }
+
+    /**
+     * Estimate densities from a linear index.  Each bin of the index covers the features starting in it, so the
+     * feature count of a bin is its size in bytes times the average number of features per byte of the
+     * chromosome.
+     * <p/>
+     * Tribble does not expose the bin width or feature counts of a linear index, so they are read back from the
+     * index's serialized form, see {@link Index#write(LittleEndianOutputStream)}.
+     *
+     * @param index
+     * @param genome genome used to convert the file's chromosome names to IGV names, or null
+     * @return the densities, or null if the index is not a linear index
+     */
+    static FeatureDensity fromIndex(Index index, Genome genome) {
+        if (!(index instanceof LinearIndex)) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            LittleEndianOutputStream los = new LittleEndianOutputStream(bytes);
+            index.write(los);
+            los.close();
+
+            LittleEndianInputStream lis = new LittleEndianInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            skipIndexHeader(lis);
+
+            FeatureDensity density = new FeatureDensity();
+            int nChromosomes = lis.readInt();
+            for (int i = 0; i < nChromosomes; i++) {
+                String name = lis.readString();
+                int binWidth = lis.readInt();
+                int nBins = lis.readInt();
+                lis.readInt();  // longest feature
+                lis.readInt();  // unused
+                int nFeatures = lis.readInt();
+                long[] positions = new long[nBins + 1];
+                for (int b = 0; b <= nBins; b++) {
+                    positions[b] = lis.readLong();
+                }
+
+                long totalSize = positions[nBins] - positions[0];
+                if (nBins == 0 || totalSize <= 0 || nFeatures <= 0) {
+                    continue;
+                }
+                double featuresPerByte = ((double) nFeatures) / totalSize;
+                float[] counts = new float[nBins];
+                for (int b = 0; b < nBins; b++) {
+                    counts[b] = (float) ((positions[b + 1] - positions[b]) * featuresPerByte);
+                }
+                String chr = genome == null ? name : genome.getChromosomeAlias(name);
+                density.chromosomes.put(chr, new Bins(binWidth, counts));
+            }
+            return density;
+        } catch (IOException e) {
+            log.error("Error reading feature density from index", e);
+            return null;
+        }
+    }
+
+    /**
+     * Skip the header of a serialized tribble index
+     *
+     * @param lis
+     * @throws IOException
+     */
+    private static void skipIndexHeader(LittleEndianInputStream lis) throws IOException {
+        lis.readInt();      // magic number
+        lis.readInt();      // type
+        lis.readInt();      // version
+        lis.readString();   // indexed file
+        lis.readLong();     // indexed file size
+        lis.readLong();     // indexed file timestamp
+        lis.readString();   // MD5
+        lis.readInt();      // flags
+        int nProperties = lis.readInt();
+        for (int i = 0; i < nProperties; i++) {
+            lis.readString();
+            lis.readString();
+        }
+    }
+
+    /**
+     * Count the features of a file
+     *
+     * @param reader
+     * @param binSize
+     * @return
+     * @throws IOException
+     */
+    static FeatureDensity scan(FeatureReader reader, int binSize) throws IOException {
+        Map<String, float[]> counts = new LinkedHashMap<String, float[]>();
+        CloseableTribbleIterator<Feature> iter = reader.iterator();
+        try {
+            String lastChr = null;
+            float[] chrCounts = null;
+            while (iter.hasNext()) {
+                Feature f = iter.next();
+                if (f == null) continue;
+                if (!f.getChr().equals(lastChr)) {
+                    lastChr = f.getChr();
+                    chrCounts = counts.get(lastChr);
+                    if (chrCounts == null) {
+                        chrCounts = new float[1000];
+                        counts.put(lastChr, chrCounts);
+                    }
+                }
+                int bin = Math.max(0, f.getStart()) / binSize;
+                if (bin >= chrCounts.length) {
+                    chrCounts = Arrays.copyOf(chrCounts, Math.max(bin + 1, 2 * chrCounts.length));
+                    counts.put(lastChr, chrCounts);
+                }
+                chrCounts[bin]++;
+            }
+        } finally {
+            iter.close();
+        }
+
+        FeatureDensity density = new FeatureDensity();
+        for (Map.Entry<String, float[]> entry : counts.entrySet()) {
+            float[] chrCounts = entry.getValue();
+            int n = chrCounts.length;
+            while (n > 0 && chrCounts[n - 1] == 0) n--;
+            density.chromosomes.put(entry.getKey(), new Bins(binSize, Arrays.copyOf(chrCounts, n)));
+        }
+        return density;
+    }
+
+    /**
+     * Return the densities of the visible bins, merging index bins to about the size of a tile bin at
+     * {@code zoom}.
+     *
+     * @param chr
+     * @param start
+     * @param end
+     * @param zoom
+     * @param chrLength length of the chromosome, or 0 if unknown
+     * @return the densities, or null if there are none for {@code chr}
+     */
+    List<LocusScore> getScores(String chr, int start, int end, int zoom, int chrLength) {
+        Bins bins = chromosomes.get(chr);
+        if (bins == null) {
+            return null;
+        }
+        if (chrLength <= 0) {
+            chrLength = bins.counts.length * bins.binSize;
+        }
+
+        double tileBinSize = ((double) chrLength) / (BINS_PER_TILE * Math.pow(2, Math.max(0, zoom)));
+        int factor = Math.max(1, (int) (tileBinSize / bins.binSize));
+        long binSize = ((long) factor) * bins.binSize;
+
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        int firstBin = (int) (Math.max(0, start) / binSize);
+        int lastBin = (int) Math.min((bins.counts.length - 1) / factor, end / binSize);
+        for (int b = firstBin; b <= lastBin; b++) {
+            float count = 0;
+            int from = b * factor;
+            int to = Math.min(bins.counts.length, from + factor);
+            for (int i = from; i < to; i++) {
+                count += bins.counts[i];
+            }
+            if (count > 0) {
+                int binStart = (int) Math.min(Integer.MAX_VALUE, b * binSize);
+                int binEnd = (int) Math.min(Integer.MAX_VALUE, (b + 1) * binSize);
+                scores.add(new BasicScore(binStart, binEnd, count));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Save the densities, recording the size and modification time of the data file they were counted from.
+     * The file is written under a temporary name and renamed.
+     *
+     * @param file
+     * @param dataFile
+     * @throws IOException
+     */
+    void write(File file, File dataFile) throws IOException {
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            dos.writeInt(VERSION);
+            dos.writeLong(dataFile.length());
+            dos.writeLong(dataFile.lastModified());
+            dos.writeInt(chromosomes.size());
+            for (Map.Entry<String, Bins> entry : chromosomes.entrySet()) {
+                Bins bins = entry.getValue();
+                dos.writeUTF(entry.getKey());
+                dos.writeInt(bins.binSize);
+                dos.writeInt(bins.counts.length);
+                for (float count : bins.counts) {
+                    dos.writeFloat(count);
+                }
+            }
+        } finally {
+            dos.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not rename " + tmpFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * @param file
+     * @param dataFile the data file the densities were counted from
+     * @return the densities, or null if there are none or {@code dataFile} has changed since they were saved
+     * @throws IOException
+     */
+    static FeatureDensity read(File file, File dataFile) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (dis.readInt() != VERSION || dis.readLong() != dataFile.length() ||
+                    dis.readLong() != dataFile.lastModified()) {
+                return null;
+            }
+            FeatureDensity density = new FeatureDensity();
+            int nChromosomes = dis.readInt();
+            for (int i = 0; i < nChromosomes; i++) {
+                String chr = dis.readUTF();
+                int binSize = dis.readInt();
+                float[] counts = new float[dis.readInt()];
+                for (int b = 0; b < counts.length; b++) {
+                    counts[b] = dis.readFloat();
+                }
+                density.chromosomes.put(chr, new Bins(binSize, counts));
+            }
+            return density;
+        } finally {
+            dis.close();
+        }
+    }
+}
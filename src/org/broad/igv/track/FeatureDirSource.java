@@ -22,6 +22,7 @@ import org.broad.igv.util.HttpUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 import org.broad.tribble.Feature;
 
 import java.io.BufferedReader;
@@ -48,7 +49,7 @@ public class FeatureDirSource implements FeatureSource {
 
     public FeatureDirSource(ResourceLocator locator, Genome genome) throws IOException {
         this.genome = genome;
-        featureCache = new LRUCache(this, 3);
+        featureCache = new LRUCache(this, 3, 1000000, ManagedCache.PRIORITY_LOW);
         rootLocator = locator;
         setRootDir(locator.getPath());
 
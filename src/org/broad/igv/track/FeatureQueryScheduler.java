@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.track;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.WaitCursorManager;
+import org.broad.tribble.Feature;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Schedules the feature queries of a track's source.  Queries run one at a time per source, in the order
+ * requested.  Each reference frame has at most one outstanding request:
+ * <ul>
+ * <li>a request covered by a queued or running query joins it,</li>
+ * <li>a request overlapping a queued query on the same chromosome extends that query,</li>
+ * <li>a frame moving on leaves its previous query, which is cancelled once no frame is waiting for it.</li>
+ * </ul>
+ * A query delivers one {@link PackedFeatures} to all the frames waiting for it.  A query may extend the features
+ * loaded by a previous one, see {@link PackedFeatures#extend}, in which case only the parts of its interval not
+ * already loaded are read.
+ * <p/>
+ * Queries of all sources share a bounded pool of threads.
+ */
+class FeatureQueryScheduler {
+
+    private static Logger log = Logger.getLogger(FeatureQueryScheduler.class);
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "FeatureQuery");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Receives the results of queries
+     */
+    interface Listener {
+
+        /**
+         * @param packedFeatures the features
+         * @param contexts       render contexts of the frames which requested them
+         */
+        void featuresLoaded(PackedFeatures packedFeatures, Collection<RenderContext> contexts);
+
+        void loadFailed(String chr, int start, int end, Exception e, Collection<RenderContext> contexts);
+    }
+
+    static class Query {
+        final String chr;
+        int start;
+        int end;
+        final PackedFeatures base;
+        final Map<String, RenderContext> frames = new LinkedHashMap<String, RenderContext>();
+        volatile boolean cancelled;
+
+        Query(String chr, int start, int end, PackedFeatures base) {
+            this.chr = chr;
+            this.start = start;
+            this.end = end;
+            this.base = base;
+        }
+
+        boolean contains(String chr, int start, int end) {
+            return this.chr.equals(chr) && start >= this.start && end <= this.end;
+        }
+
+        boolean overlaps(String chr, int start, int end) {
+            return this.chr.equals(chr) && start <= this.end && end >= this.start;
+        }
+    }
+
+    private final FeatureSource source;
+    private final String trackName;
+    private final Listener listener;
+
+    private final LinkedList<Query> queue = new LinkedList<Query>();
+    private final Map<String, Query> frameQueries = new HashMap<String, Query>();
+    private Query running;
+
+    FeatureQueryScheduler(FeatureSource source, String trackName, Listener listener) {
+        this.source = source;
+        this.trackName = trackName;
+        this.listener = listener;
+    }
+
+    /**
+     * Request the features of a frame.
+     *
+     * @param chr
+     * @param start      start of the interval the frame needs
+     * @param end        end of the interval the frame needs
+     * @param queryStart start of the interval to query, at most {@code start}
+     * @param queryEnd   end of the interval to query, at least {@code end}
+     * @param base       features to extend, overlapping the query interval, or null
+     * @param context    render context of the frame
+     * @param async      false to run the query in the calling thread
+     */
+    void request(String chr, int start, int end, int queryStart, int queryEnd, PackedFeatures base,
+                 RenderContext context, boolean async) {
+
+        String frame = context.getReferenceFrame().getName();
+        Query query;
+        synchronized (this) {
+            Query previous = frameQueries.get(frame);
+            if (previous != null) {
+                if (previous.contains(chr, start, end) && async) {
+                    previous.frames.put(frame, context);
+                    return;
+                }
+                leave(previous, frame);
+            }
+
+            if (!async) {
+                query = new Query(chr, queryStart, queryEnd, base);
+                query.frames.put(frame, context);
+            } else {
+                query = findQuery(chr, start, end, queryStart, queryEnd, base);
+                query.frames.put(frame, context);
+                frameQueries.put(frame, query);
+                scheduleNext();
+                return;
+            }
+        }
+        run(query);
+    }
+
+    /**
+     * Cancel all queries, e.g. when loaded features are discarded or the chromosome changes
+     */
+    synchronized void cancelAll() {
+        for (Query query : queue) {
+            query.cancelled = true;
+        }
+        queue.clear();
+        if (running != null) {
+            running.cancelled = true;
+        }
+        frameQueries.clear();
+    }
+
+    synchronized boolean isLoading() {
+        return running != null || !queue.isEmpty();
+    }
+
+    synchronized boolean isRequested(String frame) {
+        return frameQueries.containsKey(frame);
+    }
+
+    /**
+     * Return a running or queued query which covers, or can be extended to cover, the interval, or queue a new one
+     */
+    private Query findQuery(String chr, int start, int end, int queryStart, int queryEnd, PackedFeatures base) {
+        if (running != null && !running.cancelled && running.contains(chr, start, end)) {
+            return running;
+        }
+        for (Query query : queue) {
+            if (query.contains(chr, start, end)) {
+                return query;
+            }
+        }
+        for (Query query : queue) {
+            if (query.base == base && query.overlaps(chr, queryStart, queryEnd)) {
+                query.start = Math.min(query.start, queryStart);
+                query.end = Math.max(query.end, queryEnd);
+                return query;
+            }
+        }
+        Query query = new Query(chr, queryStart, queryEnd, base);
+        queue.add(query);
+        return query;
+    }
+
+    private void leave(Query query, String frame) {
+        query.frames.remove(frame);
+        frameQueries.remove(frame);
+        if (query.frames.isEmpty()) {
+            query.cancelled = true;
+            queue.remove(query);
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if (running != null || queue.isEmpty()) {
+            return;
+        }
+        final Query query = queue.removeFirst();
+        running = query;
+        executor.execute(new Runnable() {
+            public void run() {
+                WaitCursorManager.CursorToken token = IGV.hasInstance() ? WaitCursorManager.showWaitCursor() : null;
+                try {
+                    FeatureQueryScheduler.this.run(query);
+                } finally {
+                    if (token != null) {
+                        WaitCursorManager.removeWaitCursor(token);
+                    }
+                    synchronized (FeatureQueryScheduler.this) {
+                        running = null;
+                        scheduleNext();
+                    }
+                }
+            }
+        });
+    }
+
+    private void run(final Query query) {
+        // Cancelled while waiting for a thread
+        if (query.cancelled) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("Loading features: %s:%d-%d", query.chr, query.start, query.end));
+        }
+
+        Collection<RenderContext> contexts;
+        try {
+            PackedFeatures packedFeatures;
+            PackedFeatures base = query.base;
+            if (base != null) {
+                Iterator<Feature> left = query.start < base.getStart() ?
+                        getFeatures(query, query.start, base.getStart()) : null;
+                Iterator<Feature> right = query.end > base.getEnd() ?
+                        getFeatures(query, base.getEnd(), query.end) : null;
+                packedFeatures = base.extend(query.start, query.end, left, right);
+            } else {
+                Iterator<Feature> iter = getFeatures(query, query.start, query.end);
+                if (iter == null) {
+                    packedFeatures = new PackedFeatures(query.chr, query.start, query.end);
+                } else {
+                    packedFeatures = new PackedFeatures(query.chr, query.start, query.end, iter, trackName);
+                }
+            }
+            contexts = complete(query);
+            if (contexts != null) {
+                listener.featuresLoaded(packedFeatures, contexts);
+            }
+        } catch (Exception e) {
+            contexts = complete(query);
+            if (contexts != null) {
+                listener.loadFailed(query.chr, query.start, query.end, e, contexts);
+            }
+        }
+    }
+
+    private Iterator<Feature> getFeatures(Query query, int start, int end) throws IOException {
+        Iterator<Feature> iter = source.getFeatures(query.chr, start, end);
+        return iter == null ? null : new CancellableIterator(iter, query);
+    }
+
+    /**
+     * @return the frames waiting for {@code query}, or null if it was cancelled
+     */
+    private synchronized Collection<RenderContext> complete(Query query) {
+        if (query.cancelled) {
+            return null;
+        }
+        for (String frame : query.frames.keySet()) {
+            if (frameQueries.get(frame) == query) {
+                frameQueries.remove(frame);
+            }
+        }
+        return new ArrayList<RenderContext>(query.frames.values());
+    }
+
+    /**
+     * Stops iterating when the query is cancelled, so a superseded query does not read to the end
+     */
+    private static class CancellableIterator implements Iterator<Feature> {
+
+        private final Iterator<Feature> iter;
+        private final Query query;
+
+        CancellableIterator(Iterator<Feature> iter, Query query) {
+            this.iter = iter;
+            this.query = query;
+        }
+
+        public boolean hasNext() {
+            return !query.cancelled && iter.hasNext();
+        }
+
+        public Feature next() {
+            return iter.next();
+        }
+
+        public void remove() {
+            iter.remove();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.broad.igv.tools.motiffinder.MotifFinderSource;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.UIConstants;
 import org.broad.igv.ui.event.DataLoadedEvent;
+import org.broad.igv.ui.event.ViewChange;
 import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.util.*;
@@ -101,7 +102,10 @@ public class FeatureTrack extends AbstractTrack {
 
     protected FeatureSource source;
 
-    protected boolean featuresLoading = false;
+    /**
+     * Schedules the queries of {@link #source}, created on first use
+     */
+    private FeatureQueryScheduler queryScheduler;
 
     //track which row of the expanded track is selected by the user.
     //Selection goes away if tracks are collpased
@@ -617,6 +621,17 @@ public class FeatureTrack extends AbstractTrack {
         int start = (int) context.getOrigin();
         int end = (int) context.getEndLocation();
         if (packedFeatures == null || !packedFeatures.containsInterval(chr, start, end)) {
+
+            // Features loaded for another frame covering the same interval are shared
+            synchronized (packedFeaturesMap) {
+                for (PackedFeatures<IGVFeature> pf : packedFeaturesMap.values()) {
+                    if (pf.containsInterval(chr, start, end)) {
+                        packedFeaturesMap.put(frame.getName(), pf);
+                        return;
+                    }
+                }
+            }
+
             try {
                 context.getReferenceFrame().getEventBus().unregister(FeatureTrack.this);
             } catch (IllegalArgumentException e) {
@@ -712,7 +727,7 @@ public class FeatureTrack extends AbstractTrack {
      */
     protected void renderFeatures(RenderContext context, Rectangle inputRect) {
 
-        if (featuresLoading || fatalLoadError) {
+        if (fatalLoadError) {
             return;
         }
 
@@ -794,7 +809,7 @@ public class FeatureTrack extends AbstractTrack {
 
     /**
      * Loads and segregates features into rows such that they do not overlap.  Loading is done in a background
-     * thread.
+     * thread, see {@link FeatureQueryScheduler}.
      *
      * @param chr
      * @param start
@@ -804,77 +819,74 @@ public class FeatureTrack extends AbstractTrack {
 
         // TODO -- improve or remove the need for this test.  We know that FeatureCollectionSource has all the data
         // in memory, and can by run synchronously
-        boolean aSync = !(source instanceof FeatureCollectionSource);
-
-
-        NamedRunnable runnable = new NamedRunnable() {
-            public void run() {
-                try {
-                    featuresLoading = true;
-                    if (log.isTraceEnabled()) {
-                        log.trace(String.format("Loading features: %s:%d-%d", chr, start, end));
-                    }
-
-
-                    int delta = (end - start) / 2;
-                    int expandedStart = start - delta;
-                    int expandedEnd = end + delta;
+        boolean aSync = !(source instanceof FeatureCollectionSource) &&
+                !Globals.isBatch() && SwingUtilities.isEventDispatchThread();
+
+        int delta = (end - start) / 2;
+        int expandedStart = start - delta;
+        int expandedEnd = end + delta;
+
+        //Make sure we are only querying within the chromosome
+        //we allow for somewhat pathological cases of start
+        //being negative and end being outside, but
+        //only if directly queried. Our expansion should not
+        //set start < 0 or end > chromosomeLength
+        if (start >= 0) {
+            expandedStart = Math.max(0, expandedStart);
+        }
 
-                    //Make sure we are only querying within the chromosome
-                    //we allow for somewhat pathological cases of start
-                    //being negative and end being outside, but
-                    //only if directly queried. Our expansion should not
-                    //set start < 0 or end > chromosomeLength
-                    if (start >= 0) {
-                        expandedStart = Math.max(0, expandedStart);
-                    }
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        if (genome != null) {
+            Chromosome c = genome.getChromosome(chr);
+            if (c != null && end < c.getLength()) expandedEnd = Math.min(c.getLength(), expandedEnd);
+        }
 
+        // After a pan the loaded features are extended rather than reloaded.  Features within another half
+        // window of the expanded interval are kept.
+        PackedFeatures base = packedFeaturesMap.get(context.getReferenceFrame().getName());
+        if (base != null && base.getClass() == PackedFeatures.class && base.getChr().equals(chr) &&
+                base.getStart() < expandedEnd && base.getEnd() > expandedStart) {
+            expandedStart = Math.min(expandedStart, Math.max(base.getStart(), expandedStart - delta));
+            expandedEnd = Math.max(expandedEnd, Math.min(base.getEnd(), expandedEnd + delta));
+        } else {
+            base = null;
+        }
 
-                    Genome genome = GenomeManager.getInstance().getCurrentGenome();
-                    if (genome != null) {
-                        Chromosome c = genome.getChromosome(chr);
-                        if (c != null && end < c.getLength()) expandedEnd = Math.min(c.getLength(), expandedEnd);
-                    }
+        if (aSync) {
+            context.getReferenceFrame().getEventBus().register(FeatureTrack.this);
+        }
+        getQueryScheduler().request(chr, start, end, expandedStart, expandedEnd, base, context, aSync);
+    }
 
-                    Iterator<Feature> iter = source.getFeatures(chr, expandedStart, expandedEnd);
-                    if (iter == null) {
-                        PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd);
-                        packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
-                    } else {
-                        //dhmay putting a switch in for different packing behavior in splice junction tracks.
-                        //This should probably be switched somewhere else, but that would require a big refactor.
-                        PackedFeatures pf = new PackedFeatures(chr, expandedStart, expandedEnd, iter, getName());
-                        packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+    synchronized FeatureQueryScheduler getQueryScheduler() {
+        if (queryScheduler == null) {
+            queryScheduler = new FeatureQueryScheduler(source, getName(), new FeatureQueryScheduler.Listener() {
+                public void featuresLoaded(PackedFeatures packedFeatures, Collection<RenderContext> contexts) {
+                    for (RenderContext context : contexts) {
+                        packedFeaturesMap.put(context.getReferenceFrame().getName(), packedFeatures);
                     }
 
                     //Now that features are loaded, we may need to repaint
                     //to accommodate.
-                    context.getReferenceFrame().getEventBus().post(new DataLoadedEvent(context));
-                } catch (Exception e) {
+                    for (RenderContext context : contexts) {
+                        context.getReferenceFrame().getEventBus().post(new DataLoadedEvent(context, FeatureTrack.this));
+                    }
+                }
+
+                public void loadFailed(String chr, int start, int end, Exception e, Collection<RenderContext> contexts) {
                     // Mark the interval with an empty feature list to prevent an endless loop of load
                     // attempts.
                     PackedFeatures pf = new PackedFeatures(chr, start, end);
-                    packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+                    for (RenderContext context : contexts) {
+                        packedFeaturesMap.put(context.getReferenceFrame().getName(), pf);
+                    }
                     String msg = "Error loading features for interval: " + chr + ":" + start + "-" + end + " <br>" + e.toString();
                     MessageUtils.showMessage(msg);
                     log.error(msg, e);
-                } finally {
-                    featuresLoading = false;
                 }
-            }
-
-            public String getName() {
-                return "Load features: " + FeatureTrack.this.getName();
-            }
-        };
-
-        if (aSync) {
-            context.getReferenceFrame().getEventBus().register(FeatureTrack.this);
-            LongRunningTask.submit(runnable);
-        } else {
-            runnable.run();
+            });
         }
-
+        return queryScheduler;
     }
 
     /**
@@ -936,10 +948,35 @@ public class FeatureTrack extends AbstractTrack {
 
     public void setVisibilityWindow(int windowSize) {
         super.setVisibilityWindow(windowSize);
-        packedFeaturesMap.clear();
+        clearPackedFeatures();
         source.setFeatureWindowSize(visibilityWindow);
     }
 
+    /**
+     * Features are packed upon loading, effectively a cache.
+     * This clears that cache, and cancels pending loads. Used to force a refresh
+     */
+    public void clearPackedFeatures() {
+        cancelQueries();
+        packedFeaturesMap.clear();
+    }
+
+    private synchronized void cancelQueries() {
+        if (queryScheduler != null) {
+            queryScheduler.cancelAll();
+        }
+    }
+
+    /**
+     * Queries for the previous chromosome are no longer needed
+     *
+     * @param e
+     */
+    @Subscribe
+    public void receiveChromosomeChange(ViewChange.ChromosomeChangeResult e) {
+        cancelQueries();
+    }
+
     public int getSelectedFeatureRowIndex() {
         return selectedFeatureRowIndex;
     }
@@ -13,6 +13,7 @@ package org.broad.igv.track;
 
 import org.apache.log4j.Logger;
 import org.broad.igv.data.Interval;
+import org.broad.igv.feature.NamedFeature;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.tribble.Feature;
@@ -198,6 +199,180 @@ public class PackedFeatures<T extends Feature>{
         return rows;
     }
 
+    /**
+     * Return the features of an interval overlapping this one, packed incrementally: features of this interval
+     * which overlap the new one keep their rows, features which do not are dropped, and the features of the
+     * uncovered parts of the new interval are packed into the gaps of existing rows, or into new rows.
+     *
+     * @param start new start
+     * @param end   new end
+     * @param left  features overlapping [start, this.start), or null if {@code start >= this.start}
+     * @param right features overlapping [this.end, end), or null if {@code end <= this.end}
+     * @return
+     */
+    PackedFeatures<T> extend(int start, int end, Iterator<T> left, Iterator<T> right) {
+
+        PackedFeatures<T> packedFeatures = new PackedFeatures<T>();
+        packedFeatures.trackName = trackName;
+        packedFeatures.chr = chr;
+        packedFeatures.start = start;
+        packedFeatures.end = end;
+        packedFeatures.features = new ArrayList<T>(features.size());
+
+        // Retained rows, trailing empty rows are dropped
+        List<List<T>> rowFeatures = new ArrayList<List<T>>(rows.size());
+        Set<FeatureKey> retained = new HashSet<FeatureKey>();
+        for (FeatureRow row : rows) {
+            List<T> kept = new ArrayList<T>(row.features.size());
+            for (T f : row.features) {
+                if (f.getEnd() >= start && f.getStart() <= end) {
+                    kept.add(f);
+                    retained.add(new FeatureKey(f));
+                }
+            }
+            rowFeatures.add(kept);
+        }
+        while (!rowFeatures.isEmpty() && rowFeatures.get(rowFeatures.size() - 1).isEmpty()) {
+            rowFeatures.remove(rowFeatures.size() - 1);
+        }
+
+        List<T> leftFeatures = getNewFeatures(left, retained);
+        List<T> rightFeatures = getNewFeatures(right, retained);
+
+        // Left features are packed right to left, in front of the first feature of each row
+        List<List<T>> leftRows = new ArrayList<List<T>>();
+        int[] frontiers = new int[rowFeatures.size()];
+        for (int i = 0; i < frontiers.length; i++) {
+            List<T> row = rowFeatures.get(i);
+            frontiers[i] = row.isEmpty() ? Integer.MAX_VALUE : getFeatureStartForPacking(row.get(0));
+        }
+        List<T> byEnd = new ArrayList<T>(leftFeatures);
+        Collections.sort(byEnd, new Comparator<T>() {
+            public int compare(T f1, T f2) {
+                return getFeatureEndForPacking(f2) - getFeatureEndForPacking(f1);
+            }
+        });
+        for (T f : byEnd) {
+            int row = 0;
+            while (row < frontiers.length &&
+                    getFeatureEndForPacking(f) + FeatureTrack.MINIMUM_FEATURE_SPACING > frontiers[row]) {
+                row++;
+            }
+            if (row == frontiers.length) {
+                if (row >= maxLevels) continue;
+                frontiers = Arrays.copyOf(frontiers, row + 1);
+                rowFeatures.add(new ArrayList<T>());
+            }
+            while (leftRows.size() <= row) {
+                leftRows.add(new ArrayList<T>());
+            }
+            leftRows.get(row).add(f);
+            frontiers[row] = getFeatureStartForPacking(f);
+        }
+        for (int i = 0; i < leftRows.size(); i++) {
+            List<T> prefix = leftRows.get(i);
+            Collections.reverse(prefix);
+            prefix.addAll(rowFeatures.get(i));
+            rowFeatures.set(i, prefix);
+        }
+
+        // Right features are packed left to right, after the last feature of each row
+        frontiers = new int[rowFeatures.size()];
+        for (int i = 0; i < frontiers.length; i++) {
+            frontiers[i] = Integer.MIN_VALUE;
+            for (T f : rowFeatures.get(i)) {
+                frontiers[i] = Math.max(frontiers[i], getFeatureEndForPacking(f));
+            }
+        }
+        for (T f : rightFeatures) {
+            int row = 0;
+            while (row < frontiers.length && frontiers[row] != Integer.MIN_VALUE &&
+                    getFeatureStartForPacking(f) < frontiers[row] + FeatureTrack.MINIMUM_FEATURE_SPACING) {
+                row++;
+            }
+            if (row == frontiers.length) {
+                if (row >= maxLevels) continue;
+                frontiers = Arrays.copyOf(frontiers, row + 1);
+                rowFeatures.add(new ArrayList<T>());
+            }
+            rowFeatures.get(row).add(f);
+            frontiers[row] = getFeatureEndForPacking(f);
+        }
+
+        packedFeatures.rows = new ArrayList<FeatureRow>(rowFeatures.size());
+        for (List<T> row : rowFeatures) {
+            PackedFeatures<T>.FeatureRow featureRow = packedFeatures.new FeatureRow();
+            for (T f : row) {
+                featureRow.addFeature(f);
+            }
+            packedFeatures.rows.add(featureRow);
+        }
+
+        packedFeatures.features.addAll(leftFeatures);
+        for (T f : features) {
+            if (f.getEnd() >= start && f.getStart() <= end) {
+                packedFeatures.features.add(f);
+            }
+        }
+        packedFeatures.features.addAll(rightFeatures);
+        for (T f : packedFeatures.features) {
+            packedFeatures.maxFeatureLength = Math.max(packedFeatures.maxFeatureLength,
+                    getFeatureEndForPacking(f) - getFeatureStartForPacking(f));
+        }
+        return packedFeatures;
+    }
+
+    /**
+     * @return the features of {@code iter}, less those overlapping this interval which are already retained, sorted
+     *         by start, longest first
+     */
+    private List<T> getNewFeatures(Iterator<T> iter, Set<FeatureKey> retained) {
+        List<T> newFeatures = new ArrayList<T>();
+        if (iter == null) {
+            return newFeatures;
+        }
+        while (iter.hasNext()) {
+            T f = iter.next();
+            if (f == null) continue;
+            boolean overlaps = f.getEnd() >= start && f.getStart() <= end;
+            if (!overlaps || !retained.contains(new FeatureKey(f))) {
+                newFeatures.add(f);
+            }
+        }
+        Collections.sort(newFeatures, new Comparator<T>() {
+            public int compare(T f1, T f2) {
+                int c = getFeatureStartForPacking(f1) - getFeatureStartForPacking(f2);
+                return c != 0 ? c : (f2.getEnd() - f2.getStart()) - (f1.getEnd() - f1.getStart());
+            }
+        });
+        return newFeatures;
+    }
+
+    /**
+     * Identifies a feature returned by more than one query, which need not be the same object
+     */
+    private static class FeatureKey {
+        final int start;
+        final int end;
+        final String name;
+
+        FeatureKey(Feature f) {
+            start = f.getStart();
+            end = f.getEnd();
+            name = f instanceof NamedFeature ? ((NamedFeature) f).getName() : null;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof FeatureKey)) return false;
+            FeatureKey key = (FeatureKey) o;
+            return start == key.start && end == key.end && (name == null ? key.name == null : name.equals(key.name));
+        }
+
+        public int hashCode() {
+            return 31 * (31 * start + end) + (name == null ? 0 : name.hashCode());
+        }
+    }
+
     public String getTrackName() {
         return trackName;
     }
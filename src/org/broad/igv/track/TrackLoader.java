@@ -35,6 +35,8 @@ import org.broad.igv.feature.*;
 import org.broad.igv.feature.dranger.DRangerParser;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.feature.store.FeatureStoreReader;
+import org.broad.igv.feature.store.FeatureStoreSource;
 import org.broad.igv.feature.tribble.CodecFactory;
 import org.broad.igv.feature.tribble.FeatureFileHeader;
 import org.broad.igv.goby.GobyAlignmentQueryReader;
@@ -205,6 +207,8 @@ public class TrackLoader {
                 loadBWFile(locator, newTracks, genome);
             } else if (typeString.endsWith(".ibf") || typeString.endsWith(".tdf")) {
                 loadTDFFile(locator, newTracks, genome);
+            } else if (FeatureStoreReader.isFeatureStore(typeString)) {
+                loadFeatureStore(locator, newTracks, genome);
             } else if (typeString.endsWith(".counts")) {
                 loadGobyCountsArchive(locator, newTracks, genome);
             } else if (GFFFeatureSource.isGFF(locator.getPath())) {
@@ -325,24 +329,40 @@ public class TrackLoader {
             t.setName(locator.getTrackName());
             //t.setRendererClass(BasicTribbleRenderer.class);
 
-            // Set track properties from header
-            Object header = src.getHeader();
-            if (header != null && header instanceof FeatureFileHeader) {
-                FeatureFileHeader ffh = (FeatureFileHeader) header;
-                if (ffh.getTrackType() != null) {
-                    t.setTrackType(ffh.getTrackType());
-                }
-                if (ffh.getTrackProperties() != null) {
-                    t.setProperties(ffh.getTrackProperties());
-                }
+            setHeaderProperties(t, src.getHeader());
+            newTracks.add(t);
+        }
 
-                if (ffh.getTrackType() == TrackType.REPMASK) {
-                    t.setHeight(15);
-                }
+    }
+
+    /**
+     * Set track properties from a feature file header
+     */
+    private static void setHeaderProperties(FeatureTrack t, Object header) {
+        if (header != null && header instanceof FeatureFileHeader) {
+            FeatureFileHeader ffh = (FeatureFileHeader) header;
+            if (ffh.getTrackType() != null) {
+                t.setTrackType(ffh.getTrackType());
+            }
+            if (ffh.getTrackProperties() != null) {
+                t.setProperties(ffh.getTrackProperties());
+            }
+
+            if (ffh.getTrackType() == TrackType.REPMASK) {
+                t.setHeight(15);
             }
-            newTracks.add(t);
         }
+    }
 
+    /**
+     * Load a binary feature store created by "igvtools toIFS"
+     */
+    private void loadFeatureStore(ResourceLocator locator, List<Track> newTracks, Genome genome) throws IOException {
+        FeatureStoreSource src = new FeatureStoreSource(locator.getPath(), genome);
+        FeatureTrack t = new FeatureTrack(locator, src);
+        t.setName(locator.getTrackName());
+        setHeaderProperties(t, src.getHeader());
+        newTracks.add(t);
     }
 
     private void loadVCFListFile(ResourceLocator locator, List<Track> newTracks, Genome genome) throws IOException {
@@ -1247,7 +1267,7 @@ public class TrackLoader {
      * @param path
      * @return
      */
-    private static boolean isIndexable(String path, Genome genome) {
+    public static boolean isIndexable(String path, Genome genome) {
         String fn = stripGZ(path);
         // The vcf extension is for performance, it doesn't matter which codec is returned all vcf files
         // are indexable.
@@ -11,16 +11,22 @@
 
 package org.broad.igv.track;
 
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
 import org.broad.igv.data.DataSource;
 import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.tribble.*;
 import org.broad.igv.tdf.TDFDataSource;
 import org.broad.igv.tdf.TDFReader;
-import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.RuntimeUtils;
+import org.broad.igv.ui.IGV;
+import org.broad.igv.util.*;
 import org.broad.tribble.*;
+import org.broad.tribble.index.Index;
+import org.broad.tribble.index.IndexFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -30,6 +36,8 @@ import java.util.*;
  */
 public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
 
+    private static Logger log = Logger.getLogger(TribbleFeatureSource.class);
+
     IGVFeatureReader reader;
     DataSource coverageSource;
     boolean isVCF;
@@ -41,8 +49,30 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
      */
     Map<String, String> chrNameMap = new HashMap<String, String>();
     private int featureWindowSize;
+
+    /**
+     * Estimated memory per feature, measured while sampling the file in initFeatureWindowSize
+     */
+    private int bytesPerFeature = 500;
     Object header;
     Class featureClass;
+    String path;
+
+    /**
+     * Feature densities, shown when zoomed out if there is no coverage file.  Loaded on first use.
+     */
+    private FeatureDensity density;
+    private boolean densityRequested;
+
+    /**
+     * The index read by the tribble reader, or null if tribble located the index itself (e.g. tabix files)
+     */
+    private Index index;
+
+    /**
+     * Largest local file, in bytes, whose features are counted when there is no linear index
+     */
+    static final long MAX_DENSITY_SCAN_SIZE = 100000000;
 
     public TribbleFeatureSource(String path, Genome genome) throws IOException {
         this(path, genome, true);
@@ -64,15 +94,21 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
 
     protected void init(String path) {
 
+        this.path = path;
         FeatureCodec codec = CodecFactory.getCodec(path, genome);
         isVCF = codec.getClass() == VCFWrapperCodec.class;
         featureClass = codec.getFeatureType();
-        AbstractFeatureReader basicReader = AbstractFeatureReader.getFeatureReader(path, codec, true);
+        index = loadIndex(path);
+        AbstractFeatureReader basicReader = getBasicReader(path, codec, index);
         header = basicReader.getHeader();
         initFeatureWindowSize(basicReader);
-        reader = useCache ?
-                new CachingFeatureReader(basicReader, 5, getFeatureWindowSize()) :
-                new TribbleReaderWrapper(basicReader);
+        if (useCache) {
+            CachingFeatureReader cachingReader = new CachingFeatureReader(basicReader, getFeatureWindowSize());
+            cachingReader.setEstimatedFeatureBytes(bytesPerFeature);
+            reader = cachingReader;
+        } else {
+            reader = new TribbleReaderWrapper(basicReader);
+        }
 
         if (genome != null) {
             Collection<String> seqNames = reader.getSequenceNames();
@@ -88,6 +124,40 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
         initCoverageSource(path + ".tdf");
     }
 
+    /**
+     * Load the tribble index (.idx) of a non-tabix file.  The index of a remote file is read from the local index
+     * file cache.
+     * <p/>
+     * The index is parsed in full, rather than one reference at a time on first query.  The .idx format has no
+     * table of contents, so finding a reference means reading through all the references before it, and the
+     * tribble reader needs the complete sequence list up front.  The parsed index is also used for the feature
+     * densities, so it is read only once.
+     *
+     * @param path
+     * @return the index, or null if there is none
+     */
+    private static Index loadIndex(String path) {
+        if (path.toLowerCase().endsWith(".gz")) {
+            return null;
+        }
+        try {
+            File indexFile = IndexFileCache.getIndexFile(path + ".idx");
+            return indexFile.exists() ? IndexFactory.loadIndex(indexFile.getAbsolutePath()) : null;
+        } catch (Exception e) {
+            // Let tribble locate (or report) the index
+            log.debug("Index not found for " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Create the tribble reader, using the given index if not null
+     */
+    private static AbstractFeatureReader getBasicReader(String path, FeatureCodec codec, Index index) {
+        return index == null ? AbstractFeatureReader.getFeatureReader(path, codec, true) :
+                AbstractFeatureReader.getFeatureReader(path, codec, index);
+    }
+
     public Class getFeatureClass() {
         return featureClass;
     }
@@ -101,8 +171,8 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
     }
 
     /**
-     * Return coverage values overlapping the query interval.   At this time Tribble sources do not provide
-     * coverage values
+     * Return coverage values overlapping the query interval.  Values are read from the coverage (.tdf) file if
+     * there is one, otherwise they are feature densities, see {@link #getDensity()}.
      *
      * @param chr
      * @param start
@@ -111,8 +181,74 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
      * @return
      */
     public List<LocusScore> getCoverageScores(String chr, int start, int end, int zoom) {
-        return coverageSource == null ? null :
-                coverageSource.getSummaryScoresForRange(chr, start, end, zoom);
+        if (coverageSource != null) {
+            return coverageSource.getSummaryScoresForRange(chr, start, end, zoom);
+        }
+
+        FeatureDensity density = getDensity();
+        if (density == null) {
+            return null;
+        }
+        Chromosome chromosome = genome == null ? null : genome.getChromosome(chr);
+        return density.getScores(chr, start, end, zoom, chromosome == null ? 0 : chromosome.getLength());
+    }
+
+    /**
+     * Return the feature densities of the file.  Densities are estimated from the index, already loaded by the
+     * reader, when it is a linear index.
+     * Otherwise the features of a local file no larger than {@link #MAX_DENSITY_SCAN_SIZE} are counted in the
+     * background, and the counts saved in the index cache directory for later sessions.  Null is returned until
+     * the counts are available.
+     *
+     * @return
+     */
+    synchronized FeatureDensity getDensity() {
+        if (!densityRequested) {
+            densityRequested = true;
+            density = index == null ? null : FeatureDensity.fromIndex(index, genome);
+            File cacheDirectory = DirectoryManager.getIndexCacheDirectory();
+            if (density == null && cacheDirectory != null && !HttpUtils.isRemoteURL(path) &&
+                    new File(path).exists() && new File(path).length() <= MAX_DENSITY_SCAN_SIZE) {
+                final File dataFile = new File(path);
+                final File densityFile = new File(cacheDirectory,
+                        MD5Checksum.getMD5String(dataFile.getAbsolutePath()) + ".density");
+                LongRunningTask.getThreadExecutor().execute(new Runnable() {
+                    public void run() {
+                        FeatureDensity scanned = scanDensity(dataFile, densityFile);
+                        synchronized (TribbleFeatureSource.this) {
+                            density = scanned;
+                        }
+                        if (scanned != null) {
+                            IGV.repaintPanelsHeadlessSafe();
+                        }
+                    }
+                });
+            }
+        }
+        return density;
+    }
+
+    private FeatureDensity scanDensity(File dataFile, File densityFile) {
+        try {
+            FeatureDensity scanned = FeatureDensity.read(densityFile, dataFile);
+            if (scanned != null) {
+                densityFile.setLastModified(System.currentTimeMillis());
+                return scanned;
+            }
+
+            log.info("Counting features of " + path);
+            AbstractFeatureReader scanReader = getBasicReader(path, CodecFactory.getCodec(path, genome), index);
+            try {
+                scanned = FeatureDensity.scan(scanReader, FeatureDensity.SCAN_BIN_SIZE);
+            } finally {
+                scanReader.close();
+            }
+            scanned.write(densityFile, dataFile);
+            return scanned;
+        } catch (Exception e) {
+            log.error("Error counting features of " + path, e);
+            return null;
+        }
     }
 
     public int getFeatureWindowSize() {
@@ -168,6 +304,7 @@ public class TribbleFeatureSource implements org.broad.igv.track.FeatureSource {
                 }
                 double dMem = mem - RuntimeUtils.getAvailableMemory();
                 double bytesPerFeature = Math.max(100, dMem / n);
+                this.bytesPerFeature = (int) Math.min(Integer.MAX_VALUE, bytesPerFeature);
 
                 len += lastFeature.getEnd() - firstFeature.getStart() + 1;
                 double featuresPerBase = ((double) n) / len;
@@ -52,7 +52,7 @@ import org.broad.igv.ui.panel.*;
 import org.broad.igv.ui.util.*;
 import org.broad.igv.ui.util.ProgressMonitor;
 import org.broad.igv.util.*;
-import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.CacheManager;
 import org.broad.igv.variant.VariantTrack;
 
 import javax.swing.*;
@@ -927,6 +927,7 @@ public class IGV {
 
 
     final public void doRefresh() {
+        DataPanelPainter.clearTileCaches();
         contentPane.getMainPanel().revalidate();
         mainFrame.repaint();
         //getContentPane().repaint();
@@ -1148,7 +1149,7 @@ public class IGV {
      */
     public void resetSession(String sessionPath) {
 
-        LRUCache.clearCaches();
+        CacheManager.clearAll();
 
         AttributeManager.getInstance().clearAllAttributes();
 
@@ -1377,7 +1378,7 @@ public class IGV {
 
 
             mainFrame.setTitle(UIConstants.APPLICATION_NAME + " - Session: " + sessionPath);
-            LRUCache.clearCaches();
+            CacheManager.clearAll();
 
 
             double[] dividerFractions = session.getDividerFractions();
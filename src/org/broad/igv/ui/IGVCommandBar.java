@@ -918,6 +918,9 @@ public class IGVCommandBar extends javax.swing.JPanel {
                 return false;
             } else {
                 List<NamedFeature> features = FeatureDB.getFeaturesList(text, SearchCommand.SEARCH_LIMIT);
+                if (features.isEmpty()) {
+                    features = FeatureDB.getSimilarFeatures(text, SearchCommand.SEARCH_LIMIT);
+                }
                 final List<SearchCommand.SearchResult> results = SearchCommand.getResults(features);
                 Object[] list = SearchCommand.getSelectionList(results, false);
                 if (list.length >= 1) {
@@ -32,7 +32,8 @@ public class ColorUtilities {
 
     private static Logger log = Logger.getLogger(ColorUtilities.class);
 
-    public static Map<Object, Color> colorCache = new WeakHashMap<Object, Color>(100);
+    // Synchronized, colors are parsed by parallel feature decoders
+    public static Map<Object, Color> colorCache = Collections.synchronizedMap(new WeakHashMap<Object, Color>(100));
 
     private static float[] whiteComponents = Color.white.getRGBColorComponents(null);
 
@@ -12,6 +12,7 @@
 package org.broad.igv.ui.event;
 
 import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
 
 /**
  * User: jacob
@@ -21,7 +22,17 @@ public class DataLoadedEvent {
 
     public final RenderContext context;
 
+    /**
+     * The track whose data was loaded, or null if data of several tracks may have changed
+     */
+    public final Track track;
+
     public DataLoadedEvent(RenderContext context){
+        this(context, null);
+    }
+
+    public DataLoadedEvent(RenderContext context, Track track){
         this.context = context;
+        this.track = track;
     }
 }
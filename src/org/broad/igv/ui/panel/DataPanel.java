@@ -78,6 +78,18 @@ public class DataPanel extends JComponent implements Paintable {
     }
 
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        frame.getEventBus().register(painter);
+    }
+
+    @Override
+    public void removeNotify() {
+        frame.getEventBus().unregister(painter);
+        super.removeNotify();
+    }
+
     /**
      * @return
      */
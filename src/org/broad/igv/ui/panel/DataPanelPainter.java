@@ -18,11 +18,14 @@ package org.broad.igv.ui.panel;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import com.google.common.eventbus.Subscribe;
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.PreferenceManager;
 import org.broad.igv.feature.FeatureUtils;
 import org.broad.igv.feature.exome.ExomeBlock;
 import org.broad.igv.feature.exome.ExomeReferenceFrame;
+import org.broad.igv.renderer.GraphicUtils;
 import org.broad.igv.sam.CoverageTrack;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.RenderContextImpl;
@@ -30,12 +33,16 @@ import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackGroup;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.UIConstants;
+import org.broad.igv.ui.event.DataLoadedEvent;
 
+import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import java.awt.image.BufferedImage;
+import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author jrobinso
@@ -53,11 +60,84 @@ public class DataPanelPainter {
 
     private static Color exomeBorderColor = new Color(190, 190, 255);
 
+    /**
+     * Time the event thread waits for tracks to paint before drawing placeholders for the rest
+     */
+    private static final long MAX_PAINT_WAIT = 250;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "DataPanelPainter");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Locks held while a track is preloaded and rendered, so a track is never painted by two workers at once
+     */
+    private static final Map<Track, Object> trackLocks = new WeakHashMap<Track, Object>();
+
+    /**
+     * Track paintings of this panel which were still running when the panel was last painted
+     */
+    private final Map<Track, TrackPainting> pendingPaintings = new HashMap<Track, TrackPainting>();
+
+    /**
+     * Last finished painting of each track not yet drawn by the paint which started it.  It is drawn, once, by the
+     * next paint of the same view instead of rendering the track again, so tracks which take longer than
+     * {@link #MAX_PAINT_WAIT} to render are still drawn.
+     */
+    private final Map<Track, TrackPainting> finishedPaintings = new WeakHashMap<Track, TrackPainting>();
+
+    private final TileCache tileCache = new TileCache();
+
+    /**
+     * The panel last painted, repainted when data is loaded
+     */
+    private JComponent panel;
+
     /**
      * Hacky field to keep scales from drawing multiple times in Exome view
      */
     private boolean scalesDrawn;
 
+    /**
+     * Discard the cached track tiles of all panels.  Changes to track data are normally signalled by a
+     * {@link DataLoadedEvent}, this is for changes which are not.
+     */
+    public static void clearTileCaches() {
+        TileCache.invalidateAll();
+    }
+
+    /**
+     * Discard the cached tiles and kept paintings of tracks whose data has been loaded, and repaint.  Painters are
+     * registered with the event bus of their frame while their panel is displayed.  The event bus only calls public
+     * methods.
+     *
+     * @param event
+     */
+    @Subscribe
+    public void receiveDataLoaded(DataLoadedEvent event) {
+        tileCache.invalidate(event.track);
+        synchronized (pendingPaintings) {
+            if (event.track == null) {
+                finishedPaintings.clear();
+            } else {
+                finishedPaintings.remove(event.track);
+            }
+        }
+        JComponent panel = this.panel;
+        if (panel != null) {
+            panel.repaint();
+        }
+    }
+
+    TileCache getTileCache() {
+        return tileCache;
+    }
+
     public synchronized void paint(Collection<TrackGroup> groups,
                                    RenderContext context,
                                    int width,
@@ -172,8 +252,12 @@ public class DataPanelPainter {
                 while ((pStart < visibleRect.x + visibleRect.width) && idx < genes.size());
 
 
-            } else {
+            } else if (context.getPanel() == null || Globals.isBatch()) {
+                // Offscreen and batch painting must be complete, and is done in the calling thread
                 paintFrame(groups, context, width, visibleRect);
+            } else {
+                panel = context.getPanel();
+                paintTracks(groups, context, width, visibleRect);
             }
 
 
@@ -255,6 +339,292 @@ public class DataPanelPainter {
         scalesDrawn |= anyScaleDrawn;
     }
 
+    /**
+     * Paint the tracks of a frame in parallel.  Each visible track is preloaded and rendered into its own image
+     * by a worker, and the images are drawn here.  Tracks which have not finished within {@link #MAX_PAINT_WAIT}
+     * are drawn as placeholders, and the panel is repainted when they finish.
+     * <p/>
+     * Rendered tiles of cacheable tracks are kept in the {@link TileCache}, and only the columns not cached are
+     * rendered.
+     */
+    private void paintTracks(Collection<TrackGroup> groups,
+                             RenderContext context,
+                             int width,
+                             Rectangle visibleRect) {
+
+        // Lay out the tracks, drawing group decorations as for paintFrame
+        ReferenceFrame frame = context.getReferenceFrame();
+        List<TrackPainting> paintings = new ArrayList<TrackPainting>();
+        List<Rectangle> clips = new ArrayList<Rectangle>();
+        List<TileCache.Lookup> lookups = new ArrayList<TileCache.Lookup>();
+        Set<TrackPainting> current = new HashSet<TrackPainting>();
+        int trackY = 0;
+        for (TrackGroup group : groups) {
+            if (trackY > visibleRect.y + visibleRect.height) {
+                break;
+            }
+            if (!group.isVisible()) {
+                continue;
+            }
+            if (groups.size() > 1) {
+                final Graphics2D greyGraphics = context.getGraphic2DForColor(UIConstants.LIGHT_GREY);
+                greyGraphics.fillRect(0, trackY + 1, width, UIConstants.groupGap - 1);
+                trackY += UIConstants.groupGap;
+            }
+            if (group.isDrawBorder()) {
+                Graphics2D graphics2D = context.getGraphic2DForColor(Color.black);
+                graphics2D.drawLine(0, trackY - 1, width, trackY - 1);
+            }
+
+            List<Track> trackList = group.getTracks();
+            synchronized (trackList) {
+                for (Track track : trackList) {
+                    if (track == null || !track.isVisible()) continue;
+                    int trackHeight = track.getHeight();
+                    if (trackY > visibleRect.y + visibleRect.height) {
+                        break;
+                    }
+                    Rectangle rect = new Rectangle(0, trackY, width, trackHeight);
+                    Rectangle clip = rect.intersection(visibleRect);
+                    if (!clip.isEmpty()) {
+                        TileCache.Lookup lookup = TileCache.isCacheable(track, frame) ?
+                                tileCache.lookup(track, frame, rect, clip) : null;
+                        TrackPainting painting = null;
+                        if (lookup == null || !lookup.region.isEmpty()) {
+                            painting = submit(track, rect, clip, context, visibleRect, lookup, current);
+                        }
+                        paintings.add(painting);
+                        clips.add(clip);
+                        lookups.add(lookup);
+                    }
+                    trackY += trackHeight;
+                }
+            }
+
+            if (group.isDrawBorder()) {
+                Graphics2D graphics2D = context.getGraphic2DForColor(Color.black);
+                graphics2D.drawLine(0, trackY, width, trackY);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + MAX_PAINT_WAIT;
+        Graphics2D graphics = context.getGraphics();
+        for (int i = 0; i < paintings.size(); i++) {
+            TrackPainting painting = paintings.get(i);
+            Rectangle clip = clips.get(i);
+            TileCache.Lookup lookup = lookups.get(i);
+            if (lookup != null) {
+                lookup.drawHits(graphics);
+            }
+            if (painting == null) {
+                continue;
+            }
+
+            // A painting started by an earlier paint of a different view is out of date, the panel is repainted
+            // when it is done
+            boolean isCurrent = current.contains(painting);
+            BufferedImage image = painting.await(isCurrent ? deadline : 0);
+            if (image != null && isCurrent) {
+                synchronized (pendingPaintings) {
+                    if (finishedPaintings.get(painting.track) == painting) {
+                        finishedPaintings.remove(painting.track);
+                    }
+                }
+                if (lookup == null) {
+                    graphics.drawImage(image, clip.x, clip.y, null);
+                } else {
+                    Graphics2D g = (Graphics2D) graphics.create();
+                    g.clip(lookup.region);
+                    g.drawImage(image, painting.bounds.x, painting.bounds.y, null);
+                    g.dispose();
+                }
+            } else {
+                if (image != null) {
+                    context.getPanel().repaint();
+                }
+                Graphics2D g = context.getGraphic2DForColor(Color.gray);
+                GraphicUtils.drawCenteredText("Loading...", lookup == null ? clip : lookup.region.getBounds(), g);
+            }
+        }
+    }
+
+    /**
+     * Start painting a track, unless a painting of it from a previous paint is still running.  A finished painting
+     * of the same view which was not drawn is used instead of starting a new one.  Paintings whose images
+     * should be drawn by this paint are added to {@code current}.
+     */
+    private TrackPainting submit(Track track, Rectangle rect, Rectangle clip, RenderContext context,
+                                 Rectangle visibleRect, TileCache.Lookup lookup, Set<TrackPainting> current) {
+        synchronized (pendingPaintings) {
+            TrackPainting pending = pendingPaintings.get(track);
+            if (pending != null && !pending.isDone()) {
+                if (pending.matches(rect, clip, context.getReferenceFrame(), lookup)) {
+                    current.add(pending);
+                }
+                return pending;
+            }
+            TrackPainting finished = finishedPaintings.get(track);
+            if (finished != null && finished.matches(rect, clip, context.getReferenceFrame(), lookup)) {
+                current.add(finished);
+                return finished;
+            }
+            TrackPainting painting = new TrackPainting(track, rect, clip, context.getPanel(),
+                    context.getReferenceFrame(), visibleRect, lookup);
+            pendingPaintings.put(track, painting);
+            current.add(painting);
+            executor.execute(painting);
+            return painting;
+        }
+    }
+
+    private static Object getTrackLock(Track track) {
+        synchronized (trackLocks) {
+            Object lock = trackLocks.get(track);
+            if (lock == null) {
+                lock = new Object();
+                trackLocks.put(track, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Preloads and renders one track into an image.  If the track is cached, only the region left to render by
+     * the tile lookup is rendered, and the rendered tiles are stored.
+     */
+    private class TrackPainting implements Runnable {
+
+        final Track track;
+        final Rectangle rect;
+        final Rectangle clip;
+        final JComponent panel;
+        final ReferenceFrame frame;
+        final Rectangle visibleRect;
+        final TileCache.Lookup lookup;
+
+        /**
+         * State of the frame and track when the painting was started
+         */
+        final String chr;
+        final double origin;
+        final double scale;
+        final int renderState;
+
+        /**
+         * Bounds of the image
+         */
+        final Rectangle bounds;
+
+        private BufferedImage image;
+        private boolean done;
+        private boolean late;
+
+        TrackPainting(Track track, Rectangle rect, Rectangle clip, JComponent panel, ReferenceFrame frame,
+                      Rectangle visibleRect, TileCache.Lookup lookup) {
+            this.track = track;
+            this.rect = rect;
+            this.clip = clip;
+            this.panel = panel;
+            this.frame = frame;
+            this.visibleRect = visibleRect;
+            this.lookup = lookup;
+            this.bounds = lookup == null ? clip : lookup.region.getBounds();
+            this.chr = frame.getChrName();
+            this.origin = frame.getOrigin();
+            this.scale = frame.getScale();
+            this.renderState = TileCache.getRenderState(track);
+        }
+
+        /**
+         * Return true if the painting is of the given view, and the frame is still where it was when started
+         */
+        boolean matches(Rectangle rect, Rectangle clip, ReferenceFrame frame, TileCache.Lookup lookup) {
+            if (frame != this.frame || !isFrameUnchanged() || !rect.equals(this.rect) || !clip.equals(this.clip) ||
+                    TileCache.getRenderState(track) != renderState) {
+                return false;
+            }
+            if (lookup == null || this.lookup == null) {
+                return lookup == this.lookup;
+            }
+            return lookup.region.equals(this.lookup.region);
+        }
+
+        private boolean isFrameUnchanged() {
+            return chr.equals(frame.getChrName()) && origin == frame.getOrigin() && scale == frame.getScale();
+        }
+
+        public void run() {
+            BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.translate(-bounds.x, -bounds.y);
+            graphics.setClip(lookup == null ? clip : lookup.region);
+            RenderContextImpl context = new RenderContextImpl(panel, graphics, frame, visibleRect);
+            try {
+                synchronized (getTrackLock(track)) {
+                    // Tiles are only stored if the frame did not move while rendering
+                    boolean cache = lookup != null && lookup.grid.matches(frame);
+                    track.preload(context);
+                    draw(track, rect, context);
+                    if (cache && lookup.grid.matches(frame)) {
+                        tileCache.store(lookup, image, bounds);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Error painting track " + track.getName(), e);
+            } finally {
+                context.dispose();
+                graphics.dispose();
+                finished(image);
+            }
+        }
+
+        private void finished(BufferedImage image) {
+            // Kept for the follow-up paint, unless the frame moved while rendering.  This is done before waking
+            // the paint waiting for the image, which removes it once drawn.
+            synchronized (pendingPaintings) {
+                if (pendingPaintings.get(track) == this) {
+                    pendingPaintings.remove(track);
+                    if (isFrameUnchanged()) {
+                        finishedPaintings.put(track, this);
+                    }
+                }
+            }
+            boolean repaint;
+            synchronized (this) {
+                this.image = image;
+                done = true;
+                repaint = late;
+                notifyAll();
+            }
+            if (repaint) {
+                panel.repaint();
+            }
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return the image, or null if the track was not painted by {@code deadline}.  In that case the panel
+         *         is repainted when it is.
+         */
+        synchronized BufferedImage await(long deadline) {
+            long wait;
+            while (!done && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            if (!done) {
+                late = true;
+            }
+            return image;
+        }
+    }
+
     final private void draw(Track track, Rectangle rect, RenderContext context) {
 
         track.render(context, rect);
@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.Globals;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.renderer.DataRange;
+import org.broad.igv.renderer.Renderer;
+import org.broad.igv.sam.CoverageTrack;
+import org.broad.igv.track.AbstractTrack;
+import org.broad.igv.track.DataTrack;
+import org.broad.igv.track.FeatureTrack;
+import org.broad.igv.track.Track;
+import org.broad.igv.ui.IGV;
+
+import java.awt.*;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rendered tiles of the tracks of a data panel, so that panning renders only the newly exposed columns.
+ * <p/>
+ * Tiles are {@link #TILE_WIDTH} pixels wide, at fixed positions on the genome for a given chromosome and scale.
+ * A tile is keyed by the track, the frame position and scale, its index, the visible part of the track,
+ * and a hash of the track properties which affect rendering.  Each data panel has its own cache, so tiles are
+ * implicitly keyed by reference frame.
+ * <p/>
+ * Tiles of a track are invalidated when its data changes, see {@link #invalidate(Track)}, and all tiles when
+ * {@link #invalidateAll()} is called.  Only tracks whose rendering does not depend on the extent of the view
+ * are cached, see {@link #isCacheable(Track, ReferenceFrame)}.
+ */
+class TileCache {
+
+    static final int TILE_WIDTH = 128;
+
+    /**
+     * Width of the band at the left of a data track where the data range and axis are drawn.  It is rendered
+     * on every paint, and never cached.
+     */
+    static final int LABEL_WIDTH = 120;
+
+    /**
+     * Resolution of tile positions, in fractions of a pixel
+     */
+    private static final int SUBPIXELS = 64;
+
+    private static final long MAX_PIXELS = 8L * 1024 * 1024;
+
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<Key, Tile>(64, 0.75f, true);
+    private final Map<Track, Integer> versions = new WeakHashMap<Track, Integer>();
+    private int cacheGeneration = generation.get();
+
+    /**
+     * Incremented whenever all tiles are discarded
+     */
+    private int epoch;
+    private long pixels;
+
+    /**
+     * Invalidate the tiles of all caches, for changes not signalled to the panels
+     */
+    static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Tracks are cached unless their rendering depends on the extent of the view, as it does for autoscaled
+     * tracks, and for feature tracks zoomed out beyond their visibility window.
+     *
+     * @param track
+     * @param frame
+     * @return true if tiles of {@code track} can be cached
+     */
+    static boolean isCacheable(Track track, ReferenceFrame frame) {
+        if (frame.isExomeMode() || Globals.CHR_ALL.equals(frame.getChrName()) || track.getAutoScale()) {
+            return false;
+        }
+        if (track instanceof DataTrack) {
+            return !PreferenceManager.getInstance().getAsBoolean(PreferenceManager.CHART_DRAW_TRACK_NAME);
+        } else if (track instanceof CoverageTrack) {
+            return true;
+        } else if (track.getClass() == FeatureTrack.class) {
+            int vw = track.getVisibilityWindow();
+            return vw <= 0 || frame.getEnd() - frame.getOrigin() <= vw;
+        }
+        return false;
+    }
+
+    private static boolean hasLabels(Track track) {
+        return track instanceof DataTrack || track instanceof CoverageTrack;
+    }
+
+    /**
+     * Find the cached tiles of the visible part of a track, and the region which must be rendered
+     *
+     * @param track
+     * @param frame
+     * @param rect  the track rectangle
+     * @param clip  the visible part of {@code rect}
+     * @return
+     */
+    synchronized Lookup lookup(Track track, ReferenceFrame frame, Rectangle rect, Rectangle clip) {
+
+        checkGeneration();
+        Lookup lookup = new Lookup(track, new TileGrid(frame), clip, getStamp(track));
+        int state = getRenderState(track);
+        int clipEnd = clip.x + clip.width;
+        int labelEnd = hasLabels(track) ? Math.min(clipEnd, rect.x + LABEL_WIDTH) : rect.x;
+        if (labelEnd > clip.x) {
+            lookup.region.add(new Area(new Rectangle(clip.x, clip.y, labelEnd - clip.x, clip.height)));
+        }
+
+        TileGrid grid = lookup.grid;
+        for (long index = grid.getTileIndex(clip.x); index <= grid.getTileIndex(clipEnd - 1); index++) {
+            int tileX = grid.getTileX(index);
+            int from = Math.max(tileX, Math.max(clip.x, labelEnd));
+            int to = Math.min(tileX + TILE_WIDTH, clipEnd);
+            if (from >= to) {
+                continue;
+            }
+            Key key = new Key(track, grid, index, rect.height, clip.y - rect.y, clip.height, state);
+            Tile tile = tiles.get(key);
+            if (tile != null && tile.start <= from - tileX && tile.end >= to - tileX) {
+                lookup.hits.add(new Placement(key, tileX, from, to, tile));
+            } else {
+                lookup.missing.add(new Placement(key, tileX, from, to, null));
+                lookup.region.add(new Area(new Rectangle(from, clip.y, to - from, clip.height)));
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * Cache the tiles rendered for a lookup, unless the track has been invalidated since
+     *
+     * @param lookup
+     * @param image  image of the track, covering {@code bounds}
+     * @param bounds
+     */
+    void store(Lookup lookup, BufferedImage image, Rectangle bounds) {
+
+        List<Placement> placements = new ArrayList<Placement>();
+        for (Placement missing : lookup.missing) {
+            int h = lookup.clip.height;
+            BufferedImage tileImage = new BufferedImage(TILE_WIDTH, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = tileImage.createGraphics();
+            try {
+                int sx = missing.from - bounds.x;
+                int sy = lookup.clip.y - bounds.y;
+                g.drawImage(image, missing.from - missing.x, 0, missing.to - missing.x, h,
+                        sx, sy, sx + missing.to - missing.from, sy + h, null);
+            } finally {
+                g.dispose();
+            }
+            Tile tile = new Tile(tileImage, missing.from - missing.x, missing.to - missing.x);
+            placements.add(new Placement(missing.key, missing.x, missing.from, missing.to, tile));
+        }
+
+        synchronized (this) {
+            checkGeneration();
+            if (lookup.stamp != getStamp(lookup.track)) {
+                return;
+            }
+            for (Placement placement : placements) {
+                Tile previous = tiles.put(placement.key, placement.tile);
+                if (previous != null) {
+                    pixels -= previous.getPixels();
+                }
+                pixels += placement.tile.getPixels();
+            }
+            Iterator<Tile> iter = tiles.values().iterator();
+            while (pixels > MAX_PIXELS && iter.hasNext()) {
+                pixels -= iter.next().getPixels();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Discard the tiles of a track, e.g. when its data has changed.  Tiles rendered before this call are not
+     * cached.
+     *
+     * @param track the track, or null for all tracks
+     */
+    synchronized void invalidate(Track track) {
+        if (track == null) {
+            clear();
+            return;
+        }
+        versions.put(track, getVersion(track) + 1);
+        Iterator<Map.Entry<Key, Tile>> iter = tiles.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Tile> entry = iter.next();
+            if (entry.getKey().track == track) {
+                pixels -= entry.getValue().getPixels();
+                iter.remove();
+            }
+        }
+    }
+
+    private void checkGeneration() {
+        int current = generation.get();
+        if (current != cacheGeneration) {
+            cacheGeneration = current;
+            clear();
+        }
+    }
+
+    private void clear() {
+        tiles.clear();
+        pixels = 0;
+        epoch++;
+    }
+
+    private int getVersion(Track track) {
+        Integer version = versions.get(track);
+        return version == null ? 0 : version;
+    }
+
+    private long getStamp(Track track) {
+        return (((long) epoch) << 32) | (getVersion(track) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Hash of the properties of a track, and of its overlays, which affect rendering
+     *
+     * @param track
+     * @return
+     */
+    static int getRenderState(Track track) {
+        int state = getTrackState(track);
+        List<Track> overlays = IGV.hasInstance() ? IGV.getInstance().getOverlayTracks(track) : null;
+        if (overlays != null) {
+            for (Track overlay : overlays) {
+                if (overlay != track) {
+                    state = 31 * (31 * state + System.identityHashCode(overlay)) + getTrackState(overlay);
+                }
+            }
+        }
+        return 31 * state + PreferenceManager.getInstance().getModificationCount();
+    }
+
+    private static int getTrackState(Track track) {
+        Renderer renderer = track.getRenderer();
+        Object[] state = {track.getClass(), track.getHeight(), track.getDisplayMode(), track.getColor(),
+                track.getAltColor(), track.getWindowFunction(), renderer == null ? null : renderer.getClass(),
+                track.getVisibilityWindow(), track.isSelected(), track.getFontSize(), track.isShowDataRange(),
+                track.isItemRGB(), track.isUseScore(), track.getViewLimitMin(),
+                track.getViewLimitMax(), track.isDrawYLine(), track.getYLine(), track.getAutoScale()};
+        int hash = Arrays.hashCode(state);
+        if (track.hasDataRange()) {
+            DataRange range = track.getDataRange();
+            hash = 31 * hash + Arrays.hashCode(new Object[]{range.getType(), range.getMinimum(), range.getBaseline(),
+                    range.getMaximum(), range.isFlipAxis(), range.isDrawBaseline()});
+        }
+        if (track instanceof AbstractTrack && ((AbstractTrack) track).hasColorScale()) {
+            // Default color scales are derived from the data range, color, and preferences
+            hash = 31 * hash + track.getColorScale().hashCode();
+        }
+        if (track instanceof FeatureTrack) {
+            FeatureTrack featureTrack = (FeatureTrack) track;
+            hash = 31 * hash + Arrays.hashCode(new Object[]{featureTrack.getSelectedFeature(),
+                    featureTrack.getSelectedFeatureRowIndex(), featureTrack.getExpandedRowHeight(),
+                    featureTrack.getSquishedRowHeight(), featureTrack.isAlternateExonColor()});
+        } else if (track instanceof CoverageTrack) {
+            CoverageTrack coverageTrack = (CoverageTrack) track;
+            hash = 31 * hash + Arrays.hashCode(new Object[]{coverageTrack.getSnpThreshold(),
+                    coverageTrack.isShowReference()});
+        }
+        return hash;
+    }
+
+    /**
+     * Tile grid of a frame.  Tile {@code i} covers columns {@code i * TILE_WIDTH} to {@code (i + 1) * TILE_WIDTH}
+     * of the chromosome at the frame scale, offset by the sub-pixel position of the frame origin so that panning
+     * by whole pixels keeps the grid.
+     */
+    static class TileGrid {
+
+        final String chr;
+        final double scale;
+        final int subpixel;
+        final long origin;
+
+        TileGrid(ReferenceFrame frame) {
+            chr = frame.getChrName();
+            scale = frame.getScale();
+            long position = Math.round(frame.getOrigin() / scale * SUBPIXELS);
+            origin = floorDiv(position, SUBPIXELS);
+            subpixel = (int) (position - origin * SUBPIXELS);
+        }
+
+        long getTileIndex(int x) {
+            return floorDiv(origin + x, TILE_WIDTH);
+        }
+
+        int getTileX(long index) {
+            return (int) (index * TILE_WIDTH - origin);
+        }
+
+        boolean matches(ReferenceFrame frame) {
+            TileGrid grid = new TileGrid(frame);
+            return grid.chr.equals(chr) && grid.scale == scale && grid.subpixel == subpixel && grid.origin == origin;
+        }
+
+        private static long floorDiv(long x, long y) {
+            long q = x / y;
+            return (x % y != 0 && (x < 0)) ? q - 1 : q;
+        }
+    }
+
+    static class Key {
+
+        final Track track;
+        final String chr;
+        final double scale;
+        final int subpixel;
+        final long index;
+        final int trackHeight;
+        final int top;
+        final int height;
+        final int state;
+
+        Key(Track track, TileGrid grid, long index, int trackHeight, int top, int height, int state) {
+            this.track = track;
+            this.chr = grid.chr;
+            this.scale = grid.scale;
+            this.subpixel = grid.subpixel;
+            this.index = index;
+            this.trackHeight = trackHeight;
+            this.top = top;
+            this.height = height;
+            this.state = state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return track == key.track && index == key.index && scale == key.scale && subpixel == key.subpixel &&
+                    trackHeight == key.trackHeight && top == key.top && height == key.height &&
+                    state == key.state && chr.equals(key.chr);
+        }
+
+        @Override
+        public int hashCode() {
+            long scaleBits = Double.doubleToLongBits(scale);
+            int result = System.identityHashCode(track);
+            result = 31 * result + chr.hashCode();
+            result = 31 * result + (int) (scaleBits ^ (scaleBits >>> 32));
+            result = 31 * result + subpixel;
+            result = 31 * result + (int) (index ^ (index >>> 32));
+            result = 31 * result + trackHeight;
+            result = 31 * result + top;
+            result = 31 * result + height;
+            result = 31 * result + state;
+            return result;
+        }
+    }
+
+    /**
+     * A tile image, of which columns {@code start} to {@code end} have been rendered
+     */
+    static class Tile {
+
+        final BufferedImage image;
+        final int start;
+        final int end;
+
+        Tile(BufferedImage image, int start, int end) {
+            this.image = image;
+            this.start = start;
+            this.end = end;
+        }
+
+        long getPixels() {
+            return ((long) image.getWidth()) * image.getHeight();
+        }
+    }
+
+    /**
+     * A tile at panel column {@code x}, of which columns {@code from} to {@code to} of the panel are visible
+     */
+    static class Placement {
+
+        final Key key;
+        final int x;
+        final int from;
+        final int to;
+        final Tile tile;
+
+        Placement(Key key, int x, int from, int to, Tile tile) {
+            this.key = key;
+            this.x = x;
+            this.from = from;
+            this.to = to;
+            this.tile = tile;
+        }
+    }
+
+    /**
+     * The cached tiles of the visible part of a track, and the region left to render
+     */
+    static class Lookup {
+
+        final Track track;
+        final TileGrid grid;
+        final Rectangle clip;
+        final long stamp;
+        final List<Placement> hits = new ArrayList<Placement>();
+        final List<Placement> missing = new ArrayList<Placement>();
+        final Area region = new Area();
+
+        Lookup(Track track, TileGrid grid, Rectangle clip, long stamp) {
+            this.track = track;
+            this.grid = grid;
+            this.clip = clip;
+            this.stamp = stamp;
+        }
+
+        /**
+         * Draw the cached tiles
+         *
+         * @param graphics
+         */
+        void drawHits(Graphics2D graphics) {
+            for (Placement hit : hits) {
+                Graphics2D g = (Graphics2D) graphics.create();
+                try {
+                    g.clipRect(hit.from, clip.y, hit.to - hit.from, clip.height);
+                    g.drawImage(hit.tile.image, hit.x, clip.y, null);
+                } finally {
+                    g.dispose();
+                }
+            }
+        }
+    }
+}
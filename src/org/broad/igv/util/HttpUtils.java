@@ -23,6 +23,9 @@ import org.broad.igv.PreferenceManager;
 import org.broad.igv.exceptions.HttpResponseException;
 import org.broad.igv.gs.GSUtils;
 import org.broad.igv.ui.IGV;
+import org.broad.igv.ui.util.ProgressMonitor;
+import org.broad.igv.util.collections.LRUCache;
+import org.broad.igv.util.collections.ManagedCache;
 import org.broad.igv.util.stream.IGVSeekableHTTPStream;
 import org.broad.igv.util.stream.IGVUrlHelper;
 
@@ -64,6 +67,15 @@ public class HttpUtils {
     // static provided to support unit testing
     private static boolean BYTE_RANGE_DISABLED = false;
 
+    // Files larger than this are downloaded as concurrent byte ranges
+    static final long PARALLEL_DOWNLOAD_THRESHOLD = 2 * ParallelDownloader.DEFAULT_RANGE_SIZE;
+
+    /**
+     * Resource versions seen in HEAD responses, see {@link #getLastResourceVersion(URL)}
+     */
+    private final LRUCache<String, String> resourceVersions =
+            new LRUCache<String, String>(this, 1000, 200, ManagedCache.PRIORITY_LOW);
+
     /**
      * @return the single instance
      */
@@ -230,6 +242,7 @@ public class HttpUtils {
     public String getHeaderField(URL url, String key) throws IOException {
         HttpURLConnection conn = openConnection(url, null, "HEAD");
         if (conn == null) return null;
+        recordResourceVersion(url, conn);
         return conn.getHeaderField(key);
     }
 
@@ -249,6 +262,51 @@ public class HttpUtils {
         }
     }
 
+    /**
+     * Return a string identifying the current version of a remote resource, built from the ETag, Last-Modified,
+     * and Content-Length headers of a single HEAD request.  Returns null if the server provides neither an ETag
+     * nor a Last-Modified date, in which case the version cannot be validated.
+     *
+     * @param url
+     * @return
+     * @throws IOException
+     */
+    public String getResourceVersion(URL url) throws IOException {
+        HttpURLConnection conn = openConnection(url, null, "HEAD");
+        if (conn == null) return null;
+        recordResourceVersion(url, conn);
+        return getResourceVersion(conn);
+    }
+
+    /**
+     * Return the version of a remote resource from the last HEAD request made for it, for example when its
+     * content length was read.  A HEAD request is only sent if there has been none.
+     *
+     * @param url
+     * @return the version, see {@link #getResourceVersion(URL)}
+     * @throws IOException
+     */
+    public String getLastResourceVersion(URL url) throws IOException {
+        String key = url.toExternalForm();
+        if (resourceVersions.containsKey(key)) {
+            return resourceVersions.get(key);
+        }
+        return getResourceVersion(url);
+    }
+
+    private void recordResourceVersion(URL url, HttpURLConnection conn) {
+        resourceVersions.put(url.toExternalForm(), getResourceVersion(conn));
+    }
+
+    private static String getResourceVersion(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        String lastModified = conn.getHeaderField("Last-Modified");
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        return etag + "|" + lastModified + "|" + conn.getHeaderField("Content-Length");
+    }
+
     /**
      * Compare a local and remote resource.
      *
@@ -350,33 +408,113 @@ public class HttpUtils {
     }
 
     public boolean downloadFile(String url, File outputFile) throws IOException {
+        return downloadFile(url, outputFile, null, null);
+    }
 
-        log.info("Downloading " + url + " to " + outputFile.getAbsolutePath());
+    /**
+     * Download a remote file.  Large http(s) files are fetched as concurrent byte ranges, with resumption of
+     * interrupted downloads (see {@link ParallelDownloader}), if the client can use range requests.  Otherwise
+     * the file is streamed over a single connection.
+     *
+     * @param url
+     * @param outputFile
+     * @param monitor     progress monitor, can be null
+     * @param expectedMD5 hex MD5 checksum of the file, or null.  If null the server's Content-MD5 header is used,
+     *                    if provided.
+     * @return true if the download is complete, and the checksum (if known) matches.  An unverified file is deleted.
+     * @throws IOException
+     */
+    public boolean downloadFile(String url, File outputFile, ProgressMonitor monitor, String expectedMD5) throws IOException {
 
-        HttpURLConnection conn = openConnection(new URL(url), null);
+        log.info("Downloading " + url + " to " + outputFile.getAbsolutePath());
 
+        URL u = new URL(url);
         long contentLength = -1;
-        String contentLengthString = conn.getHeaderField("Content-Length");
-        if (contentLengthString != null) {
-            contentLength = Long.parseLong(contentLengthString);
+        boolean complete = false;
+
+        if (!u.getProtocol().toLowerCase().equals("ftp")) {
+            HttpURLConnection conn = openConnection(u, null, "HEAD");
+            if (conn != null) {
+                String contentLengthString = conn.getHeaderField("Content-Length");
+                if (contentLengthString != null) {
+                    contentLength = Long.parseLong(contentLengthString);
+                }
+                String contentMD5 = conn.getHeaderField("Content-MD5");
+                if (expectedMD5 == null && contentMD5 != null) {
+                    expectedMD5 = MD5Checksum.toHexString(Base64Coder.decode(contentMD5.trim()));
+                }
+
+                if (contentLength >= PARALLEL_DOWNLOAD_THRESHOLD && useByteRange(u)) {
+                    ParallelDownloader downloader = new ParallelDownloader(u, outputFile, contentLength);
+                    downloader.setProgressMonitor(monitor);
+                    downloader.setVersion(getResourceVersion(conn));
+                    complete = downloader.download();
+                }
+            }
         }
 
+        if (!complete) {
+            complete = downloadSingleStream(u, outputFile, monitor);
+        }
 
-        log.info("Content length = " + contentLength);
+        if (complete && expectedMD5 != null) {
+            String md5;
+            try {
+                md5 = MD5Checksum.getMD5Checksum(outputFile.getAbsolutePath());
+            } catch (Exception e) {
+                throw new IOException("Error computing checksum of " + outputFile.getAbsolutePath(), e);
+            }
+            if (!md5.equalsIgnoreCase(expectedMD5)) {
+                log.error("Checksum mismatch for " + url + ". Expected " + expectedMD5 + ", found " + md5);
+                outputFile.delete();
+                return false;
+            }
+        }
+        return complete;
+    }
+
+    private boolean downloadSingleStream(URL url, File outputFile, ProgressMonitor monitor) throws IOException {
 
+        HttpURLConnection conn = null;
         InputStream is = null;
-        OutputStream out = null;
+        long contentLength = -1;
+
+        if (url.getProtocol().toLowerCase().equals("ftp")) {
+            is = openConnectionStream(url);
+        } else {
+            conn = openConnection(url, null);
+            String contentLengthString = conn.getHeaderField("Content-Length");
+            if (contentLengthString != null) {
+                contentLength = Long.parseLong(contentLengthString);
+            }
+        }
 
+        log.info("Content length = " + contentLength);
+
+        OutputStream out = null;
+        long t0 = System.currentTimeMillis();
         try {
-            is = conn.getInputStream();
+            if (conn != null) {
+                is = conn.getInputStream();
+            }
             out = new FileOutputStream(outputFile);
 
             byte[] buf = new byte[64 * 1024];
-            int downloaded = 0;
+            long downloaded = 0;
+            int percentReported = 0;
             int bytesRead = 0;
             while ((bytesRead = is.read(buf)) != -1) {
                 out.write(buf, 0, bytesRead);
                 downloaded += bytesRead;
+                if (monitor != null && contentLength > 0) {
+                    int percent = (int) ((100 * downloaded) / contentLength);
+                    if (percent > percentReported) {
+                        monitor.fireProgressChange(percent - percentReported);
+                        monitor.updateStatus("Downloading " + outputFile.getName() + " (" +
+                                ParallelDownloader.formatRate(downloaded, Math.max(1, System.currentTimeMillis() - t0)) + ")");
+                        percentReported = percent;
+                    }
+                }
             }
             log.info("Download complete.  Total bytes downloaded = " + downloaded);
         } finally {
@@ -391,6 +529,30 @@ public class HttpUtils {
         return contentLength <= 0 || contentLength == fileLength;
     }
 
+    /**
+     * Open a stream for the byte range [start, end] (inclusive) of the resource.  Unlike
+     * {@link #openConnectionStream(java.net.URL, java.util.Map)} this checks that the server honored the range.
+     *
+     * @param url
+     * @param start
+     * @param end
+     * @return the stream, or null if the server responded with the full resource rather than the range
+     * @throws IOException
+     */
+    public InputStream openRangeStream(URL url, long start, long end) throws IOException {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("Range", "bytes=" + start + "-" + end);
+        HttpURLConnection conn = openConnection(url, params);
+        if (conn == null) {
+            throw new IOException("Not authorized: " + url);
+        }
+        if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            conn.disconnect();
+            return null;
+        }
+        return conn.getInputStream();
+    }
+
 
     public void uploadGenomeSpaceFile(String uri, File file, Map<String, String> headers) throws IOException {
 
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.track.TrackLoader;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Local cache of remote index files (BAM .bai, tribble .idx).
+ * <p/>
+ * Index files are kept in the index cache directory across sessions, together with a sidecar file recording the
+ * remote version (ETag / Last-Modified / Content-Length).  A cached copy is reused only if the version still
+ * matches, which costs a single HEAD request instead of downloading the full index.  Downloads are done on a
+ * small thread pool so the indexes for all tracks in a session can be fetched in parallel
+ * ({@link #prefetch(java.util.Collection)}) before the tracks themselves are loaded.
+ * <p/>
+ * Each index path is fetched and validated at most once per session.
+ */
+public class IndexFileCache {
+
+    private static Logger log = Logger.getLogger(IndexFileCache.class);
+
+    private static final int N_THREADS = 8;
+
+    // Cached index files not used for this long are deleted
+    private static final long MAX_AGE = 30 * 24 * 60 * 60 * 1000L;
+
+    private static final String VERSION_EXTENSION = ".version";
+
+    private static File directory;
+
+    private static final Map<String, Future<File>> indexFiles = new HashMap<String, Future<File>>();
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(N_THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "IndexFileCache");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Return a local copy of the index file at {@code indexPath}.  Local paths are returned as is.
+     *
+     * @param indexPath
+     * @return
+     * @throws FileNotFoundException if the remote index does not exist
+     * @throws IOException
+     */
+    public static File getIndexFile(String indexPath) throws IOException {
+
+        if (!HttpUtils.isRemoteURL(indexPath)) {
+            return new File(indexPath);
+        }
+
+        Future<File> future = submit(indexPath);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while loading index " + indexPath);
+        } catch (ExecutionException e) {
+            synchronized (indexFiles) {
+                indexFiles.remove(indexPath);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Start fetching the given remote index files in the background.  Failures are ignored here, and surface
+     * when {@link #getIndexFile(String)} is called for the same path.
+     *
+     * @param indexPaths
+     */
+    public static void prefetch(Collection<String> indexPaths) {
+        for (String path : indexPaths) {
+            if (HttpUtils.isRemoteURL(path)) {
+                submit(path);
+            }
+        }
+    }
+
+    /**
+     * Start fetching the indexes of all remote, indexed resources in the list.  Covers BAM files and
+     * tribble indexed feature files.  Tabix indexes are read by the tabix reader itself, and are not covered.
+     * Other formats, such as tdf and bigwig, carry their own index, so no ".idx" file is probed for them.
+     *
+     * @param locators
+     */
+    public static void prefetchIndexes(Collection<ResourceLocator> locators) {
+        prefetch(getIndexPaths(locators));
+    }
+
+    static List<String> getIndexPaths(Collection<ResourceLocator> locators) {
+        List<String> indexPaths = new ArrayList<String>();
+        for (ResourceLocator locator : locators) {
+            String path = locator.getPath();
+            if (path == null || locator.getDBUrl() != null || !HttpUtils.isRemoteURL(path)) {
+                continue;
+            }
+            String typeString = locator.getTypeString();
+            if (typeString.endsWith(".bam")) {
+                indexPaths.add(locator.getBamIndexPath());
+            } else if (locator.getIndexPath() != null) {
+                indexPaths.add(locator.getIndexPath());
+            } else if (!isCompressed(path) && !typeString.endsWith(".list") && TrackLoader.isIndexable(path, null)) {
+                indexPaths.add(path + ".idx");
+            }
+        }
+        return indexPaths;
+    }
+
+    /**
+     * The type string of a locator omits a .gz extension, so check the path of the URL itself
+     */
+    private static boolean isCompressed(String url) {
+        try {
+            return new URL(url).getPath().toLowerCase().endsWith(".gz");
+        } catch (MalformedURLException e) {
+            return url.toLowerCase().endsWith(".gz");
+        }
+    }
+
+    private static Future<File> submit(final String indexPath) {
+        synchronized (indexFiles) {
+            Future<File> future = indexFiles.get(indexPath);
+            if (future == null) {
+                future = executor.submit(new Callable<File>() {
+                    public File call() throws Exception {
+                        return loadIndexFile(indexPath);
+                    }
+                });
+                indexFiles.put(indexPath, future);
+            }
+            return future;
+        }
+    }
+
+    private static File loadIndexFile(String indexPath) throws IOException {
+
+        URL url = new URL(indexPath);
+        File dir = getDirectory();
+
+        String name = MD5Checksum.getMD5String(indexPath) + getExtension(url.getPath());
+        File indexFile = new File(dir, name);
+        File versionFile = new File(dir, name + VERSION_EXTENSION);
+
+        String version = null;
+        if (!url.getProtocol().toLowerCase().equals("ftp")) {
+            version = HttpUtils.getInstance().getResourceVersion(url);
+        }
+
+        if (version != null && indexFile.exists() && version.equals(readVersion(versionFile))) {
+            log.debug("Using cached index " + indexFile.getAbsolutePath() + " for " + indexPath);
+            indexFile.setLastModified(System.currentTimeMillis());
+            return indexFile;
+        }
+
+        log.info("Downloading index " + indexPath);
+        File tmpFile = new File(dir, name + "." + Thread.currentThread().getId() + ".tmp");
+        InputStream is = null;
+        OutputStream os = null;
+        try {
+            is = HttpUtils.getInstance().openConnectionStream(url);
+            if (is == null) {
+                throw new IOException("Could not open " + indexPath);
+            }
+            os = new FileOutputStream(tmpFile);
+            byte[] buf = new byte[512000];
+            int bytesRead;
+            while ((bytesRead = is.read(buf)) != -1) {
+                os.write(buf, 0, bytesRead);
+            }
+            os.close();
+            os = null;
+
+            versionFile.delete();
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                throw new IOException("Error renaming " + tmpFile.getAbsolutePath());
+            }
+            if (version != null) {
+                writeVersion(versionFile, version);
+            }
+            return indexFile;
+
+        } finally {
+            if (is != null) try {
+                is.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+            if (os != null) try {
+                os.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+            tmpFile.delete();
+        }
+    }
+
+    private static String getExtension(String path) {
+        int idx = path.lastIndexOf('.');
+        int slash = path.lastIndexOf('/');
+        return (idx > slash && idx >= 0) ? path.substring(idx) : "";
+    }
+
+    private static String readVersion(File versionFile) {
+        if (!versionFile.exists()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(versionFile));
+            return reader.readLine();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void writeVersion(File versionFile, String version) throws IOException {
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(new FileWriter(versionFile));
+            pw.println(version);
+        } finally {
+            if (pw != null) pw.close();
+        }
+    }
+
+    private static synchronized File getDirectory() {
+        if (directory == null) {
+            setDirectory(DirectoryManager.getIndexCacheDirectory());
+        }
+        return directory;
+    }
+
+    /**
+     * Set the cache directory, and remove files in it which have not been used recently.
+     * Package private for unit tests.
+     */
+    static synchronized void setDirectory(File dir) {
+        directory = dir;
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        synchronized (indexFiles) {
+            indexFiles.clear();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            long now = System.currentTimeMillis();
+            for (File f : files) {
+                if (f.getName().endsWith(".tmp") || now - f.lastModified() > MAX_AGE) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget which index files have been validated this session.  Package private for unit tests.
+     */
+    static void reset() {
+        synchronized (indexFiles) {
+            indexFiles.clear();
+        }
+    }
+}
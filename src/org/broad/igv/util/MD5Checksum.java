@@ -58,13 +58,32 @@ public class MD5Checksum {
         //TODO Make a better output file naming convention.
         if (fileName.isFile()) {
             byte[] b = createChecksum(filename);
-            String result = "";
-            for (int i = 0; i < b.length; i++) {
-                result +=
-                        Integer.toString((b[i] & 0xff) + 0x100, 16).substring(1);
-            }
-            return result;
+            return toHexString(b);
         }
         throw new DataLoadException("No file found", filename);
     }
+
+    /**
+     * Return the MD5 digest of the UTF-8 encoding of a string, as a hex string
+     *
+     * @param string
+     * @return
+     */
+    public static String getMD5String(String string) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return toHexString(md.digest(string.getBytes("UTF-8")));
+        } catch (Exception e) {
+            // MD5 and UTF-8 are always available
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String toHexString(byte[] b) {
+        StringBuffer result = new StringBuffer();
+        for (int i = 0; i < b.length; i++) {
+            result.append(Integer.toString((b[i] & 0xff) + 0x100, 16).substring(1));
+        }
+        return result.toString();
+    }
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.ui.util.ProgressMonitor;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Downloads a remote file as a set of byte ranges fetched concurrently.
+ * <p/>
+ * Ranges are written in place to a partial file ({@code <outputFile>.part}).  A range which fails is retried,
+ * continuing from the last byte received.  Completed ranges are recorded in a state file together with the
+ * resource version, so an interrupted download is resumed on the next attempt rather than restarted.  The
+ * partial file is renamed to the output file only when all ranges are complete.
+ *
+ * @see HttpUtils#downloadFile(String, java.io.File, org.broad.igv.ui.util.ProgressMonitor, String)
+ */
+public class ParallelDownloader {
+
+    private static Logger log = Logger.getLogger(ParallelDownloader.class);
+
+    public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_THREADS = 4;
+    static final int MAX_RETRIES = 3;
+
+    private static final String PART_EXTENSION = ".part";
+    private static final String STATE_EXTENSION = ".state";
+
+    // Minimum interval between status updates, in milliseconds
+    private static final long STATUS_INTERVAL = 500;
+
+    private final URL url;
+    private final File outputFile;
+    private final long contentLength;
+    private int rangeSize = DEFAULT_RANGE_SIZE;
+    private int nThreads = DEFAULT_THREADS;
+    private ProgressMonitor monitor;
+    private String version;
+
+    private long downloaded;
+    private long downloadedThisSession;
+    private int percentReported;
+    private long startTime;
+    private long lastStatusTime;
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param url
+     * @param outputFile
+     * @param contentLength the length of the remote resource, must be known
+     */
+    public ParallelDownloader(URL url, File outputFile, long contentLength) {
+        this.url = url;
+        this.outputFile = outputFile;
+        this.contentLength = contentLength;
+    }
+
+    public void setRangeSize(int rangeSize) {
+        this.rangeSize = rangeSize;
+    }
+
+    public void setThreadCount(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    public void setProgressMonitor(ProgressMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Set a string identifying the version of the remote resource (see {@link HttpUtils#getResourceVersion(java.net.URL)}).
+     * Ranges from an interrupted download are only reused if the version matches.  If not set, a download is
+     * always started from scratch.
+     */
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Download the resource.
+     *
+     * @return true if the file was downloaded completely, false if the server does not honor range requests.  In
+     *         the latter case nothing has been written and the caller should fall back to a single stream.
+     * @throws IOException if a range could not be downloaded after retries.  Completed ranges are kept for resumption.
+     */
+    public boolean download() throws IOException {
+
+        File partFile = new File(outputFile.getPath() + PART_EXTENSION);
+        File stateFile = new File(outputFile.getPath() + PART_EXTENSION + STATE_EXTENSION);
+
+        int nRanges = (int) ((contentLength + rangeSize - 1) / rangeSize);
+        Set<Integer> completed = readState(stateFile, partFile);
+
+        List<Integer> pending = new ArrayList<Integer>();
+        for (int i = 0; i < nRanges; i++) {
+            if (!completed.contains(i)) {
+                pending.add(i);
+            } else {
+                downloaded += getRangeLength(i);
+            }
+        }
+        // Probe with a 1 byte range before starting any threads, to detect servers which ignore the Range header
+        if (pending.size() > 0) {
+            InputStream probe = HttpUtils.getInstance().openRangeStream(url, 0, 0);
+            if (probe == null) {
+                log.info("Range requests not honored for " + url + ", using a single stream");
+                return false;
+            }
+            probe.read();
+            probe.close();
+        }
+
+        if (completed.size() > 0) {
+            log.info("Resuming download of " + url + ", " + completed.size() + " of " + nRanges + " ranges present");
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+        PrintWriter stateWriter = null;
+        ExecutorService executor = null;
+        try {
+            raf.setLength(contentLength);
+            final FileChannel channel = raf.getChannel();
+
+            if (version != null) {
+                boolean append = completed.size() > 0;
+                stateWriter = new PrintWriter(new FileWriter(stateFile, append));
+                if (!append) {
+                    stateWriter.println(version);
+                    stateWriter.flush();
+                }
+            } else {
+                stateFile.delete();
+            }
+
+            startTime = System.currentTimeMillis();
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(nThreads, pending.size())), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread t = new Thread(runnable, "ParallelDownloader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+            CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+            for (final Integer rangeIndex : pending) {
+                completionService.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        downloadRange(rangeIndex, channel);
+                        return rangeIndex;
+                    }
+                });
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                Future<Integer> future;
+                try {
+                    future = completionService.take();
+                    int rangeIndex = future.get();
+                    if (stateWriter != null) {
+                        stateWriter.println(rangeIndex);
+                        stateWriter.flush();
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Download of " + url + " interrupted");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else {
+                        throw new IOException("Error downloading " + url, cause);
+                    }
+                }
+            }
+
+        } finally {
+            cancelled = true;   // Stop any range still in flight after a failure
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (stateWriter != null) {
+                stateWriter.close();
+            }
+            raf.close();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("Download complete. " + downloadedThisSession + " bytes in " + elapsed + " ms (" +
+                formatRate(downloadedThisSession, elapsed) + ")");
+
+        if (outputFile.exists()) {
+            outputFile.delete();
+        }
+        if (!partFile.renameTo(outputFile)) {
+            throw new IOException("Error renaming " + partFile.getAbsolutePath() + " to " + outputFile.getAbsolutePath());
+        }
+        stateFile.delete();
+        return true;
+    }
+
+    /**
+     * Remove the partial file and state from an earlier download, if any.
+     */
+    public void discardPartial() {
+        new File(outputFile.getPath() + PART_EXTENSION).delete();
+        new File(outputFile.getPath() + PART_EXTENSION + STATE_EXTENSION).delete();
+    }
+
+    private long getRangeLength(int rangeIndex) {
+        long start = (long) rangeIndex * rangeSize;
+        return Math.min(rangeSize, contentLength - start);
+    }
+
+    private void downloadRange(int rangeIndex, FileChannel channel) throws IOException {
+
+        final long rangeStart = (long) rangeIndex * rangeSize;
+        final long rangeEnd = rangeStart + getRangeLength(rangeIndex);   // exclusive
+        long position = rangeStart;
+        byte[] buffer = new byte[64 * 1024];
+        int attempt = 0;
+
+        while (position < rangeEnd) {
+            if (cancelled) {
+                throw new InterruptedIOException("Download cancelled");
+            }
+            InputStream is = null;
+            try {
+                is = HttpUtils.getInstance().openRangeStream(url, position, rangeEnd - 1);
+                if (is == null) {
+                    throw new IOException("Range request not honored for " + url);
+                }
+                int n;
+                while (position < rangeEnd &&
+                        (n = is.read(buffer, 0, (int) Math.min(buffer.length, rangeEnd - position))) > 0) {
+                    ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                    while (bb.hasRemaining()) {
+                        position += channel.write(bb, position);
+                    }
+                    reportProgress(n);
+                    if (cancelled) {
+                        throw new InterruptedIOException("Download cancelled");
+                    }
+                }
+                if (position < rangeEnd) {
+                    throw new EOFException("Connection closed at byte " + position + " of range " + rangeIndex);
+                }
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (cancelled) {
+                    throw e;
+                }
+                attempt++;
+                if (attempt > MAX_RETRIES) {
+                    // Don't start any more ranges, the download has failed
+                    cancelled = true;
+                    throw e;
+                }
+                log.info("Error downloading range " + rangeIndex + " of " + url + ", retrying from byte " +
+                        position + ": " + e.getMessage());
+                try {
+                    Thread.sleep(500L * attempt);
+                } catch (InterruptedException e1) {
+                    throw new InterruptedIOException("Download interrupted");
+                }
+            } finally {
+                if (is != null) try {
+                    is.close();
+                } catch (IOException e) {
+                    log.debug("Error closing range stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the indexes of completed ranges recorded for a partial download of the same version.  Stale state
+     * is deleted.
+     */
+    private Set<Integer> readState(File stateFile, File partFile) {
+
+        Set<Integer> completed = new HashSet<Integer>();
+        if (version == null || !stateFile.exists() || !partFile.exists() || partFile.length() != contentLength) {
+            stateFile.delete();
+            return completed;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(stateFile));
+            String line = reader.readLine();
+            if (!version.equals(line)) {
+                reader.close();
+                reader = null;
+                stateFile.delete();
+                return completed;
+            }
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    completed.add(Integer.parseInt(line));
+                }
+            }
+        } catch (Exception e) {
+            // Corrupt state, start again
+            log.debug("Error reading download state " + stateFile.getAbsolutePath(), e);
+            completed.clear();
+        } finally {
+            if (reader != null) try {
+                reader.close();
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        return completed;
+    }
+
+    private synchronized void reportProgress(int bytes) {
+
+        downloaded += bytes;
+        downloadedThisSession += bytes;
+        if (monitor == null) {
+            return;
+        }
+
+        int percent = (int) ((100 * downloaded) / contentLength);
+        if (percent > percentReported) {
+            monitor.fireProgressChange(percent - percentReported);
+            percentReported = percent;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastStatusTime > STATUS_INTERVAL || downloaded == contentLength) {
+            lastStatusTime = now;
+            long elapsed = Math.max(1, now - startTime);
+            monitor.updateStatus("Downloading " + outputFile.getName() + ": " +
+                    String.format("%.1f of %.1f MB", downloaded / 1.0e6, contentLength / 1.0e6) +
+                    " (" + formatRate(downloadedThisSession, elapsed) + ")");
+        }
+    }
+
+    static String formatRate(long bytes, long millis) {
+        return String.format("%.2f MB/s", (bytes / 1.0e6) / (millis / 1000.0));
+    }
+}
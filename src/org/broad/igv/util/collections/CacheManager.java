@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+package org.broad.igv.util.collections;
+
+import org.apache.log4j.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registry of all managed caches, and the governor which reclaims their memory as the heap fills.
+ * <p/>
+ * Tenured heap pools are given a collection usage threshold at {@link #TRIM_LEVELS}[0] of their maximum size.
+ * When a collection leaves a pool above the threshold the governor evicts a fraction of every cache, growing
+ * with the pool usage, rather than clearing everything at once.  Caches are trimmed in proportion to their own
+ * size, low priority caches twice as hard and high priority caches half as hard as normal ones.
+ */
+public class CacheManager {
+
+    private static Logger log = Logger.getLogger(CacheManager.class);
+
+    /**
+     * Fraction of the heap in use at which {@link #TRIM_FRACTIONS} of the cached data is evicted
+     */
+    static final double[] TRIM_LEVELS = {0.5, 0.75, 0.9};
+    static final double[] TRIM_FRACTIONS = {0.25, 0.5, 1.0};
+
+    private static final Map<ManagedCache, Object> caches =
+            Collections.synchronizedMap(new WeakHashMap<ManagedCache, Object>());
+
+    private static boolean governorStarted = false;
+    private static ExecutorService executor;
+    private static final AtomicBoolean trimPending = new AtomicBoolean(false);
+
+    public static void register(ManagedCache cache) {
+        caches.put(cache, null);
+        startGovernor();
+    }
+
+    public static void unregister(ManagedCache cache) {
+        caches.remove(cache);
+    }
+
+    /**
+     * Remove all entries from all caches
+     */
+    public static void clearAll() {
+        for (ManagedCache cache : getCaches()) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Evict a fraction of the entries from all caches, weighted by cache priority
+     *
+     * @param fraction between 0 and 1
+     * @return estimated number of bytes released
+     */
+    public static long trim(double fraction) {
+        if (fraction <= 0) {
+            return 0;
+        }
+        long released = 0;
+        for (ManagedCache cache : getCaches()) {
+            long weight = cache.getWeight();
+            if (fraction >= 1) {
+                cache.clear();
+            } else {
+                cache.trim(Math.min(1, fraction * getPriorityFactor(cache.getPriority())));
+            }
+            released += weight - cache.getWeight();
+        }
+        return released;
+    }
+
+    /**
+     * Trim caches according to heap usage
+     *
+     * @param usedFraction fraction of the heap in use, between 0 and 1
+     * @return estimated number of bytes released
+     */
+    public static long trimForUsage(double usedFraction) {
+        double fraction = getTrimFraction(usedFraction);
+        if (fraction <= 0) {
+            return 0;
+        }
+        long weight = getWeight();
+        long released = trim(fraction);
+        log.info("Heap " + Math.round(100 * usedFraction) + "% used, released " + (released / 1000000) +
+                " MB of " + (weight / 1000000) + " MB cached");
+        return released;
+    }
+
+    static double getTrimFraction(double usedFraction) {
+        double fraction = 0;
+        for (int i = 0; i < TRIM_LEVELS.length; i++) {
+            if (usedFraction >= TRIM_LEVELS[i]) {
+                fraction = TRIM_FRACTIONS[i];
+            }
+        }
+        return fraction;
+    }
+
+    static double getPriorityFactor(int priority) {
+        return Math.pow(2, ManagedCache.PRIORITY_NORMAL - priority);
+    }
+
+    /**
+     * @return estimated size of all cached values, in bytes
+     */
+    public static long getWeight() {
+        long weight = 0;
+        for (ManagedCache cache : getCaches()) {
+            weight += cache.getWeight();
+        }
+        return weight;
+    }
+
+    private static List<ManagedCache> getCaches() {
+        synchronized (caches) {
+            return new ArrayList<ManagedCache>(caches.keySet());
+        }
+    }
+
+    /**
+     * Install collection usage thresholds on the heap pools, and listen for them being exceeded
+     */
+    private static synchronized void startGovernor() {
+        if (governorStarted) {
+            return;
+        }
+        governorStarted = true;
+
+        try {
+            final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                // Only tenured pools support both thresholds, eden and survivor spaces are excluded
+                long max = pool.getUsage().getMax();
+                if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() &&
+                        pool.isCollectionUsageThresholdSupported() && max > 0) {
+                    pool.setCollectionUsageThreshold((long) (max * TRIM_LEVELS[0]));
+                    pools.add(pool);
+                }
+            }
+            if (pools.isEmpty()) {
+                log.info("No heap pools support collection usage thresholds, caches will not be trimmed");
+                return;
+            }
+
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread t = new Thread(runnable, "CacheManager");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+            NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+            emitter.addNotificationListener(new NotificationListener() {
+                public void handleNotification(Notification notification, Object handback) {
+                    if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                        return;
+                    }
+                    // Coalesce notifications from several pools or collections into one trim
+                    if (trimPending.compareAndSet(false, true)) {
+                        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+                        log.debug("Collection usage threshold exceeded for " + info.getPoolName());
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                trimPending.set(false);
+                                trimForUsage(getCollectionUsageFraction(pools));
+                            }
+                        });
+                    }
+                }
+            }, null, null);
+
+        } catch (Exception e) {
+            log.error("Error installing memory usage listener", e);
+        }
+    }
+
+    /**
+     * @return the largest fraction of any pool in use after the last collection
+     */
+    private static double getCollectionUsageFraction(List<MemoryPoolMXBean> pools) {
+        double fraction = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                fraction = Math.max(fraction, ((double) usage.getUsed()) / usage.getMax());
+            }
+        }
+        return fraction;
+    }
+}
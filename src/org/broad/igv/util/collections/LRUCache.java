@@ -14,39 +14,47 @@ import org.apache.log4j.Logger;
 
 import java.lang.ref.SoftReference;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
+ * Cache of a fixed maximum number of entries, registered with the {@link CacheManager}.  The memory used is
+ * estimated from a declared size per entry.
+ *
  * @author jrobinso
  */
-public class LRUCache<K, V> {
+public class LRUCache<K, V> implements ManagedCache {
 
     Logger log = Logger.getLogger(LRUCache.class);
 
-    private final static Map<Object, LRUCache> instances = Collections.synchronizedMap(new WeakHashMap<Object, LRUCache>());
+    static final long DEFAULT_ENTRY_BYTES = 10000;
 
-    public static void clearCaches() {
-        synchronized (instances) {
-            for (LRUCache cache : instances.values()) {
-                if (cache != null) {
-                    cache.clear();
-                }
-            }
-        }
-    }
+    private final int maxEntries;
 
+    private final long bytesPerEntry;
 
-    private final int maxEntries;
+    private final int priority;
 
     private SoftReference<Map<K, V>> mapReference;
 
 
     public LRUCache(Object source, int max) {
-        instances.put(source, this);
+        this(source, max, DEFAULT_ENTRY_BYTES, PRIORITY_NORMAL);
+    }
+
+    /**
+     * @param source        owner of the cache
+     * @param max           maximum number of entries
+     * @param bytesPerEntry estimated size of each value, in bytes
+     * @param priority      one of the {@link ManagedCache} priorities
+     */
+    public LRUCache(Object source, int max, long bytesPerEntry, int priority) {
         this.maxEntries = max;
+        this.bytesPerEntry = bytesPerEntry;
+        this.priority = priority;
         createMap();
+        CacheManager.register(this);
     }
 
     private void createMap() {
@@ -86,6 +94,29 @@ public class LRUCache<K, V> {
         getMap().clear();
     }
 
+    public long getWeight() {
+        return getMap().size() * bytesPerEntry;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Remove the oldest entries, {@code fraction} of the total rounded up
+     */
+    public void trim(double fraction) {
+        Map<K, V> map = getMap();
+        synchronized (map) {
+            int n = (int) Math.ceil(map.size() * fraction);
+            Iterator<K> iter = map.keySet().iterator();
+            for (int i = 0; i < n && iter.hasNext(); i++) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
 
 }
 
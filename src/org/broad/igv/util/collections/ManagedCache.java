@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+package org.broad.igv.util.collections;
+
+/**
+ * A cache whose memory is managed by {@link CacheManager}.
+ */
+public interface ManagedCache {
+
+    int PRIORITY_LOW = 0;
+    int PRIORITY_NORMAL = 1;
+    int PRIORITY_HIGH = 2;
+
+    /**
+     * @return estimated size of the cached values, in bytes
+     */
+    long getWeight();
+
+    /**
+     * @return one of PRIORITY_LOW, PRIORITY_NORMAL, PRIORITY_HIGH.  Low priority caches give up a larger share
+     *         of their entries when memory is reclaimed.
+     */
+    int getPriority();
+
+    /**
+     * Evict least recently used entries holding approximately {@code fraction} of the cache weight
+     *
+     * @param fraction between 0 and 1
+     */
+    void trim(double fraction);
+
+    void clear();
+}
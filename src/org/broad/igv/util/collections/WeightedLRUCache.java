@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+package org.broad.igv.util.collections;
+
+import com.google.common.base.Predicate;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * LRU cache bounded by the estimated size of its values, in bytes.
+ * <p/>
+ * Unlike {@link LRUCache} values are strongly referenced, so entries survive garbage collection until the
+ * budget is exceeded, or the cache is trimmed by the {@link CacheManager}.
+ * <p/>
+ * The weight of a value is computed when it is put.  Values which grow after insertion should be put again
+ * to update their weight.
+ */
+public class WeightedLRUCache<K, V> implements ManagedCache {
+
+    private static Logger log = Logger.getLogger(WeightedLRUCache.class);
+
+    /**
+     * Computes the estimated size of a value in bytes
+     */
+    public static interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private final Weigher<V> weigher;
+    private final int priority;
+    private long maxBytes;
+    private long totalBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    public WeightedLRUCache(long maxBytes, Weigher<V> weigher) {
+        this(maxBytes, weigher, PRIORITY_NORMAL);
+    }
+
+    public WeightedLRUCache(long maxBytes, Weigher<V> weigher, int priority) {
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        this.priority = priority;
+        CacheManager.register(this);
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Add or replace a value, then evict least recently used entries until the cache is within budget.  The
+     * value just put is never evicted, even if it alone exceeds the budget.
+     */
+    public synchronized V put(K key, V value) {
+        long weight = weigher.weigh(value);
+        Entry<V> previous = map.put(key, new Entry<V>(value, weight));
+        totalBytes += weight;
+        if (previous != null) {
+            totalBytes -= previous.weight;
+        }
+        evict(key);
+        return previous == null ? null : previous.value;
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = map.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        totalBytes -= entry.weight;
+        return entry.value;
+    }
+
+    /**
+     * Remove the entries whose keys match {@code predicate}, for example those of one of several users of a
+     * shared cache.
+     *
+     * @param predicate
+     * @return the number of entries removed
+     */
+    public synchronized int removeAll(Predicate<? super K> predicate) {
+        int count = 0;
+        Iterator<Map.Entry<K, Entry<V>>> iter = map.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iter.next();
+            if (predicate.apply(entry.getKey())) {
+                iter.remove();
+                totalBytes -= entry.getValue().weight;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    /**
+     * Evict least recently used entries until the weight is reduced by {@code fraction}.  The budget is unchanged.
+     */
+    public synchronized void trim(double fraction) {
+        evict(null, (long) (totalBytes * (1 - fraction)));
+    }
+
+    private void evict(K keep) {
+        evict(keep, maxBytes);
+    }
+
+    private void evict(K keep, long limit) {
+        Iterator<Map.Entry<K, Entry<V>>> iter = map.entrySet().iterator();
+        while (totalBytes > limit && iter.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iter.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iter.remove();
+            totalBytes -= eldest.getValue().weight;
+            evictionCount++;
+            if (log.isDebugEnabled()) {
+                log.debug("Evicted " + eldest.getKey() + " (" + eldest.getValue().weight + " bytes)");
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public synchronized long getWeight() {
+        return totalBytes;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hitCount, missCount, evictionCount, map.size(), totalBytes);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Snapshot of cache activity
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int entryCount;
+        private final long bytes;
+
+        Stats(long hitCount, long missCount, long evictionCount, int entryCount, long bytes) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.entryCount = entryCount;
+            this.bytes = bytes;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : ((double) hitCount) / requests;
+        }
+
+        public String toString() {
+            return "hits=" + hitCount + " misses=" + missCount + " evictions=" + evictionCount +
+                    " entries=" + entryCount + " bytes=" + bytes;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.index;
+
+import java.util.*;
+
+/**
+ * Immutable interval tree stored in flat arrays, built in bulk.
+ * <p/>
+ * Intervals are sorted by start.  The sorted array is viewed as an implicit balanced binary tree (the node at
+ * index i has level k if the lowest k bits of i are 1 and bit k is 0), and each node stores the maximum end of
+ * its subtree.  Queries walk the tree iteratively and report overlapping intervals in start order.  Intervals
+ * are closed, as for {@link Interval#overlaps(int, int)}.
+ */
+public class FlatIntervalTree {
+
+    /**
+     * Subtrees at or below this level are scanned linearly
+     */
+    private static final int SCAN_LEVEL = 3;
+
+    /**
+     * Receives the intervals found by {@link #visitOverlapping(int, int, Visitor)}
+     */
+    public static interface Visitor {
+        void visit(int low, int high, long value);
+    }
+
+    private final int[] lows;
+    private final int[] highs;
+    private final long[] values;
+
+    /**
+     * Maximum high of the subtree rooted at each node
+     */
+    private final int[] maxHighs;
+
+    private final int maxLevel;
+
+    public FlatIntervalTree(Collection<Interval> intervals) {
+
+        Interval[] sorted = intervals.toArray(new Interval[intervals.size()]);
+        Arrays.sort(sorted);
+
+        int n = sorted.length;
+        lows = new int[n];
+        highs = new int[n];
+        values = new long[n];
+        for (int i = 0; i < n; i++) {
+            lows[i] = sorted[i].low;
+            highs[i] = sorted[i].high;
+            values[i] = sorted[i].value;
+        }
+        maxHighs = new int[n];
+        maxLevel = n == 0 ? 0 : index();
+    }
+
+    /**
+     * Compute the subtree maxima, bottom up.  Nodes of the right spine which are missing (index >= n) take the
+     * maximum of the last node present.
+     *
+     * @return level of the root
+     */
+    private int index() {
+        int n = lows.length;
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < n; i += 2) {
+            lastIndex = i;
+            maxHighs[i] = last = highs[i];
+        }
+
+        int k;
+        for (k = 1; (1 << k) <= n; k++) {
+            int x = 1 << (k - 1);
+            int i0 = (x << 1) - 1;
+            int step = x << 2;
+            for (int i = i0; i < n; i += step) {
+                int leftMax = maxHighs[i - x];
+                int rightMax = i + x < n ? maxHighs[i + x] : last;
+                int max = highs[i];
+                if (leftMax > max) max = leftMax;
+                if (rightMax > max) max = rightMax;
+                maxHighs[i] = max;
+            }
+            lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < n && maxHighs[lastIndex] > last) {
+                last = maxHighs[lastIndex];
+            }
+        }
+        return k - 1;
+    }
+
+    public int size() {
+        return lows.length;
+    }
+
+    /**
+     * Visit all intervals overlapping [start, end], in order of increasing start.
+     *
+     * @param start
+     * @param end
+     * @param visitor
+     */
+    public void visitOverlapping(int start, int end, Visitor visitor) {
+
+        int n = lows.length;
+        if (n == 0) {
+            return;
+        }
+
+        // Stack of (node, level, left subtree done)
+        int[] nodes = new int[64];
+        int[] levels = new int[64];
+        boolean[] leftDone = new boolean[64];
+        int t = 0;
+        nodes[t] = (1 << maxLevel) - 1;
+        levels[t] = maxLevel;
+        leftDone[t] = false;
+        t++;
+
+        while (t > 0) {
+            t--;
+            int x = nodes[t];
+            int k = levels[t];
+            if (k <= SCAN_LEVEL) {
+                int i0 = x >> k << k;
+                int i1 = Math.min(n, i0 + (1 << (k + 1)) - 1);
+                for (int i = i0; i < i1 && lows[i] <= end; i++) {
+                    if (start <= highs[i]) {
+                        visitor.visit(lows[i], highs[i], values[i]);
+                    }
+                }
+            } else if (!leftDone[t]) {
+                int left = x - (1 << (k - 1));
+                leftDone[t] = true;
+                t++;
+                // Left children beyond n are on the right spine, and may still have nodes below them
+                if (left >= n || maxHighs[left] >= start) {
+                    nodes[t] = left;
+                    levels[t] = k - 1;
+                    leftDone[t] = false;
+                    t++;
+                }
+            } else if (x < n && lows[x] <= end) {
+                if (start <= highs[x]) {
+                    visitor.visit(lows[x], highs[x], values[x]);
+                }
+                nodes[t] = x + (1 << (k - 1));
+                levels[t] = k - 1;
+                leftDone[t] = false;
+                t++;
+            }
+        }
+    }
+
+    /**
+     * Return all intervals overlapping [start, end], in order of increasing start.
+     */
+    public List<Interval> findOverlapping(int start, int end) {
+        final List<Interval> results = new ArrayList<Interval>();
+        visitOverlapping(start, end, new Visitor() {
+            public void visit(int low, int high, long value) {
+                results.add(new Interval(low, high, value));
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Return all intervals, in order of increasing start.
+     */
+    public List<Interval> getIntervals() {
+        List<Interval> results = new ArrayList<Interval>(lows.length);
+        for (int i = 0; i < lows.length; i++) {
+            results.add(new Interval(lows[i], highs[i], values[i]));
+        }
+        return results;
+    }
+}
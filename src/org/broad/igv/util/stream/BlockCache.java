@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.PreferenceManager;
+import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.MD5Checksum;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Persistent on-disk cache of fixed size blocks of remote resources.
+ * <p/>
+ * Blocks are stored in a sub-directory per resource, named by an MD5 digest of the resource URL and its
+ * version validators (ETag / Last-Modified / Content-Length for http, length and modification time for ftp).  A changed
+ * remote file therefore maps to a new key, and its old blocks age out of the cache.  Total size is
+ * bounded by a byte budget, with least-recently-used blocks evicted first.  Recency survives restarts
+ * through the file modification times.
+ * <p/>
+ * The cache is shared by the desktop application and igvtools, see {@link #getInstance()} and
+ * {@link #setInstance(BlockCache)}.
+ */
+public class BlockCache {
+
+    private static Logger log = Logger.getLogger(BlockCache.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private static final String BLOCK_EXTENSION = ".blk";
+
+    private static BlockCache instance;
+    private static boolean initialized = false;
+
+    private final File directory;
+    private final long maxBytes;
+    private final int blockSize;
+
+    /**
+     * Block file path -> size, in access order
+     */
+    private final LinkedHashMap<String, Long> blocks = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * Return the shared cache, creating it from user preferences on first use.  Returns null if the
+     * cache is disabled.
+     *
+     * @return
+     */
+    public static synchronized BlockCache getInstance() {
+        if (!initialized) {
+            initialized = true;
+            PreferenceManager prefs = PreferenceManager.getInstance();
+            if (prefs.getAsBoolean(PreferenceManager.BLOCK_CACHE_ENABLED)) {
+                File dir = DirectoryManager.getBlockCacheDirectory();
+                long maxBytes = prefs.getAsInt(PreferenceManager.BLOCK_CACHE_SIZE_MB) * 1000000L;
+                if (dir != null && maxBytes > 0) {
+                    instance = new BlockCache(dir, maxBytes, DEFAULT_BLOCK_SIZE);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the shared cache, for example with one in a different directory.
+     *
+     * @param cache the new cache, or null to disable caching
+     */
+    public static synchronized void setInstance(BlockCache cache) {
+        instance = cache;
+        initialized = true;
+    }
+
+    /**
+     * Wrap the stream for a remote resource with the shared cache, if enabled and the resource version can be
+     * determined.  Otherwise the stream is returned unchanged.  The http version is taken from the HEAD response
+     * the stream's length was read from, so no further request is made.
+     *
+     * @param stream
+     * @param url
+     * @return
+     */
+    public static SeekableStream wrap(SeekableStream stream, URL url) {
+        BlockCache cache = getInstance();
+        if (cache == null) {
+            return stream;
+        }
+        try {
+            long length = stream.length();
+            if (length <= 0) {
+                return stream;
+            }
+            String version = null;
+            if (url.getProtocol().toLowerCase().equals("ftp")) {
+                if (stream instanceof IGVSeekableFTPStream) {
+                    String modificationTime = ((IGVSeekableFTPStream) stream).getModificationTime();
+                    if (modificationTime != null) {
+                        version = length + "|" + modificationTime;
+                    }
+                }
+            } else {
+                version = HttpUtils.getInstance().getLastResourceVersion(url);
+            }
+            if (version == null) {
+                return stream;
+            }
+            return new BlockCachingSeekableStream(stream, cache, createKey(url.toExternalForm(), version), length);
+        } catch (IOException e) {
+            log.error("Error determining version of " + url + ", not caching", e);
+            return stream;
+        }
+    }
+
+    public BlockCache(File directory, long maxBytes, int blockSize) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.blockSize = blockSize;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        loadIndex();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Create a cache key for a resource.
+     *
+     * @param url
+     * @param version string identifying the version of the resource
+     * @return
+     */
+    public static String createKey(String url, String version) {
+        return MD5Checksum.getMD5String(url + "\n" + version);
+    }
+
+    /**
+     * Return the cached block, or null if not present
+     *
+     * @param key
+     * @param blockIndex
+     * @return
+     */
+    public byte[] getBlock(String key, long blockIndex) {
+
+        File file = getBlockFile(key, blockIndex);
+        String path = file.getPath();
+        synchronized (this) {
+            if (blocks.get(path) == null) {
+                return null;
+            }
+        }
+
+        DataInputStream is = null;
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            is = new DataInputStream(new FileInputStream(file));
+            is.readFully(bytes);
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            // Most likely evicted by another process
+            log.debug("Error reading cached block " + path, e);
+            synchronized (this) {
+                Long size = blocks.remove(path);
+                if (size != null) totalBytes -= size;
+            }
+            return null;
+        } finally {
+            if (is != null) try {
+                is.close();
+            } catch (IOException e) {
+                log.error("Error closing " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Store a block.  The block is written to a temporary file and renamed, so concurrent readers never see
+     * a partial block.
+     *
+     * @param key
+     * @param blockIndex
+     * @param bytes
+     * @param len
+     */
+    public void putBlock(String key, long blockIndex, byte[] bytes, int len) {
+
+        File file = getBlockFile(key, blockIndex);
+        File dir = file.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        File tmpFile = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(tmpFile);
+            os.write(bytes, 0, len);
+            os.close();
+            os = null;
+            if (file.exists()) {
+                file.delete();
+            }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                return;
+            }
+        } catch (IOException e) {
+            log.error("Error writing cached block " + file.getPath(), e);
+            tmpFile.delete();
+            return;
+        } finally {
+            if (os != null) try {
+                os.close();
+            } catch (IOException e) {
+                log.error("Error closing " + tmpFile.getPath(), e);
+            }
+        }
+
+        synchronized (this) {
+            Long previous = blocks.put(file.getPath(), (long) len);
+            if (previous != null) {
+                totalBytes -= previous;
+            }
+            totalBytes += len;
+            evict();
+        }
+    }
+
+    /**
+     * Remove all cached blocks
+     */
+    public synchronized void clear() {
+        for (String path : blocks.keySet()) {
+            new File(path).delete();
+        }
+        blocks.clear();
+        totalBytes = 0;
+        File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                dir.delete();
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iter = blocks.entrySet().iterator();
+        while (totalBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            File file = new File(entry.getKey());
+            file.delete();
+            totalBytes -= entry.getValue();
+            iter.remove();
+
+            File dir = file.getParentFile();
+            String[] remaining = dir.list();
+            if (remaining != null && remaining.length == 0) {
+                dir.delete();
+            }
+        }
+    }
+
+    private File getBlockFile(String key, long blockIndex) {
+        return new File(new File(directory, key), blockIndex + BLOCK_EXTENSION);
+    }
+
+    /**
+     * Rebuild the in-memory index from the cache directory, oldest blocks first.
+     */
+    private synchronized void loadIndex() {
+
+        List<File> files = new ArrayList<File>();
+        File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] blockFiles = dir.listFiles();
+                if (blockFiles == null) continue;
+                for (File f : blockFiles) {
+                    if (f.getName().endsWith(BLOCK_EXTENSION)) {
+                        files.add(f);
+                    } else {
+                        // Abandoned temporary file
+                        f.delete();
+                    }
+                }
+            }
+        }
+
+        final Map<File, Long> modified = new HashMap<File, Long>();
+        for (File f : files) {
+            modified.put(f, f.lastModified());
+        }
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = modified.get(f1);
+                long m2 = modified.get(f2);
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (File f : files) {
+            long size = f.length();
+            blocks.put(f.getPath(), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+
+import java.io.IOException;
+
+/**
+ * A SeekableStream which reads through a {@link BlockCache}.  Reads are aligned to cache blocks; blocks
+ * not found in the cache are read from the wrapped stream and stored.
+ */
+public class BlockCachingSeekableStream extends SeekableStream {
+
+    private final SeekableStream wrappedStream;
+    private final BlockCache cache;
+    private final String key;
+    private final int blockSize;
+    private final long length;
+
+    private long position = 0;
+
+    // The most recently used block, kept to serve runs of small reads without touching the disk
+    private long currentBlockIndex = -1;
+    private byte[] currentBlock;
+
+    public BlockCachingSeekableStream(SeekableStream wrappedStream, BlockCache cache, String key, long length) {
+        this.wrappedStream = wrappedStream;
+        this.cache = cache;
+        this.key = key;
+        this.length = length;
+        this.blockSize = cache.getBlockSize();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void seek(long position) {
+        this.position = position;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long bytesToSkip = Math.min(n, length - position);
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    public boolean eof() throws IOException {
+        return position >= length;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (off < 0 || len < 0 || (off + len) > b.length) {
+            throw new IndexOutOfBoundsException("Offset=" + off + ",len=" + len + ",buflen=" + b.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+
+        int n = 0;
+        while (n < len && position < length) {
+            long blockIndex = position / blockSize;
+            byte[] block = getBlock(blockIndex);
+            int blockOffset = (int) (position - blockIndex * blockSize);
+            if (blockOffset >= block.length) {
+                break;   // Short block, resource is shorter than reported
+            }
+            int count = Math.min(len - n, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, b, off + n, count);
+            position += count;
+            n += count;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    public int read() throws IOException {
+        byte[] tmp = new byte[1];
+        int n = read(tmp, 0, 1);
+        return n < 0 ? -1 : (int) tmp[0] & 0xFF;
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+
+        if (blockIndex == currentBlockIndex) {
+            return currentBlock;
+        }
+
+        byte[] block = cache.getBlock(key, blockIndex);
+        if (block == null) {
+            long start = blockIndex * blockSize;
+            int expected = (int) Math.min(blockSize, length - start);
+            block = new byte[expected];
+            wrappedStream.seek(start);
+            int n = 0;
+            while (n < expected) {
+                int count = wrappedStream.read(block, n, expected - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+            if (n < expected) {
+                byte[] tmp = new byte[n];
+                System.arraycopy(block, 0, tmp, 0, n);
+                block = tmp;
+            } else {
+                // Only complete blocks are cached
+                cache.putBlock(key, blockIndex, block, n);
+            }
+        }
+
+        currentBlockIndex = blockIndex;
+        currentBlock = block;
+        return block;
+    }
+
+    public void close() throws IOException {
+        currentBlock = null;
+        currentBlockIndex = -1;
+        wrappedStream.close();
+    }
+
+    @Override
+    public String getSource() {
+        return wrappedStream.getSource();
+    }
+}
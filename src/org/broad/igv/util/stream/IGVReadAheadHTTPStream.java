@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.util.HttpUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * A SeekableStream for http(s) resources which supports range-byte requests.
+ * <p/>
+ * Compared to {@link IGVSeekableHTTPStream}, which issues one range request per read call, this class
+ * <ul>
+ * <li>reads ahead into an internal window, so runs of small nearby reads are merged into a single request</li>
+ * <li>doubles the read-ahead size while access is sequential (or skips forward by less than {@code MERGE_GAP}),
+ * and drops back to the minimum on a random seek</li>
+ * <li>reads every response body to its end before closing it, which lets the JVM return the socket to its
+ * keep-alive pool.  Successive requests to the same host therefore reuse the TCP/TLS connection.</li>
+ * </ul>
+ * Request, byte, and wasted-byte counts are recorded per URL in {@link RangeRequestStats}.
+ */
+public class IGVReadAheadHTTPStream extends SeekableStream {
+
+    static Logger log = Logger.getLogger(IGVReadAheadHTTPStream.class);
+
+    public static final int MIN_READ_AHEAD = 64 * 1024;
+    public static final int MAX_READ_AHEAD = 8 * 1024 * 1024;
+
+    /**
+     * Forward seeks which skip fewer bytes than this past the end of the window are treated as sequential
+     */
+    static final int MERGE_GAP = 32 * 1024;
+
+    private final IGVUrlHelper helper;
+    private final RangeRequestStats stats;
+
+    private long position = 0;
+    private long contentLength = -1;
+
+    private int readAhead = MIN_READ_AHEAD;
+
+    private byte[] buffer;
+    private long bufferStart = 0;
+    private int bufferSize = 0;
+    private int bufferServed = 0;    // Bytes returned to callers from the current window
+
+    public IGVReadAheadHTTPStream(final URL url) {
+        this.helper = new IGVUrlHelper(url);
+        this.stats = RangeRequestStats.getStats(url.toExternalForm());
+        try {
+            // Not the length cached by the helper: the version of this HEAD response validates the block cache
+            this.contentLength = HttpUtils.getInstance().getContentLength(url);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public long length() {
+        return contentLength;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long bytesToSkip = contentLength > 0 ? Math.min(n, contentLength - position) : n;
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    public boolean eof() throws IOException {
+        return contentLength > 0 && position >= contentLength;
+    }
+
+    public void seek(final long position) {
+        this.position = position;
+    }
+
+    /**
+     * @return the current read-ahead size, exposed for testing
+     */
+    int getReadAhead() {
+        return readAhead;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (off < 0 || len < 0 || (off + len) > b.length) {
+            throw new IndexOutOfBoundsException("Offset=" + off + ",len=" + len + ",buflen=" + b.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (eof()) {
+            return -1;
+        }
+
+        int n = 0;
+        while (n < len) {
+
+            if (position < bufferStart || position >= bufferStart + bufferSize) {
+                int remaining = len - n;
+                if (remaining >= MAX_READ_AHEAD) {
+                    // Large request, read-ahead buys nothing.  Read straight into the caller's array.
+                    int count = fetch(position, remaining, b, off + n);
+                    if (count <= 0) break;
+                    position += count;
+                    n += count;
+                    continue;
+                }
+                if (!fillBuffer()) {
+                    break;
+                }
+            }
+
+            int bufferOffset = (int) (position - bufferStart);
+            int count = Math.min(len - n, bufferSize - bufferOffset);
+            System.arraycopy(buffer, bufferOffset, b, off + n, count);
+            bufferServed += count;
+            position += count;
+            n += count;
+        }
+
+        return n == 0 ? -1 : n;
+    }
+
+    public int read() throws IOException {
+        byte[] tmp = new byte[1];
+        int n = read(tmp, 0, 1);
+        return n < 0 ? -1 : (int) tmp[0] & 0xFF;
+    }
+
+    /**
+     * Refill the window starting at the current position.
+     *
+     * @return false if no bytes could be read (end of file)
+     * @throws IOException
+     */
+    private boolean fillBuffer() throws IOException {
+
+        long bufferEnd = bufferStart + bufferSize;
+        boolean sequential = bufferSize > 0 && position >= bufferEnd && position - bufferEnd <= MERGE_GAP;
+        if (sequential) {
+            readAhead = Math.min(2 * readAhead, MAX_READ_AHEAD);
+        } else {
+            readAhead = MIN_READ_AHEAD;
+        }
+
+        stats.recordWaste(bufferSize - bufferServed);
+        if (buffer == null || buffer.length < readAhead) {
+            buffer = new byte[readAhead];
+        }
+        bufferStart = position;
+        bufferSize = 0;
+        bufferServed = 0;
+
+        int fetchLength = readAhead;
+        if (contentLength > 0) {
+            fetchLength = (int) Math.min(fetchLength, contentLength - position);
+        }
+        if (fetchLength > 0) {
+            int count = fetch(position, fetchLength, buffer, 0);
+            if (count > 0) {
+                bufferSize = count;
+            }
+        }
+        return bufferSize > 0;
+    }
+
+    /**
+     * Issue a single range request for {@code len} bytes starting at {@code start}.  The response body is read
+     * to its end before closing, which is the condition for the connection to be reused.
+     *
+     * @return the number of bytes read, or -1 if the start is at or beyond the end of the resource
+     */
+    private int fetch(long start, int len, byte[] dest, int destOffset) throws IOException {
+
+        if (log.isTraceEnabled()) {
+            log.trace("Trying to read range " + start + " to " + (start + len - 1));
+        }
+
+        InputStream is = null;
+        int n = 0;
+        try {
+            is = helper.openInputStreamForRange(start, start + len - 1);
+            while (n < len) {
+                int count = is.read(dest, destOffset + n, len - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+            stats.recordRequest(n);
+            return n == 0 ? -1 : n;
+
+        } catch (IOException e) {
+            // See IGVSeekableHTTPStream.  A 416 response (or EOFException on Windows) indicates a range past the
+            // end of the file.
+            String message = e.getMessage();
+            if ((message != null && message.contains("416")) || (e instanceof EOFException)) {
+                stats.recordRequest(n);
+                if (n == 0) {
+                    return -1;
+                } else {
+                    contentLength = start + n;
+                    return n;
+                }
+            } else {
+                log.error(message, e);
+                throw e;
+            }
+        } finally {
+            if (is != null) {
+                is.close();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        stats.recordWaste(bufferSize - bufferServed);
+        buffer = null;
+        bufferSize = 0;
+        bufferServed = 0;
+        if (log.isDebugEnabled()) {
+            log.debug(stats.toString());
+        }
+    }
+
+    @Override
+    public String getSource() {
+        return this.helper.getUrl().toExternalForm();
+    }
+}
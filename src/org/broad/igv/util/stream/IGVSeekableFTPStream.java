@@ -87,6 +87,21 @@ public class IGVSeekableFTPStream extends SeekableStream {
     }
 
 
+    /**
+     * @return the modification time reported by the MDTM command, or null if the server does not support it
+     */
+    public String getModificationTime() {
+        try {
+            FTPReply reply = ftp.executeCommand("MDTM " + path);
+            if (reply.isSuccess()) {
+                return reply.getReplyString();
+            }
+        } catch (IOException e) {
+            log.error("Error getting modification time. " + e.getMessage(), e);
+        }
+        return null;
+    }
+
     public long skip(long n) throws IOException {
         long bytesToSkip = n;
         position += bytesToSkip;
@@ -35,13 +35,14 @@ public class IGVSeekableStreamFactory {
                 final URL url = new URL(path);
                 boolean useByteRange = HttpUtils.getInstance().useByteRange(url);
                 if (useByteRange) {
-                    is = new IGVSeekableHTTPStream(url);
+                    is = new IGVReadAheadHTTPStream(url);
                 } else {
                     is = new SeekableServiceStream(url);
                 }
+                is = BlockCache.wrap(is, url);
             } else if (path.toLowerCase().startsWith("ftp:")) {
                 final URL url = new URL(path);
-                is = new IGVSeekableFTPStream(url);
+                is = BlockCache.wrap(new IGVSeekableFTPStream(url), url);
             } else {
                 is = new SeekableFileStream(new File(path));
             }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-URL counters for remote range requests.  Counts accumulate across all streams opened on the same resource.
+ * Counters are kept for the {@link #MAX_URLS} most recently opened URLs.
+ */
+public class RangeRequestStats {
+
+    static final int MAX_URLS = 1000;
+
+    private static final Map<String, RangeRequestStats> statsMap =
+            new LinkedHashMap<String, RangeRequestStats>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RangeRequestStats> eldest) {
+                    return size() > MAX_URLS;
+                }
+            };
+
+    private final String url;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong wastedBytes = new AtomicLong();
+
+    private RangeRequestStats(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Return the counters for the given url, creating them if required
+     *
+     * @param url
+     * @return
+     */
+    public static RangeRequestStats getStats(String url) {
+        synchronized (statsMap) {
+            RangeRequestStats stats = statsMap.get(url);
+            if (stats == null) {
+                stats = new RangeRequestStats(url);
+                statsMap.put(url, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * @return a snapshot of the counters for all urls seen so far
+     */
+    public static Collection<RangeRequestStats> getAllStats() {
+        synchronized (statsMap) {
+            return new ArrayList<RangeRequestStats>(statsMap.values());
+        }
+    }
+
+    public static void clearAll() {
+        synchronized (statsMap) {
+            statsMap.clear();
+        }
+    }
+
+    void recordRequest(long nBytes) {
+        requests.incrementAndGet();
+        bytes.addAndGet(nBytes);
+    }
+
+    void recordWaste(long nBytes) {
+        if (nBytes > 0) {
+            wastedBytes.addAndGet(nBytes);
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return number of range requests issued
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return total bytes transferred
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return bytes transferred by read-ahead which were never returned to a caller
+     */
+    public long getWastedBytes() {
+        return wastedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return url + "  requests=" + getRequests() + "  bytes=" + getBytes() + "  wasted=" + getWastedBytes();
+    }
+}
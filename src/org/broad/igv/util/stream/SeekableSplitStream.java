@@ -13,20 +13,25 @@ package org.broad.igv.util.stream;
 
 
 import net.sf.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
 import org.broad.igv.util.HttpUtils;
 import org.broad.igv.util.ParsingUtils;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Class to support a single logical file split into multiple parts.  Introduced to support Amazon cloud files that
- * might be split, but not used thus far.
+ * might be split.
+ * <p/>
+ * The list file gives the name and length of each part, in order.  Parts are located by binary search of the
+ * part offset table.  Part streams are opened on first use and pooled, so concurrent readers (and concurrent
+ * fetches within a single read) each get their own stream.  A read spanning part boundaries fetches the
+ * segments of each part concurrently.
  *
  * @author jrobinso
  * @date Jul 28, 2010
@@ -34,10 +39,27 @@ import java.util.List;
 
 public class SeekableSplitStream extends SeekableStream {
 
+    private static Logger log = Logger.getLogger(SeekableSplitStream.class);
+
+    // Maximum number of idle streams kept open per part
+    static final int MAX_POOLED_STREAMS = 4;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(8, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread t = new Thread(runnable, "SeekableSplitStream");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     long position = 0;
     long length = 0;
     List<PartDescriptor> descriptors;
-    int currentStreamIndex = 0;
+
+    /**
+     * Offset of the first byte of each part in the logical file
+     */
+    long[] partStarts;
 
     private String path;
 
@@ -48,18 +70,6 @@ public class SeekableSplitStream extends SeekableStream {
 
     public void seek(long position) throws IOException {
         this.position = position;
-        long end = 0;
-        long start = 0;
-        for (PartDescriptor desc : descriptors) {
-            end += desc.getContentLength();
-            if (position >= start && position < end) {
-                long delta = position - start;
-                desc.getStream().seek(delta);
-            } else {
-                desc.getStream().seek(0);
-            }
-            start = end;
-        }
     }
 
     public long position() throws IOException {
@@ -69,43 +79,128 @@ public class SeekableSplitStream extends SeekableStream {
     @Override
     public int read(byte[] buffer, int off, int len) throws IOException {
 
-        int bytesRead = 0;
-        long end = 0;
-        long start = 0;
-        for (PartDescriptor desc : descriptors) {
-            end += desc.getContentLength();
-            if (position >= start && position < end) {
-                int delta = (int) (desc.contentLength - desc.stream.position());
-                int l = Math.min(len - bytesRead, delta);
-                int nBytes = desc.stream.read(buffer, off + bytesRead, l);
-                if (nBytes < 0) {
-                    return nBytes;
-                }
-                bytesRead += nBytes;
-                position += nBytes;
-                if (bytesRead >= len) {
-                    break;
-                }
+        if (off < 0 || len < 0 || (off + len) > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset=" + off + ",len=" + len + ",buflen=" + buffer.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+
+        len = (int) Math.min(len, length - position);
+        int firstPart = getPartIndex(position);
+        int lastPart = getPartIndex(position + len - 1);
+
+        if (firstPart == lastPart) {
+            int n = descriptors.get(firstPart).read(position - partStarts[firstPart], buffer, off, len, false);
+            if (n > 0) {
+                position += n;
             }
-            start = end;
+            return n;
         }
 
+        // Span part boundaries.  Each segment is read fully, on the pool for all but the first part.
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        List<Integer> segmentLengths = new ArrayList<Integer>();
+        int segmentOffset = off;
+        long segmentPosition = position;
+        int firstSegmentLength = 0;
+        for (int i = firstPart; i <= lastPart; i++) {
+            final PartDescriptor desc = descriptors.get(i);
+            final long partPosition = segmentPosition - partStarts[i];
+            final int segmentLength = (int) Math.min(len - (segmentOffset - off), desc.getContentLength() - partPosition);
+            final byte[] b = buffer;
+            final int o = segmentOffset;
+            if (i == firstPart) {
+                firstSegmentLength = segmentLength;
+            } else if (segmentLength > 0) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return desc.read(partPosition, b, o, segmentLength, true);
+                    }
+                }));
+                segmentLengths.add(segmentLength);
+            }
+            segmentOffset += segmentLength;
+            segmentPosition += segmentLength;
+        }
 
-        // If we get this far, and haven't read any bytes, we're at EOF
-        return bytesRead > 0 ? bytesRead : -1;
+        // Wait for all segments, even after an error, so no fetch writes to the buffer after we return.
+        // Only the bytes up to the first short segment are contiguous, and -1 ends a segment with no bytes.
+        IOException error = null;
+        int bytesRead = 0;
+        try {
+            bytesRead = Math.max(0,
+                    descriptors.get(firstPart).read(position - partStarts[firstPart], buffer, off, firstSegmentLength, true));
+        } catch (IOException e) {
+            error = e;
+        }
+        boolean complete = bytesRead == firstSegmentLength;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                int n = Math.max(0, getResult(futures.get(i)));
+                if (complete) {
+                    bytesRead += n;
+                    complete = n == segmentLengths.get(i);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (bytesRead == 0) {
+            return -1;
+        }
+        position += bytesRead;
+        return bytesRead;
     }
 
     @Override
     public int read() throws IOException {
-        int b = descriptors.get(currentStreamIndex).getStream().read();
-        position++;
-        return b;
+        byte[] tmp = new byte[1];
+        int n = read(tmp, 0, 1);
+        return n < 0 ? -1 : (int) tmp[0] & 0xFF;
     }
 
     @Override
     public void close() throws IOException {
         for (PartDescriptor desc : descriptors) {
-            desc.getStream().close();
+            desc.close();
+        }
+    }
+
+    /**
+     * Return the index of the part containing the given position
+     */
+    private int getPartIndex(long pos) {
+        int low = 0;
+        int high = partStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (partStarts[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int getResult(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -113,26 +208,28 @@ public class SeekableSplitStream extends SeekableStream {
 
         BufferedReader br = null;
         descriptors = new ArrayList();
+        List<Long> starts = new ArrayList<Long>();
         try {
             br = new BufferedReader(new InputStreamReader(ParsingUtils.openInputStream(path)));
+
+            // Require the files are in the same directory as the list file
+            String listFileName = null;
+            if (HttpUtils.isRemoteURL(path)) {
+                URL url = new URL(path);
+                listFileName = (new File(url.getPath())).getName();
+            } else {
+                listFileName = (new File(path)).getName();
+            }
+
             String nextLine;
             while ((nextLine = br.readLine()) != null) {
                 String[] tokens = nextLine.split(" ");
                 if (tokens.length == 2) {
                     String p = tokens[0];
-
-                    // Require the files are in the same directory as the list file
-                    String listFileName = null;
-                    if (HttpUtils.isRemoteURL(path)) {
-                        URL url = new URL(path);
-                        listFileName = (new File(url.getPath())).getName();
-                    } else {
-                        listFileName = (new File(path)).getName();
-                    }
-                    SeekableStream stream = IGVSeekableStreamFactory.getStreamFor(path.replace(listFileName, p));
-
-                    long length = Long.parseLong(tokens[1]);
-                    descriptors.add(new SeekableSplitStream.PartDescriptor(length, stream));
+                    long partLength = Long.parseLong(tokens[1]);
+                    starts.add(length);
+                    descriptors.add(new PartDescriptor(partLength, path.replace(listFileName, p)));
+                    length += partLength;
                 } else {
                     // TODO -- throw exception, or warning?
                 }
@@ -142,6 +239,14 @@ public class SeekableSplitStream extends SeekableStream {
                 br.close();
             }
         }
+
+        if (descriptors.isEmpty()) {
+            throw new IOException("No parts listed in " + path);
+        }
+        partStarts = new long[starts.size()];
+        for (int i = 0; i < partStarts.length; i++) {
+            partStarts[i] = starts.get(i);
+        }
     }
 
 
@@ -150,27 +255,98 @@ public class SeekableSplitStream extends SeekableStream {
     }
 
 
+    /**
+     * A part of the split file, with a pool of open streams.
+     */
     public static class PartDescriptor {
         private long contentLength;
-        private SeekableStream stream;
+        private String path;
+        private final LinkedList<SeekableStream> idleStreams = new LinkedList<SeekableStream>();
 
-        public PartDescriptor(long contentLength, SeekableStream stream) {
+        public PartDescriptor(long contentLength, String path) {
             this.contentLength = contentLength;
-            this.stream = stream;
+            this.path = path;
         }
 
         public long getContentLength() {
             return contentLength;
         }
 
-        public SeekableStream getStream() {
-            return stream;
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Read from the part at the given position.
+         *
+         * @param fully if true continue reading until len bytes are read or the end of the part is reached
+         * @return the number of bytes read, or -1 if none
+         */
+        int read(long partPosition, byte[] buffer, int off, int len, boolean fully) throws IOException {
+            SeekableStream stream = borrowStream();
+            boolean ok = false;
+            try {
+                stream.seek(partPosition);
+                int n = 0;
+                do {
+                    int count = stream.read(buffer, off + n, len - n);
+                    if (count < 0) {
+                        break;
+                    }
+                    n += count;
+                } while (fully && n < len);
+                ok = true;
+                return n == 0 ? -1 : n;
+            } finally {
+                if (ok) {
+                    returnStream(stream);
+                } else {
+                    // State unknown after an error, don't reuse
+                    closeQuietly(stream);
+                }
+            }
+        }
+
+        private SeekableStream borrowStream() throws IOException {
+            synchronized (idleStreams) {
+                if (!idleStreams.isEmpty()) {
+                    return idleStreams.removeFirst();
+                }
+            }
+            return IGVSeekableStreamFactory.getStreamFor(path);
+        }
+
+        private void returnStream(SeekableStream stream) {
+            synchronized (idleStreams) {
+                if (idleStreams.size() < MAX_POOLED_STREAMS) {
+                    idleStreams.addFirst(stream);
+                    return;
+                }
+            }
+            closeQuietly(stream);
+        }
+
+        void close() {
+            synchronized (idleStreams) {
+                for (SeekableStream stream : idleStreams) {
+                    closeQuietly(stream);
+                }
+                idleStreams.clear();
+            }
+        }
+
+        private static void closeQuietly(SeekableStream stream) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.error("Error closing stream", e);
+            }
         }
     }
 
     @Override
     public boolean eof() throws IOException {
-        return false;  //TODO -- punting on this for the moment
+        return position >= length;
     }
 
     @Override
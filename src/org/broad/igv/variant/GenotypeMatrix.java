@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.variant;
+
+import org.broad.igv.track.PackedFeatures;
+import org.broad.igv.variant.vcf.VCFVariant;
+import org.broadinstitute.variant.variantcontext.GenotypeType;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Genotype codes of the variants of a loaded window, a row per variant and a column per sample in file order.
+ * A cell is computed the first time it is drawn, so samples which are never visible are never looked up, and
+ * repaints read codes rather than genotypes.
+ */
+class GenotypeMatrix {
+
+    static final byte UNKNOWN = 0;
+    static final byte MISSING = 1;
+    static final byte NO_CALL = 2;
+    static final byte HOM_REF = 3;
+    static final byte HOM_VAR = 4;
+    static final byte HET = 5;
+    static final byte OTHER = 6;
+
+    private final PackedFeatures packedFeatures;
+    private final List<String> samples;
+    private final Map<Variant, byte[]> rows = new IdentityHashMap<Variant, byte[]>();
+
+    /**
+     * @param packedFeatures the window
+     * @param samples        samples in file order, the matrix columns
+     */
+    GenotypeMatrix(PackedFeatures packedFeatures, List<String> samples) {
+        this.packedFeatures = packedFeatures;
+        this.samples = samples;
+    }
+
+    /**
+     * A matrix for a window extended from the window of {@code previous}.  Rows of variants still in the window
+     * are kept.
+     */
+    GenotypeMatrix(PackedFeatures packedFeatures, List<String> samples, GenotypeMatrix previous) {
+        this(packedFeatures, samples);
+        if (previous.samples == samples) {
+            synchronized (previous) {
+                for (Object f : packedFeatures.getFeatures()) {
+                    byte[] row = previous.rows.get(f);
+                    if (row != null) {
+                        rows.put((Variant) f, row);
+                    }
+                }
+            }
+        }
+    }
+
+    PackedFeatures getPackedFeatures() {
+        return packedFeatures;
+    }
+
+    String getSample(int column) {
+        return samples.get(column);
+    }
+
+    synchronized byte[] getRow(Variant variant) {
+        byte[] row = rows.get(variant);
+        if (row == null) {
+            row = new byte[samples.size()];
+            rows.put(variant, row);
+        }
+        return row;
+    }
+
+    /**
+     * @param variant
+     * @param row     the row of {@code variant}, see {@link #getRow(Variant)}
+     * @param column  sample index, in file order
+     * @return the genotype code of the sample
+     */
+    byte getCode(Variant variant, byte[] row, int column) {
+        byte code = row[column];
+        if (code == UNKNOWN) {
+            code = classify(variant, samples.get(column));
+            row[column] = code;
+        }
+        return code;
+    }
+
+    static byte classify(Variant variant, String sample) {
+        if (variant instanceof VCFVariant) {
+            GenotypeType type = ((VCFVariant) variant).getGenotypeType(sample);
+            if (type == null) {
+                return MISSING;
+            }
+            switch (type) {
+                case NO_CALL:
+                    return NO_CALL;
+                case HOM_REF:
+                    return HOM_REF;
+                case HOM_VAR:
+                    return HOM_VAR;
+                case HET:
+                    return HET;
+                default:
+                    return OTHER;
+            }
+        }
+
+        Genotype genotype = variant.getGenotype(sample);
+        if (genotype == null) {
+            return MISSING;
+        } else if (genotype.isNoCall()) {
+            return NO_CALL;
+        } else if (genotype.isHomRef()) {
+            return HOM_REF;
+        } else if (genotype.isHomVar()) {
+            return HOM_VAR;
+        } else if (genotype.isHet()) {
+            return HET;
+        }
+        return OTHER;
+    }
+}
@@ -352,18 +352,44 @@ public class VariantMenu extends IGVPopupMenu {
     }
 
 
-    static class GenotypeComparator implements Comparator<String> {
+    /**
+     * Compares samples by a value of their genotypes, computed once per sample
+     */
+    static abstract class GenotypeValueComparator<T> implements Comparator<String> {
 
         Variant variant;
+        private Map<String, T> values = new HashMap<String, T>();
 
-        GenotypeComparator(Variant variant) {
+        GenotypeValueComparator(Variant variant) {
             this.variant = variant;
         }
 
+        T getValue(String sample) {
+            T value = values.get(sample);
+            if (value == null) {
+                value = computeValue(variant.getGenotype(sample));
+                values.put(sample, value);
+            }
+            return value;
+        }
+
+        abstract T computeValue(Genotype genotype);
+    }
+
+    static class GenotypeComparator extends GenotypeValueComparator<Integer> {
+
+        GenotypeComparator(Variant variant) {
+            super(variant);
+        }
+
+        Integer computeValue(Genotype genotype) {
+            return classifyGenotype(genotype);
+        }
+
         public int compare(String e1, String e2) {
 
-            int genotype1 = classifyGenotype(variant.getGenotype(e1));
-            int genotype2 = classifyGenotype(variant.getGenotype(e2));
+            int genotype1 = getValue(e1);
+            int genotype2 = getValue(e2);
 
             if (genotype2 == genotype1) {
                 return 0;
@@ -391,19 +417,21 @@ public class VariantMenu extends IGVPopupMenu {
     }
 
 
-    static class DepthComparator implements Comparator<String> {
-
-        Variant variant;
+    static class DepthComparator extends GenotypeValueComparator<Double> {
 
         DepthComparator(Variant variant) {
-            this.variant = variant;
+            super(variant);
+        }
+
+        Double computeValue(Genotype genotype) {
+            return genotype.getAttributeAsDouble("DP");
         }
 
         public int compare(String s1, String s2) {
 
 
-            double readDepth1 = variant.getGenotype(s1).getAttributeAsDouble("DP");
-            double readDepth2 = variant.getGenotype(s2).getAttributeAsDouble("DP");
+            double readDepth1 = getValue(s1);
+            double readDepth2 = getValue(s2);
 
             int sign = depthSortingDirection ? -1 : 1;
             return sign * Double.compare(readDepth1, readDepth2);
@@ -411,18 +439,20 @@ public class VariantMenu extends IGVPopupMenu {
         }
     }
 
-    static class QualityComparator implements Comparator<String> {
-
-        Variant variant;
+    static class QualityComparator extends GenotypeValueComparator<Double> {
 
         QualityComparator(Variant variant) {
-            this.variant = variant;
+            super(variant);
+        }
+
+        Double computeValue(Genotype genotype) {
+            return genotype.getPhredScaledQual();
         }
 
         public int compare(String s1, String s2) {
 
-            double qual1 = variant.getGenotype(s1).getPhredScaledQual();
-            double qual2 = variant.getGenotype(s2).getPhredScaledQual();
+            double qual1 = getValue(s1);
+            double qual2 = getValue(s2);
 
             int sign = qualitySortingDirection ? -1 : 1;
             return sign * Double.compare(qual1, qual2);
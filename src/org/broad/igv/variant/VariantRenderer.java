@@ -150,6 +150,71 @@ public class VariantRenderer { //extends FeatureRenderer {
     }
 
 
+    /**
+     * Render the genotype bands of a run of samples, colored by genotype.  Adjacent bands of the same color are
+     * filled together when the display mode leaves no gap between them.
+     *
+     * @param variant
+     * @param matrix      genotype codes of the window
+     * @param columns     matrix columns of the samples, in display order
+     * @param from        index in {@code columns} of the first sample to render
+     * @param to          index in {@code columns} after the last sample to render
+     * @param context
+     * @param y           top of the band of {@code columns[from]}
+     * @param bandHeight
+     * @param pX0
+     * @param dX
+     * @param hideFiltered
+     */
+    void renderGenotypeBands(Variant variant, GenotypeMatrix matrix, int[] columns, int from, int to,
+                             RenderContext context, int y, int bandHeight, int pX0, int dX, boolean hideFiltered) {
+
+        boolean isFiltered = variant.isFiltered() && hideFiltered;
+        boolean expanded = track.getDisplayMode() == Track.DisplayMode.EXPANDED;
+        int offset = expanded ? 1 : 0;
+        int h = Math.max(1, expanded ? bandHeight - 2 : bandHeight);
+
+        byte[] row = matrix.getRow(variant);
+        Color runColor = null;
+        int runTop = 0;
+        int runHeight = 0;
+        for (int i = from; i < to; i++, y += bandHeight) {
+            byte code = matrix.getCode(variant, row, columns[i]);
+            Color color = code == GenotypeMatrix.MISSING ? null : getGenotypeColor(code, isFiltered);
+            if (color == null) {
+                log.error("Genotype not found for sample " + matrix.getSample(columns[i]));
+            }
+            if (expanded || color != runColor || runTop + runHeight != y + offset) {
+                if (runColor != null) {
+                    context.getGraphic2DForColor(runColor).fillRect(pX0, runTop, dX, runHeight);
+                }
+                runColor = color;
+                runTop = y + offset;
+                runHeight = h;
+            } else {
+                runHeight += h;
+            }
+        }
+        if (runColor != null) {
+            context.getGraphic2DForColor(runColor).fillRect(pX0, runTop, dX, runHeight);
+        }
+    }
+
+    private Color getGenotypeColor(byte code, boolean isFiltered) {
+        switch (code) {
+            case GenotypeMatrix.NO_CALL:
+                return isFiltered ? colorNoCallAlpha : colorNoCall;
+            case GenotypeMatrix.HOM_REF:
+                return isFiltered ? colorHomRefAlpha : colorHomRef;
+            case GenotypeMatrix.HOM_VAR:
+                return isFiltered ? colorHomVarAlpha : colorHomVar;
+            case GenotypeMatrix.HET:
+                return isFiltered ? colorHetAlpha : colorHet;
+            default:
+                return Color.white;
+        }
+    }
+
     public void renderGenotypeBandSNP(Variant variant, RenderContext context, Rectangle bandRectangle, int pX0, int dX,
                                       String sampleName, VariantTrack.ColorMode coloring, boolean hideFiltered) {
 
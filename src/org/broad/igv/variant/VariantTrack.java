@@ -101,6 +101,25 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
      */
     List<String> allSamples;
 
+    /**
+     * Samples in file order, and the index of each.  These are the columns of genotype matrices.
+     */
+    private List<String> fileSamples;
+    private Map<String, Integer> sampleColumns;
+
+    /**
+     * Matrix columns of the samples in display order, for all samples and for each group.  Null when the order
+     * has changed, recomputed on the next render.
+     */
+    private int[] sampleOrder;
+    private List<int[]> groupSampleOrders;
+
+    /**
+     * Genotype codes of the loaded window, by reference frame name
+     */
+    private final Map<String, GenotypeMatrix> genotypeMatrices =
+            Collections.synchronizedMap(new HashMap<String, GenotypeMatrix>());
+
     /**
      * Boolean indicating if samples are grouped.
      */
@@ -179,6 +198,11 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
 
 
         this.allSamples = samples;
+        this.fileSamples = new ArrayList<String>(samples);
+        this.sampleColumns = new HashMap<String, Integer>(samples.size() * 2);
+        for (int i = 0; i < samples.size(); i++) {
+            sampleColumns.put(samples.get(i), i);
+        }
 
         // this handles the new attribute grouping mechanism:
         setupGroupsFromAttributes();
@@ -271,6 +295,7 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
 
 
         samplesByGroups.clear();
+        sampleOrder = null;
 
         groupByAttribute = newGroupByAttribute;
 
@@ -305,6 +330,41 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
         for (List<String> samples : samplesByGroups.values()) {
             Collections.sort(samples, comparator);
         }
+        sampleOrder = null;
+    }
+
+    private void updateSampleOrder() {
+        if (sampleOrder != null) {
+            return;
+        }
+        List<int[]> groupOrders = new ArrayList<int[]>(samplesByGroups.size());
+        for (List<String> samples : samplesByGroups.values()) {
+            groupOrders.add(getColumns(samples));
+        }
+        groupSampleOrders = groupOrders;
+        sampleOrder = getColumns(allSamples);
+    }
+
+    private int[] getColumns(List<String> samples) {
+        int[] columns = new int[samples.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = sampleColumns.get(samples.get(i));
+        }
+        return columns;
+    }
+
+    private GenotypeMatrix getGenotypeMatrix(String frameName, PackedFeatures packedFeatures) {
+        synchronized (genotypeMatrices) {
+            GenotypeMatrix matrix = genotypeMatrices.get(frameName);
+            if (matrix == null) {
+                matrix = new GenotypeMatrix(packedFeatures, fileSamples);
+                genotypeMatrices.put(frameName, matrix);
+            } else if (matrix.getPackedFeatures() != packedFeatures) {
+                matrix = new GenotypeMatrix(packedFeatures, fileSamples, matrix);
+                genotypeMatrices.put(frameName, matrix);
+            }
+            return matrix;
+        }
     }
 
 
@@ -420,6 +480,12 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
 
         int curRowTop = top;
 
+        GenotypeMatrix matrix = null;
+        if (coloring == ColorMode.GENOTYPE) {
+            updateSampleOrder();
+            matrix = getGenotypeMatrix(context.getReferenceFrame().getName(), packedFeatures);
+        }
+
         if (rows.size() > 0) {
             final double locScale = context.getScale();
             final double origin = context.getOrigin();
@@ -460,7 +526,11 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
                         renderer.renderSiteBand(variant, tmpRect, x, w, context);
                     }
 
-                    renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                    if (matrix != null) {
+                        renderGenotypes(g2D, visibleRectangle, variant, matrix, context, overallSampleRect, x, w);
+                    } else {
+                        renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                    }
                     boolean isSelected = selectedVariant != null && selectedVariant == variant;
                     if (isSelected) {
                         Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
@@ -522,6 +592,43 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
         }
     }
 
+    /**
+     * Render the genotypes of the visible samples from the genotype matrix.  Equivalent to
+     * {@link #renderSamples} for {@link ColorMode#GENOTYPE}.
+     */
+    private void renderGenotypes(Graphics2D g2D, Rectangle visibleRectangle, Variant variant, GenotypeMatrix matrix,
+                                 RenderContext context, Rectangle overallSampleRect, int x, int w) {
+        int bandHeight = getGenotypeBandHeight();
+        int y = overallSampleRect.y;
+        if (grouped) {
+            for (int[] columns : groupSampleOrders) {
+                renderGenotypeRange(visibleRectangle, variant, matrix, columns, context, y, bandHeight, x, w);
+                y += columns.length * bandHeight;
+                g2D.setColor(OFF_WHITE);
+                g2D.fillRect(overallSampleRect.x, y, overallSampleRect.width, GROUP_BORDER_WIDTH);
+            }
+        } else {
+            renderGenotypeRange(visibleRectangle, variant, matrix, sampleOrder, context, y, bandHeight, x, w);
+        }
+    }
+
+    /**
+     * Render the bands of {@code columns} which intersect the visible rectangle
+     */
+    private void renderGenotypeRange(Rectangle visibleRectangle, Variant variant, GenotypeMatrix matrix,
+                                     int[] columns, RenderContext context, int top, int bandHeight, int x, int w) {
+        if (bandHeight <= 0 || columns.length == 0) {
+            return;
+        }
+        int from = Math.max(0, (int) Math.floor((visibleRectangle.y - top) / (double) bandHeight));
+        int to = Math.min(columns.length,
+                (int) Math.ceil((visibleRectangle.getMaxY() - top) / (double) bandHeight));
+        if (from < to) {
+            renderer.renderGenotypeBands(variant, matrix, columns, from, to, context, top + from * bandHeight,
+                    bandHeight, x, w, hideFiltered);
+        }
+    }
+
     /**
      * Renders the top line, bottom track line, and border between variants / genotypes
      * @param g2D
@@ -1406,7 +1513,9 @@ public class VariantTrack extends FeatureTrack implements TrackGroupEventListene
      * This clears that cache. Used to force a refresh
      * @api
      */
+    @Override
     public void clearPackedFeatures(){
-        this.packedFeaturesMap.clear();
+        super.clearPackedFeatures();
+        this.genotypeMatrices.clear();
     }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import org.broadinstitute.variant.variantcontext.*;
+
+import java.util.*;
+
+/**
+ * The genotype columns of a VCF line, kept as text.  A sample's genotype is parsed only when it is requested, and
+ * zygosity counts are computed from the GT fields without creating genotypes, so the genotypes of samples which
+ * are never displayed are never parsed.
+ * <p/>
+ * Parsing follows the htsjdk VCF codec, except that unparseable numeric fields are kept as string attributes
+ * and missing values in numeric lists read as 0.
+ */
+public class LazyVCFGenotypes {
+
+    private final Samples samples;
+    private final List<Allele> alleles;
+
+    /**
+     * FORMAT column followed by the sample columns, tab separated
+     */
+    private final String data;
+
+    private String[] formatKeys;
+    private volatile int[] columnStarts;
+
+    /**
+     * @param samples the samples of the file
+     * @param alleles alleles of the site, reference first
+     * @param data    the FORMAT and sample columns of the line
+     */
+    public LazyVCFGenotypes(Samples samples, List<Allele> alleles, String data) {
+        this.samples = samples;
+        this.alleles = alleles;
+        this.data = data;
+    }
+
+    public List<String> getSampleNames() {
+        return samples.names;
+    }
+
+    /**
+     * @return the genotype of {@code sample}, or null if it is not a sample of this file
+     */
+    public Genotype getGenotype(String sample) {
+        Integer index = samples.index.get(sample);
+        return index == null ? null : getGenotype(index);
+    }
+
+    public Genotype getGenotype(int index) {
+        init();
+        int start = columnStarts[index];
+        int end = getColumnEnd(index);
+        GenotypeBuilder gb = new GenotypeBuilder(samples.names.get(index));
+        List<Allele> gtAlleles = Collections.emptyList();
+
+        int keyIndex = 0;
+        int p = start;
+        while (p < end && keyIndex < formatKeys.length) {
+            int q = data.indexOf(':', p);
+            if (q < 0 || q > end) q = end;
+            String key = formatKeys[keyIndex];
+            String value = data.substring(p, q);
+
+            if (key.equals("GT")) {
+                gtAlleles = parseGenotypeAlleles(value);
+                gb.phased(value.indexOf('|') >= 0);
+            } else if (key.equals("FT")) {
+                if (!value.equals(".") && !value.equals("PASS")) {
+                    gb.filters(Arrays.asList(value.split(";")));
+                }
+            } else if (!value.equals(".")) {
+                try {
+                    if (key.equals("GQ")) {
+                        gb.GQ((int) Math.round(Double.valueOf(value)));
+                    } else if (key.equals("DP")) {
+                        gb.DP(Integer.valueOf(value));
+                    } else if (key.equals("AD")) {
+                        gb.AD(parseInts(value));
+                    } else if (key.equals("PL")) {
+                        gb.PL(parseInts(value));
+                    } else if (key.equals("GL")) {
+                        gb.PL(GenotypeLikelihoods.fromLog10Likelihoods(parseDoubles(value)).getAsPLs());
+                    } else {
+                        gb.attribute(key, value);
+                    }
+                } catch (NumberFormatException e) {
+                    gb.attribute(key, value);
+                }
+            }
+            keyIndex++;
+            p = q + 1;
+        }
+        gb.alleles(gtAlleles);
+        return gb.make();
+    }
+
+    /**
+     * @return the type of the genotype of {@code sample}, or null if it is not a sample of this file
+     */
+    public GenotypeType getType(String sample) {
+        Integer index = samples.index.get(sample);
+        return index == null ? null : getType(index);
+    }
+
+    /**
+     * @return the type of a sample's genotype, determined as {@link Genotype#getType()} does but without
+     *         parsing the genotype
+     */
+    public GenotypeType getType(int index) {
+        init();
+        if (formatKeys.length == 0 || !formatKeys[0].equals("GT")) {
+            return GenotypeType.UNAVAILABLE;
+        }
+        int start = columnStarts[index];
+        int end = data.indexOf(':', start);
+        int columnEnd = getColumnEnd(index);
+        if (end < 0 || end > columnEnd) end = columnEnd;
+        if (start == end) {
+            return GenotypeType.UNAVAILABLE;
+        }
+
+        int observed = -1;
+        boolean sawNoCall = false;
+        boolean sawMultipleAlleles = false;
+        int p = start;
+        while (p <= end) {
+            int q = p;
+            int alleleIndex = 0;
+            boolean isNumber = q < end;
+            while (q < end) {
+                char c = data.charAt(q);
+                if (c == '/' || c == '|') break;
+                if (c >= '0' && c <= '9') {
+                    alleleIndex = 10 * alleleIndex + (c - '0');
+                } else {
+                    isNumber = false;
+                }
+                q++;
+            }
+            if (!isNumber || alleleIndex >= alleles.size()) {
+                sawNoCall = true;
+            } else if (observed < 0) {
+                observed = alleleIndex;
+            } else if (alleleIndex != observed) {
+                sawMultipleAlleles = true;
+            }
+            p = q + 1;
+        }
+
+        if (sawNoCall) {
+            return observed < 0 ? GenotypeType.NO_CALL : GenotypeType.MIXED;
+        }
+        return sawMultipleAlleles ? GenotypeType.HET : (observed == 0 ? GenotypeType.HOM_REF : GenotypeType.HOM_VAR);
+    }
+
+    /**
+     * Count the zygosity of all samples
+     */
+    public void countZygosity(VCFVariant.ZygosityCount zygosityCount) {
+        for (int i = 0; i < samples.names.size(); i++) {
+            zygosityCount.incrementCount(getType(i));
+        }
+    }
+
+    /**
+     * @return all genotypes, in sample order
+     */
+    public List<Genotype> getGenotypes() {
+        List<Genotype> genotypes = new ArrayList<Genotype>(samples.names.size());
+        for (int i = 0; i < samples.names.size(); i++) {
+            genotypes.add(getGenotype(i));
+        }
+        return genotypes;
+    }
+
+    private void init() {
+        if (columnStarts != null) {
+            return;
+        }
+        int nSamples = samples.names.size();
+        int[] starts = new int[nSamples];
+        int formatEnd = data.indexOf('\t');
+        if (formatEnd < 0) formatEnd = data.length();
+        int p = formatEnd;
+        for (int i = 0; i < nSamples; i++) {
+            if (p < data.length()) p++;
+            starts[i] = p;
+            int next = data.indexOf('\t', p);
+            p = next < 0 ? data.length() : next;
+        }
+        String format = data.substring(0, formatEnd);
+        formatKeys = format.length() == 0 || format.equals(".") ? new String[0] : format.split(":");
+        columnStarts = starts;
+    }
+
+    private int getColumnEnd(int index) {
+        int end = data.indexOf('\t', columnStarts[index]);
+        return end < 0 ? data.length() : end;
+    }
+
+    private List<Allele> parseGenotypeAlleles(String gt) {
+        String[] tokens = gt.split("[/|]");
+        List<Allele> gtAlleles = new ArrayList<Allele>(tokens.length);
+        for (String token : tokens) {
+            Allele allele = Allele.NO_CALL;
+            if (!token.equals(Allele.NO_CALL_STRING)) {
+                try {
+                    int alleleIndex = Integer.parseInt(token);
+                    if (alleleIndex < alleles.size()) {
+                        allele = alleles.get(alleleIndex);
+                    }
+                } catch (NumberFormatException e) {
+                    // Treated as a no-call
+                }
+            }
+            gtAlleles.add(allele);
+        }
+        return gtAlleles;
+    }
+
+    private static int[] parseInts(String string) {
+        String[] tokens = string.split(",");
+        int[] values = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = tokens[i].equals(".") ? 0 : Integer.parseInt(tokens[i]);
+        }
+        return values;
+    }
+
+    private static double[] parseDoubles(String string) {
+        String[] tokens = string.split(",");
+        double[] values = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = Double.parseDouble(tokens[i]);
+        }
+        return values;
+    }
+
+    /**
+     * The samples of a VCF file, in column order
+     */
+    public static class Samples {
+
+        private final List<String> names;
+        private final Map<String, Integer> index;
+
+        public Samples(List<String> names) {
+            this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+            this.index = new HashMap<String, Integer>(names.size() * 2);
+            for (int i = 0; i < names.size(); i++) {
+                index.put(names.get(i), i);
+            }
+        }
+
+        public int size() {
+            return names.size();
+        }
+    }
+}
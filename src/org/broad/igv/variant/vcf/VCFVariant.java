@@ -16,6 +16,7 @@ import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.VariantTrack;
+import org.broadinstitute.variant.variantcontext.GenotypeType;
 import org.broadinstitute.variant.variantcontext.VariantContext;
 import org.broadinstitute.variant.variantcontext.VariantContextBuilder;
 
@@ -33,6 +34,10 @@ public class VCFVariant implements Variant {
     private static Logger log = Logger.getLogger(Variant.class);
 
     VariantContext variantContext;
+    /**
+     * Genotypes of a VCF line, parsed on demand.  If null genotypes come from the variant context.
+     */
+    private LazyVCFGenotypes lazyGenotypes;
     List<Allele> alternateAlleles;
     private ZygosityCount zygosityCount;
 
@@ -49,13 +54,19 @@ public class VCFVariant implements Variant {
         init();
     }
 
-    private void init() {
-        zygosityCount = new ZygosityCount();
-        for (String sample : getSampleNames()) {
-            Genotype genotype = getGenotype(sample);
-            zygosityCount.incrementCount(genotype);
-        }
+    /**
+     * @param variantContext site fields of the variant, without genotypes
+     * @param chr
+     * @param lazyGenotypes  the genotypes
+     */
+    public VCFVariant(VariantContext variantContext, String chr, LazyVCFGenotypes lazyGenotypes) {
+        this.variantContext = variantContext;
+        this.chr = chr;
+        this.lazyGenotypes = lazyGenotypes;
+        init();
+    }
 
+    private void init() {
         String afString = null;
         String[] alleleFreqKeys = {"AF", "GMAF"};
         try {
@@ -187,7 +198,7 @@ public class VCFVariant implements Variant {
     }
 
     public Collection<String> getSampleNames() {
-        return variantContext.getSampleNames();
+        return lazyGenotypes != null ? lazyGenotypes.getSampleNames() : variantContext.getSampleNames();
     }
 
     public Map<String, Object> getAttributes() {
@@ -196,33 +207,61 @@ public class VCFVariant implements Variant {
 
     @Override
     public Genotype getGenotype(String sample) {
-        org.broadinstitute.variant.variantcontext.Genotype gt = variantContext.getGenotype(sample);
+        org.broadinstitute.variant.variantcontext.Genotype gt = lazyGenotypes != null ?
+                lazyGenotypes.getGenotype(sample) : variantContext.getGenotype(sample);
         if(gt == null) return null;
         return new VCFGenotype(gt);
     }
 
+    /**
+     * @return the type of the genotype of {@code sample}, or null if there is no such sample.  Unlike
+     *         {@link #getGenotype(String)} this does not parse the genotype.
+     */
+    public GenotypeType getGenotypeType(String sample) {
+        if (lazyGenotypes != null) {
+            return lazyGenotypes.getType(sample);
+        }
+        org.broadinstitute.variant.variantcontext.Genotype gt = variantContext.getGenotype(sample);
+        return gt == null ? null : gt.getType();
+    }
+
     public Collection<String> getFilters() {
         return variantContext.getFilters();
     }
 
     @Override
     public int getHomVarCount() {
-        return zygosityCount.getHomVar();
+        return getZygosityCount().getHomVar();
     }
 
     @Override
     public int getHetCount() {
-        return zygosityCount.getHet();
+        return getZygosityCount().getHet();
     }
 
     @Override
     public int getHomRefCount() {
-        return zygosityCount.getHomRef();
+        return getZygosityCount().getHomRef();
     }
 
     @Override
     public int getNoCallCount() {
-        return zygosityCount.getNoCall();
+        return getZygosityCount().getNoCall();
+    }
+
+    private ZygosityCount getZygosityCount() {
+        if (zygosityCount == null) {
+            ZygosityCount count = new ZygosityCount();
+            if (lazyGenotypes != null) {
+                lazyGenotypes.countZygosity(count);
+            } else {
+                for (String sample : getSampleNames()) {
+                    count.incrementCount(getGenotype(sample));
+                }
+            }
+            zygosityCount = count;
+        }
+        return zygosityCount;
     }
 
     @Override
@@ -262,7 +301,13 @@ public class VCFVariant implements Variant {
         return variantContext.getSource();
     }
 
+    /**
+     * @return the variant context, including all genotypes
+     */
     public VariantContext getVariantContext() {
+        if (lazyGenotypes != null) {
+            return new VariantContextBuilder(variantContext).genotypes(lazyGenotypes.getGenotypes()).make();
+        }
         return variantContext;
     }
 
@@ -290,6 +335,22 @@ public class VCFVariant implements Variant {
         private int homRef = 0;
         private int noCall = 0;
 
+        public void incrementCount(GenotypeType type) {
+            switch (type) {
+                case HOM_VAR:
+                    homVar++;
+                    break;
+                case HET:
+                    het++;
+                    break;
+                case HOM_REF:
+                    homRef++;
+                    break;
+                default:
+                    noCall++;
+            }
+        }
+
         public void incrementCount(Genotype genotype) {
             if (genotype != null) {
                 if (genotype.isHomVar()) {
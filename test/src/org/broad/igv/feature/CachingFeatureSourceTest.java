@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature;
+
+import org.broad.igv.track.FeatureSource;
+import org.broad.tribble.Feature;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CachingFeatureSourceTest {
+
+    /**
+     * Features every {@code spacing} bases
+     */
+    static class TestSource implements FeatureSource<Feature> {
+
+        final int spacing;
+        int queryCount = 0;
+
+        TestSource(int spacing) {
+            this.spacing = spacing;
+        }
+
+        public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
+            queryCount++;
+            List<Feature> features = new ArrayList<Feature>();
+            for (int s = Math.max(0, (start - 10) / spacing * spacing); s <= end; s += spacing) {
+                if (s + 10 >= start) {
+                    features.add(new BasicFeature(chr, s, s + 10));
+                }
+            }
+            return features.iterator();
+        }
+
+        public List<LocusScore> getCoverageScores(String chr, int start, int end, int zoom) {
+            return null;
+        }
+
+        public int getFeatureWindowSize() {
+            return Integer.MAX_VALUE;
+        }
+
+        public void setFeatureWindowSize(int size) {
+        }
+    }
+
+    @Test
+    public void testAdaptiveBinSize() throws Exception {
+
+        // Dense features, bins shrink to hold about TARGET_FEATURES_PER_BIN features
+        TestSource denseSource = new TestSource(10);
+        CachingFeatureSource dense = new CachingFeatureSource(denseSource, 1000000);
+        checkQuery(dense, denseSource, 100000, 120000);
+        int binSize = dense.getBinSize();
+        assertTrue(binSize < 1000000);
+        assertTrue(binSize >= AbstractCacher.TARGET_FEATURES_PER_BIN * 10 / 2);
+        assertTrue(binSize <= AbstractCacher.TARGET_FEATURES_PER_BIN * 10 * 2);
+        checkQuery(dense, denseSource, 500000, 600000);
+
+        // Sparse features, bins stay at the maximum
+        TestSource sparseSource = new TestSource(50000);
+        CachingFeatureSource sparse = new CachingFeatureSource(sparseSource, 1000000);
+        checkQuery(sparse, sparseSource, 100000, 2000000);
+        assertEquals(1000000, sparse.getBinSize());
+    }
+
+    @Test
+    public void testCacheHits() throws Exception {
+
+        TestSource source = new TestSource(100);
+        CachingFeatureSource cachingSource = new CachingFeatureSource(source, 100000);
+        checkQuery(cachingSource, source, 1000, 5000);
+        int queryCount = source.queryCount;
+        long hits = cachingSource.getCacheStats().getHitCount();
+
+        checkQuery(cachingSource, source, 2000, 4000);
+        assertEquals(queryCount, source.queryCount);
+        assertTrue(cachingSource.getCacheStats().getHitCount() > hits);
+        assertTrue(cachingSource.getCacheStats().getBytes() > 0);
+    }
+
+    private static void checkQuery(CachingFeatureSource cachingSource, TestSource source, int start, int end) throws Exception {
+        List<Integer> expected = new ArrayList<Integer>();
+        Iterator<Feature> iter = source.getFeatures("chr1", start, end);
+        while (iter.hasNext()) {
+            expected.add(iter.next().getStart());
+        }
+        source.queryCount--;
+
+        List<Integer> starts = new ArrayList<Integer>();
+        iter = cachingSource.getFeatures("chr1", start, end);
+        while (iter.hasNext()) {
+            starts.add(iter.next().getStart());
+        }
+        assertEquals(expected, starts);
+    }
+}
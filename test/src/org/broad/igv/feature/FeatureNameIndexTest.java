@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FeatureNameIndexTest {
+
+    private static final Comparator<NamedFeature> LONGEST_FIRST = new Comparator<NamedFeature>() {
+        public int compare(NamedFeature f1, NamedFeature f2) {
+            return (f2.getEnd() - f2.getStart()) - (f1.getEnd() - f1.getStart());
+        }
+    };
+
+    private static BasicFeature createFeature(String name, int start, int length) {
+        BasicFeature f = new BasicFeature("chr1", start, start + length);
+        f.setName(name);
+        return f;
+    }
+
+    /**
+     * Enough names to merge several segments, compared with a TreeMap
+     */
+    @Test
+    public void testAgainstTreeMap() throws Exception {
+
+        FeatureNameIndex index = new FeatureNameIndex(5, LONGEST_FIRST);
+        TreeMap<String, List<NamedFeature>> expected = new TreeMap<String, List<NamedFeature>>();
+        Random random = new Random(17);
+        int nFeatures = 5 * FeatureNameIndex.MIN_MERGE_SIZE;
+        for (int i = 0; i < nFeatures; i++) {
+            String name = "G" + Integer.toString(random.nextInt(nFeatures / 2), 36).toUpperCase();
+            BasicFeature f = createFeature(name, i, 1 + random.nextInt(10000));
+            List<NamedFeature> features = expected.get(name);
+            if (features == null) {
+                features = new ArrayList<NamedFeature>();
+                expected.put(name, features);
+            }
+            boolean added = index.add(name, f);
+            assertEquals(features.size() < 5, added);
+            if (added) {
+                features.add(f);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+
+        for (Map.Entry<String, List<NamedFeature>> entry : expected.entrySet()) {
+            List<NamedFeature> features = index.get(entry.getKey());
+            assertEquals(entry.getValue().size(), features.size());
+            assertTrue(features.containsAll(entry.getValue()));
+            for (int i = 1; i < features.size(); i++) {
+                assertTrue(LONGEST_FIRST.compare(features.get(i - 1), features.get(i)) <= 0);
+            }
+        }
+        assertNull(index.get("NOT_A_NAME"));
+
+        for (String prefix : new String[]{"G", "G1", "GA", "GZZ", "H"}) {
+            SortedMap<String, List<NamedFeature>> matches = index.getPrefixMatches(prefix, 20);
+            List<String> expectedNames = new ArrayList<String>(
+                    expected.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+            expectedNames = expectedNames.subList(0, Math.min(20, expectedNames.size()));
+            assertEquals(expectedNames, new ArrayList<String>(matches.keySet()));
+        }
+    }
+
+    @Test
+    public void testSimilarNames() throws Exception {
+        FeatureNameIndex index = new FeatureNameIndex(5, LONGEST_FIRST);
+        for (String name : new String[]{"EGFR", "EGFL7", "ERBB2", "KRAS", "BRAF", "BRCA1", "BRCA2"}) {
+            index.add(name, createFeature(name, 0, 100));
+        }
+
+        assertEquals(Arrays.asList("EGFR"), index.getSimilarNames("EGFR", 0, 10));
+        assertEquals(Arrays.asList("EGFR"), index.getSimilarNames("EGFT", 1, 10));
+        assertEquals(Arrays.asList("KRAS"), index.getSimilarNames("KRA", 1, 10));
+
+        // Closest first
+        List<String> names = index.getSimilarNames("BRCA", 2, 10);
+        assertEquals(Arrays.asList("BRCA1", "BRCA2", "BRAF"), names);
+
+        assertEquals(Arrays.asList("BRCA1"), index.getSimilarNames("BRCA", 2, 1));
+        assertTrue(index.getSimilarNames("XYZXYZ", 2, 10).isEmpty());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        FeatureNameIndex index = new FeatureNameIndex(5, LONGEST_FIRST);
+        for (int i = 0; i < 2 * FeatureNameIndex.MIN_MERGE_SIZE; i++) {
+            index.add("NAME" + i, createFeature("NAME" + i, i, 10));
+        }
+        assertNotNull(index.get("NAME1"));
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get("NAME1"));
+        assertTrue(index.getPrefixMatches("NAME", 10).isEmpty());
+    }
+}
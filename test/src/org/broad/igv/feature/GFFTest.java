@@ -13,13 +13,17 @@
 package org.broad.igv.feature;
 
 import org.broad.igv.feature.tribble.GFFCodec;
+import org.broad.igv.track.GFFFeatureSource;
 import org.broad.igv.util.TestUtils;
 import org.broad.tribble.Feature;
 import org.junit.Test;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.Assert.*;
 
@@ -99,4 +103,86 @@ public class GFFTest{//} extends AbstractHeadlessTest{
         assertTrue(lastExon.isNonCoding());
         assertEquals(3807030 - 1, lastExon.getStart());
     }
+
+    /**
+     * Loading in parallel should give the same transcripts as combining all lines in one pass, with and without
+     * "###" directives, and with the lines of a chromosome split across the file.
+     */
+    @Test
+    public void testParallelLoad() throws Exception {
+        for (boolean resolved : new boolean[]{true, false}) {
+            List<String> lines = createGFF(resolved);
+
+            GFFFeatureSource.GFFCombiner combiner = new GFFFeatureSource.GFFCombiner();
+            GFFCodec codec = new GFFCodec(GFFCodec.Version.GFF3, null);
+            for (String line : lines) {
+                if (line.startsWith("#")) {
+                    codec.readHeaderLine(line);
+                } else {
+                    combiner.addFeature(codec.decode(line));
+                }
+            }
+            List<Feature> expected = combiner.combineFeatures();
+
+            ParallelGFFLoader loader = new ParallelGFFLoader(new GFFCodec(GFFCodec.Version.GFF3, null), null, false);
+            for (String line : lines) {
+                loader.addLine(line);
+            }
+            List<Feature> features = loader.finish();
+
+            assertEquals(expected.size(), features.size());
+            Map<String, BasicFeature> byId = new HashMap<String, BasicFeature>();
+            for (Feature f : features) {
+                byId.put(((BasicFeature) f).getIdentifier(), (BasicFeature) f);
+            }
+            for (Feature f : expected) {
+                BasicFeature e = (BasicFeature) f;
+                BasicFeature bf = byId.get(e.getIdentifier());
+                assertNotNull(bf);
+                assertEquals(e.getChr(), bf.getChr());
+                assertEquals(e.getStart(), bf.getStart());
+                assertEquals(e.getEnd(), bf.getEnd());
+                assertEquals(e.getThickStart(), bf.getThickStart());
+                assertEquals(e.getThickEnd(), bf.getThickEnd());
+                assertEquals(e.getExonCount(), bf.getExonCount());
+            }
+            for (int i = 1; i < features.size(); i++) {
+                assertTrue(features.get(i - 1).getStart() <= features.get(i).getStart());
+            }
+        }
+    }
+
+    /**
+     * Genes on 3 chromosomes, each with an mRNA, exons, and CDSs.  The genes on chr3 are split into two runs.
+     */
+    private static List<String> createGFF(boolean resolved) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("##gff-version 3");
+        String[] chrs = {"chr1", "chr2", "chr3", "chr1", "chr3"};
+        int geneNumber = 0;
+        for (int c = 0; c < chrs.length; c++) {
+            String chr = chrs[c];
+            for (int g = 0; g < 300; g++) {
+                geneNumber++;
+                int start = 1 + 100000 * (c * 300 + g);
+                String gene = "gene" + geneNumber;
+                String mrna = "mrna" + geneNumber;
+                lines.add(gffLine(chr, "gene", start, start + 5000, "ID=" + gene));
+                lines.add(gffLine(chr, "mRNA", start, start + 5000, "ID=" + mrna + ";Parent=" + gene));
+                for (int e = 0; e < 4; e++) {
+                    int exonStart = start + 1000 * e;
+                    lines.add(gffLine(chr, "exon", exonStart, exonStart + 500, "Parent=" + mrna));
+                    lines.add(gffLine(chr, "CDS", exonStart + 100, exonStart + 500, "ID=cds" + geneNumber + ";Parent=" + mrna));
+                }
+                if (resolved) {
+                    lines.add("###");
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static String gffLine(String chr, String type, int start, int end, String attributes) {
+        return chr + "\ttest\t" + type + "\t" + start + "\t" + end + "\t.\t+\t.\t" + attributes;
+    }
 }
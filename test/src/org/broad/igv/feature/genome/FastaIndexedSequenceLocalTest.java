@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of FastaIndexedSequence on a generated local (memory mapped) fasta file
+ */
+public class FastaIndexedSequenceLocalTest {
+
+    static final String[] CHRS = {"seqA", "seqB"};
+    static final int[] LENGTHS = {1234, 60};
+    static final int LINE_LENGTH = 50;
+
+    static File fastaFile;
+    static String[] bases;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR);
+        dir.mkdirs();
+        fastaFile = new File(dir, "localTest.fa");
+
+        Random random = new Random(17);
+        bases = new String[CHRS.length];
+        PrintWriter pw = new PrintWriter(fastaFile);
+        for (int c = 0; c < CHRS.length; c++) {
+            StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < LENGTHS[c]; i++) {
+                buf.append("ACGTN".charAt(random.nextInt(5)));
+            }
+            bases[c] = buf.toString();
+            pw.println(">" + CHRS[c]);
+            for (int i = 0; i < LENGTHS[c]; i += LINE_LENGTH) {
+                pw.println(bases[c].substring(i, Math.min(LENGTHS[c], i + LINE_LENGTH)));
+            }
+        }
+        pw.close();
+        FastaUtils.createIndexFile(fastaFile.getAbsolutePath(), fastaFile.getAbsolutePath() + ".fai");
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        new File(fastaFile.getAbsolutePath() + ".fai").delete();
+        fastaFile.delete();
+    }
+
+    @Test
+    public void testGetSequence() throws Exception {
+
+        FastaIndexedSequence sequence = new FastaIndexedSequence(fastaFile.getAbsolutePath());
+        assertTrue(sequence.isMemoryMapped());
+
+        Random random = new Random(19);
+        for (int c = 0; c < CHRS.length; c++) {
+            assertEquals(bases[c], new String(sequence.getSequence(CHRS[c], 0, LENGTHS[c])));
+            for (int i = 0; i < 200; i++) {
+                int start = random.nextInt(LENGTHS[c]);
+                int end = start + 1 + random.nextInt(LENGTHS[c] - start);
+                assertEquals(bases[c].substring(start, end), new String(sequence.getSequence(CHRS[c], start, end)));
+            }
+        }
+
+        // Query extending past the end is truncated
+        assertEquals(bases[0].substring(1200), new String(sequence.getSequence(CHRS[0], 1200, 1300)));
+    }
+
+    @Test
+    public void testGetBase() throws Exception {
+
+        FastaIndexedSequence sequence = new FastaIndexedSequence(fastaFile.getAbsolutePath());
+        for (int c = 0; c < CHRS.length; c++) {
+            for (int i = 0; i < LENGTHS[c]; i++) {
+                assertEquals(bases[c].charAt(i), (char) sequence.getBase(CHRS[c], i));
+            }
+        }
+        assertEquals(0, sequence.getBase(CHRS[0], LENGTHS[0]));
+    }
+
+    /**
+     * Stream reads, as used on 32 bit JVMs, return the same bases
+     */
+    @Test
+    public void testStreamReads() throws Exception {
+
+        FastaIndexedSequence sequence = new FastaIndexedSequence(fastaFile.getAbsolutePath(), false);
+        assertFalse(sequence.isMemoryMapped());
+        for (int c = 0; c < CHRS.length; c++) {
+            assertEquals(bases[c], new String(sequence.getSequence(CHRS[c], 0, LENGTHS[c])));
+            assertEquals(bases[c].charAt(7), (char) sequence.getBase(CHRS[c], 7));
+        }
+        sequence.close();
+    }
+
+    /**
+     * Closed sequences release their streams and mappings, and reopen them when read again
+     */
+    @Test
+    public void testClose() throws Exception {
+
+        FastaIndexedSequence mapped = new FastaIndexedSequence(fastaFile.getAbsolutePath(), true);
+        FastaIndexedSequence streamed = new FastaIndexedSequence(fastaFile.getAbsolutePath(), false);
+        for (FastaIndexedSequence sequence : new FastaIndexedSequence[]{mapped, streamed}) {
+            assertEquals(bases[0].substring(10, 100), new String(sequence.getSequence(CHRS[0], 10, 100)));
+            sequence.close();
+            assertEquals(bases[0].substring(10, 100), new String(sequence.getSequence(CHRS[0], 10, 100)));
+            sequence.close();
+        }
+    }
+
+    @Test
+    public void testWrapperPadding() throws Exception {
+
+        SequenceWrapper wrapper = new SequenceWrapper(new FastaIndexedSequence(fastaFile.getAbsolutePath()));
+        byte[] bytes = wrapper.getSequence(CHRS[1], 50, 70);
+        assertEquals(20, bytes.length);
+        assertEquals(bases[1].substring(50), new String(bytes, 0, 10));
+        for (int i = 10; i < 20; i++) {
+            assertEquals(0, bytes[i]);
+        }
+        assertEquals(bases[1].charAt(0), (char) wrapper.getBase(CHRS[1], 0));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Cytoband;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.AbstractFeatureReader;
+import org.broad.tribble.CloseableTribbleIterator;
+import org.broad.tribble.Feature;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class GenomeSnapshotTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+
+        File directory = new File(TestUtils.TMP_OUTPUT_DIR, "snapshots");
+        directory.mkdirs();
+        File archiveFile = new File(TestUtils.DATA_DIR + "genomes/canFam2.unittest.genome");
+        File file = GenomeSnapshot.getSnapshotFile(directory, archiveFile, "test");
+
+        LinkedHashMap<String, List<Cytoband>> cytobands = new LinkedHashMap<String, List<Cytoband>>();
+        for (String chr : new String[]{"chr2", "chr1"}) {
+            List<Cytoband> bands = new ArrayList<Cytoband>();
+            for (int i = 0; i < 3; i++) {
+                Cytoband band = new Cytoband(chr);
+                band.setName("p" + i);
+                band.setStart(i * 1000);
+                band.setEnd((i + 1) * 1000);
+                band.setType(i == 1 ? 'c' : 'n');
+                band.setStain((short) (i * 25));
+                bands.add(band);
+            }
+            cytobands.put(chr, bands);
+        }
+        Collection<Collection<String>> aliases = new ArrayList<Collection<String>>();
+        aliases.add(Arrays.asList("chr1", "1", "chrom1"));
+
+        List<Feature> genes = readAll(TestUtils.DATA_DIR + "bed/Unigene.withheader.sorted.bed");
+        ((BasicFeature) genes.get(0)).getExons().get(0).setNonCoding(true);
+        assertTrue(GenomeSnapshot.canStore(genes));
+
+        // An older snapshot of the same genome is replaced
+        File oldFile = new File(directory, "test_00000000" + GenomeSnapshot.EXTENSION);
+        oldFile.createNewFile();
+
+        GenomeSnapshot.write(file, cytobands, aliases, genes, "Genes", "track name=\"sample\"");
+        assertFalse(oldFile.exists());
+
+        GenomeSnapshot snapshot = GenomeSnapshot.read(file);
+        assertNotNull(snapshot);
+        assertEquals(Arrays.asList("chr2", "chr1"), new ArrayList<String>(snapshot.getCytobands().keySet()));
+        Cytoband band = snapshot.getCytobands().get("chr1").get(1);
+        assertEquals("p1", band.getName());
+        assertEquals(1000, band.getStart());
+        assertEquals(2000, band.getEnd());
+        assertEquals('c', band.getType());
+        assertEquals(25, band.getStain());
+        assertEquals(new ArrayList<String>(aliases.iterator().next()),
+                new ArrayList<String>(snapshot.getAliases().iterator().next()));
+        assertTrue(snapshot.hasGenes());
+        assertEquals("Genes", snapshot.getGeneTrackName());
+        assertEquals("track name=\"sample\"", snapshot.getGeneTrackLine());
+
+        List<Feature> loaded = snapshot.loadGenes().get();
+        assertEquals(genes.size(), loaded.size());
+        for (int i = 0; i < genes.size(); i++) {
+            BasicFeature e = (BasicFeature) genes.get(i);
+            BasicFeature f = (BasicFeature) loaded.get(i);
+            assertEquals(e.getChr(), f.getChr());
+            assertEquals(e.getStart(), f.getStart());
+            assertEquals(e.getEnd(), f.getEnd());
+            assertEquals(e.getName(), f.getName());
+            assertEquals(e.getExonCount(), f.getExonCount());
+            for (int j = 0; j < e.getExonCount(); j++) {
+                Exon ee = e.getExons().get(j);
+                Exon fe = f.getExons().get(j);
+                assertEquals(ee.isNonCoding(), fe.isNonCoding());
+                assertEquals(ee.getCdStart(), fe.getCdStart());
+                assertEquals(ee.getCdEnd(), fe.getCdEnd());
+                assertEquals(ee.getReadingFrame(), fe.getReadingFrame());
+            }
+        }
+
+        // Genes read on demand
+        Iterator<Feature> iter = snapshot.createGeneSource(null).getFeatures(genes.get(0).getChr(), 0, Integer.MAX_VALUE);
+        assertTrue(iter.hasNext());
+        assertEquals(genes.get(0).getStart(), iter.next().getStart());
+
+        // Features which a snapshot cannot hold
+        BasicFeature withAttributes = new BasicFeature("chr1", 0, 100);
+        withAttributes.setAttribute("gene_id", "X");
+        assertFalse(GenomeSnapshot.canStore(Arrays.<Feature>asList(withAttributes)));
+
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testNoSnapshot() throws Exception {
+        File directory = new File(TestUtils.TMP_OUTPUT_DIR, "snapshots");
+        directory.mkdirs();
+        assertNull(GenomeSnapshot.read(new File(directory, "none_00000000" + GenomeSnapshot.EXTENSION)));
+    }
+
+    @Test
+    public void testDeleteStaleFiles() throws Exception {
+        File directory = new File(TestUtils.TMP_OUTPUT_DIR, "staleSnapshots");
+        directory.mkdirs();
+        long now = System.currentTimeMillis();
+        File stale = File.createTempFile("hg18_0123abcd.snapshot", ".tmp", directory);
+        stale.setLastModified(now - 2 * GenomeSnapshot.STALE_TMP_AGE);
+        File recent = File.createTempFile("hg18_0123abcd.snapshot", ".tmp", directory);
+        File snapshot = new File(directory, "hg18_0123abcd" + GenomeSnapshot.EXTENSION);
+        snapshot.createNewFile();
+        snapshot.setLastModified(now - 2 * GenomeSnapshot.STALE_TMP_AGE);
+        try {
+            assertEquals(1, GenomeSnapshot.deleteStaleFiles(directory, now - GenomeSnapshot.STALE_TMP_AGE));
+            assertFalse(stale.exists());
+            assertTrue(recent.exists());
+            assertTrue(snapshot.exists());
+        } finally {
+            for (File f : directory.listFiles()) {
+                f.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static List<Feature> readAll(String path) throws Exception {
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, new IGVBEDCodec(), false);
+        CloseableTribbleIterator<Feature> iter = reader.iterator();
+        List<Feature> features = new ArrayList<Feature>();
+        while (iter.hasNext()) {
+            features.add(iter.next());
+        }
+        iter.close();
+        reader.close();
+        return features;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PackedSequenceTest {
+
+    static final String[] CHRS = {"chr1", "chr2", "chrM"};
+    static final int[] LENGTHS = {10003, 4000, 17};
+
+    static File fastaFile;
+    static File packedFile;
+    static String[] bases;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR);
+        dir.mkdirs();
+        fastaFile = new File(dir, "packedTest.fa");
+        packedFile = new File(dir, "packedTest.2bit");
+
+        // Random bases with runs of N and of lower case
+        Random random = new Random(23);
+        bases = new String[CHRS.length];
+        for (int c = 0; c < CHRS.length; c++) {
+            StringBuffer buf = new StringBuffer();
+            while (buf.length() < LENGTHS[c]) {
+                int runLength = Math.min(LENGTHS[c] - buf.length(), 1 + random.nextInt(50));
+                int type = random.nextInt(4);
+                for (int i = 0; i < runLength; i++) {
+                    char base = type == 0 ? 'N' : "ACGT".charAt(random.nextInt(4));
+                    buf.append(type == 1 ? Character.toLowerCase(base) : base);
+                }
+            }
+            bases[c] = buf.toString();
+        }
+        writeFasta(fastaFile, bases);
+
+        assertTrue(PackedSequence.build(new FastaIndexedSequence(fastaFile.getAbsolutePath()), packedFile, 2));
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        new File(fastaFile.getAbsolutePath() + ".fai").delete();
+        fastaFile.delete();
+        packedFile.delete();
+    }
+
+    @Test
+    public void testGetSequence() throws Exception {
+
+        PackedSequence sequence = new PackedSequence(packedFile);
+        assertEquals(Arrays.asList(CHRS), sequence.getChromosomeNames());
+
+        Random random = new Random(29);
+        for (int c = 0; c < CHRS.length; c++) {
+            assertEquals(LENGTHS[c], sequence.getChromosomeLength(CHRS[c]));
+            assertEquals(bases[c], new String(sequence.getSequence(CHRS[c], 0, LENGTHS[c])));
+            for (int i = 0; i < 200; i++) {
+                int start = random.nextInt(LENGTHS[c]);
+                int end = start + 1 + random.nextInt(LENGTHS[c] - start);
+                assertEquals(bases[c].substring(start, end), new String(sequence.getSequence(CHRS[c], start, end)));
+            }
+        }
+
+        // Query extending past the end is truncated
+        assertEquals(bases[2].substring(10), new String(sequence.getSequence(CHRS[2], 10, 100)));
+        assertNull(sequence.getSequence(CHRS[2], 20, 30));
+        assertNull(sequence.getSequence("chrX", 0, 10));
+    }
+
+    @Test
+    public void testGetBase() throws Exception {
+
+        PackedSequence sequence = new PackedSequence(packedFile);
+        for (int c = 0; c < CHRS.length; c++) {
+            for (int i = 0; i < LENGTHS[c]; i++) {
+                assertEquals(bases[c].charAt(i), (char) sequence.getBase(CHRS[c], i));
+            }
+        }
+        assertEquals(0, sequence.getBase(CHRS[0], LENGTHS[0]));
+    }
+
+    @Test
+    public void testUnsupportedBases() throws Exception {
+
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "packedTestIupac.fa");
+        File output = new File(TestUtils.TMP_OUTPUT_DIR, "packedTestIupac.2bit");
+        writeFasta(file, new String[]{"ACGTACGT", "ACGTRYACGT", "ACGT"});
+        try {
+            assertFalse(PackedSequence.build(new FastaIndexedSequence(file.getAbsolutePath()), output, 2));
+            assertFalse(output.exists());
+        } finally {
+            new File(file.getAbsolutePath() + ".fai").delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLongName() throws Exception {
+
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "packedTestLongName.fa");
+        File output = new File(TestUtils.TMP_OUTPUT_DIR, "packedTestLongName.2bit");
+        char[] name = new char[256];
+        Arrays.fill(name, 'c');
+        writeFasta(file, new String[]{"chr1", new String(name)}, new String[]{"ACGTACGT", "ACGT"});
+        try {
+            assertFalse(PackedSequence.build(new FastaIndexedSequence(file.getAbsolutePath()), output, 2));
+            assertFalse(output.exists());
+        } finally {
+            new File(file.getAbsolutePath() + ".fai").delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBuildCache() throws Exception {
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR, "packedCache");
+        dir.mkdirs();
+        File file = new File(TestUtils.TMP_OUTPUT_DIR, "packedTestCache.fa");
+        writeFasta(file, new String[]{"ACGTACGT", "ACGTRYACGT", "ACGT"});
+        try {
+            // Unpackable fasta, a marker is written instead
+            File cacheFile = PackedSequence.getCacheFile(file.getAbsolutePath(), dir);
+            PackedSequence.buildCache(file.getAbsolutePath(), cacheFile);
+            assertFalse(cacheFile.exists());
+            assertTrue(PackedSequence.getMarkerFile(cacheFile).exists());
+
+            // Edited fasta, the marker for the earlier version is removed
+            writeFasta(file, new String[]{"ACGTACGT", "ACGTNNACGT", "ACGTA"});
+            File newCacheFile = PackedSequence.getCacheFile(file.getAbsolutePath(), dir);
+            assertFalse(newCacheFile.equals(cacheFile));
+            PackedSequence.buildCache(file.getAbsolutePath(), newCacheFile);
+            assertTrue(newCacheFile.exists());
+            assertFalse(PackedSequence.getMarkerFile(newCacheFile).exists());
+            assertFalse(PackedSequence.getMarkerFile(cacheFile).exists());
+            assertEquals("ACGTA", new String(new PackedSequence(newCacheFile).getSequence(CHRS[2], 0, 5)));
+        } finally {
+            new File(file.getAbsolutePath() + ".fai").delete();
+            file.delete();
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void writeFasta(File file, String[] sequences) throws Exception {
+        writeFasta(file, CHRS, sequences);
+    }
+
+    private static void writeFasta(File file, String[] names, String[] sequences) throws Exception {
+        PrintWriter pw = new PrintWriter(file);
+        for (int c = 0; c < sequences.length; c++) {
+            pw.println(">" + names[c]);
+            for (int i = 0; i < sequences[c].length(); i += 60) {
+                pw.println(sequences[c].substring(i, Math.min(sequences[c].length(), i + 60)));
+            }
+        }
+        pw.close();
+        FastaUtils.createIndexFile(file.getAbsolutePath(), file.getAbsolutePath() + ".fai");
+    }
+}
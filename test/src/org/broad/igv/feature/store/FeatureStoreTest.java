@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.feature.store;
+
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.Exon;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.tribble.FeatureFileHeader;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.igv.util.TestUtils;
+import org.broad.tribble.AbstractFeatureReader;
+import org.broad.tribble.CloseableTribbleIterator;
+import org.broad.tribble.Feature;
+import org.broad.tribble.TribbleException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FeatureStoreTest {
+
+    @Test
+    public void testGeneFile() throws Exception {
+
+        String bedPath = TestUtils.DATA_DIR + "bed/Unigene.withheader.sorted.bed";
+        File storeFile = new File(TestUtils.TMP_OUTPUT_DIR, "Unigene.ifs");
+        assertEquals(71, FeatureStoreWriter.convert(bedPath, storeFile));
+
+        FeatureStoreSource source = new FeatureStoreSource(storeFile.getAbsolutePath(), null);
+        FeatureFileHeader header = (FeatureFileHeader) source.getHeader();
+        assertEquals("sample", header.getTrackProperties().getName());
+
+        List<Feature> expected = readAll(bedPath);
+        List<Feature> features = toList(source.getFeatures("chr2", 0, Integer.MAX_VALUE));
+        assertEquals(expected.size(), features.size());
+        for (int i = 0; i < expected.size(); i++) {
+            BasicFeature e = (BasicFeature) expected.get(i);
+            BasicFeature f = (BasicFeature) features.get(i);
+            assertFeatureEquals(e, f);
+            assertEquals(e.getThickStart(), f.getThickStart());
+            assertEquals(e.getThickEnd(), f.getThickEnd());
+            assertEquals(e.getExonCount(), f.getExonCount());
+            for (int j = 0; j < e.getExonCount(); j++) {
+                Exon ee = e.getExons().get(j);
+                Exon fe = f.getExons().get(j);
+                assertEquals(ee.getStart(), fe.getStart());
+                assertEquals(ee.getEnd(), fe.getEnd());
+                assertEquals(ee.getCdStart(), fe.getCdStart());
+                assertEquals(ee.getCdEnd(), fe.getCdEnd());
+            }
+        }
+        storeFile.delete();
+    }
+
+    /**
+     * GFF parts are combined into transcripts, as when loading the file
+     */
+    @Test
+    public void testGFF() throws Exception {
+
+        String gffPath = TestUtils.DATA_DIR + "gff/canonical.eden.sorted.gff3";
+        File storeFile = new File(TestUtils.TMP_OUTPUT_DIR, "eden.ifs");
+        try {
+            assertEquals(6, FeatureStoreWriter.convert(gffPath, storeFile));
+
+            FeatureStoreSource source = new FeatureStoreSource(storeFile.getAbsolutePath(), null);
+            List<Feature> features = toList(source.getFeatures("chr1", 0, Integer.MAX_VALUE));
+            assertEquals(6, features.size());
+            int mRNACount = 0;
+            for (Feature f : features) {
+                BasicFeature bf = (BasicFeature) f;
+                if ("mRNA".equals(bf.getType())) {
+                    mRNACount++;
+                    assertTrue(bf.getExonCount() >= 3);
+                }
+            }
+            assertEquals(4, mRNACount);
+        } finally {
+            storeFile.delete();
+        }
+    }
+
+    /**
+     * Many blocks, with long features spanning blocks
+     */
+    @Test
+    public void testQuery() throws Exception {
+
+        File bedFile = new File(TestUtils.TMP_OUTPUT_DIR, "featureStoreTest.bed");
+        File storeFile = new File(TestUtils.TMP_OUTPUT_DIR, "featureStoreTest.ifs");
+        Random random = new Random(53);
+        String[] chrs = {"chr1", "chr2"};
+        PrintWriter pw = new PrintWriter(bedFile);
+        for (String chr : chrs) {
+            int start = 0;
+            for (int i = 0; i < 3 * FeatureStoreWriter.BLOCK_SIZE; i++) {
+                start += random.nextInt(2000);
+                int length = random.nextInt(50) == 0 ? random.nextInt(100000) : 1 + random.nextInt(500);
+                pw.println(chr + "\t" + start + "\t" + (start + length) + "\tf" + i + "\t" + random.nextInt(1000) +
+                        "\t" + (random.nextBoolean() ? "+" : "-"));
+            }
+        }
+        pw.close();
+
+        FeatureStoreWriter.convert(bedFile.getAbsolutePath(), storeFile);
+        FeatureStoreSource source = new FeatureStoreSource(storeFile.getAbsolutePath(), null);
+        List<Feature> all = readAll(bedFile.getAbsolutePath());
+
+        for (int q = 0; q < 100; q++) {
+            String chr = chrs[q % 2];
+            int start = random.nextInt(13000000);
+            int end = start + random.nextInt(q % 3 == 0 ? 1000 : 200000);
+
+            List<Feature> expected = new ArrayList<Feature>();
+            for (Feature f : all) {
+                if (f.getChr().equals(chr) && f.getEnd() > start && f.getStart() < end) {
+                    expected.add(f);
+                }
+            }
+            List<Feature> features = toList(source.getFeatures(chr, start, end));
+            assertEquals(expected.size(), features.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertFeatureEquals((BasicFeature) expected.get(i), (BasicFeature) features.get(i));
+            }
+        }
+
+        assertFalse(source.getFeatures("chrX", 0, 1000).hasNext());
+
+        // Density, bins with features only
+        List<LocusScore> scores = source.getCoverageScores("chr1", 0, Integer.MAX_VALUE, 0);
+        assertTrue(scores.size() > 0);
+        for (LocusScore score : scores) {
+            int count = 0;
+            for (Feature f : all) {
+                if (f.getChr().equals("chr1") && f.getEnd() > score.getStart() && f.getStart() < score.getEnd()) {
+                    count++;
+                }
+            }
+            assertEquals(count, (int) score.getScore());
+        }
+        // Finer bins when zoomed in
+        int binSize0 = scores.get(0).getEnd() - scores.get(0).getStart();
+        List<LocusScore> zoomedScores = source.getCoverageScores("chr1", 0, 100000, 6);
+        assertTrue(zoomedScores.get(0).getEnd() - zoomedScores.get(0).getStart() < binSize0);
+
+        bedFile.delete();
+        storeFile.delete();
+    }
+
+    @Test(expected = TribbleException.MalformedFeatureFile.class)
+    public void testUnsorted() throws Exception {
+        File storeFile = new File(TestUtils.TMP_OUTPUT_DIR, "unsorted.ifs");
+        try {
+            FeatureStoreWriter.convert(TestUtils.DATA_DIR + "bed/Unigene.unsorted.bed", storeFile);
+        } finally {
+            storeFile.delete();
+        }
+    }
+
+    private static void assertFeatureEquals(BasicFeature expected, BasicFeature actual) {
+        assertEquals(expected.getChr(), actual.getChr());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getEnd(), actual.getEnd());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getStrand(), actual.getStrand());
+        assertEquals(expected.getScore(), actual.getScore(), 0);
+    }
+
+    private static List<Feature> readAll(String path) throws Exception {
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, new IGVBEDCodec(), false);
+        CloseableTribbleIterator<Feature> iter = reader.iterator();
+        List<Feature> features = toList(iter);
+        iter.close();
+        reader.close();
+        return features;
+    }
+
+    private static List<Feature> toList(Iterator<Feature> iter) {
+        List<Feature> features = new ArrayList<Feature>();
+        while (iter.hasNext()) {
+            features.add(iter.next());
+        }
+        return features;
+    }
+}
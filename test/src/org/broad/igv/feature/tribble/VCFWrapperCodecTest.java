@@ -14,9 +14,18 @@ package org.broad.igv.feature.tribble;
 import org.broad.igv.AbstractHeadlessTest;
 import org.broad.igv.track.TribbleFeatureSource;
 import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.vcf.VCFVariant;
+import org.broad.tribble.AbstractFeatureReader;
+import org.broad.tribble.CloseableTribbleIterator;
+import org.broadinstitute.variant.variantcontext.VariantContext;
+import org.broadinstitute.variant.vcf.VCFCodec;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
 import java.util.Iterator;
 
 import static org.junit.Assert.*;
@@ -64,4 +73,78 @@ public class VCFWrapperCodecTest extends AbstractHeadlessTest {
 
 
     }
+
+    /**
+     * Genotypes parsed on demand should match those of the htsjdk codec
+     */
+    @Test
+    public void testLazyGenotypes() throws Exception {
+        for (String file : new String[]{"ex2.vcf", "SRP32_v4.0.vcf", "multi_allele_freqs.vcf", "outputPileup.flt1.vcf"}) {
+            String path = TestUtils.DATA_DIR + "vcf/" + file;
+            AbstractFeatureReader lazyReader = AbstractFeatureReader.getFeatureReader(path,
+                    new VCFWrapperCodec(new VCFCodec(), genome), false);
+            AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, new VCFCodec(), false);
+            CloseableTribbleIterator lazyIter = lazyReader.iterator();
+            CloseableTribbleIterator iter = reader.iterator();
+
+            int count = 0;
+            while (iter.hasNext()) {
+                assertTrue(lazyIter.hasNext());
+                VariantContext vc = (VariantContext) iter.next();
+                VCFVariant expected = new VCFVariant(vc, vc.getChr());
+                VCFVariant variant = (VCFVariant) lazyIter.next();
+
+                assertEquals(expected.getStart(), variant.getStart());
+                assertEquals(new HashSet<String>(expected.getSampleNames()), new HashSet<String>(variant.getSampleNames()));
+                assertEquals(expected.getHomVarCount(), variant.getHomVarCount());
+                assertEquals(expected.getHetCount(), variant.getHetCount());
+                assertEquals(expected.getHomRefCount(), variant.getHomRefCount());
+                assertEquals(expected.getNoCallCount(), variant.getNoCallCount());
+                for (String sample : expected.getSampleNames()) {
+                    Genotype e = expected.getGenotype(sample);
+                    Genotype g = variant.getGenotype(sample);
+                    assertEquals(e.getType(), g.getType());
+                    assertEquals(e.getGenotypeString(), g.getGenotypeString());
+                    assertEquals(e.getPhredScaledQual(), g.getPhredScaledQual(), 0);
+                    assertEquals(e.getAttributeAsDouble("DP"), g.getAttributeAsDouble("DP"), 0);
+                }
+                assertNull(variant.getGenotype("NOT_A_SAMPLE"));
+                assertEquals(vc.getNSamples(), variant.getVariantContext().getNSamples());
+                count++;
+            }
+            assertFalse(lazyIter.hasNext());
+            assertTrue(count > 0);
+            lazyIter.close();
+            iter.close();
+        }
+    }
+
+    /**
+     * GL values are converted to PLs, as the tribble codec does
+     */
+    @Test
+    public void testLazyGenotypeLikelihoods() throws Exception {
+        File file = File.createTempFile("likelihoods", ".vcf");
+        file.deleteOnExit();
+        PrintWriter pw = new PrintWriter(new FileWriter(file));
+        pw.println("##fileformat=VCFv4.1");
+        pw.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        pw.println("##FORMAT=<ID=GL,Number=G,Type=Float,Description=\"Genotype likelihoods\">");
+        pw.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2");
+        pw.println("chr1\t100\t.\tA\tG\t50\tPASS\t.\tGT:GL\t0/1:-3.5,0,-12.25\t1/1:-20,-4.1,-0.02");
+        pw.close();
+
+        String path = file.getAbsolutePath();
+        AbstractFeatureReader lazyReader = AbstractFeatureReader.getFeatureReader(path,
+                new VCFWrapperCodec(new VCFCodec(), genome), false);
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, new VCFCodec(), false);
+        VariantContext expected = (VariantContext) reader.iterator().next();
+        VariantContext vc = ((VCFVariant) lazyReader.iterator().next()).getVariantContext();
+        for (String sample : new String[]{"S1", "S2"}) {
+            assertArrayEquals(expected.getGenotype(sample).getPL(), vc.getGenotype(sample).getPL());
+        }
+        assertArrayEquals(new int[]{35, 0, 123}, vc.getGenotype("S1").getPL());
+        lazyReader.close();
+        reader.close();
+    }
 }
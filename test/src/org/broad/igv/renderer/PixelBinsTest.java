@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.renderer;
+
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.track.WindowFunction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PixelBinsTest {
+
+    @Test
+    public void testBin() throws Exception {
+
+        // 10 scores of 1 bp per 10 bp pixel, values 0 - 9, for 100 pixels
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        for (int i = 0; i < 1000; i++) {
+            scores.add(new BasicScore(i, i + 1, i % 10));
+        }
+        scores.add(new BasicScore(2000, 2001, Float.NaN));
+
+        PixelBins bins = PixelBins.bin(scores, 0, 10, 200, false);
+        assertNotNull(bins);
+        assertEquals(200, bins.getColumnCount());
+        assertTrue(bins.hasData(0));
+        assertTrue(bins.hasData(99));
+        assertFalse(bins.hasData(100));
+        assertFalse(bins.hasData(199));
+        assertEquals(0, bins.getValue(5, WindowFunction.min), 0);
+        assertEquals(9, bins.getValue(5, WindowFunction.max), 0);
+        assertEquals(4.5, bins.getValue(5, WindowFunction.mean), 1.0e-6);
+
+        // Values <= 0 are skipped for log scales
+        bins = PixelBins.bin(scores, 0, 10, 200, true);
+        assertEquals(1, bins.getValue(5, WindowFunction.min), 0);
+
+        // Sparse data is not binned
+        assertNull(PixelBins.bin(scores, 0, 1, 2000, false));
+        assertNull(PixelBins.bin(scores, 500, 0.1, 200, false));
+    }
+
+    @Test
+    public void testWideScores() throws Exception {
+
+        // A score wider than a pixel is added to each column it overlaps
+        List<LocusScore> scores = new ArrayList<LocusScore>();
+        for (int i = 0; i < 20; i++) {
+            scores.add(new BasicScore(i, i + 1, 1));
+        }
+        scores.add(new BasicScore(20, 60, 5));
+
+        PixelBins bins = PixelBins.bin(scores, 0, 10, 6, false);
+        assertNotNull(bins);
+        assertEquals(1, bins.getValue(0, WindowFunction.mean), 0);
+        assertEquals(5, bins.getValue(2, WindowFunction.mean), 0);
+        assertEquals(5, bins.getValue(5, WindowFunction.max), 0);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import com.google.common.eventbus.Subscribe;
+import net.sf.samtools.*;
+import net.sf.samtools.util.CloseableIterator;
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.track.FeatureTrack;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.track.Track;
+import org.broad.igv.ui.event.DataLoadedEvent;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoveragePyramidTest extends AbstractHeadlessTest {
+
+    private static final int LENGTH = 100000;
+    private static final int READ_LENGTH = 100;
+
+    private static SAMFileHeader createHeader() {
+        SAMFileHeader header = new SAMFileHeader();
+        SAMSequenceDictionary dict = new SAMSequenceDictionary();
+        dict.addSequence(new SAMSequenceRecord("chr1", LENGTH));
+        header.setSequenceDictionary(dict);
+        return header;
+    }
+
+    /**
+     * Create reads starting every {@code spacing} bases, giving a depth of {@code READ_LENGTH / spacing}
+     */
+    private static List<Alignment> createAlignments(SAMFileHeader header, int start, int end, int spacing) {
+        List<Alignment> alignments = new ArrayList<Alignment>();
+        for (int pos = start; pos + READ_LENGTH <= end; pos += spacing) {
+            SAMRecord record = new SAMRecord(header);
+            record.setReadName("read" + pos);
+            record.setReferenceName("chr1");
+            record.setAlignmentStart(pos + 1);
+            record.setCigarString(READ_LENGTH + "M");
+            record.setMappingQuality(60);
+            alignments.add(new SamAlignment(record));
+        }
+        return alignments;
+    }
+
+    /**
+     * Reader over a list of alignments, sorted by start
+     */
+    private static class ListReader implements AlignmentReader {
+
+        final List<Alignment> alignments;
+        int queryCount = 0;
+
+        ListReader(List<Alignment> alignments) {
+            this.alignments = alignments;
+        }
+
+        public void close() {
+        }
+
+        public List<String> getSequenceNames() {
+            return Arrays.asList("chr1");
+        }
+
+        public Set<String> getPlatforms() {
+            return null;
+        }
+
+        public CloseableIterator<Alignment> iterator() {
+            return query("chr1", 0, LENGTH, false);
+        }
+
+        public CloseableIterator<Alignment> query(String sequence, int start, int end, boolean contained) {
+            queryCount++;
+            List<Alignment> overlapping = new ArrayList<Alignment>();
+            for (Alignment alignment : alignments) {
+                if (alignment.getEnd() > start && alignment.getStart() < end) {
+                    overlapping.add(alignment);
+                }
+            }
+            final Iterator<Alignment> iter = overlapping.iterator();
+            return new CloseableIterator<Alignment>() {
+                public void close() {
+                }
+
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                public Alignment next() {
+                    return iter.next();
+                }
+
+                public void remove() {
+                }
+            };
+        }
+
+        public boolean hasIndex() {
+            return true;
+        }
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+
+        ListReader reader = new ListReader(createAlignments(createHeader(), 0, LENGTH, 10));
+        CoveragePyramid pyramid = new CoveragePyramid(null);
+        assertNull(pyramid.getSummaryScores("chr1", 0, LENGTH, 1));
+
+        assertTrue(pyramid.build("chr1", "chr1", LENGTH, reader));
+        assertTrue(pyramid.isLoaded("chr1"));
+        int nBins = (LENGTH + CoveragePyramid.BIN_SIZE - 1) / CoveragePyramid.BIN_SIZE;
+        assertTrue(reader.queryCount <= nBins);
+
+        // Finest level, depth 10 away from the ends
+        List<LocusScore> scores = pyramid.getSummaryScores("chr1", 0, LENGTH, 1);
+        assertEquals(nBins, scores.size());
+        for (LocusScore score : scores.subList(0, nBins - 1)) {
+            assertEquals(10, score.getScore(), 0.01);
+        }
+
+        // A single bin at the coarsest level
+        scores = pyramid.getSummaryScores("chr1", 0, LENGTH, 10 * LENGTH);
+        assertEquals(1, scores.size());
+        assertTrue(scores.get(0).getEnd() >= LENGTH);
+
+        // Intermediate level
+        int binSize = CoveragePyramid.BIN_SIZE * CoveragePyramid.ZOOM_FACTOR;
+        scores = pyramid.getSummaryScores("chr1", 0, LENGTH, binSize);
+        assertEquals(binSize, scores.get(0).getEnd() - scores.get(0).getStart());
+    }
+
+    /**
+     * Receives data loaded events posted on a frame's bus, as the data panel painters do
+     */
+    public static class LoadListener {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        Track track;
+
+        @Subscribe
+        public void receiveDataLoaded(DataLoadedEvent event) {
+            track = event.track;
+            latch.countDown();
+        }
+    }
+
+    /**
+     * A finished build posts a data loaded event for the coverage track on the frame's bus, so its tiles are
+     * invalidated and the panel repainted
+     */
+    @Test
+    public void testLoadNotifiesFrame() throws Exception {
+
+        final ListReader reader = new ListReader(createAlignments(createHeader(), 0, LENGTH, 10));
+        CoveragePyramid pyramid = new CoveragePyramid(null) {
+            @Override
+            AlignmentReader openReader() {
+                return reader;
+            }
+        };
+
+        ReferenceFrame frame = new ReferenceFrame("pyramidFrame");
+        LoadListener listener = new LoadListener();
+        frame.getEventBus().register(listener);
+        Track track = new FeatureTrack("id", "coverage");
+        RenderContextImpl context = new RenderContextImpl(null, null, frame, new Rectangle(0, 0, 100, 30));
+
+        pyramid.load("chr1", "chr1", LENGTH, CoverageTrack.createLoadCallback(context, track));
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertSame(track, listener.track);
+        assertTrue(pyramid.isLoaded("chr1"));
+    }
+
+    @Test
+    public void testExactCounts() throws Exception {
+
+        SAMFileHeader header = createHeader();
+        CoveragePyramid pyramid = new CoveragePyramid(null);
+        pyramid.build("chr1", "chr1", LENGTH, new ListReader(createAlignments(header, 0, LENGTH, 10)));
+
+        // Counts covering only the third bin completely, with half the sampled depth
+        int start = CoveragePyramid.BIN_SIZE * 2 - 500;
+        int end = CoveragePyramid.BIN_SIZE * 3 + 500;
+        AlignmentCounts counts = new DenseAlignmentCounts(start, end, null);
+        for (Alignment alignment : createAlignments(header, start - READ_LENGTH, end + READ_LENGTH, 20)) {
+            counts.incCounts(alignment);
+        }
+        assertTrue(pyramid.setExactCounts("chr1", counts));
+        assertFalse(pyramid.setExactCounts("chr2", counts));
+
+        List<LocusScore> scores = pyramid.getSummaryScores("chr1", 0, LENGTH, 1);
+        assertEquals(10, scores.get(1).getScore(), 0.01);
+        assertEquals(5, scores.get(2).getScore(), 0.01);
+        assertEquals(10, scores.get(3).getScore(), 0.01);
+
+        // The change is reflected in coarser levels
+        scores = pyramid.getSummaryScores("chr1", 0, LENGTH, CoveragePyramid.BIN_SIZE * CoveragePyramid.ZOOM_FACTOR);
+        assertEquals((10 + 10 + 5 + 10) / 4.0, scores.get(0).getScore(), 0.01);
+    }
+}
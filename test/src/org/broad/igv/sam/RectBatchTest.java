@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.sam;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import static org.junit.Assert.assertEquals;
+
+public class RectBatchTest {
+
+    /**
+     * Raster writes should match filling the same rectangles with Graphics2D
+     */
+    @Test
+    public void testRasterMatchesFill() throws Exception {
+
+        Rectangle bounds = new Rectangle(10, 20, 50, 30);
+        RectBatch batch = new RectBatch(bounds);
+        Color translucent = new Color(0, 0, 255, 128);
+
+        // Added out of layer order, and partly outside the bounds
+        batch.add(RectBatch.BASES, Color.red, 15, 25, 5, 5);
+        batch.add(RectBatch.BASES, translucent, 30, 18, 40, 10);
+        batch.add(RectBatch.BLOCKS, Color.gray, 0, 22, 100, 6);
+        batch.add(RectBatch.MARKERS, Color.black, 17, 20, 1, 30);
+
+        BufferedImage raster = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt) raster.getRaster().getDataBuffer()).getData();
+        batch.write(pixels);
+
+        BufferedImage expected = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = expected.createGraphics();
+        g.translate(-bounds.x, -bounds.y);
+        g.setColor(Color.gray);
+        g.fillRect(0, 22, 100, 6);
+        g.setColor(Color.red);
+        g.fillRect(15, 25, 5, 5);
+        g.setColor(translucent);
+        g.fillRect(30, 18, 40, 10);
+        g.setColor(Color.black);
+        g.fillRect(17, 20, 1, 30);
+        g.dispose();
+
+        for (int y = 0; y < bounds.height; y++) {
+            for (int x = 0; x < bounds.width; x++) {
+                assertColorEquals(x + "," + y, expected.getRGB(x, y), raster.getRGB(x, y));
+            }
+        }
+    }
+
+    private static void assertColorEquals(String message, int expected, int actual) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int e = (expected >>> shift) & 0xff;
+            int a = (actual >>> shift) & 0xff;
+            assertEquals(message, e, a, 2);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.tools.motiffinder;
+
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.FastaIndexedSequence;
+import org.broad.igv.feature.genome.FastaUtils;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.util.collections.IntArrayList;
+import org.broad.tribble.Feature;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.*;
+
+public class MotifMatcherTest {
+
+    @Test
+    public void testCompile() throws Exception {
+        assertEquals(4, MotifMatcher.compile("ACTG").getLength());
+        assertEquals(6, MotifMatcher.compile("ACT[S,G,C].G").getLength());
+        assertNull(MotifMatcher.compile("ACT+G"));
+        assertNull(MotifMatcher.compile("A(CT|G)"));
+        assertNull(MotifMatcher.compile("ACT[G"));
+        assertNull(MotifMatcher.compile(""));
+    }
+
+    /**
+     * Compare matches on both strands with the regular expression search
+     */
+    @Test
+    public void testMatchesRegex() throws Exception {
+
+        Random random = new Random(31);
+        byte[] sequence = new byte[20000];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) "ACGTACGTACGTacgtN".charAt(random.nextInt(17));
+        }
+
+        String[] motifs = {"TG", "ACGTNACGT", "TTRYAC", "GATCRYMKSWHBVDNGATC", createMotif(random, 70), createMotif(random, 130)};
+        for (String motif : motifs) {
+            String pattern = MotifFinderDialog.convertMotifToRegex(motif);
+            MotifMatcher matcher = MotifMatcher.compile(pattern);
+            assertNotNull(pattern, matcher);
+
+            IntArrayList posStarts = new IntArrayList();
+            IntArrayList negStarts = new IntArrayList();
+            matcher.search(sequence, posStarts, negStarts);
+
+            assertEquals(pattern, getRegexStarts(pattern, Strand.POSITIVE, sequence), toList(posStarts));
+            assertEquals(pattern, getRegexStarts(pattern, Strand.NEGATIVE, sequence), toList(negStarts));
+        }
+    }
+
+    /**
+     * Long motifs copied from the sequence, so there is at least one hit per strand
+     */
+    @Test
+    public void testLongMotif() throws Exception {
+
+        Random random = new Random(37);
+        byte[] sequence = new byte[5000];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        String motif = new String(sequence, 1000, 150);
+        MotifMatcher matcher = MotifMatcher.compile(motif);
+        IntArrayList posStarts = new IntArrayList();
+        matcher.search(sequence, posStarts, null);
+        assertEquals(1, posStarts.size());
+        assertEquals(1000, posStarts.get(0));
+
+        Iterator<Feature> iter = MotifFinderSource.search(motif, Strand.POSITIVE, "chr1", 100, sequence);
+        Feature feature = iter.next();
+        assertEquals(1100, feature.getStart());
+        assertEquals(1250, feature.getEnd());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testGenomeScan() throws Exception {
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR);
+        dir.mkdirs();
+        File fastaFile = new File(dir, "motifScan.fa");
+        File bedFile = new File(dir, "motifScan.bed");
+        File idxFile = new File(dir, "motifScan.bed.idx");
+
+        Random random = new Random(41);
+        String[] chrs = {"chr1", "chr2"};
+        String[] bases = new String[chrs.length];
+        PrintWriter pw = new PrintWriter(fastaFile);
+        for (int c = 0; c < chrs.length; c++) {
+            StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < 5000 + 3000 * c; i++) {
+                buf.append("ACGT".charAt(random.nextInt(4)));
+            }
+            bases[c] = buf.toString();
+            pw.println(">" + chrs[c]);
+            pw.println(bases[c]);
+        }
+        pw.close();
+        FastaUtils.createIndexFile(fastaFile.getAbsolutePath(), fastaFile.getAbsolutePath() + ".fai");
+
+        try {
+            Genome genome = new Genome("motifScan", "motifScan", new FastaIndexedSequence(fastaFile.getAbsolutePath()), true);
+            String pattern = "ACGTA";
+            GenomeMotifScanner scanner = new GenomeMotifScanner(MotifMatcher.compile(pattern), genome, "motif");
+            scanner.setChunkSize(1000);
+            scanner.setThreadCount(3);
+            long count = scanner.scan(bedFile);
+
+            // Expected records, in file order
+            List<String> expected = new ArrayList<String>();
+            for (int c = 0; c < chrs.length; c++) {
+                byte[] seq = bases[c].getBytes();
+                List<Integer> pos = getRegexStarts(pattern, Strand.POSITIVE, seq);
+                List<Integer> neg = getRegexStarts(pattern, Strand.NEGATIVE, seq);
+                for (int i = 0; i < seq.length; i++) {
+                    if (pos.contains(i)) expected.add(chrs[c] + "\t" + i + "\t" + (i + 5) + "\tmotif\t0\t+");
+                    if (neg.contains(i)) expected.add(chrs[c] + "\t" + i + "\t" + (i + 5) + "\tmotif\t0\t-");
+                }
+            }
+
+            List<String> lines = new ArrayList<String>();
+            BufferedReader br = new BufferedReader(new FileReader(bedFile));
+            String nextLine;
+            while ((nextLine = br.readLine()) != null) {
+                lines.add(nextLine);
+            }
+            br.close();
+
+            assertEquals(expected.size(), count);
+            assertEquals(expected, lines);
+            assertTrue(idxFile.exists());
+        } finally {
+            new File(fastaFile.getAbsolutePath() + ".fai").delete();
+            fastaFile.delete();
+            bedFile.delete();
+            idxFile.delete();
+        }
+    }
+
+    private static String createMotif(Random random, int length) {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < length; i++) {
+            buf.append("ACGTRYN".charAt(random.nextInt(7)));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Match start positions of the regular expression search, in positive strand coordinates and ascending order
+     */
+    private static List<Integer> getRegexStarts(String pattern, Strand strand, byte[] sequence) {
+        Matcher matcher = MotifFinderSource.getMatcher(pattern, strand, sequence.clone());
+        List<Integer> starts = new ArrayList<Integer>();
+        int lastStart = -1;
+        while (matcher.find(lastStart + 1)) {
+            lastStart = matcher.start();
+            if (strand == Strand.POSITIVE) {
+                starts.add(lastStart);
+            } else {
+                starts.add(0, sequence.length - matcher.end());
+            }
+        }
+        return starts;
+    }
+
+    private static List<Integer> toList(IntArrayList list) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < list.size(); i++) {
+            values.add(list.get(i));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.track;
+
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.ui.event.ViewChange;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.tribble.Feature;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FeatureQuerySchedulerTest {
+
+    /**
+     * Source which blocks its first query until released, and records the intervals queried
+     */
+    private static class BlockingSource implements FeatureSource<Feature> {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch firstQueryStarted = new CountDownLatch(1);
+        final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+        public Iterator<Feature> getFeatures(String chr, int start, int end) {
+            queries.add(chr + ":" + start + "-" + end);
+            if (firstQueryStarted.getCount() > 0) {
+                firstQueryStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            List<Feature> features = new ArrayList<Feature>();
+            for (int s = start; s < end; s += 100) {
+                features.add(new BasicFeature(chr, s, s + 50));
+            }
+            return features.iterator();
+        }
+
+        public List<LocusScore> getCoverageScores(String chr, int start, int end, int zoom) {
+            return null;
+        }
+
+        public int getFeatureWindowSize() {
+            return 0;
+        }
+
+        public void setFeatureWindowSize(int size) {
+        }
+    }
+
+    private static RenderContext createContext(String frameName) {
+        return new RenderContextImpl(null, null, new ReferenceFrame(frameName), null);
+    }
+
+    @Test
+    public void testCoalesceAndCancel() throws Exception {
+
+        BlockingSource source = new BlockingSource();
+        final Map<String, PackedFeatures> loaded = Collections.synchronizedMap(new HashMap<String, PackedFeatures>());
+        final CountDownLatch done = new CountDownLatch(3);
+        FeatureQueryScheduler scheduler = new FeatureQueryScheduler(source, "test", new FeatureQueryScheduler.Listener() {
+            public void featuresLoaded(PackedFeatures packedFeatures, Collection<RenderContext> contexts) {
+                for (RenderContext context : contexts) {
+                    loaded.put(context.getReferenceFrame().getName(), packedFeatures);
+                    done.countDown();
+                }
+            }
+
+            public void loadFailed(String chr, int start, int end, Exception e, Collection<RenderContext> contexts) {
+                fail(e.getMessage());
+            }
+        });
+
+        RenderContext a = createContext("A");
+        RenderContext b = createContext("B");
+        RenderContext c = createContext("C");
+
+        scheduler.request("chr1", 1000, 2000, 500, 2500, null, a, true);
+        assertTrue(source.firstQueryStarted.await(10, TimeUnit.SECONDS));
+
+        // B and C overlap, and are loaded by one query
+        scheduler.request("chr1", 10000, 11000, 9500, 11500, null, b, true);
+        scheduler.request("chr1", 11000, 12000, 10500, 12500, null, c, true);
+
+        // A moves on before its first query completes
+        scheduler.request("chr1", 50000, 51000, 49500, 51500, null, a, true);
+        assertTrue(scheduler.isLoading());
+
+        source.release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("chr1:500-2500", "chr1:9500-12500", "chr1:49500-51500"), source.queries);
+        assertSame(loaded.get("B"), loaded.get("C"));
+        assertTrue(loaded.get("C").containsInterval("chr1", 11000, 12000));
+        assertTrue(loaded.get("A").containsInterval("chr1", 50000, 51000));
+    }
+
+    @Test
+    public void testJoinRunningQuery() throws Exception {
+
+        BlockingSource source = new BlockingSource();
+        final List<String> frames = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(2);
+        FeatureQueryScheduler scheduler = new FeatureQueryScheduler(source, "test", new FeatureQueryScheduler.Listener() {
+            public void featuresLoaded(PackedFeatures packedFeatures, Collection<RenderContext> contexts) {
+                for (RenderContext context : contexts) {
+                    frames.add(context.getReferenceFrame().getName());
+                    done.countDown();
+                }
+            }
+
+            public void loadFailed(String chr, int start, int end, Exception e, Collection<RenderContext> contexts) {
+                fail(e.getMessage());
+            }
+        });
+
+        scheduler.request("chr1", 1000, 2000, 500, 2500, null, createContext("A"), true);
+        assertTrue(source.firstQueryStarted.await(10, TimeUnit.SECONDS));
+        scheduler.request("chr1", 1200, 1800, 900, 2100, null, createContext("B"), true);
+        source.release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, source.queries.size());
+        assertTrue(frames.containsAll(Arrays.asList("A", "B")));
+    }
+
+    @Test
+    public void testCancelAll() throws Exception {
+
+        BlockingSource source = new BlockingSource();
+        final List<String> frames = Collections.synchronizedList(new ArrayList<String>());
+        FeatureQueryScheduler scheduler = new FeatureQueryScheduler(source, "test", new FeatureQueryScheduler.Listener() {
+            public void featuresLoaded(PackedFeatures packedFeatures, Collection<RenderContext> contexts) {
+                for (RenderContext context : contexts) {
+                    frames.add(context.getReferenceFrame().getName());
+                }
+            }
+
+            public void loadFailed(String chr, int start, int end, Exception e, Collection<RenderContext> contexts) {
+                fail(e.getMessage());
+            }
+        });
+
+        scheduler.request("chr1", 1000, 2000, 500, 2500, null, createContext("A"), true);
+        assertTrue(source.firstQueryStarted.await(10, TimeUnit.SECONDS));
+        scheduler.request("chr2", 1000, 2000, 500, 2500, null, createContext("B"), true);
+
+        // E.g. on a chromosome change, neither the running nor the queued query delivers
+        scheduler.cancelAll();
+        source.release.countDown();
+        for (int i = 0; i < 100 && scheduler.isLoading(); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(scheduler.isLoading());
+        assertEquals(1, source.queries.size());
+        assertTrue(frames.isEmpty());
+    }
+
+    @Test
+    public void testChromosomeChangeCancelsTrackQueries() throws Exception {
+
+        BlockingSource source = new BlockingSource();
+        final FeatureTrack track = new FeatureTrack("test", "test", source);
+        final RenderContext context = createContext("A");
+
+        // Loads started on the event dispatch thread are asynchronous, and register the track with the frame
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                track.loadFeatures("chr1", 1000, 2000, context);
+            }
+        });
+        assertTrue(source.firstQueryStarted.await(10, TimeUnit.SECONDS));
+        FeatureQueryScheduler scheduler = track.getQueryScheduler();
+        assertTrue(scheduler.isRequested("A"));
+
+        // The frame's event bus is asynchronous
+        context.getReferenceFrame().getEventBus().post(new ViewChange.ChromosomeChangeResult(this, "chr2"));
+        for (int i = 0; i < 100 && scheduler.isRequested("A"); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(scheduler.isRequested("A"));
+
+        source.release.countDown();
+        for (int i = 0; i < 100 && scheduler.isLoading(); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(scheduler.isLoading());
+        assertNull(track.packedFeaturesMap.get("A"));
+    }
+}
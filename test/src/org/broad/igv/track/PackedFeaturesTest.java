@@ -19,8 +19,7 @@ import org.broad.tribble.Feature;
 import org.broad.tribble.FeatureCodec;
 import org.junit.Test;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -52,6 +51,73 @@ public class PackedFeaturesTest extends AbstractHeadlessTest {
     }
 
 
+    /**
+     * Extend a packed interval on both sides.  Every feature of the new interval should be packed exactly once,
+     * rows should not overlap, and features already packed should keep their rows.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExtend() throws Exception {
+
+        List<TestFeature> features = new ArrayList<TestFeature>();
+        Random random = new Random(5);
+        for (int start = 0; start < 40000; start += 1 + random.nextInt(40)) {
+            features.add(new TestFeature("chr1", start, start + 1 + random.nextInt(1000)));
+        }
+
+        PackedFeatures<TestFeature> base = new PackedFeatures("chr1", 10000, 20000,
+                overlapping(features, 10000, 20000).iterator(), "");
+
+        PackedFeatures<TestFeature> right = base.extend(15000, 30000, null,
+                overlapping(features, 20000, 30000).iterator());
+        assertExtended(base, right, overlapping(features, 15000, 30000));
+
+        PackedFeatures<TestFeature> left = right.extend(5000, 25000,
+                overlapping(features, 5000, 15000).iterator(), null);
+        assertExtended(right, left, overlapping(features, 5000, 25000));
+    }
+
+    private static void assertExtended(PackedFeatures<TestFeature> base, PackedFeatures<TestFeature> pf,
+                                       List<TestFeature> expected) {
+
+        assertEquals(new HashSet<TestFeature>(expected), new HashSet<TestFeature>(pf.getFeatures()));
+        assertEquals(expected.size(), pf.getFeatures().size());
+
+        Map<TestFeature, Integer> baseRows = new HashMap<TestFeature, Integer>();
+        for (int i = 0; i < base.getRowCount(); i++) {
+            for (TestFeature f : base.getRows().get(i).getFeatures()) {
+                baseRows.put(f, i);
+            }
+        }
+
+        int nPacked = 0;
+        for (int i = 0; i < pf.getRowCount(); i++) {
+            TestFeature last = null;
+            for (TestFeature f : pf.getRows().get(i).getFeatures()) {
+                if (last != null) {
+                    assertTrue(f.getStart() >= last.getEnd());
+                }
+                if (baseRows.containsKey(f)) {
+                    assertEquals(baseRows.get(f).intValue(), i);
+                }
+                last = f;
+                nPacked++;
+            }
+        }
+        assertEquals(expected.size(), nPacked);
+    }
+
+    private static List<TestFeature> overlapping(List<TestFeature> features, int start, int end) {
+        List<TestFeature> overlapping = new ArrayList<TestFeature>();
+        for (TestFeature f : features) {
+            if (f.getEnd() >= start && f.getStart() <= end) {
+                overlapping.add(f);
+            }
+        }
+        return overlapping;
+    }
+
     private void assertPackedFeaturesEqual(PackedFeatures<? extends Feature> expected, PackedFeatures<? extends Feature> actual) {
 
         TestUtils.assertFeatureListsEqual(expected.getFeatures().iterator(), actual.getFeatures().iterator());
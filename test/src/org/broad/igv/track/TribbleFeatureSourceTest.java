@@ -1,12 +1,19 @@
 package org.broad.igv.track;
 
 import org.broad.igv.Globals;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.tribble.AbstractFeatureReader;
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.TestUtils;
 
+import java.io.File;
+import java.util.List;
+
 
 /**
  * @author jrobinso
@@ -52,4 +59,56 @@ public class TribbleFeatureSourceTest {
             Assert.assertTrue(msg, curFileHandles - baseFileHandles <= maxDiff);
         }
     }
+
+    /**
+     * Feature densities estimated from a linear index should add up to the number of features
+     */
+    @Test
+    public void testIndexDensity() throws Exception {
+        String file = TestUtils.DATA_DIR + "bed/Unigene.sample.sorted.bed";
+        TribbleFeatureSource featureSource = new TribbleFeatureSource(file, null, false);
+
+        for (int zoom = 0; zoom < 10; zoom += 3) {
+            List<LocusScore> scores = featureSource.getCoverageScores("chr2", 0, Integer.MAX_VALUE, zoom);
+            Assert.assertNotNull(scores);
+            double total = 0;
+            for (LocusScore score : scores) {
+                total += score.getScore();
+                Assert.assertTrue(score.getEnd() > score.getStart());
+            }
+            Assert.assertEquals(71, total, 0.01);
+        }
+        Assert.assertNull(featureSource.getCoverageScores("chr1", 0, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void testScanDensity() throws Exception {
+        String path = TestUtils.DATA_DIR + "bed/Unigene.sample.sorted.bed";
+        AbstractFeatureReader reader = AbstractFeatureReader.getFeatureReader(path, new IGVBEDCodec(), false);
+        FeatureDensity density = FeatureDensity.scan(reader, 1000);
+        reader.close();
+
+        List<LocusScore> scores = density.getScores("chr2", 178705000, 178710000, 0, 0);
+        double total = 0;
+        for (LocusScore score : density.getScores("chr2", 0, Integer.MAX_VALUE, 0, 0)) {
+            total += score.getScore();
+        }
+        Assert.assertEquals(71, total, 0);
+        Assert.assertFalse(scores.isEmpty());
+
+        File dataFile = new File(TestUtils.TMP_OUTPUT_DIR, "density.bed");
+        FileUtils.copyFile(new File(path), dataFile);
+        File densityFile = new File(TestUtils.TMP_OUTPUT_DIR, "density.bed.density");
+        density.write(densityFile, dataFile);
+
+        FeatureDensity read = FeatureDensity.read(densityFile, dataFile);
+        Assert.assertNotNull(read);
+        Assert.assertArrayEquals(density.getBins("chr2").counts, read.getBins("chr2").counts, 0);
+
+        // Counts of a modified file are not used
+        dataFile.setLastModified(dataFile.lastModified() - 10000);
+        Assert.assertNull(FeatureDensity.read(densityFile, dataFile));
+        dataFile.delete();
+        densityFile.delete();
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.FeatureTrack;
+import org.broad.igv.track.RenderContextImpl;
+import org.broad.igv.ui.event.DataLoadedEvent;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class DataPanelPainterTest extends AbstractHeadlessTest {
+
+    private static final int WIDTH = 500;
+
+    /**
+     * A data loaded event posted on the frame's bus discards the cached tiles of the track
+     */
+    @Test
+    public void testDataLoadedInvalidatesTiles() throws Exception {
+
+        ReferenceFrame frame = new ReferenceFrame("painterFrame");
+        frame.setBounds(0, WIDTH);
+        frame.jumpTo("chr1", 1000000, 1010000);
+        FeatureTrack track = new FeatureTrack("id", "name");
+        FeatureTrack other = new FeatureTrack("otherId", "other");
+        Rectangle rect = new Rectangle(0, 0, WIDTH, 30);
+
+        DataPanelPainter painter = new DataPanelPainter();
+        TileCache cache = painter.getTileCache();
+        render(cache, cache.lookup(track, frame, rect, rect));
+        render(cache, cache.lookup(other, frame, rect, rect));
+        assertTrue(cache.lookup(track, frame, rect, rect).region.isEmpty());
+
+        frame.getEventBus().register(painter);
+        try {
+            // The frame's event bus is asynchronous
+            frame.getEventBus().post(new DataLoadedEvent(new RenderContextImpl(null, null, frame, rect), track));
+            for (int i = 0; i < 100 && !cache.lookup(track, frame, rect, rect).hits.isEmpty(); i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(cache.lookup(track, frame, rect, rect).hits.isEmpty());
+            assertTrue(cache.lookup(other, frame, rect, rect).region.isEmpty());
+        } finally {
+            frame.getEventBus().unregister(painter);
+        }
+    }
+
+    private static void render(TileCache cache, TileCache.Lookup lookup) {
+        Rectangle bounds = lookup.region.getBounds();
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        cache.store(lookup, image, bounds);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.AbstractHeadlessTest;
+import org.broad.igv.track.FeatureTrack;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest extends AbstractHeadlessTest {
+
+    private static final int WIDTH = 500;
+
+    private ReferenceFrame createFrame() {
+        ReferenceFrame frame = new ReferenceFrame("tileFrame");
+        frame.setBounds(0, WIDTH);
+        frame.jumpTo("chr1", 1000000, 1010000);
+        return frame;
+    }
+
+    /**
+     * Render the region of a lookup, storing the tiles
+     */
+    private static void render(TileCache cache, TileCache.Lookup lookup) {
+        Rectangle bounds = lookup.region.getBounds();
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+        cache.store(lookup, image, bounds);
+    }
+
+    @Test
+    public void testPan() throws Exception {
+        TileCache cache = new TileCache();
+        ReferenceFrame frame = createFrame();
+        FeatureTrack track = new FeatureTrack("id", "name");
+        Rectangle rect = new Rectangle(0, 0, WIDTH, 30);
+
+        TileCache.Lookup lookup = cache.lookup(track, frame, rect, rect);
+        assertTrue(lookup.hits.isEmpty());
+        assertEquals(rect, lookup.region.getBounds());
+        render(cache, lookup);
+
+        // Repainting the same view renders nothing
+        lookup = cache.lookup(track, frame, rect, rect);
+        assertTrue(lookup.missing.isEmpty());
+        assertTrue(lookup.region.isEmpty());
+
+        // Panning renders only the exposed columns, and the partial tile next to them
+        frame.shiftOriginPixels(100);
+        lookup = cache.lookup(track, frame, rect, rect);
+        assertFalse(lookup.hits.isEmpty());
+        Rectangle bounds = lookup.region.getBounds();
+        assertEquals(WIDTH, bounds.x + bounds.width);
+        assertTrue(bounds.x >= WIDTH - 100 - TileCache.TILE_WIDTH);
+        render(cache, lookup);
+
+        // Panning back is fully cached
+        frame.shiftOriginPixels(-100);
+        assertTrue(cache.lookup(track, frame, rect, rect).region.isEmpty());
+
+        // Changing a property which affects rendering misses
+        track.setColor(Color.red);
+        assertTrue(cache.lookup(track, frame, rect, rect).hits.isEmpty());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        TileCache cache = new TileCache();
+        ReferenceFrame frame = createFrame();
+        FeatureTrack track = new FeatureTrack("id", "name");
+        Rectangle rect = new Rectangle(0, 0, WIDTH, 30);
+
+        TileCache.Lookup lookup = cache.lookup(track, frame, rect, rect);
+        render(cache, lookup);
+        cache.invalidate(track);
+        assertTrue(cache.lookup(track, frame, rect, rect).hits.isEmpty());
+
+        // Tiles rendered before the data changed are not stored
+        lookup = cache.lookup(track, frame, rect, rect);
+        cache.invalidate(track);
+        render(cache, lookup);
+        assertTrue(cache.lookup(track, frame, rect, rect).hits.isEmpty());
+
+        render(cache, cache.lookup(track, frame, rect, rect));
+        TileCache.invalidateAll();
+        assertTrue(cache.lookup(track, frame, rect, rect).hits.isEmpty());
+    }
+}
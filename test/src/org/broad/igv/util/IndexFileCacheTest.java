@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.util.stream.RangeHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexFileCacheTest {
+
+    File cacheDir;
+    RangeHttpServer server;
+    byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[100000];
+        new Random(3).nextBytes(content);
+        server = new RangeHttpServer(content);
+        cacheDir = new File(TestUtils.TMP_OUTPUT_DIR, "indexcache");
+        IndexFileCache.setDirectory(cacheDir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        cacheDir.delete();
+        IndexFileCache.reset();
+    }
+
+    @Test
+    public void testCachedIndexValidated() throws Exception {
+
+        String path = server.getURL("test.bam.bai").toExternalForm();
+
+        File indexFile = IndexFileCache.getIndexFile(path);
+        assertTrue(indexFile.getName().endsWith(".bai"));
+        assertArrayEquals(content, readAll(indexFile));
+        assertEquals(1, server.getGetCount());
+
+        // Same session, no further requests
+        int heads = server.getHeadCount();
+        assertEquals(indexFile, IndexFileCache.getIndexFile(path));
+        assertEquals(heads, server.getHeadCount());
+
+        // New session, the cached copy is validated with a HEAD request only
+        IndexFileCache.reset();
+        assertEquals(indexFile, IndexFileCache.getIndexFile(path));
+        assertEquals(1, server.getGetCount());
+        assertEquals(heads + 1, server.getHeadCount());
+    }
+
+    @Test
+    public void testModifiedIndexReloaded() throws Exception {
+
+        String path = server.getURL("test.idx").toExternalForm();
+        IndexFileCache.prefetch(Arrays.asList(path));
+        assertArrayEquals(content, readAll(IndexFileCache.getIndexFile(path)));
+
+        byte[] newContent = new byte[50000];
+        new Random(4).nextBytes(newContent);
+        server.setContent(newContent);
+
+        IndexFileCache.reset();
+        assertArrayEquals(newContent, readAll(IndexFileCache.getIndexFile(path)));
+        assertEquals(2, server.getGetCount());
+    }
+
+    @Test
+    public void testIndexPaths() throws Exception {
+        String base = "http://www.example.org/data/";
+        List<ResourceLocator> locators = new ArrayList<ResourceLocator>();
+        for (String name : Arrays.asList("a.bam", "b.bed", "c.tdf", "d.bw", "e.bed.gz", "f.seg")) {
+            locators.add(new ResourceLocator(base + name));
+        }
+        locators.add(new ResourceLocator("/local/g.bed"));
+
+        assertEquals(Arrays.asList(base + "a.bam.bai", base + "b.bed.idx"), IndexFileCache.getIndexPaths(locators));
+    }
+
+    private byte[] readAll(File file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        is.readFully(bytes);
+        is.close();
+        return bytes;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.util.stream.RangeHttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelDownloaderTest {
+
+    static final int RANGE_SIZE = 8 * 1024;
+
+    RangeHttpServer server;
+    byte[] content;
+    File outputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[10 * RANGE_SIZE + 123];
+        new Random(5).nextBytes(content);
+        server = new RangeHttpServer(content);
+        outputFile = new File(TestUtils.TMP_OUTPUT_DIR, "parallelDownload.bin");
+        outputFile.getParentFile().mkdirs();
+        outputFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        createDownloader(server.getURL("data.bin"), 1).discardPartial();
+        outputFile.delete();
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+
+        ParallelDownloader downloader = createDownloader(server.getURL("data.bin"), 4);
+        assertTrue(downloader.download());
+        assertArrayEquals(content, readAll(outputFile));
+
+        // 1 probe + 11 ranges
+        assertEquals(12, server.getGetCount());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+
+        // Two failures, within the retry limit of a range
+        server.setFailures(3, 2);
+        ParallelDownloader downloader = createDownloader(server.getURL("data.bin"), 1);
+        assertTrue(downloader.download());
+        assertArrayEquals(content, readAll(outputFile));
+    }
+
+    @Test
+    public void testResume() throws Exception {
+
+        URL url = server.getURL("data.bin");
+        String version = HttpUtils.getInstance().getResourceVersion(url);
+
+        // Probe and ranges 0 - 4 succeed, range 5 fails permanently
+        server.setFailures(6, ParallelDownloader.MAX_RETRIES + 1);
+        ParallelDownloader downloader = createDownloader(url, 1);
+        downloader.setVersion(version);
+        try {
+            downloader.download();
+            fail("Expected download to fail");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertFalse(outputFile.exists());
+
+        long bytesServed = server.getBytesServed();
+        downloader = createDownloader(url, 1);
+        downloader.setVersion(version);
+        assertTrue(downloader.download());
+        assertArrayEquals(content, readAll(outputFile));
+
+        // 1 byte probe + ranges 5 - 10
+        assertEquals(1 + content.length - 5 * RANGE_SIZE, server.getBytesServed() - bytesServed);
+    }
+
+    @Test
+    public void testRangesIgnored() throws Exception {
+
+        server.setIgnoreRanges(true);
+        ParallelDownloader downloader = createDownloader(server.getURL("data.bin"), 4);
+        assertFalse(downloader.download());
+        assertFalse(outputFile.exists());
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+
+        File contentFile = new File(TestUtils.TMP_OUTPUT_DIR, "parallelDownloadContent.bin");
+        FileOutputStream fos = new FileOutputStream(contentFile);
+        fos.write(content);
+        fos.close();
+        String md5 = MD5Checksum.getMD5Checksum(contentFile.getAbsolutePath());
+        contentFile.delete();
+
+        String url = server.getURL("data.bin").toExternalForm();
+        assertTrue(HttpUtils.getInstance().downloadFile(url, outputFile, null, md5));
+        assertArrayEquals(content, readAll(outputFile));
+
+        assertFalse(HttpUtils.getInstance().downloadFile(url, outputFile, null, "0123456789abcdef0123456789abcdef"));
+        assertFalse(outputFile.exists());
+    }
+
+    private ParallelDownloader createDownloader(URL url, int nThreads) {
+        ParallelDownloader downloader = new ParallelDownloader(url, outputFile, content.length);
+        downloader.setRangeSize(RANGE_SIZE);
+        downloader.setThreadCount(nThreads);
+        return downloader;
+    }
+
+    private byte[] readAll(File file) throws Exception {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(file));
+        is.readFully(bytes);
+        is.close();
+        return bytes;
+    }
+}
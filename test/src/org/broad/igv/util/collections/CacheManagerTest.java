@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheManagerTest {
+
+    private static WeightedLRUCache<Integer, byte[]> createCache(int priority) {
+        WeightedLRUCache<Integer, byte[]> cache = new WeightedLRUCache<Integer, byte[]>(1000000,
+                new WeightedLRUCache.Weigher<byte[]>() {
+                    public long weigh(byte[] value) {
+                        return value.length;
+                    }
+                }, priority);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, new byte[10]);
+        }
+        return cache;
+    }
+
+    @Test
+    public void testTrimFraction() throws Exception {
+        assertEquals(0, CacheManager.getTrimFraction(0.3), 0);
+        assertEquals(0.25, CacheManager.getTrimFraction(0.6), 0);
+        assertEquals(0.5, CacheManager.getTrimFraction(0.8), 0);
+        assertEquals(1, CacheManager.getTrimFraction(0.95), 0);
+    }
+
+    @Test
+    public void testTrimByPriority() throws Exception {
+
+        WeightedLRUCache<Integer, byte[]> low = createCache(ManagedCache.PRIORITY_LOW);
+        WeightedLRUCache<Integer, byte[]> normal = createCache(ManagedCache.PRIORITY_NORMAL);
+        WeightedLRUCache<Integer, byte[]> high = createCache(ManagedCache.PRIORITY_HIGH);
+        LRUCache<Integer, String> counted = new LRUCache<Integer, String>(this, 1000, 10, ManagedCache.PRIORITY_NORMAL);
+        for (int i = 0; i < 100; i++) {
+            counted.put(i, "value" + i);
+        }
+        assertEquals(1000, counted.getWeight());
+
+        assertTrue(CacheManager.trim(0.25) >= 500 + 250 + 130 + 250);
+        assertEquals(500, low.getWeight());
+        assertEquals(750, normal.getWeight());
+        assertEquals(870, high.getWeight());
+        assertEquals(750, counted.getWeight());
+
+        // Least recently used entries go first
+        assertNull(normal.get(0));
+        assertNotNull(normal.get(99));
+        assertFalse(counted.containsKey(0));
+        assertTrue(counted.containsKey(99));
+
+        CacheManager.trim(1);
+        assertTrue(low.isEmpty());
+        assertTrue(high.isEmpty());
+        assertTrue(counted.isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.collections;
+
+import com.google.common.base.Predicate;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeightedLRUCacheTest {
+
+    private static WeightedLRUCache<String, byte[]> createCache(long maxBytes) {
+        return new WeightedLRUCache<String, byte[]>(maxBytes, new WeightedLRUCache.Weigher<byte[]>() {
+            public long weigh(byte[] value) {
+                return value.length;
+            }
+        });
+    }
+
+    @Test
+    public void testEvictByWeight() throws Exception {
+
+        WeightedLRUCache<String, byte[]> cache = createCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        assertNotNull(cache.get("a"));   // b is now least recently used
+
+        cache.put("c", new byte[40]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getWeight());
+
+        WeightedLRUCache.Stats stats = cache.getStats();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(2, stats.getEntryCount());
+    }
+
+    @Test
+    public void testOversizedEntryKept() throws Exception {
+
+        WeightedLRUCache<String, byte[]> cache = createCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[500]);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testReplaceUpdatesWeight() throws Exception {
+
+        WeightedLRUCache<String, byte[]> cache = createCache(100);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.put("a", new byte[85]);
+        assertEquals(95, cache.getWeight());
+
+        cache.setMaxBytes(90);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("a"));
+
+        CacheManager.clearAll();
+        assertTrue(cache.isEmpty());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+
+        WeightedLRUCache<String, byte[]> cache = createCache(100);
+        cache.put("1_a", new byte[10]);
+        cache.put("2_a", new byte[20]);
+        cache.put("1_b", new byte[30]);
+        assertEquals(2, cache.removeAll(new Predicate<String>() {
+            public boolean apply(String key) {
+                return key.startsWith("1_");
+            }
+        }));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("2_a"));
+        assertEquals(20, cache.getWeight());
+    }
+}
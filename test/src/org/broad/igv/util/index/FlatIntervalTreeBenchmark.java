@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.index;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import org.broad.igv.util.TestUtils;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Loose performance comparison of {@link IntervalTree} and {@link FlatIntervalTree}, query time only.  Run by
+ * hand, it is not part of the unit tests.
+ */
+public class FlatIntervalTreeBenchmark {
+
+    private static final int RANGE = 50000000;
+
+    public static void main(String[] args) {
+
+        Random random = new Random(47);
+        int nIntervals = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int nTrials = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        List<Interval> intervals = FlatIntervalTreeTest.createIntervals(random, nIntervals, RANGE);
+
+        final IntervalTree tree = new IntervalTree();
+        for (Interval iv : intervals) {
+            tree.insert(iv);
+        }
+        final FlatIntervalTree flatTree = new FlatIntervalTree(intervals);
+
+        final long[] counts = new long[2];
+
+        System.out.println("\nIntervalTree.findOverlapping");
+        TestUtils.timeMethod(createQueries(), new Function<Integer, Void>() {
+            public Void apply(Integer start) {
+                counts[0] += tree.findOverlapping(start, start + 10000).size();
+                return null;
+            }
+        }, nTrials);
+
+        final FlatIntervalTree.Visitor visitor = new FlatIntervalTree.Visitor() {
+            public void visit(int low, int high, long value) {
+                counts[1]++;
+            }
+        };
+        System.out.println("\nFlatIntervalTree.visitOverlapping");
+        TestUtils.timeMethod(createQueries(), new Function<Integer, Void>() {
+            public Void apply(Integer start) {
+                flatTree.visitOverlapping(start, start + 10000, visitor);
+                return null;
+            }
+        }, nTrials);
+
+        // Both trees answer the same queries
+        System.out.println("\nOverlaps found: " + counts[0] + " / " + counts[1]);
+    }
+
+    /**
+     * Query start positions, the same sequence for each call
+     */
+    private static Supplier<Integer> createQueries() {
+        final Random random = new Random(53);
+        return new Supplier<Integer>() {
+            public Integer get() {
+                return random.nextInt(RANGE);
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.index;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FlatIntervalTreeTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        FlatIntervalTree tree = new FlatIntervalTree(Collections.<Interval>emptyList());
+        assertEquals(0, tree.size());
+        assertTrue(tree.findOverlapping(0, 100).isEmpty());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+
+        List<Interval> intervals = Arrays.asList(
+                new Interval(0, 3, 1), new Interval(5, 8, 2), new Interval(6, 10, 3), new Interval(8, 9, 4),
+                new Interval(15, 23, 5), new Interval(16, 21, 6), new Interval(17, 19, 7), new Interval(19, 20, 8),
+                new Interval(25, 30, 9), new Interval(26, 27, 10));
+        FlatIntervalTree tree = new FlatIntervalTree(intervals);
+        assertEquals(10, tree.size());
+
+        // Closed intervals, ends are inclusive
+        assertEquals(Arrays.asList(new Interval(0, 3, 1)), tree.findOverlapping(1, 2));
+        assertEquals(Arrays.asList(new Interval(5, 8, 2), new Interval(6, 10, 3), new Interval(8, 9, 4)),
+                tree.findOverlapping(8, 8));
+        assertTrue(tree.findOverlapping(11, 14).isEmpty());
+        assertEquals(intervals, tree.findOverlapping(-5, 100));
+    }
+
+    /**
+     * Compare with IntervalTree, for sizes exercising complete and partial implicit trees
+     */
+    @Test
+    public void testMatchesIntervalTree() throws Exception {
+
+        Random random = new Random(43);
+        for (int n : new int[]{1, 2, 7, 8, 9, 100, 1023, 1024, 1025, 5000}) {
+            List<Interval> intervals = createIntervals(random, n, 10000);
+            IntervalTree tree = new IntervalTree();
+            for (Interval iv : intervals) {
+                tree.insert(iv);
+            }
+            FlatIntervalTree flatTree = new FlatIntervalTree(intervals);
+            assertEquals(n, flatTree.size());
+
+            for (int q = 0; q < 200; q++) {
+                int start = random.nextInt(11000) - 500;
+                int end = start + random.nextInt(q % 2 == 0 ? 50 : 2000);
+
+                List<Interval> expected = tree.findOverlapping(start, end);
+                List<Interval> results = flatTree.findOverlapping(start, end);
+                assertEquals(toValues(expected), toValues(results));
+
+                // Start order
+                for (int i = 1; i < results.size(); i++) {
+                    assertTrue(results.get(i - 1).getLow() <= results.get(i).getLow());
+                }
+            }
+        }
+    }
+
+    /**
+     * The visitor sees the same intervals as IntervalTree.findOverlapping
+     */
+    @Test
+    public void testVisitOverlapping() throws Exception {
+
+        Random random = new Random(47);
+        int range = 1000000;
+        List<Interval> intervals = createIntervals(random, 20000, range);
+
+        IntervalTree tree = new IntervalTree();
+        for (Interval iv : intervals) {
+            tree.insert(iv);
+        }
+        FlatIntervalTree flatTree = new FlatIntervalTree(intervals);
+
+        final List<Long> visited = new ArrayList<Long>();
+        FlatIntervalTree.Visitor visitor = new FlatIntervalTree.Visitor() {
+            public void visit(int low, int high, long value) {
+                visited.add(value);
+            }
+        };
+        for (int q = 0; q < 200; q++) {
+            int start = random.nextInt(range);
+            visited.clear();
+            flatTree.visitOverlapping(start, start + 10000, visitor);
+            Collections.sort(visited);
+            assertEquals(toValues(tree.findOverlapping(start, start + 10000)), visited);
+        }
+    }
+
+    static List<Interval> createIntervals(Random random, int n, int range) {
+        List<Interval> intervals = new ArrayList<Interval>(n);
+        for (int i = 0; i < n; i++) {
+            int start = random.nextInt(range);
+            int length = random.nextInt(10) == 0 ? random.nextInt(range / 100 + 1) : random.nextInt(100);
+            intervals.add(new Interval(start, start + length, i));
+        }
+        return intervals;
+    }
+
+    private static List<Long> toValues(List<Interval> intervals) {
+        List<Long> values = new ArrayList<Long>();
+        for (Interval iv : intervals) {
+            values.add(iv.getValue());
+        }
+        Collections.sort(values);
+        return values;
+    }
+}
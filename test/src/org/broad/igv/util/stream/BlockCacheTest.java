@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import net.sf.samtools.seekablestream.SeekableStream;
+import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlockCacheTest {
+
+    static final int BLOCK_SIZE = 1024;
+
+    File cacheDir;
+    RangeHttpServer server;
+    byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[20 * BLOCK_SIZE + 100];
+        new Random(1).nextBytes(content);
+        server = new RangeHttpServer(content);
+        cacheDir = new File(TestUtils.TMP_OUTPUT_DIR, "blockcache");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        BlockCache.setInstance(null);
+        new BlockCache(cacheDir, Long.MAX_VALUE, BLOCK_SIZE).clear();
+        server.stop();
+    }
+
+    @Test
+    public void testReopenServedFromCache() throws Exception {
+
+        BlockCache.setInstance(new BlockCache(cacheDir, Long.MAX_VALUE, BLOCK_SIZE));
+        String path = server.getURL("data.bin").toExternalForm();
+
+        SeekableStream stream = IGVSeekableStreamFactory.getStreamFor(path);
+        assertTrue(stream instanceof BlockCachingSeekableStream);
+        assertArrayEquals(content, readAll(stream));
+        stream.close();
+
+        // A new cache instance on the same directory, as after a restart
+        BlockCache cache = new BlockCache(cacheDir, Long.MAX_VALUE, BLOCK_SIZE);
+        assertEquals(21, cache.getBlockCount());
+        BlockCache.setInstance(cache);
+
+        int gets = server.getGetCount();
+        stream = IGVSeekableStreamFactory.getStreamFor(path);
+        stream.seek(5 * BLOCK_SIZE + 10);
+        byte[] buffer = new byte[3 * BLOCK_SIZE];
+        stream.readFully(buffer);
+        stream.close();
+        assertEquals(gets, server.getGetCount());
+        for (int i = 0; i < buffer.length; i++) {
+            assertEquals(content[5 * BLOCK_SIZE + 10 + i], buffer[i]);
+        }
+    }
+
+    @Test
+    public void testModifiedResourceInvalidates() throws Exception {
+
+        BlockCache.setInstance(new BlockCache(cacheDir, Long.MAX_VALUE, BLOCK_SIZE));
+        String path = server.getURL("data.bin").toExternalForm();
+
+        SeekableStream stream = IGVSeekableStreamFactory.getStreamFor(path);
+        assertArrayEquals(content, readAll(stream));
+        stream.close();
+
+        byte[] newContent = new byte[content.length];
+        new Random(2).nextBytes(newContent);
+        server.setContent(newContent);
+
+        stream = IGVSeekableStreamFactory.getStreamFor(path);
+        assertArrayEquals(newContent, readAll(stream));
+        stream.close();
+    }
+
+    @Test
+    public void testSingleHeadPerOpen() throws Exception {
+
+        BlockCache.setInstance(new BlockCache(cacheDir, Long.MAX_VALUE, BLOCK_SIZE));
+        String path = server.getURL("data.bin").toExternalForm();
+
+        // The first open also tests the server for byte range support
+        IGVSeekableStreamFactory.getStreamFor(path).close();
+
+        for (int i = 0; i < 2; i++) {
+            int heads = server.getHeadCount();
+            SeekableStream stream = IGVSeekableStreamFactory.getStreamFor(path);
+            assertTrue(stream instanceof BlockCachingSeekableStream);
+            stream.close();
+            assertEquals(heads + 1, server.getHeadCount());
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        BlockCache cache = new BlockCache(cacheDir, 5 * BLOCK_SIZE, BLOCK_SIZE);
+        BlockCache.setInstance(cache);
+        String path = server.getURL("data.bin").toExternalForm();
+
+        SeekableStream stream = IGVSeekableStreamFactory.getStreamFor(path);
+        assertArrayEquals(content, readAll(stream));
+        stream.close();
+
+        assertEquals(5, cache.getBlockCount());
+        assertTrue(cache.getTotalBytes() <= 5 * BLOCK_SIZE);
+
+        // Most recent blocks are retained
+        String version = HttpUtils.getInstance().getResourceVersion(server.getURL("data.bin"));
+        String key = BlockCache.createKey(path, version);
+        assertNotNull(cache.getBlock(key, 19));
+        assertNull(cache.getBlock(key, 0));
+    }
+
+    private byte[] readAll(SeekableStream stream) throws Exception {
+        byte[] bytes = new byte[(int) stream.length()];
+        stream.seek(0);
+        stream.readFully(bytes);
+        return bytes;
+    }
+}
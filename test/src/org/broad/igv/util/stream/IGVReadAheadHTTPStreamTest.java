@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IGVReadAheadHTTPStreamTest {
+
+    static byte[] content;
+    static RangeHttpServer server;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        server = new RangeHttpServer(content);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testSmallReadsMerged() throws Exception {
+
+        URL url = server.getURL("small.bin");
+        IGVReadAheadHTTPStream stream = new IGVReadAheadHTTPStream(url);
+
+        // 100 small sequential reads fall within the first window
+        byte[] buffer = new byte[100];
+        for (int i = 0; i < 100; i++) {
+            stream.readFully(buffer);
+            assertArrayEquals(copy(i * 100, 100), buffer);
+        }
+        stream.close();
+
+        RangeRequestStats stats = RangeRequestStats.getStats(url.toExternalForm());
+        assertEquals(1, stats.getRequests());
+        assertEquals(IGVReadAheadHTTPStream.MIN_READ_AHEAD, stats.getBytes());
+        assertEquals(IGVReadAheadHTTPStream.MIN_READ_AHEAD - 10000, stats.getWastedBytes());
+    }
+
+    @Test
+    public void testReadAheadGrows() throws Exception {
+
+        URL url = server.getURL("sequential.bin");
+        IGVReadAheadHTTPStream stream = new IGVReadAheadHTTPStream(url);
+
+        byte[] buffer = new byte[10000];
+        int pos = 0;
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(content[pos + i], buffer[i]);
+            }
+            pos += n;
+        }
+        assertEquals(content.length, pos);
+        assertTrue(stream.getReadAhead() > IGVReadAheadHTTPStream.MIN_READ_AHEAD);
+        stream.close();
+
+        // 64k, 128k, 256k, 512k, 1m, 2m covers 3m + 17 bytes in 6 requests
+        RangeRequestStats stats = RangeRequestStats.getStats(url.toExternalForm());
+        assertEquals(6, stats.getRequests());
+        assertEquals(content.length, stats.getBytes());
+        assertEquals(0, stats.getWastedBytes());
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+
+        URL url = server.getURL("random.bin");
+        IGVReadAheadHTTPStream stream = new IGVReadAheadHTTPStream(url);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50; i++) {
+            int pos = random.nextInt(content.length - 1000);
+            byte[] buffer = new byte[1000];
+            stream.seek(pos);
+            stream.readFully(buffer);
+            assertArrayEquals(copy(pos, 1000), buffer);
+        }
+
+        // Read past end
+        stream.seek(content.length - 10);
+        byte[] buffer = new byte[100];
+        assertEquals(10, stream.read(buffer, 0, 100));
+        assertEquals(-1, stream.read(buffer, 0, 100));
+        stream.close();
+    }
+
+    private static byte[] copy(int start, int len) {
+        byte[] bytes = new byte[len];
+        System.arraycopy(content, start, bytes, 0, len);
+        return bytes;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local http server, serving a single in-memory resource with support for HEAD and
+ * range-byte GET requests.  Stands in for a remote data server in unit tests.
+ */
+public class RangeHttpServer {
+
+    private final HttpServer server;
+    private volatile byte[] content;
+    private volatile long lastModified = 1000000000000L;
+    private final AtomicInteger getCount = new AtomicInteger();
+    private final AtomicInteger headCount = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private volatile int failAfter = Integer.MAX_VALUE;
+    private volatile int failCount = 0;
+    private volatile boolean ignoreRanges = false;
+
+    public RangeHttpServer(byte[] content) throws IOException {
+        this.content = content;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public URL getURL(String path) throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/" + path);
+    }
+
+    /**
+     * Replace the served content, and bump the last-modified date
+     */
+    public void setContent(byte[] content) {
+        this.content = content;
+        this.lastModified += 60000;
+    }
+
+    public int getGetCount() {
+        return getCount.get();
+    }
+
+    public int getHeadCount() {
+        return headCount.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    /**
+     * Respond to GET requests number {@code after + 1} through {@code after + count} with a server error
+     */
+    public void setFailures(int after, int count) {
+        this.failAfter = after;
+        this.failCount = count;
+    }
+
+    /**
+     * Serve the full content in response to range requests, as some servers do
+     */
+    public void setIgnoreRanges(boolean ignoreRanges) {
+        this.ignoreRanges = ignoreRanges;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+
+        byte[] bytes = content;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        exchange.getResponseHeaders().add("Last-Modified", dateFormat.format(new Date(lastModified)));
+        exchange.getResponseHeaders().add("ETag", "\"" + bytes.length + "-" + lastModified + "\"");
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            headCount.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(bytes.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        int n = getCount.incrementAndGet();
+        if (n > failAfter && n <= failAfter + failCount) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+
+        int start = 0;
+        int end = bytes.length - 1;
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && !ignoreRanges) {
+            String[] tokens = range.substring(6).split("-");
+            start = Integer.parseInt(tokens[0]);
+            if (tokens.length > 1 && tokens[1].length() > 0) {
+                end = Math.min(end, Integer.parseInt(tokens[1]));
+            }
+            if (start >= bytes.length) {
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            code = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + bytes.length);
+        }
+
+        int len = end - start + 1;
+        exchange.sendResponseHeaders(code, len);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes, start, len);
+        os.close();
+        bytesServed.addAndGet(len);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RangeRequestStatsTest {
+
+    /**
+     * Counters of the least recently opened urls are dropped
+     */
+    @Test
+    public void testBounded() throws Exception {
+
+        RangeRequestStats.clearAll();
+        RangeRequestStats first = RangeRequestStats.getStats("http://host/0");
+        first.recordRequest(10);
+        for (int i = 1; i <= RangeRequestStats.MAX_URLS; i++) {
+            RangeRequestStats.getStats("http://host/" + i);
+            if (i == 1) {
+                // Recently used, kept
+                assertSame(first, RangeRequestStats.getStats("http://host/0"));
+            }
+        }
+        assertEquals(RangeRequestStats.MAX_URLS, RangeRequestStats.getAllStats().size());
+        assertSame(first, RangeRequestStats.getStats("http://host/0"));
+
+        RangeRequestStats.getStats("http://host/" + (RangeRequestStats.MAX_URLS + 1));
+        assertEquals(RangeRequestStats.MAX_URLS, RangeRequestStats.getAllStats().size());
+        assertEquals(0, RangeRequestStats.getStats("http://host/1").getRequests());
+        RangeRequestStats.clearAll();
+    }
+}
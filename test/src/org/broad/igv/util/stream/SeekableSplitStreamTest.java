@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2007-2013 The Broad Institute, Inc.
+ * SOFTWARE COPYRIGHT NOTICE
+ * This software and its documentation are the copyright of the Broad Institute, Inc. All rights are reserved.
+ *
+ * This software is supplied without any warranty or guaranteed support whatsoever. The Broad Institute is not responsible for its use, misuse, or functionality.
+ *
+ * This software is licensed under the terms of the GNU Lesser General Public License (LGPL),
+ * Version 2.1 which is available at http://www.opensource.org/licenses/lgpl-2.1.php.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.broad.igv.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SeekableSplitStreamTest {
+
+    static final int[] PART_SIZES = {1000, 2500, 0, 10, 4000};
+
+    static File dir;
+    static File listFile;
+    static byte[] content;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+
+        dir = new File(TestUtils.TMP_OUTPUT_DIR, "splitstream");
+        dir.mkdirs();
+
+        int total = 0;
+        for (int size : PART_SIZES) total += size;
+        content = new byte[total];
+        new Random(11).nextBytes(content);
+
+        listFile = new File(dir, "test.bin.list");
+        PrintWriter pw = new PrintWriter(listFile);
+        int offset = 0;
+        for (int i = 0; i < PART_SIZES.length; i++) {
+            String name = "test.bin.part" + i;
+            FileOutputStream fos = new FileOutputStream(new File(dir, name));
+            fos.write(content, offset, PART_SIZES[i]);
+            fos.close();
+            pw.println(name + " " + PART_SIZES[i]);
+            offset += PART_SIZES[i];
+        }
+        pw.close();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+
+        SeekableSplitStream stream = new SeekableSplitStream(listFile.getAbsolutePath());
+        assertEquals(content.length, stream.length());
+
+        byte[] bytes = new byte[content.length];
+        stream.readFully(bytes);
+        assertArrayEquals(content, bytes);
+        assertTrue(stream.eof());
+        assertEquals(-1, stream.read());
+        stream.close();
+    }
+
+    @Test
+    public void testSpanningReads() throws Exception {
+
+        SeekableSplitStream stream = new SeekableSplitStream(listFile.getAbsolutePath());
+
+        // Spans parts 0, 1, 3 (2 is empty) and 4
+        stream.seek(990);
+        byte[] bytes = new byte[2600];
+        assertEquals(bytes.length, stream.read(bytes, 0, bytes.length));
+        assertContent(990, bytes);
+        assertEquals(3590, stream.position());
+
+        // Single byte reads across a boundary
+        stream.seek(999);
+        assertEquals(content[999] & 0xFF, stream.read());
+        assertEquals(content[1000] & 0xFF, stream.read());
+
+        // Past the end
+        stream.seek(content.length - 5);
+        bytes = new byte[100];
+        assertEquals(5, stream.read(bytes, 0, 100));
+        assertEquals(-1, stream.read(bytes, 0, 100));
+        stream.close();
+    }
+
+    @Test
+    public void testRandomReads() throws Exception {
+
+        SeekableSplitStream stream = new SeekableSplitStream(listFile.getAbsolutePath());
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(content.length - 1);
+            byte[] bytes = new byte[1 + random.nextInt(content.length - start)];
+            stream.seek(start);
+            stream.readFully(bytes);
+            assertContent(start, bytes);
+        }
+        stream.close();
+    }
+
+    /**
+     * Parts shorter than listed: only the bytes actually read are returned and advance the position
+     */
+    @Test
+    public void testTruncatedPart() throws Exception {
+
+        File truncatedList = new File(dir, "truncated.bin.list");
+        PrintWriter pw = new PrintWriter(truncatedList);
+        pw.println("test.bin.part0 1100");
+        pw.println("test.bin.part1 2500");
+        pw.close();
+
+        SeekableSplitStream stream = new SeekableSplitStream(truncatedList.getAbsolutePath());
+        stream.seek(990);
+        byte[] bytes = new byte[200];
+        assertEquals(10, stream.read(bytes, 0, bytes.length));
+        assertEquals(1000, stream.position());
+
+        // Nothing left in part 0, the segment in part 1 isn't contiguous
+        assertEquals(-1, stream.read(bytes, 0, bytes.length));
+        assertEquals(1000, stream.position());
+        stream.close();
+    }
+
+    private static void assertContent(int start, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            assertEquals(content[start + i], bytes[i]);
+        }
+    }
+}
@@ -51,4 +51,28 @@ public class VariantTrackTest extends AbstractHeadlessTest {
         }
     }
 
+    @Test
+    public void testGenotypeMatrix() throws Exception {
+        String filePath = TestUtils.DATA_DIR + "vcf/SRP32_v4.sorted.0.vcf";
+        VariantTrack track = (VariantTrack) (new TrackLoader()).load(new ResourceLocator(filePath), genome).get(0);
+        List<String> samples = track.getAllSamples();
+        List<Feature> features = track.getFeatures("chr1", 0, 2000000);
+        Assert.assertTrue(features.size() > 0 && samples.size() > 1);
+
+        GenotypeMatrix matrix = new GenotypeMatrix(null, samples);
+        for (Feature f : features) {
+            Variant variant = (Variant) f;
+            byte[] row = matrix.getRow(variant);
+            Assert.assertSame(row, matrix.getRow(variant));
+            for (int i = samples.size() - 1; i >= 0; i--) {
+                Genotype genotype = variant.getGenotype(samples.get(i));
+                byte expected = genotype.isNoCall() ? GenotypeMatrix.NO_CALL :
+                        genotype.isHomRef() ? GenotypeMatrix.HOM_REF :
+                                genotype.isHomVar() ? GenotypeMatrix.HOM_VAR :
+                                        genotype.isHet() ? GenotypeMatrix.HET : GenotypeMatrix.OTHER;
+                assertEquals(expected, matrix.getCode(variant, row, i));
+            }
+        }
+    }
+
 }